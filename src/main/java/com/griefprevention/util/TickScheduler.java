@@ -0,0 +1,315 @@
+package com.griefprevention.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Unmodifiable;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A scheduler for small jobs run on the server's main thread, driven by calling {@link #tick()} once per tick.
+ *
+ * <p>Delayed jobs wait in a hierarchical timing wheel: {@value #LEVELS} wheels of {@value #SLOTS} slots, where each
+ * slot of a wheel spans a whole turn of the wheel below. Scheduling takes constant time however long the delay, and
+ * each tick only looks at the slot coming due, plus the occasional slot of a higher wheel whose jobs are moved down
+ * as it comes round.
+ *
+ * <p>Due jobs run in the order they came due until the tick's time budget is used up, and the rest wait for the next
+ * tick. At least one job runs every tick, so work always makes progress, even with a budget shorter than a job.
+ *
+ * <p>Jobs may be scheduled from any thread. They join the wheel at the start of the next tick, so a job scheduled
+ * with no delay runs on the next tick at the earliest. Each job has a type, a short name counted in
+ * {@link #getMetrics() metrics}.
+ */
+public final class TickScheduler
+{
+
+    static final int SLOT_BITS = 6;
+    static final int SLOTS = 1 << SLOT_BITS;
+    static final int LEVELS = 4;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    /**
+     * Counts and run times for one type of job.
+     *
+     * @param scheduled the number of times jobs were scheduled, including each repeat of a repeating job
+     * @param run the number of times jobs ran, including failed runs
+     * @param failed the number of runs which threw an exception
+     * @param waiting the number of jobs waiting to run
+     * @param totalNanos the total time spent running jobs, in nanoseconds
+     * @param maxNanos the longest time spent running one job, in nanoseconds
+     */
+    public record JobMetrics(long scheduled, long run, long failed, long waiting, long totalNanos, long maxNanos)
+    {
+    }
+
+    private static final class Counters
+    {
+        private final AtomicLong scheduled = new AtomicLong();
+        private final AtomicLong run = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong waiting = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private @NotNull JobMetrics snapshot()
+        {
+            return new JobMetrics(this.scheduled.get(), this.run.get(), this.failed.get(), this.waiting.get(),
+                    this.totalNanos.get(), this.maxNanos.get());
+        }
+    }
+
+    private static final class Job
+    {
+        private final @NotNull String type;
+        private final @NotNull Runnable action;
+        private final long period;
+        private final @NotNull Counters counters;
+        private long dueTick;
+
+        private Job(@NotNull String type, @NotNull Runnable action, long period, @NotNull Counters counters, long dueTick)
+        {
+            this.type = type;
+            this.action = action;
+            this.period = period;
+            this.counters = counters;
+            this.dueTick = dueTick;
+        }
+    }
+
+    private final @NotNull Logger logger;
+    private volatile long budgetNanos;
+
+    // Jobs scheduled since the last tick, from any thread.
+    private final ConcurrentLinkedQueue<Job> incoming = new ConcurrentLinkedQueue<>();
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+    // Only used on the ticking thread.
+    private final ArrayDeque<Job>[][] wheels;
+    private final ArrayDeque<Job> due = new ArrayDeque<>();
+    private volatile long currentTick;
+    private volatile long overBudgetTicks;
+
+    /**
+     * Construct a new {@code TickScheduler}.
+     *
+     * @param budget the longest time to spend running jobs each tick
+     * @param unit the unit of the budget
+     * @param logger the logger for failed jobs
+     */
+    @SuppressWarnings("unchecked")
+    public TickScheduler(long budget, @NotNull TimeUnit unit, @NotNull Logger logger)
+    {
+        this.setBudget(budget, unit);
+        this.logger = logger;
+        this.wheels = new ArrayDeque[LEVELS][SLOTS];
+        for (ArrayDeque<Job>[] wheel : this.wheels)
+        {
+            for (int slot = 0; slot < SLOTS; slot++)
+            {
+                wheel[slot] = new ArrayDeque<>();
+            }
+        }
+    }
+
+    /**
+     * Set the longest time to spend running jobs each tick.
+     *
+     * @param budget the budget
+     * @param unit the unit of the budget
+     */
+    public void setBudget(long budget, @NotNull TimeUnit unit)
+    {
+        if (budget < 0) throw new IllegalArgumentException("Budget must not be negative: " + budget);
+        this.budgetNanos = unit.toNanos(budget);
+    }
+
+    /**
+     * Get the longest time spent running jobs each tick.
+     *
+     * @param unit the unit to get the budget in
+     * @return the budget
+     */
+    public long getBudget(@NotNull TimeUnit unit)
+    {
+        return unit.convert(this.budgetNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Run a job as soon as possible.
+     *
+     * @param type the type of job
+     * @param job the job
+     */
+    public void submit(@NotNull String type, @NotNull Runnable job)
+    {
+        this.schedule(type, job, 1);
+    }
+
+    /**
+     * Run a job after a delay.
+     *
+     * @param type the type of job
+     * @param job the job
+     * @param delayTicks the number of ticks to wait
+     */
+    public void schedule(@NotNull String type, @NotNull Runnable job, long delayTicks)
+    {
+        this.add(type, job, delayTicks, 0);
+    }
+
+    /**
+     * Run a job repeatedly.
+     *
+     * @param type the type of job
+     * @param job the job
+     * @param delayTicks the number of ticks to wait before the first run
+     * @param periodTicks the number of ticks between runs
+     */
+    public void scheduleRepeating(@NotNull String type, @NotNull Runnable job, long delayTicks, long periodTicks)
+    {
+        if (periodTicks < 1) throw new IllegalArgumentException("Period must be positive: " + periodTicks);
+        this.add(type, job, delayTicks, periodTicks);
+    }
+
+    private void add(@NotNull String type, @NotNull Runnable action, long delayTicks, long periodTicks)
+    {
+        Counters typeCounters = this.counters.computeIfAbsent(type, key -> new Counters());
+        typeCounters.scheduled.incrementAndGet();
+        typeCounters.waiting.incrementAndGet();
+        this.incoming.add(new Job(type, action, periodTicks, typeCounters, this.currentTick + Math.max(delayTicks, 1)));
+    }
+
+    /**
+     * Advance one tick, running jobs which are due until the budget is used up. This must only be called from one
+     * thread, normally once per tick on the main thread.
+     */
+    public void tick()
+    {
+        long tick = this.currentTick + 1;
+        this.currentTick = tick;
+
+        for (Job job; (job = this.incoming.poll()) != null; )
+        {
+            this.insert(job);
+        }
+
+        // Move jobs down from each higher wheel whose slot comes round this tick, highest first, so they can reach
+        // the lowest wheel in time to run.
+        for (int level = LEVELS - 1; level > 0; level--)
+        {
+            int shift = SLOT_BITS * level;
+            if ((tick & ((1L << shift) - 1)) != 0) continue;
+
+            this.moveSlot(level, (int) (tick >>> shift) & SLOT_MASK);
+        }
+        this.moveSlot(0, (int) tick & SLOT_MASK);
+
+        long stopTime = System.nanoTime() + this.budgetNanos;
+        for (Job job; (job = this.due.poll()) != null; )
+        {
+            this.run(job);
+            if (System.nanoTime() - stopTime >= 0) break;
+        }
+
+        if (!this.due.isEmpty()) this.overBudgetTicks++;
+    }
+
+    // Puts a job in the wheel and slot its delay falls in, or with the due jobs if there's no delay left.
+    private void insert(@NotNull Job job)
+    {
+        long delay = job.dueTick - this.currentTick;
+        if (delay <= 0)
+        {
+            this.due.add(job);
+            return;
+        }
+
+        // Delays past the top wheel go round it again until they're in reach.
+        int level = 0;
+        while (level < LEVELS - 1 && delay >= 1L << (SLOT_BITS * (level + 1)))
+        {
+            level++;
+        }
+        this.wheels[level][(int) (job.dueTick >>> (SLOT_BITS * level)) & SLOT_MASK].add(job);
+    }
+
+    private void moveSlot(int level, int slot)
+    {
+        ArrayDeque<Job> jobs = this.wheels[level][slot];
+        if (jobs.isEmpty()) return;
+
+        this.wheels[level][slot] = new ArrayDeque<>();
+        for (Job job : jobs)
+        {
+            this.insert(job);
+        }
+    }
+
+    private void run(@NotNull Job job)
+    {
+        Counters typeCounters = job.counters;
+        typeCounters.waiting.decrementAndGet();
+
+        long start = System.nanoTime();
+        try
+        {
+            job.action.run();
+        }
+        catch (RuntimeException | LinkageError e)
+        {
+            typeCounters.failed.incrementAndGet();
+            this.logger.log(Level.SEVERE, "Scheduled job " + job.type + " failed", e);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        typeCounters.run.incrementAndGet();
+        typeCounters.totalNanos.addAndGet(elapsed);
+        typeCounters.maxNanos.accumulateAndGet(elapsed, Math::max);
+
+        if (job.period > 0)
+        {
+            typeCounters.scheduled.incrementAndGet();
+            typeCounters.waiting.incrementAndGet();
+            job.dueTick = this.currentTick + job.period;
+            this.insert(job);
+        }
+    }
+
+    /**
+     * Get counts and run times for each type of job scheduled so far.
+     *
+     * @return the metrics of each type of job, by type
+     */
+    public @NotNull @Unmodifiable Map<String, JobMetrics> getMetrics()
+    {
+        Map<String, JobMetrics> metrics = new TreeMap<>();
+        this.counters.forEach((type, typeCounters) -> metrics.put(type, typeCounters.snapshot()));
+        return Collections.unmodifiableMap(metrics);
+    }
+
+    /**
+     * @return the number of ticks so far
+     */
+    public long getCurrentTick()
+    {
+        return this.currentTick;
+    }
+
+    /**
+     * @return the number of ticks which ended with due jobs left over for lack of budget
+     */
+    public long getOverBudgetTicks()
+    {
+        return this.overBudgetTicks;
+    }
+
+}
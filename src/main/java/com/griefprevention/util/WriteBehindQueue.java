@@ -0,0 +1,472 @@
+package com.griefprevention.util;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A queue of pending writes which are performed later on a background thread.
+ *
+ * <p>Writes are keyed, and submitting a write for a key which is already waiting replaces the waiting value, so a
+ * burst of changes to the same thing results in a single write of its latest state. Waiting writes are performed
+ * in the order their keys were first submitted, once the oldest has waited for the flush interval or when a flush
+ * is requested.
+ *
+ * <p>The queue may be bounded. Once it is full, it is flushed immediately, and writes for keys which are not already
+ * waiting are performed on the submitting thread until there is room again, so it never holds more than its capacity.
+ *
+ * <p>Writes are performed one at a time, holding only the queue's own write lock, so values should be snapshots which
+ * the writer can use on its own. A submitting or cancelling thread may wait for a write in progress, so the writer
+ * must not wait for any lock held by callers of {@link #submit(Object, Object)} or {@link #cancel(Object)}.
+ * Cancelling a key waits for any write of it in progress, so once it returns, no write for the key is in progress or
+ * waiting.
+ *
+ * @param <K> the type of key
+ * @param <V> the type of value written
+ */
+public final class WriteBehindQueue<K, V> implements AutoCloseable
+{
+
+    private record Pending<V>(@NotNull V value, long submitted)
+    {
+    }
+
+    private final @NotNull BiConsumer<K, V> writer;
+    private final long flushIntervalNanos;
+    private final int capacity;
+    private final @NotNull Logger logger;
+    private final @NotNull Thread thread;
+
+    private final Object lock = new Object();
+    // Held while performing each write, so writes on submitting threads don't overlap each other or the writer thread.
+    private final Object writeLock = new Object();
+    private final LinkedHashMap<K, Pending<V>> pending = new LinkedHashMap<>();
+    private @Nullable K writing;
+    private long flushesRequested;
+    private long flushesCompleted;
+    private boolean closed;
+
+    private long submittedCount;
+    private long coalescedCount;
+    private long overflowCount;
+    private long writtenCount;
+    private long lastFlushNanos;
+    private long maxFlushNanos;
+    private long lastFlushLatencyNanos;
+    private int lastFlushSize;
+
+    /**
+     * Construct and start a new unbounded {@code WriteBehindQueue}.
+     *
+     * @param name the name of the writer thread
+     * @param writer the action performing each write
+     * @param flushInterval the longest time a write should wait
+     * @param unit the unit of the flush interval
+     * @param logger the logger for failed writes
+     */
+    public WriteBehindQueue(
+            @NotNull String name,
+            @NotNull BiConsumer<K, V> writer,
+            long flushInterval,
+            @NotNull TimeUnit unit,
+            @NotNull Logger logger)
+    {
+        this(name, writer, flushInterval, unit, Integer.MAX_VALUE, logger);
+    }
+
+    /**
+     * Construct and start a new {@code WriteBehindQueue}.
+     *
+     * @param name the name of the writer thread
+     * @param writer the action performing each write
+     * @param flushInterval the longest time a write should wait
+     * @param unit the unit of the flush interval
+     * @param capacity the most keys which may be waiting at once
+     * @param logger the logger for failed writes
+     */
+    public WriteBehindQueue(
+            @NotNull String name,
+            @NotNull BiConsumer<K, V> writer,
+            long flushInterval,
+            @NotNull TimeUnit unit,
+            int capacity,
+            @NotNull Logger logger)
+    {
+        if (capacity < 1) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+
+        this.writer = writer;
+        this.flushIntervalNanos = unit.toNanos(flushInterval);
+        this.capacity = capacity;
+        this.logger = logger;
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Submit a write, replacing any write still waiting for the same key.
+     *
+     * <p>If the queue is full or closed, the write is performed immediately on the calling thread instead.
+     *
+     * @param key the key
+     * @param value the value to write
+     */
+    public void submit(@NotNull K key, @NotNull V value)
+    {
+        synchronized (this.lock)
+        {
+            if (this.offer(key, value)) return;
+        }
+
+        // Check again holding the write lock, as the writer may have made room in the meantime.
+        synchronized (this.writeLock)
+        {
+            synchronized (this.lock)
+            {
+                if (this.offer(key, value)) return;
+                if (!this.closed) this.overflowCount++;
+                this.writing = key;
+            }
+
+            this.writeHoldingLock(key, value);
+        }
+    }
+
+    /**
+     * Cancel a waiting write. If a write for the key is in progress, this waits for it to finish.
+     *
+     * @param key the key
+     * @return true if a waiting write was cancelled
+     */
+    public boolean cancel(@NotNull K key)
+    {
+        // The writer can't wait for its own write.
+        boolean onWriter = Thread.currentThread() == this.thread;
+        synchronized (this.lock)
+        {
+            boolean cancelled = this.pending.remove(key) != null;
+            while (!onWriter && key.equals(this.writing))
+            {
+                try
+                {
+                    this.lock.wait();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            return cancelled;
+        }
+    }
+
+    /**
+     * Perform all writes submitted so far and wait for them to finish.
+     */
+    public void flush()
+    {
+        if (Thread.currentThread() == this.thread) return;
+
+        synchronized (this.lock)
+        {
+            long flush = ++this.flushesRequested;
+            this.lock.notifyAll();
+            while (this.flushesCompleted < flush && this.thread.isAlive())
+            {
+                try
+                {
+                    this.lock.wait();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Perform all waiting writes, then stop the writer thread. Later submissions are written immediately.
+     */
+    @Override
+    public void close()
+    {
+        this.flush();
+
+        synchronized (this.lock)
+        {
+            this.closed = true;
+            this.lock.notifyAll();
+        }
+
+        try
+        {
+            this.thread.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        // Anything submitted between the flush and closing is written here.
+        while (true)
+        {
+            Map.Entry<K, V> entry;
+            synchronized (this.lock)
+            {
+                entry = this.takeFirst();
+                if (entry == null) return;
+                this.writing = entry.getKey();
+            }
+
+            synchronized (this.writeLock)
+            {
+                this.writeHoldingLock(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return the number of writes waiting
+     */
+    public int getQueueDepth()
+    {
+        synchronized (this.lock)
+        {
+            return this.pending.size();
+        }
+    }
+
+    /**
+     * @return the number of writes submitted while the queue was open
+     */
+    public long getSubmittedCount()
+    {
+        synchronized (this.lock)
+        {
+            return this.submittedCount;
+        }
+    }
+
+    /**
+     * @return the number of submitted writes which replaced a waiting write for the same key
+     */
+    public long getCoalescedCount()
+    {
+        synchronized (this.lock)
+        {
+            return this.coalescedCount;
+        }
+    }
+
+    /**
+     * @return the number of submitted writes performed on the submitting thread because the queue was full
+     */
+    public long getOverflowCount()
+    {
+        synchronized (this.lock)
+        {
+            return this.overflowCount;
+        }
+    }
+
+    /**
+     * @return the number of writes performed by the writer thread
+     */
+    public long getWrittenCount()
+    {
+        synchronized (this.lock)
+        {
+            return this.writtenCount;
+        }
+    }
+
+    /**
+     * @return the number of writes performed by the last flush
+     */
+    public int getLastFlushSize()
+    {
+        synchronized (this.lock)
+        {
+            return this.lastFlushSize;
+        }
+    }
+
+    /**
+     * @param unit the unit of the result
+     * @return how long the last flush took to perform its writes
+     */
+    public long getLastFlushDuration(@NotNull TimeUnit unit)
+    {
+        synchronized (this.lock)
+        {
+            return unit.convert(this.lastFlushNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * @param unit the unit of the result
+     * @return the longest time any flush took to perform its writes
+     */
+    public long getMaxFlushDuration(@NotNull TimeUnit unit)
+    {
+        synchronized (this.lock)
+        {
+            return unit.convert(this.maxFlushNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * @param unit the unit of the result
+     * @return how long the oldest write of the last flush waited from submission until the flush finished
+     */
+    public long getLastFlushLatency(@NotNull TimeUnit unit)
+    {
+        synchronized (this.lock)
+        {
+            return unit.convert(this.lastFlushLatencyNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void run()
+    {
+        while (true)
+        {
+            int batchSize;
+            long flushTarget;
+            long batchOldest;
+            synchronized (this.lock)
+            {
+                try
+                {
+                    while (true)
+                    {
+                        if (this.pending.isEmpty())
+                        {
+                            this.completeFlushes(this.flushesRequested);
+                            if (this.closed) return;
+                            this.lock.wait();
+                            continue;
+                        }
+
+                        if (this.closed || this.flushesRequested > this.flushesCompleted) break;
+                        if (this.pending.size() >= this.capacity) break;
+
+                        long waited = System.nanoTime() - this.pending.firstEntry().getValue().submitted();
+                        if (waited >= this.flushIntervalNanos) break;
+                        TimeUnit.NANOSECONDS.timedWait(this.lock, this.flushIntervalNanos - waited);
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+
+                // Everything waiting now is written, so flushes requested so far are complete afterward.
+                batchSize = this.pending.size();
+                flushTarget = this.flushesRequested;
+                batchOldest = this.pending.firstEntry().getValue().submitted();
+            }
+
+            long start = System.nanoTime();
+            int written = 0;
+            for (; written < batchSize; written++)
+            {
+                synchronized (this.writeLock)
+                {
+                    Map.Entry<K, V> entry;
+                    synchronized (this.lock)
+                    {
+                        entry = this.takeFirst();
+                        if (entry == null) break;
+                        this.writing = entry.getKey();
+                        this.writtenCount++;
+                    }
+
+                    this.writeHoldingLock(entry.getKey(), entry.getValue());
+                }
+            }
+
+            long end = System.nanoTime();
+            synchronized (this.lock)
+            {
+                this.lastFlushSize = written;
+                this.lastFlushNanos = end - start;
+                this.maxFlushNanos = Math.max(this.maxFlushNanos, this.lastFlushNanos);
+                this.lastFlushLatencyNanos = end - batchOldest;
+                this.completeFlushes(flushTarget);
+            }
+        }
+    }
+
+    // Must hold the lock. Adds or replaces a waiting write if the queue is open and has room for it.
+    private boolean offer(@NotNull K key, @NotNull V value)
+    {
+        if (this.closed) return false;
+
+        // A replaced write keeps its place in line and how long it has been waiting.
+        Pending<V> replaced = this.pending.get(key);
+        if (replaced == null && this.pending.size() >= this.capacity) return false;
+
+        this.pending.put(key, new Pending<>(value, replaced != null ? replaced.submitted() : System.nanoTime()));
+        this.submittedCount++;
+        if (replaced != null)
+        {
+            this.coalescedCount++;
+        }
+
+        // Wake the writer if it was waiting for something to write, or if it should make room now.
+        if (this.pending.size() == 1 || this.pending.size() >= this.capacity)
+        {
+            this.lock.notifyAll();
+        }
+        return true;
+    }
+
+    // Must hold the lock. Removes the first waiting write.
+    private @Nullable Map.Entry<K, V> takeFirst()
+    {
+        Map.Entry<K, Pending<V>> first = this.pending.pollFirstEntry();
+        return first == null ? null : Map.entry(first.getKey(), first.getValue().value());
+    }
+
+    // Must hold the lock.
+    private void completeFlushes(long flush)
+    {
+        if (flush > this.flushesCompleted)
+        {
+            this.flushesCompleted = flush;
+            this.lock.notifyAll();
+        }
+    }
+
+    // Must hold the write lock, and must have marked the key as being written when taking it so cancellations wait for it.
+    private void writeHoldingLock(@NotNull K key, @NotNull V value)
+    {
+        try
+        {
+            this.writer.accept(key, value);
+        }
+        catch (RuntimeException e)
+        {
+            this.logger.log(Level.SEVERE, "Unable to write " + key, e);
+        }
+        finally
+        {
+            synchronized (this.lock)
+            {
+                this.writing = null;
+                this.lock.notifyAll();
+            }
+        }
+    }
+
+}
@@ -30,6 +30,9 @@ import java.util.stream.Stream;
 public abstract class BoundaryVisualization
 {
 
+    /** The type of the work scheduler job reverting a visualization. */
+    public static final String REVERT_JOB_TYPE = "visualization-revert";
+
     private final Collection<Boundary> elements = new HashSet<>();
     protected final @NotNull World world;
     protected final @NotNull IntVector visualizeFrom;
@@ -89,16 +92,17 @@ public abstract class BoundaryVisualization
     /**
      * Schedule automatic reversion of the visualization.
      *
-     * <p>Some implementations may automatically revert without additional help and may wish to override this method to
-     * prevent extra task scheduling.</p>
+     * <p>Reversion is a job on GriefPrevention's {@link GriefPrevention#getWorkScheduler() work scheduler}. Some
+     * implementations may automatically revert without additional help and may wish to override this method to
+     * prevent extra job scheduling.</p>
      *
      * @param player the visualization target
      * @param playerData the {@link PlayerData} of the visualization target
      */
     protected void scheduleRevert(@NotNull Player player, @NotNull PlayerData playerData)
     {
-        GriefPrevention.instance.getServer().getScheduler().scheduleSyncDelayedTask(
-                GriefPrevention.instance,
+        GriefPrevention.instance.getWorkScheduler().schedule(
+                REVERT_JOB_TYPE,
                 () -> {
                     // Only revert if this is the active visualization.
                     if (playerData.getVisibleBoundaries() == this) playerData.setVisibleBoundaries(null);
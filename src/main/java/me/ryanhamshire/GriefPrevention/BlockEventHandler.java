@@ -76,6 +76,7 @@ import org.bukkit.projectiles.ProjectileSource;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
@@ -616,19 +617,20 @@ public class BlockEventHandler implements Listener
             if (!isRetract && direction == BlockFace.DOWN) return;
         }
 
-        BiPredicate<Claim, BoundingBox> intersectionHandler;
+        boolean conflict;
         if (pistonMode == PistonMode.EVERYWHERE_SIMPLE)
         {
             // Fast mode: Bounding box intersection always causes a conflict, even if blocks do not conflict.
-            intersectionHandler = denyOtherOwnerIntersection(pistonClaim);
+            conflict = boxConflictsWithClaims(pistonBlock.getWorld(), movedBlocks, pistonClaim,
+                    denyOtherOwnerIntersection(pistonClaim));
         }
         else
         {
             // Precise mode: Bounding box intersection may not yield a conflict. Individual blocks must be considered.
-            intersectionHandler = precisePistonIntersection(pistonBlock, pistonClaim, blocks, event);
+            conflict = precisePistonConflict(pistonBlock, pistonClaim, blocks, event);
         }
 
-        if (boxConflictsWithClaims(pistonBlock.getWorld(), movedBlocks, pistonClaim, intersectionHandler))
+        if (conflict)
         {
             event.setCancelled(true);
         }
@@ -693,16 +695,17 @@ public class BlockEventHandler implements Listener
      * @param pistonClaim the claim that the piston is in
      * @param blocks the affected blocks
      * @param event the event
-     * @return a {@link BiPredicate} accepting a {@link Claim} and {@link BoundingBox}
+     * @return true if a moved block conflicts with another owner's claim
      */
-    private @NotNull BiPredicate<@NotNull Claim, @NotNull BoundingBox> precisePistonIntersection(
+    private boolean precisePistonConflict(
             @NotNull Block pistonBlock,
             @Nullable Claim pistonClaim,
-            @NotNull Collection<@NotNull Block> blocks,
+            @NotNull List<@NotNull Block> blocks,
             @NotNull BlockPistonEvent event)
     {
         // Set up list of affected blocks.
-        HashSet<Block> checkBlocks = new HashSet<>(blocks);
+        List<Block> checkBlocks = new ArrayList<>(blocks.size() * 2);
+        checkBlocks.addAll(blocks);
 
         // Add all blocks that will be occupied after the shift.
         for (Block block : blocks)
@@ -713,10 +716,12 @@ public class BlockEventHandler implements Listener
             }
         }
 
-        return (claim, claimBoundingBox) ->
+        Claim lastClaim = pistonClaim;
+        for (Claim claim : this.dataStore.getClaimsAt(pistonBlock.getWorld(), checkBlocks, false, true))
         {
-            // Ensure that the claim contains an affected block.
-            if (containsNone(claimBoundingBox, checkBlocks)) return false;
+            // Skip unclaimed blocks and claims which have already been checked.
+            if (claim == null || claim == lastClaim) continue;
+            lastClaim = claim;
 
             // If pushing this block will change ownership, "explode" the piston for performance reasons.
             if (pistonClaim == null || !Objects.equals(pistonClaim.getOwnerID(), claim.getOwnerID()))
@@ -731,23 +736,9 @@ public class BlockEventHandler implements Listener
                 pistonBlock.setType(Material.AIR);
                 return true;
             }
-
-            // Otherwise, proceed to next claim.
-            return false;
-        };
-    }
-
-    private boolean containsNone(@NotNull BoundingBox boundingBox, @NotNull Collection<@NotNull Block> blocks)
-    {
-        for (Block block : blocks)
-        {
-            if (boundingBox.contains(block))
-            {
-                return false;
-            }
         }
 
-        return true;
+        return false;
     }
 
     //blocks are ignited ONLY by flint and steel (not by being near lava, open flames, etc), unless configured otherwise
@@ -843,39 +834,56 @@ public class BlockEventHandler implements Listener
     private <T extends Event & Cancellable> void onMultiBlockGrow(
             @Nullable Player player,
             @NotNull Block source,
-            @NotNull Collection<BlockState> states,
+            @NotNull List<BlockState> states,
             @NotNull T event,
             @NotNull Consumer<Claim> cancelSourceConsumer)
     {
         Claim sourceClaim = null;
-        BoundingBox box = BoundingBox.ofStates(states);
-        BiPredicate<@NotNull Claim, @NotNull BoundingBox> conflictCheck;
-        if (player != null)
-        {
-            // If a player is present, check their permission in affected claims.
-            conflictCheck = (claim, boundingBox) ->
-            {
-                Supplier<String> supplier = claim.checkPermission(player, ClaimPermission.Build, event);
-                if (supplier != null)
-                {
-                    // Warn when denied access to a claim.
-                    GriefPrevention.sendMessage(player, TextMode.Err, supplier.get());
-                    return true;
-                }
-                return false;
-            };
-        }
-        else
+        if (player == null)
         {
             // If no player is present (dispenser, natural growth, etc.), use owner comparison.
             sourceClaim = this.dataStore.getClaimAt(source.getLocation(), false, false, lastBlockFertilizeClaim);
-            conflictCheck = denyOtherOwnerIntersection(sourceClaim);
         }
 
-        if (boxConflictsWithClaims(source.getWorld(), box, sourceClaim, conflictCheck))
+        int size = states.size();
+        int[] x = new int[size];
+        int[] y = new int[size];
+        int[] z = new int[size];
+        for (int i = 0; i < size; i++)
+        {
+            BlockState state = states.get(i);
+            x[i] = state.getX();
+            y[i] = state.getY();
+            z[i] = state.getZ();
+        }
+
+        // Only the owner matters without a player, so subdivisions don't need to be resolved.
+        Claim[] claims = this.dataStore.getClaimsAt(source.getWorld(), x, y, z, false, player == null);
+
+        Claim lastClaim = sourceClaim;
+        for (Claim claim : claims)
         {
+            // Skip unclaimed blocks and claims which have already been checked.
+            if (claim == null || claim == lastClaim) continue;
+            lastClaim = claim;
+
+            if (player != null)
+            {
+                // If a player is present, check their permission in affected claims.
+                Supplier<String> supplier = claim.checkPermission(player, ClaimPermission.Build, event);
+                if (supplier == null) continue;
+
+                // Warn when denied access to a claim.
+                GriefPrevention.sendMessage(player, TextMode.Err, supplier.get());
+            }
+            else if (sourceClaim != null && Objects.equals(sourceClaim.getOwnerID(), claim.getOwnerID()))
+            {
+                continue;
+            }
+
             event.setCancelled(true);
             cancelSourceConsumer.accept(sourceClaim);
+            return;
         }
     }
 
@@ -0,0 +1,236 @@
+/*
+    GriefPrevention Server Plugin for Minecraft
+    Copyright (C) 2012 Ryan Hamshire
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.ryanhamshire.GriefPrevention;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * An open-addressing map from chunk keys to the top level claims overlapping that chunk, for a single world.
+ *
+ * <p>Keys are primitive chunk keys as produced by {@link DataStore#getChunkKey(int, int)}, so lookups never box.
+ * Each chunk's claims are held in a compact array which is replaced rather than modified when claims are added or
+ * removed. Arrays returned by {@link #get(long)} must not be modified by callers.
+ *
+ * <p>Reads never lock. Mutations must be serialized by the caller; each one publishes a complete new claim array for
+ * the affected chunk, and growing the table publishes a complete new table, so a concurrent reader always observes
+ * either the state before or after a mutation.
+ */
+final class ChunkClaimIndex
+{
+
+    private static final Claim[] NO_CLAIMS = new Claim[0];
+    // Marks a slot whose key was removed. The key stays in place so probe sequences through the slot are unchanged.
+    private static final Claim[] REMOVED = new Claim[0];
+    private static final int MIN_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.5f;
+    private static final VarHandle SLOT = MethodHandles.arrayElementVarHandle(Claim[][].class);
+
+    /**
+     * A fixed-capacity table. Once a slot's key is written it never changes for the lifetime of the table, and the key
+     * is always written before the value is released, so a reader that acquires a non-null value sees the right key.
+     */
+    private static final class Table
+    {
+        private final long[] keys;
+        // A null value marks an empty slot.
+        private final Claim[][] values;
+        private final int mask;
+
+        private Table(int capacity)
+        {
+            this.keys = new long[capacity];
+            this.values = new Claim[capacity][];
+            this.mask = capacity - 1;
+        }
+    }
+
+    private volatile Table table;
+    // Live entries and removed markers, which both occupy slots.
+    private int used;
+    private int size;
+
+    ChunkClaimIndex()
+    {
+        this.table = new Table(MIN_CAPACITY);
+    }
+
+    /**
+     * Get the claims overlapping a chunk. Safe to call from any thread without synchronization.
+     *
+     * @param chunkKey the chunk key
+     * @return the claims in the chunk, or an empty array if there are none
+     */
+    @NotNull Claim[] get(long chunkKey)
+    {
+        Table table = this.table;
+        int mask = table.mask;
+        for (int slot = mix(chunkKey) & mask, probes = 0; probes <= mask; slot = (slot + 1) & mask, probes++)
+        {
+            Claim[] claims = (Claim[]) SLOT.getAcquire(table.values, slot);
+            if (claims == null) break;
+            if (table.keys[slot] == chunkKey) return claims;
+        }
+        return NO_CLAIMS;
+    }
+
+    /**
+     * Add a claim to a chunk. Adding a claim which is already present in the chunk does nothing.
+     *
+     * @param chunkKey the chunk key
+     * @param claim the claim
+     */
+    void add(long chunkKey, @NotNull Claim claim)
+    {
+        Table table = this.table;
+        int slot = findSlot(table, chunkKey);
+        Claim[] existing = table.values[slot];
+
+        if (existing == null || existing == REMOVED)
+        {
+            if (existing == null)
+            {
+                table.keys[slot] = chunkKey;
+                this.used++;
+            }
+            SLOT.setRelease(table.values, slot, new Claim[] { claim });
+            this.size++;
+
+            if (this.used > (int) (table.values.length * LOAD_FACTOR))
+            {
+                this.rebuild();
+            }
+            return;
+        }
+
+        for (Claim other : existing)
+        {
+            if (other == claim) return;
+        }
+
+        Claim[] updated = Arrays.copyOf(existing, existing.length + 1);
+        updated[existing.length] = claim;
+        SLOT.setRelease(table.values, slot, updated);
+    }
+
+    /**
+     * Remove a claim from a chunk. Claims are matched by ID.
+     *
+     * @param chunkKey the chunk key
+     * @param claim the claim
+     * @return true if the claim was present
+     */
+    boolean remove(long chunkKey, @NotNull Claim claim)
+    {
+        Table table = this.table;
+        int slot = findSlot(table, chunkKey);
+        Claim[] existing = table.values[slot];
+        if (existing == null || existing == REMOVED) return false;
+
+        int index = -1;
+        for (int i = 0; i < existing.length; i++)
+        {
+            if (existing[i] == claim || Objects.equals(existing[i].id, claim.id))
+            {
+                index = i;
+                break;
+            }
+        }
+
+        if (index < 0) return false;
+
+        // If nothing's left, remove this chunk entirely.
+        if (existing.length == 1)
+        {
+            SLOT.setRelease(table.values, slot, REMOVED);
+            this.size--;
+            return true;
+        }
+
+        Claim[] updated = new Claim[existing.length - 1];
+        System.arraycopy(existing, 0, updated, 0, index);
+        System.arraycopy(existing, index + 1, updated, index, updated.length - index);
+        SLOT.setRelease(table.values, slot, updated);
+        return true;
+    }
+
+    /**
+     * @return the number of chunks containing at least one claim
+     */
+    int size()
+    {
+        return this.size;
+    }
+
+    boolean isEmpty()
+    {
+        return this.size == 0;
+    }
+
+    /**
+     * Find the slot containing a key, live or removed, or the empty slot where it would be inserted.
+     */
+    private static int findSlot(Table table, long chunkKey)
+    {
+        int slot = mix(chunkKey) & table.mask;
+        while (table.values[slot] != null && table.keys[slot] != chunkKey)
+        {
+            slot = (slot + 1) & table.mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Copy live entries into a new table sized for the current entry count and publish it.
+     */
+    private void rebuild()
+    {
+        int capacity = MIN_CAPACITY;
+        while (capacity * LOAD_FACTOR < (this.size + 1) * 2)
+        {
+            capacity <<= 1;
+        }
+
+        Table oldTable = this.table;
+        Table newTable = new Table(capacity);
+        for (int i = 0; i < oldTable.values.length; i++)
+        {
+            Claim[] claims = oldTable.values[i];
+            if (claims == null || claims == REMOVED) continue;
+
+            int slot = findSlot(newTable, oldTable.keys[i]);
+            newTable.keys[slot] = oldTable.keys[i];
+            newTable.values[slot] = claims;
+        }
+
+        this.used = this.size;
+        this.table = newTable;
+    }
+
+    private static int mix(long key)
+    {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+}
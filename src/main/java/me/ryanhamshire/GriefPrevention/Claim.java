@@ -19,7 +19,6 @@
 package me.ryanhamshire.GriefPrevention;
 
 import me.ryanhamshire.GriefPrevention.events.ClaimPermissionCheckEvent;
-import me.ryanhamshire.GriefPrevention.util.BoundingBox;
 import org.bukkit.Bukkit;
 import org.bukkit.Chunk;
 import org.bukkit.Location;
@@ -39,6 +38,7 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -56,6 +56,17 @@ public class Claim
     Location lesserBoundaryCorner;
     Location greaterBoundaryCorner;
 
+    //the same boundaries as primitive values, so containment and overlap checks never allocate
+    //must be kept in sync with the corners above by calling refreshBounds() whenever either corner changes
+    //maxY is the world's height limit rather than the greater corner's Y, for the same reason as above
+    private UUID worldID;
+    private int minX;
+    private int minY;
+    private int minZ;
+    private int maxX;
+    private int maxY;
+    private int maxZ;
+
     //modification date.  this comes from the file timestamp during load, and is updated with runtime changes
     public Date modifiedDate;
 
@@ -67,13 +78,22 @@ public class Claim
     public UUID ownerID;
 
     //permissions for this claim, see ClaimPermission class
-    private HashMap<String, ClaimPermission> playerIDToClaimPermissionMap = new HashMap<>();
+    //trust is split by the kind of identifier it was granted to, so checking a player's trust needs neither string
+    //conversion nor a scan of every trusted identifier.  all three are written to storage as the same strings as before
+    private HashMap<UUID, ClaimPermission> uuidToClaimPermissionMap = new HashMap<>();
+    //permission nodes, stored without the surrounding brackets they're granted with ("[permission.node]")
+    private LinkedHashMap<String, ClaimPermission> permissionNodeToClaimPermissionMap = new LinkedHashMap<>();
+    //everything else, such as "public" and names from older data
+    private HashMap<String, ClaimPermission> otherIDToClaimPermissionMap = new HashMap<>();
+
+    //incremented whenever anything affecting permission checks changes, so cached decisions can be discarded
+    private volatile int permissionVersion = 0;
 
     //whether or not this claim is in the data store
     //if a claim instance isn't in the data store, it isn't "active" - players can't interract with it
     //why keep this?  so that claims which have been removed from the data store can be correctly
     //ignored even though they may have references floating around
-    public boolean inDataStore = false;
+    public volatile boolean inDataStore = false;
 
     public boolean areExplosivesAllowed = false;
 
@@ -88,6 +108,10 @@ public class Claim
     //note subdivisions themselves never have children
     public ArrayList<Claim> children = new ArrayList<>();
 
+    //copy of the children list as of the data store's last change to it, safe to read from any thread
+    private static final Claim[] NO_CHILDREN = new Claim[0];
+    private volatile Claim[] childrenSnapshot = NO_CHILDREN;
+
     //following a siege, buttons/levers are unlocked temporarily.  this represents that state
     public boolean doorsOpen = false;
 
@@ -140,6 +164,7 @@ public class Claim
             this.lesserBoundaryCorner.setZ(z2);
         }
         this.lesserBoundaryCorner.setY(Math.min(this.lesserBoundaryCorner.getBlockY(), this.greaterBoundaryCorner.getBlockY()));
+        this.refreshBounds();
 
         //owner
         this.ownerID = ownerID;
@@ -176,16 +201,20 @@ public class Claim
     //produces a copy of a claim.
     public Claim(Claim claim) {
         this.modifiedDate = claim.modifiedDate;
-        this.lesserBoundaryCorner = claim.greaterBoundaryCorner.clone();
+        this.lesserBoundaryCorner = claim.lesserBoundaryCorner.clone();
         this.greaterBoundaryCorner = claim.greaterBoundaryCorner.clone();
+        this.refreshBounds();
         this.id = claim.id;
         this.ownerID = claim.ownerID;
-        this.playerIDToClaimPermissionMap = new HashMap<>(claim.playerIDToClaimPermissionMap);
+        this.uuidToClaimPermissionMap = new HashMap<>(claim.uuidToClaimPermissionMap);
+        this.permissionNodeToClaimPermissionMap = new LinkedHashMap<>(claim.permissionNodeToClaimPermissionMap);
+        this.otherIDToClaimPermissionMap = new HashMap<>(claim.otherIDToClaimPermissionMap);
         this.inDataStore = false; //since it's a copy of a claim, not in datastore!
         this.areExplosivesAllowed = claim.areExplosivesAllowed;
         this.parent = claim.parent;
         this.inheritNothing = claim.inheritNothing;
         this.children = new ArrayList<>(claim.children);
+        this.childrenSnapshot = claim.childrenSnapshot;
         this.doorsOpen = claim.doorsOpen;
     }
 
@@ -194,8 +223,8 @@ public class Claim
     {
         try
         {
-            int dX = Math.addExact(Math.subtractExact(greaterBoundaryCorner.getBlockX(), lesserBoundaryCorner.getBlockX()), 1);
-            int dZ = Math.addExact(Math.subtractExact(greaterBoundaryCorner.getBlockZ(), lesserBoundaryCorner.getBlockZ()), 1);
+            int dX = Math.addExact(Math.subtractExact(this.maxX, this.minX), 1);
+            int dZ = Math.addExact(Math.subtractExact(this.maxZ, this.minZ), 1);
             return Math.multiplyExact(dX, dZ);
         }
         catch (ArithmeticException e)
@@ -207,12 +236,12 @@ public class Claim
 
     public int getWidth()
     {
-        return this.greaterBoundaryCorner.getBlockX() - this.lesserBoundaryCorner.getBlockX() + 1;
+        return this.maxX - this.minX + 1;
     }
 
     public int getHeight()
     {
-        return this.greaterBoundaryCorner.getBlockZ() - this.lesserBoundaryCorner.getBlockZ() + 1;
+        return this.maxZ - this.minZ + 1;
     }
 
     public boolean getSubclaimRestrictions()
@@ -223,17 +252,21 @@ public class Claim
     public void setSubclaimRestrictions(boolean inheritNothing)
     {
         this.inheritNothing = inheritNothing;
+        this.permissionsChanged();
     }
 
     //distance check for claims, distance in this case is a band around the outside of the claim rather then euclidean distance
     public boolean isNear(Location location, int howNear)
     {
-        Claim claim = new Claim
-                (new Location(this.lesserBoundaryCorner.getWorld(), this.lesserBoundaryCorner.getBlockX() - howNear, this.lesserBoundaryCorner.getBlockY(), this.lesserBoundaryCorner.getBlockZ() - howNear),
-                        new Location(this.greaterBoundaryCorner.getWorld(), this.greaterBoundaryCorner.getBlockX() + howNear, this.greaterBoundaryCorner.getBlockY(), this.greaterBoundaryCorner.getBlockZ() + howNear),
-                        null, new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), null);
+        World world = location.getWorld();
+        if (world == null || !world.getUID().equals(this.worldID)) return false;
 
-        return claim.contains(location, false, true);
+        int x = location.getBlockX();
+        int y = location.getBlockY();
+        int z = location.getBlockZ();
+        return x >= this.minX - howNear && x <= this.maxX + howNear
+                && z >= this.minZ - howNear && z <= this.maxZ + howNear
+                && y >= this.minY && y <= this.maxY;
     }
 
     /**
@@ -312,7 +345,7 @@ public class Claim
     {
         if (uuid.equals(this.getOwnerID())) return true;
 
-        return level.isGrantedBy(this.playerIDToClaimPermissionMap.get(uuid.toString()));
+        return level.isGrantedBy(this.uuidToClaimPermissionMap.get(uuid));
     }
 
     public boolean hasExplicitPermission(@NotNull Player player, @NotNull ClaimPermission level)
@@ -321,15 +354,12 @@ public class Claim
         if (this.hasExplicitPermission(player.getUniqueId(), level)) return true;
 
         // Check permission-based ClaimPermission
-        for (Map.Entry<String, ClaimPermission> stringToPermission : this.playerIDToClaimPermissionMap.entrySet())
-        {
-            String node = stringToPermission.getKey();
-            // Ensure valid permission format for permissions - [permission.node]
-            if (node.length() < 3 || node.charAt(0) != '[' || node.charAt(node.length() - 1) != ']') continue;
+        if (this.permissionNodeToClaimPermissionMap.isEmpty()) return false;
 
+        for (Map.Entry<String, ClaimPermission> nodeToPermission : this.permissionNodeToClaimPermissionMap.entrySet())
+        {
             // Check if level is high enough and player has node
-            if (level.isGrantedBy(stringToPermission.getValue())
-                    && player.hasPermission(node.substring(1, node.length() - 1)))
+            if (level.isGrantedBy(nodeToPermission.getValue()) && player.hasPermission(nodeToPermission.getKey()))
                 return true;
         }
 
@@ -367,7 +397,7 @@ public class Claim
             @Nullable Event event,
             @Nullable Supplier<String> denialOverride)
     {
-        return callPermissionCheck(new ClaimPermissionCheckEvent(player, this, permission, event), denialOverride);
+        return checkPermission(player, player.getUniqueId(), permission, event, denialOverride);
     }
 
     /**
@@ -383,7 +413,63 @@ public class Claim
             @NotNull ClaimPermission permission,
             @Nullable Event event)
     {
-        return callPermissionCheck(new ClaimPermissionCheckEvent(uuid, this, permission, event), null);
+        // Checked by UUID alone, even if the player is online, so no player permissions apply and nothing is cached.
+        return checkPermission(null, uuid, permission, event, null);
+    }
+
+    /**
+     * Check whether a Player or UUID has a certain level of trust.
+     *
+     * <p>A {@link ClaimPermissionCheckEvent} is only created and called if something is listening for it. Otherwise
+     * the default decision is final, and for a Player it may come from their recent decisions.
+     *
+     * @param player the Player being checked for permissions, or null to check the UUID alone
+     * @param uuid the UUID being checked for permissions
+     * @param permission the ClaimPermission level required
+     * @param event the Event triggering the permission check
+     * @param denialOverride a message overriding the default denial for clarity
+     * @return the denial reason or null if permission is granted
+     */
+    private @Nullable Supplier<String> checkPermission(
+            @Nullable Player player,
+            @NotNull UUID uuid,
+            @NotNull ClaimPermission permission,
+            @Nullable Event event,
+            @Nullable Supplier<String> denialOverride)
+    {
+        if (ClaimPermissionCheckEvent.getHandlerList().getRegisteredListeners().length > 0)
+        {
+            ClaimPermissionCheckEvent checkEvent = player != null
+                    ? new ClaimPermissionCheckEvent(player, this, permission, event)
+                    : new ClaimPermissionCheckEvent(uuid, this, permission, event);
+            return callPermissionCheck(checkEvent, denialOverride);
+        }
+
+        Supplier<String> denial;
+
+        // Without listeners, recent decisions for this claim can be reused.
+        // Build checks depend on the triggering event and PVP state, so they're always made fresh.
+        if (player != null && permission != ClaimPermission.Build)
+        {
+            PermissionDecisionCache cache = GriefPrevention.instance.dataStore.getPlayerData(uuid).permissionDecisionCache;
+            PermissionDecisionCache.Decision decision = cache.get(this, permission);
+            if (decision != null)
+            {
+                denial = decision.denial();
+            }
+            else
+            {
+                denial = getDefaultDenial(player, uuid, permission, event);
+                cache.put(this, permission, denial);
+            }
+        }
+        else
+        {
+            denial = getDefaultDenial(player, uuid, permission, event);
+        }
+
+        // If permission is denied and a clarifying override is provided, use override.
+        return denial != null && denialOverride != null ? denialOverride : denial;
     }
 
     /**
@@ -412,6 +498,17 @@ public class Claim
         return event.getDenialReason();
     }
 
+    /**
+     * The outcome of a permission check using default behavior. Kept separate from the denial message so that checks
+     * which are granted, or only used to make another decision, never build a message supplier.
+     */
+    private enum DefaultDecision
+    {
+        GRANTED,
+        DENIED_IN_PVP,
+        DENIED
+    }
+
     /**
      * Get the default reason for denial of a ClaimPermission.
      *
@@ -426,38 +523,68 @@ public class Claim
             @NotNull UUID uuid,
             @NotNull ClaimPermission permission,
             @Nullable Event event)
+    {
+        return switch (getDefaultDecision(player, uuid, permission, event))
+        {
+            case GRANTED -> null;
+            case DENIED_IN_PVP -> () -> GriefPrevention.instance.dataStore.getMessage(Messages.NoBuildPvP);
+            // Catch-all error message for all other cases.
+            case DENIED -> () ->
+            {
+                String reason = GriefPrevention.instance.dataStore.getMessage(permission.getDenialMessage(), this.getOwnerName());
+                if (hasBypassPermission(player, permission))
+                    reason += "  " + GriefPrevention.instance.dataStore.getMessage(Messages.IgnoreClaimsAdvertisement);
+                return reason;
+            };
+        };
+    }
+
+    /**
+     * Decide whether a ClaimPermission is granted using default behavior.
+     *
+     * @param player the Player being checked for permissions
+     * @param uuid the UUID being checked for permissions
+     * @param permission the ClaimPermission required
+     * @param event the Event triggering the permission check
+     * @return the decision
+     */
+    private @NotNull DefaultDecision getDefaultDecision(
+            @Nullable Player player,
+            @NotNull UUID uuid,
+            @NotNull ClaimPermission permission,
+            @Nullable Event event)
     {
         if (player != null)
         {
             // Admin claims need adminclaims permission only.
             if (this.isAdminClaim())
             {
-                if (player.hasPermission("griefprevention.adminclaims")) return null;
+                if (player.hasPermission("griefprevention.adminclaims")) return DefaultDecision.GRANTED;
             }
 
             // Anyone with deleteclaims permission can edit non-admin claims at any time.
             else if (permission == ClaimPermission.Edit && player.hasPermission("griefprevention.deleteclaims"))
-                return null;
+                return DefaultDecision.GRANTED;
         }
 
         // Claim owner and admins in ignoreclaims mode have access.
         if (uuid.equals(this.getOwnerID())
                 || GriefPrevention.instance.dataStore.getPlayerData(uuid).ignoreClaims
                 && hasBypassPermission(player, permission))
-            return null;
+            return DefaultDecision.GRANTED;
 
         // Look for explicit individual permission.
         if (player != null)
         {
-            if (this.hasExplicitPermission(player, permission)) return null;
+            if (this.hasExplicitPermission(player, permission)) return DefaultDecision.GRANTED;
         }
         else
         {
-            if (this.hasExplicitPermission(uuid, permission)) return null;
+            if (this.hasExplicitPermission(uuid, permission)) return DefaultDecision.GRANTED;
         }
 
         // Check for public permission.
-        if (permission.isGrantedBy(this.playerIDToClaimPermissionMap.get("public"))) return null;
+        if (permission.isGrantedBy(this.otherIDToClaimPermissionMap.get("public"))) return DefaultDecision.GRANTED;
 
         // Special building-only rules.
         if (permission == ClaimPermission.Build)
@@ -466,7 +593,7 @@ public class Claim
             PlayerData playerData = GriefPrevention.instance.dataStore.getPlayerData(uuid);
             if (playerData.inPvpCombat())
             {
-                return () -> GriefPrevention.instance.dataStore.getMessage(Messages.NoBuildPvP);
+                return DefaultDecision.DENIED_IN_PVP;
             }
 
             // Allow farming crops with container trust.
@@ -475,25 +602,18 @@ public class Claim
                 material = ((BlockEvent) event).getBlock().getType();
 
             if (material != null && placeableForFarming(material)
-                    && this.getDefaultDenial(player, uuid, ClaimPermission.Container, event) == null)
-                return null;
+                    && this.getDefaultDecision(player, uuid, ClaimPermission.Container, event) == DefaultDecision.GRANTED)
+                return DefaultDecision.GRANTED;
         }
 
         // Permission inheritance for subdivisions.
         if (this.parent != null)
         {
             if (!inheritNothing)
-                return this.parent.getDefaultDenial(player, uuid, permission, event);
+                return this.parent.getDefaultDecision(player, uuid, permission, event);
         }
 
-        // Catch-all error message for all other cases.
-        return () ->
-        {
-            String reason = GriefPrevention.instance.dataStore.getMessage(permission.getDenialMessage(), this.getOwnerName());
-            if (hasBypassPermission(player, permission))
-                reason += "  " + GriefPrevention.instance.dataStore.getMessage(Messages.IgnoreClaimsAdvertisement);
-            return reason;
-        };
+        return DefaultDecision.DENIED;
     }
 
     /**
@@ -567,7 +687,11 @@ public class Claim
     {
         if (playerID == null || playerID.isEmpty()) return null;
 
-        return this.playerIDToClaimPermissionMap.get(playerID.toLowerCase());
+        playerID = playerID.toLowerCase();
+        UUID uuid = parseTrustedUUID(playerID);
+        if (uuid != null) return this.uuidToClaimPermissionMap.get(uuid);
+        if (isPermissionNode(playerID)) return this.permissionNodeToClaimPermissionMap.get(stripBrackets(playerID));
+        return this.otherIDToClaimPermissionMap.get(playerID);
     }
 
     //grants a permission for a player or the public
@@ -578,16 +702,34 @@ public class Claim
         if (playerID == null || playerID.isEmpty()) return;
 
         if (permissionLevel == null)
+        {
             dropPermission(playerID);
+            return;
+        }
+
+        playerID = playerID.toLowerCase();
+        UUID uuid = parseTrustedUUID(playerID);
+        if (uuid != null)
+            this.uuidToClaimPermissionMap.put(uuid, permissionLevel);
+        else if (isPermissionNode(playerID))
+            this.permissionNodeToClaimPermissionMap.put(stripBrackets(playerID), permissionLevel);
         else
-            this.playerIDToClaimPermissionMap.put(playerID.toLowerCase(), permissionLevel);
+            this.otherIDToClaimPermissionMap.put(playerID, permissionLevel);
+        this.permissionsChanged();
     }
 
     //revokes a permission for a player or the public
     public void dropPermission(@NotNull String playerID)
     {
         playerID = playerID.toLowerCase();
-        this.playerIDToClaimPermissionMap.remove(playerID);
+        UUID uuid = parseTrustedUUID(playerID);
+        if (uuid != null)
+            this.uuidToClaimPermissionMap.remove(uuid);
+        else if (isPermissionNode(playerID))
+            this.permissionNodeToClaimPermissionMap.remove(stripBrackets(playerID));
+        else
+            this.otherIDToClaimPermissionMap.remove(playerID);
+        this.permissionsChanged();
 
         for (Claim child : this.children)
         {
@@ -598,7 +740,10 @@ public class Claim
     //clears all permissions (except owner of course)
     public void clearPermissions()
     {
-        this.playerIDToClaimPermissionMap.clear();
+        this.uuidToClaimPermissionMap.clear();
+        this.permissionNodeToClaimPermissionMap.clear();
+        this.otherIDToClaimPermissionMap.clear();
+        this.permissionsChanged();
 
         for (Claim child : this.children)
         {
@@ -610,29 +755,70 @@ public class Claim
     //useful for  making copies of permissions during a claim resize and listing all permissions in a claim
     public void getPermissions(ArrayList<String> builders, ArrayList<String> containers, ArrayList<String> accessors, ArrayList<String> managers)
     {
-        //loop through all the entries in the hash map
-        for (Map.Entry<String, ClaimPermission> entry : this.playerIDToClaimPermissionMap.entrySet())
+        //loop through all the entries in the hash maps, converting keys back to the strings they were granted with
+        for (Map.Entry<UUID, ClaimPermission> entry : this.uuidToClaimPermissionMap.entrySet())
         {
-            //build up a list for each permission level
-            if (entry.getValue() == ClaimPermission.Build)
-            {
-                builders.add(entry.getKey());
-            }
-            else if (entry.getValue() == ClaimPermission.Container || entry.getValue() == ClaimPermission.Inventory)
-            {
-                containers.add(entry.getKey());
-            }
-            else if (entry.getValue() == ClaimPermission.Manage)
-            {
-                managers.add(entry.getKey());
-            }
-            else
-            {
-                accessors.add(entry.getKey());
-            }
+            addToPermissionList(entry.getKey().toString(), entry.getValue(), builders, containers, accessors, managers);
+        }
+        for (Map.Entry<String, ClaimPermission> entry : this.permissionNodeToClaimPermissionMap.entrySet())
+        {
+            addToPermissionList("[" + entry.getKey() + "]", entry.getValue(), builders, containers, accessors, managers);
+        }
+        for (Map.Entry<String, ClaimPermission> entry : this.otherIDToClaimPermissionMap.entrySet())
+        {
+            addToPermissionList(entry.getKey(), entry.getValue(), builders, containers, accessors, managers);
         }
     }
 
+    private static void addToPermissionList(String id, ClaimPermission permission, ArrayList<String> builders, ArrayList<String> containers, ArrayList<String> accessors, ArrayList<String> managers)
+    {
+        //build up a list for each permission level
+        if (permission == ClaimPermission.Build)
+        {
+            builders.add(id);
+        }
+        else if (permission == ClaimPermission.Container || permission == ClaimPermission.Inventory)
+        {
+            containers.add(id);
+        }
+        else if (permission == ClaimPermission.Manage)
+        {
+            managers.add(id);
+        }
+        else
+        {
+            accessors.add(id);
+        }
+    }
+
+    //parses a lowercase trust identifier as a UUID, only if it's exactly what UUID.toString() produces
+    //anything else is kept as a string so it's written back to storage unchanged
+    private static @Nullable UUID parseTrustedUUID(String id)
+    {
+        if (id.length() != 36 || id.charAt(8) != '-') return null;
+
+        try
+        {
+            UUID uuid = UUID.fromString(id);
+            return uuid.toString().equals(id) ? uuid : null;
+        }
+        catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+    }
+
+    //permission nodes are granted in the format [permission.node]
+    private static boolean isPermissionNode(String id)
+    {
+        return id.length() >= 3 && id.charAt(0) == '[' && id.charAt(id.length() - 1) == ']';
+    }
+
+    private static String stripBrackets(String permissionNode)
+    {
+        return permissionNode.substring(1, permissionNode.length() - 1);
+    }
+
     //returns a copy of the location representing lower x, y, z limits
     public Location getLesserBoundaryCorner()
     {
@@ -673,22 +859,22 @@ public class Claim
     public boolean contains(Location location, boolean ignoreHeight, boolean excludeSubdivisions)
     {
         //not in the same world implies false
-        if (!Objects.equals(location.getWorld(), this.lesserBoundaryCorner.getWorld())) return false;
+        World world = location.getWorld();
+        if (world == null) return false;
 
-        BoundingBox boundingBox = new BoundingBox(this);
-        int x = location.getBlockX();
-        int z = location.getBlockZ();
+        return this.contains(world.getUID(), location.getBlockX(), location.getBlockY(), location.getBlockZ(), ignoreHeight, excludeSubdivisions);
+    }
 
-        // If we're ignoring height, use 2D containment check.
-        if (ignoreHeight && !boundingBox.contains2d(x, z))
-        {
-            return false;
-        }
-        // Otherwise use full containment check.
-        else if (!ignoreHeight && !boundingBox.contains(x, location.getBlockY(), z))
-        {
-            return false;
-        }
+    //same as above for a block position, for callers which already have the world ID and coordinates on hand
+    boolean contains(UUID worldID, int x, int y, int z, boolean ignoreHeight, boolean excludeSubdivisions)
+    {
+        //not in the same world implies false
+        if (!worldID.equals(this.worldID)) return false;
+
+        if (x < this.minX || x > this.maxX || z < this.minZ || z > this.maxZ) return false;
+
+        //unless ignoring height, the location must also be between the claim's depth and the world's height limit
+        if (!ignoreHeight && (y < this.minY || y > this.maxY)) return false;
 
         //additional check for subdivisions
         //you're only in a subdivision when you're also in its parent claim
@@ -696,17 +882,17 @@ public class Claim
         //a subdivision can reach outside of its parent's boundaries.  so this check is important!
         if (this.parent != null)
         {
-            return this.parent.contains(location, ignoreHeight, false);
+            return this.parent.contains(worldID, x, y, z, ignoreHeight, false);
         }
 
         //code to exclude subdivisions in this check
         else if (excludeSubdivisions)
         {
             //search all subdivisions to see if the location is in any of them
-            for (Claim child : this.children)
+            for (Claim child : this.childrenSnapshot)
             {
                 //if we find such a subdivision, return false
-                if (child.contains(location, ignoreHeight, true))
+                if (child.contains(worldID, x, y, z, ignoreHeight, true))
                 {
                     return false;
                 }
@@ -721,9 +907,37 @@ public class Claim
     //used internally to prevent overlaps when creating claims
     boolean overlaps(Claim otherClaim)
     {
-        if (!Objects.equals(this.lesserBoundaryCorner.getWorld(), otherClaim.getLesserBoundaryCorner().getWorld())) return false;
+        if (!Objects.equals(this.worldID, otherClaim.worldID)) return false;
 
-        return new BoundingBox(this).intersects(new BoundingBox(otherClaim));
+        return this.minX <= otherClaim.maxX && this.maxX >= otherClaim.minX
+                && this.minY <= otherClaim.maxY && this.maxY >= otherClaim.minY
+                && this.minZ <= otherClaim.maxZ && this.maxZ >= otherClaim.minZ;
+    }
+
+    //notes a change affecting permission checks, such as trust, ownership or boundaries
+    //cached permission decisions for this claim and its subdivisions are discarded
+    void permissionsChanged()
+    {
+        this.permissionVersion++;
+    }
+
+    int getPermissionVersion()
+    {
+        return this.permissionVersion;
+    }
+
+    //recalculates the primitive bounds from the boundary corners
+    //must be called after either corner is replaced or modified
+    void refreshBounds()
+    {
+        World world = Objects.requireNonNull(this.lesserBoundaryCorner.getWorld());
+        this.worldID = world.getUID();
+        this.minX = this.lesserBoundaryCorner.getBlockX();
+        this.minY = this.lesserBoundaryCorner.getBlockY();
+        this.minZ = this.lesserBoundaryCorner.getBlockZ();
+        this.maxX = this.greaterBoundaryCorner.getBlockX();
+        this.maxY = world.getMaxHeight();
+        this.maxZ = this.greaterBoundaryCorner.getBlockZ();
     }
 
     @Deprecated(since = "17.0.0", forRemoval = true)
@@ -781,4 +995,16 @@ public class Claim
     {
         return DataStore.getChunkHashes(this);
     }
+
+    //republishes the children list for lock-free readers, must be called after every change to children
+    void publishChildren()
+    {
+        this.childrenSnapshot = this.children.isEmpty() ? NO_CHILDREN : this.children.toArray(NO_CHILDREN);
+    }
+
+    //gets the subdivisions as of the last published change, for readers not holding the data store lock
+    Claim[] getChildrenSnapshot()
+    {
+        return this.childrenSnapshot;
+    }
 }
@@ -0,0 +1,90 @@
+/*
+    GriefPrevention Server Plugin for Minecraft
+    Copyright (C) 2012 Ryan Hamshire
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.ryanhamshire.GriefPrevention;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * An owner's top level claims and when they were last seen, as they were at one moment.
+ *
+ * <p>Claim expiration takes these on the main thread, checks them against storage in the background, and deletes
+ * claims back on the main thread only if the owner's claims and activity are still {@link #isCurrent(long, List)
+ * current}. Anything that changed in between is left for the next check.
+ *
+ * @param ownerID the owner's UUID
+ * @param lastSeen when the owner was last seen, in epoch milliseconds
+ * @param claimIDs the IDs of the owner's top level claims, in the order they were added
+ * @param expiration which of the owner's claims have expired
+ */
+record ClaimOwnership(
+        @NotNull UUID ownerID,
+        long lastSeen,
+        @NotNull List<Long> claimIDs,
+        @NotNull CleanupUnusedClaimTask.Expiration expiration)
+{
+
+    ClaimOwnership
+    {
+        claimIDs = List.copyOf(claimIDs);
+    }
+
+    /**
+     * Take a snapshot of an owner's claims.
+     *
+     * @param ownerID the owner's UUID
+     * @param lastSeen when the owner was last seen, in epoch milliseconds
+     * @param claims the owner's top level claims
+     * @param expiration which of the owner's claims have expired
+     * @return the snapshot
+     */
+    static @NotNull ClaimOwnership of(@NotNull UUID ownerID, long lastSeen, @NotNull List<Claim> claims,
+            @NotNull CleanupUnusedClaimTask.Expiration expiration)
+    {
+        List<Long> claimIDs = new ArrayList<>(claims.size());
+        for (Claim claim : claims)
+        {
+            claimIDs.add(claim.id);
+        }
+        return new ClaimOwnership(ownerID, lastSeen, claimIDs, expiration);
+    }
+
+    /**
+     * Check whether the owner's claims and activity are unchanged since this snapshot.
+     *
+     * @param lastSeen when the owner was last seen now
+     * @param claims the owner's top level claims now
+     * @return true if nothing has changed
+     */
+    boolean isCurrent(long lastSeen, @NotNull List<Claim> claims)
+    {
+        if (lastSeen != this.lastSeen || claims.size() != this.claimIDs.size()) return false;
+
+        for (int i = 0; i < claims.size(); i++)
+        {
+            if (!Objects.equals(claims.get(i).id, this.claimIDs.get(i))) return false;
+        }
+        return true;
+    }
+
+}
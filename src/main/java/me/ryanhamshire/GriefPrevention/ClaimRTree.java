@@ -0,0 +1,519 @@
+/*
+    GriefPrevention Server Plugin for Minecraft
+    Copyright (C) 2012 Ryan Hamshire
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.ryanhamshire.GriefPrevention;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * A two-dimensional R-tree of the top level claims in a single world, keyed by their X/Z block bounds.
+ *
+ * <p>Intersection queries visit only the branches whose bounds intersect the queried area, so finding the claims in
+ * an area costs O(log n) plus the number of results instead of a scan of every claim.
+ *
+ * <p>Nodes are immutable. Mutations copy the path from the root to the affected leaf and publish a new root, so
+ * queries never lock and always see a consistent tree. Mutations must be serialized by the caller.
+ */
+final class ClaimRTree
+{
+
+    private static final int MAX_ENTRIES = 16;
+    private static final int MIN_ENTRIES = 6;
+
+    /**
+     * An inclusive rectangle of block coordinates.
+     */
+    private abstract static class Box
+    {
+        final int minX;
+        final int minZ;
+        final int maxX;
+        final int maxZ;
+
+        Box(int minX, int minZ, int maxX, int maxZ)
+        {
+            this.minX = minX;
+            this.minZ = minZ;
+            this.maxX = maxX;
+            this.maxZ = maxZ;
+        }
+
+        boolean intersects(int minX, int minZ, int maxX, int maxZ)
+        {
+            return this.minX <= maxX && this.maxX >= minX && this.minZ <= maxZ && this.maxZ >= minZ;
+        }
+
+        boolean contains(int minX, int minZ, int maxX, int maxZ)
+        {
+            return this.minX <= minX && this.maxX >= maxX && this.minZ <= minZ && this.maxZ >= maxZ;
+        }
+
+        long area()
+        {
+            return ClaimRTree.area(this.minX, this.minZ, this.maxX, this.maxZ);
+        }
+    }
+
+    private static final class Entry extends Box
+    {
+        final Claim claim;
+
+        Entry(Claim claim, int minX, int minZ, int maxX, int maxZ)
+        {
+            super(minX, minZ, maxX, maxZ);
+            this.claim = claim;
+        }
+    }
+
+    private static final class Node extends Box
+    {
+        final boolean leaf;
+        // Entries for leaves, nodes otherwise. Never modified once the node is constructed.
+        final Box[] items;
+
+        Node(boolean leaf, Box[] items)
+        {
+            super(minX(items), minZ(items), maxX(items), maxZ(items));
+            this.leaf = leaf;
+            this.items = items;
+        }
+    }
+
+    private static final Node EMPTY = new Node(true, new Box[0]);
+
+    private volatile Node root = EMPTY;
+    private int size;
+
+    /**
+     * Add a claim with the given bounds.
+     *
+     * @param claim the claim
+     * @param minX the lesser X coordinate
+     * @param minZ the lesser Z coordinate
+     * @param maxX the greater X coordinate
+     * @param maxZ the greater Z coordinate
+     */
+    void add(@NotNull Claim claim, int minX, int minZ, int maxX, int maxZ)
+    {
+        this.root = insert(this.root, new Entry(claim, minX, minZ, maxX, maxZ));
+        this.size++;
+    }
+
+    /**
+     * Remove a claim which was added with the given bounds. If the claim was added more than once, only the entry
+     * with matching bounds is removed. If no entry has matching bounds, any entry for the claim is removed.
+     *
+     * @param claim the claim
+     * @param minX the lesser X coordinate the claim was added with
+     * @param minZ the lesser Z coordinate the claim was added with
+     * @param maxX the greater X coordinate the claim was added with
+     * @param maxZ the greater Z coordinate the claim was added with
+     * @return true if the claim was present
+     */
+    boolean remove(@NotNull Claim claim, int minX, int minZ, int maxX, int maxZ)
+    {
+        Node root = this.root;
+        List<Entry> orphans = new ArrayList<>();
+        Node updated = remove(root, claim, minX, minZ, maxX, maxZ, true, true, orphans);
+        if (updated == root)
+        {
+            // Bounds did not match, fall back to searching every branch.
+            updated = remove(root, claim, minX, minZ, maxX, maxZ, false, true, orphans);
+            if (updated == root) return false;
+        }
+
+        if (updated == null) updated = EMPTY;
+
+        // Shorten the tree while the root has a single child.
+        while (!updated.leaf && updated.items.length == 1)
+        {
+            updated = (Node) updated.items[0];
+        }
+
+        for (Entry orphan : orphans)
+        {
+            updated = insert(updated, orphan);
+        }
+
+        this.root = updated;
+        this.size--;
+        return true;
+    }
+
+    /**
+     * Add every claim whose bounds intersect an area to a collection. Safe to call from any thread.
+     *
+     * @param minX the lesser X coordinate of the area
+     * @param minZ the lesser Z coordinate of the area
+     * @param maxX the greater X coordinate of the area
+     * @param maxZ the greater Z coordinate of the area
+     * @param claims the collection to add to
+     */
+    void collect(int minX, int minZ, int maxX, int maxZ, @NotNull Collection<? super Claim> claims)
+    {
+        collect(this.root, minX, minZ, maxX, maxZ, claims);
+    }
+
+    /**
+     * Find a claim whose bounds intersect an area and which matches a filter. Safe to call from any thread.
+     *
+     * @param minX the lesser X coordinate of the area
+     * @param minZ the lesser Z coordinate of the area
+     * @param maxX the greater X coordinate of the area
+     * @param maxZ the greater Z coordinate of the area
+     * @param filter the filter
+     * @return the first matching claim found, or null if there is none
+     */
+    @Nullable Claim findFirst(int minX, int minZ, int maxX, int maxZ, @NotNull Predicate<Claim> filter)
+    {
+        return findFirst(this.root, minX, minZ, maxX, maxZ, filter);
+    }
+
+    /**
+     * @return the number of entries in the tree
+     */
+    int size()
+    {
+        return this.size;
+    }
+
+    boolean isEmpty()
+    {
+        return this.size == 0;
+    }
+
+    private static void collect(Node node, int minX, int minZ, int maxX, int maxZ, Collection<? super Claim> claims)
+    {
+        for (Box item : node.items)
+        {
+            if (!item.intersects(minX, minZ, maxX, maxZ)) continue;
+
+            if (node.leaf) claims.add(((Entry) item).claim);
+            else collect((Node) item, minX, minZ, maxX, maxZ, claims);
+        }
+    }
+
+    private static @Nullable Claim findFirst(Node node, int minX, int minZ, int maxX, int maxZ, Predicate<Claim> filter)
+    {
+        for (Box item : node.items)
+        {
+            if (!item.intersects(minX, minZ, maxX, maxZ)) continue;
+
+            if (node.leaf)
+            {
+                Claim claim = ((Entry) item).claim;
+                if (filter.test(claim)) return claim;
+            }
+            else
+            {
+                Claim claim = findFirst((Node) item, minX, minZ, maxX, maxZ, filter);
+                if (claim != null) return claim;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Insert an entry below a root, growing the tree by a level if the root splits.
+     */
+    private static Node insert(Node root, Entry entry)
+    {
+        Node[] nodes = insertInto(root, entry);
+        if (nodes.length == 1) return nodes[0];
+        return new Node(false, new Box[] { nodes[0], nodes[1] });
+    }
+
+    /**
+     * Insert an entry below a node, returning the copied node or the two halves it was split into.
+     */
+    private static Node[] insertInto(Node node, Entry entry)
+    {
+        Box[] items;
+        if (node.leaf)
+        {
+            items = new Box[node.items.length + 1];
+            System.arraycopy(node.items, 0, items, 0, node.items.length);
+            items[node.items.length] = entry;
+        }
+        else
+        {
+            int best = chooseSubtree(node.items, entry);
+            Node[] replaced = insertInto((Node) node.items[best], entry);
+            items = new Box[node.items.length + replaced.length - 1];
+            System.arraycopy(node.items, 0, items, 0, node.items.length);
+            items[best] = replaced[0];
+            if (replaced.length == 2) items[node.items.length] = replaced[1];
+        }
+
+        if (items.length <= MAX_ENTRIES) return new Node[] { new Node(node.leaf, items) };
+        return split(node.leaf, items);
+    }
+
+    /**
+     * Pick the child needing the least enlargement to include an entry, preferring smaller children on ties.
+     */
+    private static int chooseSubtree(Box[] children, Box entry)
+    {
+        int best = 0;
+        long bestEnlargement = Long.MAX_VALUE;
+        long bestArea = Long.MAX_VALUE;
+        for (int i = 0; i < children.length; i++)
+        {
+            Box child = children[i];
+            long area = child.area();
+            long enlargement = unionArea(child, entry.minX, entry.minZ, entry.maxX, entry.maxZ) - area;
+            if (enlargement < bestEnlargement || (enlargement == bestEnlargement && area < bestArea))
+            {
+                best = i;
+                bestEnlargement = enlargement;
+                bestArea = area;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Split an overfull set of items into two nodes using Guttman's quadratic split.
+     */
+    private static Node[] split(boolean leaf, Box[] items)
+    {
+        // Seed each group with the pair of items that would waste the most area together.
+        int seedA = 0;
+        int seedB = 1;
+        long worstWaste = Long.MIN_VALUE;
+        for (int i = 0; i < items.length; i++)
+        {
+            for (int j = i + 1; j < items.length; j++)
+            {
+                long waste = unionArea(items[i], items[j].minX, items[j].minZ, items[j].maxX, items[j].maxZ)
+                        - items[i].area() - items[j].area();
+                if (waste > worstWaste)
+                {
+                    worstWaste = waste;
+                    seedA = i;
+                    seedB = j;
+                }
+            }
+        }
+
+        List<Box> groupA = new ArrayList<>();
+        List<Box> groupB = new ArrayList<>();
+        int[] boundsA = { items[seedA].minX, items[seedA].minZ, items[seedA].maxX, items[seedA].maxZ };
+        int[] boundsB = { items[seedB].minX, items[seedB].minZ, items[seedB].maxX, items[seedB].maxZ };
+        groupA.add(items[seedA]);
+        groupB.add(items[seedB]);
+
+        boolean[] assigned = new boolean[items.length];
+        assigned[seedA] = true;
+        assigned[seedB] = true;
+        int remaining = items.length - 2;
+
+        while (remaining > 0)
+        {
+            // If one group needs every remaining item to reach the minimum, give them all to it.
+            List<Box> forced = null;
+            if (groupA.size() + remaining == MIN_ENTRIES) forced = groupA;
+            else if (groupB.size() + remaining == MIN_ENTRIES) forced = groupB;
+            if (forced != null)
+            {
+                for (int i = 0; i < items.length; i++)
+                {
+                    if (!assigned[i]) forced.add(items[i]);
+                }
+                break;
+            }
+
+            // Otherwise assign the item with the strongest preference for one group.
+            int next = -1;
+            long nextGrowthA = 0;
+            long nextGrowthB = 0;
+            long strongestPreference = -1;
+            for (int i = 0; i < items.length; i++)
+            {
+                if (assigned[i]) continue;
+
+                Box item = items[i];
+                long growthA = unionArea(boundsA, item) - area(boundsA[0], boundsA[1], boundsA[2], boundsA[3]);
+                long growthB = unionArea(boundsB, item) - area(boundsB[0], boundsB[1], boundsB[2], boundsB[3]);
+                long preference = Math.abs(growthA - growthB);
+                if (preference > strongestPreference)
+                {
+                    strongestPreference = preference;
+                    next = i;
+                    nextGrowthA = growthA;
+                    nextGrowthB = growthB;
+                }
+            }
+
+            boolean toA;
+            if (nextGrowthA != nextGrowthB) toA = nextGrowthA < nextGrowthB;
+            else
+            {
+                long areaA = area(boundsA[0], boundsA[1], boundsA[2], boundsA[3]);
+                long areaB = area(boundsB[0], boundsB[1], boundsB[2], boundsB[3]);
+                toA = areaA != areaB ? areaA < areaB : groupA.size() <= groupB.size();
+            }
+
+            Box item = items[next];
+            int[] bounds = toA ? boundsA : boundsB;
+            (toA ? groupA : groupB).add(item);
+            bounds[0] = Math.min(bounds[0], item.minX);
+            bounds[1] = Math.min(bounds[1], item.minZ);
+            bounds[2] = Math.max(bounds[2], item.maxX);
+            bounds[3] = Math.max(bounds[3], item.maxZ);
+            assigned[next] = true;
+            remaining--;
+        }
+
+        return new Node[] {
+                new Node(leaf, groupA.toArray(new Box[0])),
+                new Node(leaf, groupB.toArray(new Box[0]))
+        };
+    }
+
+    /**
+     * Remove a claim's entry below a node.
+     *
+     * @return the node itself if the claim was not found, a copy without the entry, or null if the node was emptied
+     *         or fell below the minimum size, in which case its remaining entries were added to the orphans
+     */
+    private static @Nullable Node remove(
+            Node node,
+            Claim claim,
+            int minX,
+            int minZ,
+            int maxX,
+            int maxZ,
+            boolean exact,
+            boolean isRoot,
+            List<Entry> orphans)
+    {
+        if (exact && !node.contains(minX, minZ, maxX, maxZ)) return node;
+
+        Box[] items = node.items;
+        for (int i = 0; i < items.length; i++)
+        {
+            Box replacement;
+            if (node.leaf)
+            {
+                Entry entry = (Entry) items[i];
+                if (entry.claim != claim) continue;
+                if (exact && (entry.minX != minX || entry.minZ != minZ || entry.maxX != maxX || entry.maxZ != maxZ))
+                    continue;
+                replacement = null;
+            }
+            else
+            {
+                Node child = (Node) items[i];
+                replacement = remove(child, claim, minX, minZ, maxX, maxZ, exact, false, orphans);
+                if (replacement == child) continue;
+            }
+
+            Box[] updated;
+            if (replacement == null)
+            {
+                updated = new Box[items.length - 1];
+                System.arraycopy(items, 0, updated, 0, i);
+                System.arraycopy(items, i + 1, updated, i, updated.length - i);
+            }
+            else
+            {
+                updated = items.clone();
+                updated[i] = replacement;
+            }
+
+            if (!isRoot && updated.length < MIN_ENTRIES)
+            {
+                for (Box item : updated)
+                {
+                    collectEntries(item, orphans);
+                }
+                return null;
+            }
+
+            if (updated.length == 0) return null;
+            return new Node(node.leaf, updated);
+        }
+
+        return node;
+    }
+
+    private static void collectEntries(Box box, List<Entry> entries)
+    {
+        if (box instanceof Entry entry)
+        {
+            entries.add(entry);
+            return;
+        }
+
+        for (Box item : ((Node) box).items)
+        {
+            collectEntries(item, entries);
+        }
+    }
+
+    private static long area(int minX, int minZ, int maxX, int maxZ)
+    {
+        return ((long) maxX - minX + 1) * ((long) maxZ - minZ + 1);
+    }
+
+    private static long unionArea(Box box, int minX, int minZ, int maxX, int maxZ)
+    {
+        return area(Math.min(box.minX, minX), Math.min(box.minZ, minZ), Math.max(box.maxX, maxX), Math.max(box.maxZ, maxZ));
+    }
+
+    private static long unionArea(int[] bounds, Box box)
+    {
+        return area(Math.min(bounds[0], box.minX), Math.min(bounds[1], box.minZ), Math.max(bounds[2], box.maxX), Math.max(bounds[3], box.maxZ));
+    }
+
+    private static int minX(Box[] items)
+    {
+        int value = Integer.MAX_VALUE;
+        for (Box item : items) value = Math.min(value, item.minX);
+        return value;
+    }
+
+    private static int minZ(Box[] items)
+    {
+        int value = Integer.MAX_VALUE;
+        for (Box item : items) value = Math.min(value, item.minZ);
+        return value;
+    }
+
+    private static int maxX(Box[] items)
+    {
+        int value = Integer.MIN_VALUE;
+        for (Box item : items) value = Math.max(value, item.maxX);
+        return value;
+    }
+
+    private static int maxZ(Box[] items)
+    {
+        int value = Integer.MIN_VALUE;
+        for (Box item : items) value = Math.max(value, item.maxZ);
+        return value;
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+    GriefPrevention Server Plugin for Minecraft
+    Copyright (C) 2012 Ryan Hamshire
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.ryanhamshire.GriefPrevention;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * A claim as stored in the database: numeric corners in a named world, and trust lists by permission level.
+ *
+ * <p>Records can be read without the claim's world being loaded, and are turned into claims with
+ * {@link #toClaim(World)} once it is.
+ *
+ * @param id the claim ID
+ * @param ownerID the owner, or null for administrative claims
+ * @param world the name of the claim's world
+ * @param lesserX the lesser corner's X coordinate
+ * @param lesserY the lesser corner's Y coordinate
+ * @param lesserZ the lesser corner's Z coordinate
+ * @param greaterX the greater corner's X coordinate
+ * @param greaterY the greater corner's Y coordinate
+ * @param greaterZ the greater corner's Z coordinate
+ * @param inheritNothing whether a subdivision ignores its parent's permissions
+ * @param parentID the parent claim's ID, or {@link #NO_PARENT} for top level claims
+ * @param builders subjects with build trust
+ * @param containers subjects with container trust
+ * @param accessors subjects with access trust
+ * @param managers subjects with permission trust
+ */
+record ClaimRecord(
+        long id,
+        @Nullable UUID ownerID,
+        @NotNull String world,
+        int lesserX,
+        int lesserY,
+        int lesserZ,
+        int greaterX,
+        int greaterY,
+        int greaterZ,
+        boolean inheritNothing,
+        long parentID,
+        @NotNull List<String> builders,
+        @NotNull List<String> containers,
+        @NotNull List<String> accessors,
+        @NotNull List<String> managers)
+{
+
+    static final long NO_PARENT = -1;
+
+    // Permission levels as stored in the trust table.
+    static final String BUILD = "Build";
+    static final String CONTAINER = "Container";
+    static final String ACCESS = "Access";
+    static final String MANAGE = "Manage";
+
+    /**
+     * Construct a new {@code ClaimRecord} with empty trust lists, to be filled with {@link #addTrust(String, String)}.
+     */
+    ClaimRecord(long id, @Nullable UUID ownerID, @NotNull String world, int lesserX, int lesserY, int lesserZ,
+            int greaterX, int greaterY, int greaterZ, boolean inheritNothing, long parentID)
+    {
+        this(id, ownerID, world, lesserX, lesserY, lesserZ, greaterX, greaterY, greaterZ, inheritNothing, parentID,
+                new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+    }
+
+    /**
+     * Get the record of a claim's current state.
+     *
+     * @param claim the claim
+     * @return the record
+     */
+    static @NotNull ClaimRecord of(@NotNull Claim claim)
+    {
+        ArrayList<String> builders = new ArrayList<>();
+        ArrayList<String> containers = new ArrayList<>();
+        ArrayList<String> accessors = new ArrayList<>();
+        ArrayList<String> managers = new ArrayList<>();
+        claim.getPermissions(builders, containers, accessors, managers);
+
+        Location lesser = claim.getLesserBoundaryCorner();
+        Location greater = claim.getGreaterBoundaryCorner();
+        return new ClaimRecord(
+                claim.id,
+                claim.ownerID,
+                lesser.getWorld().getName(),
+                lesser.getBlockX(),
+                lesser.getBlockY(),
+                lesser.getBlockZ(),
+                greater.getBlockX(),
+                greater.getBlockY(),
+                greater.getBlockZ(),
+                claim.getSubclaimRestrictions(),
+                claim.parent == null ? NO_PARENT : claim.parent.id,
+                builders,
+                containers,
+                accessors,
+                managers);
+    }
+
+    /**
+     * @return whether the claim is a subdivision
+     */
+    boolean hasParent()
+    {
+        return this.parentID != NO_PARENT;
+    }
+
+    /**
+     * Add a trusted subject at a stored permission level. Unknown levels are ignored.
+     *
+     * @param subject the subject, as stored
+     * @param permission the permission level, as stored
+     */
+    void addTrust(@NotNull String subject, @NotNull String permission)
+    {
+        switch (permission)
+        {
+            case BUILD -> this.builders.add(subject);
+            case CONTAINER -> this.containers.add(subject);
+            case ACCESS -> this.accessors.add(subject);
+            case MANAGE -> this.managers.add(subject);
+            default -> { }
+        }
+    }
+
+    /**
+     * Run an action for each trusted subject and its stored permission level.
+     *
+     * @param action the action
+     */
+    void forEachTrust(@NotNull BiConsumer<String, String> action)
+    {
+        this.builders.forEach(subject -> action.accept(subject, BUILD));
+        this.containers.forEach(subject -> action.accept(subject, CONTAINER));
+        this.accessors.forEach(subject -> action.accept(subject, ACCESS));
+        this.managers.forEach(subject -> action.accept(subject, MANAGE));
+    }
+
+    /**
+     * Create the claim this record describes. Subdivisions still need linking to their parent.
+     *
+     * @param world the claim's world
+     * @return the claim
+     */
+    @NotNull Claim toClaim(@NotNull World world)
+    {
+        Location lesser = new Location(world, this.lesserX, this.lesserY, this.lesserZ);
+        Location greater = new Location(world, this.greaterX, this.greaterY, this.greaterZ);
+        return new Claim(lesser, greater, this.ownerID, this.builders, this.containers, this.accessors, this.managers, this.inheritNothing, this.id);
+    }
+
+}
@@ -0,0 +1,655 @@
+/*
+    GriefPrevention Server Plugin for Minecraft
+    Copyright (C) 2012 Ryan Hamshire
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.ryanhamshire.GriefPrevention;
+
+import me.ryanhamshire.GriefPrevention.util.BoundingBox;
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.plugin.Plugin;
+import org.jetbrains.annotations.NotNull;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads database claims as they are needed rather than all at startup, so that servers sharing a database only hold
+ * the claims for their own worlds and the areas players are in.
+ *
+ * <p>In {@link Mode#WORLD} mode, a world's claims are loaded with the world and unloaded with it. In
+ * {@link Mode#REGION} mode, claims are loaded a square region of chunks at a time, before the first chunk in the
+ * region loads. Regions around each player are read in the background as they come near, so a chunk load only waits
+ * on the database when its region wasn't read in time. A region with no loaded chunks is unloaded once it has been
+ * idle for a while, or sooner, least recently used first, when more regions are loaded than allowed.
+ *
+ * <p>Claims owned by online players are never unloaded. Nothing is unloaded while writes are still on their way to
+ * the database, so a claim read back is never older than the one unloaded.
+ */
+final class ClaimRegionLoader implements Listener
+{
+
+    /**
+     * When claims are loaded.
+     */
+    enum Mode
+    {
+        /**
+         * Every claim, at startup.
+         */
+        EAGER,
+        /**
+         * A world's claims, when the world loads.
+         */
+        WORLD,
+        /**
+         * A region's claims, when a chunk in the region loads.
+         */
+        REGION;
+
+        static @NotNull Mode fromConfig(@NotNull String value)
+        {
+            try
+            {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            }
+            catch (IllegalArgumentException e)
+            {
+                GriefPrevention.AddLogEntry("Unknown claim loading mode " + value + ".  Loading every claim at startup.");
+                return EAGER;
+            }
+        }
+    }
+
+    /**
+     * How claims are loaded.
+     *
+     * @param mode when claims are loaded
+     * @param regionChunks the width of a region, in chunks
+     * @param maxRegions the most regions loaded before idle ones are unloaded early
+     * @param idleMillis how long a region with no loaded chunks stays loaded
+     * @param fetchSize how many claim rows are fetched from the database at a time while loading
+     */
+    record Settings(@NotNull Mode mode, int regionChunks, int maxRegions, long idleMillis, int fetchSize)
+    {
+
+        static final Settings EAGER = new Settings(Mode.EAGER, 32, 1024, TimeUnit.MINUTES.toMillis(10), 1000);
+
+        Settings
+        {
+            if (regionChunks < 1) throw new IllegalArgumentException("Regions must be at least one chunk wide");
+            if (maxRegions < 1) throw new IllegalArgumentException("At least one region must be allowed");
+            if (fetchSize < 1) throw new IllegalArgumentException("At least one row must be fetched at a time");
+        }
+
+        /**
+         * Read the settings from the database properties, using the defaults for any missing.
+         *
+         * @param properties the database properties
+         * @return the settings
+         */
+        static @NotNull Settings fromProperties(@NotNull Properties properties)
+        {
+            try
+            {
+                return new Settings(
+                        Mode.fromConfig(properties.getProperty("claimLoading", EAGER.mode().name())),
+                        Integer.parseInt(properties.getProperty("claimRegionChunks", String.valueOf(EAGER.regionChunks())).trim()),
+                        Integer.parseInt(properties.getProperty("maxLoadedClaimRegions", String.valueOf(EAGER.maxRegions())).trim()),
+                        TimeUnit.MINUTES.toMillis(Long.parseLong(properties.getProperty("claimRegionIdleMinutes",
+                                String.valueOf(TimeUnit.MILLISECONDS.toMinutes(EAGER.idleMillis()))).trim())),
+                        Integer.parseInt(properties.getProperty("claimFetchSize", String.valueOf(EAGER.fetchSize())).trim()));
+            }
+            catch (IllegalArgumentException e)
+            {
+                GriefPrevention.AddLogEntry("Invalid claim loading settings in database.properties.  Loading every claim at startup.  Details: " + e.getMessage());
+                return EAGER;
+            }
+        }
+
+    }
+
+    // How often idle regions are looked for, in ticks.
+    static final long EVICTION_PERIOD_TICKS = 20L * 60;
+    // How often the regions around players are read ahead, in ticks.
+    static final long PREFETCH_PERIOD_TICKS = 20L;
+
+    private record RegionKey(@NotNull UUID worldID, int x, int z)
+    {
+    }
+
+    private static final class Region
+    {
+        private int loadedChunks;
+        private long idleSince = System.currentTimeMillis();
+    }
+
+    // A region's claims as read, and how many deletes had finished before reading began.
+    private record RegionRead(@NotNull List<ClaimRecord> records, long finishedDeletes)
+    {
+    }
+
+    private final DatabaseDataStore dataStore;
+    private final Settings settings;
+    private final int regionBlocks;
+
+    // Loaded regions, least recently used first. Guarded, like everything here, by the data store.
+    private final LinkedHashMap<RegionKey, Region> regions = new LinkedHashMap<>(16, 0.75f, true);
+    // Regions being read in the background. The data store is never locked while the database is read.
+    private final Map<RegionKey, CompletableFuture<RegionRead>> fetching = new HashMap<>();
+    private final Set<UUID> loadedWorlds = new HashSet<>();
+    private Plugin plugin;
+
+    /**
+     * Construct a new {@code ClaimRegionLoader}.
+     *
+     * @param dataStore the data store to load claims into
+     * @param settings how claims are loaded
+     */
+    ClaimRegionLoader(@NotNull DatabaseDataStore dataStore, @NotNull Settings settings)
+    {
+        if (settings.mode() == Mode.EAGER) throw new IllegalArgumentException("Eager loading needs no loader");
+
+        this.dataStore = dataStore;
+        this.settings = settings;
+        this.regionBlocks = settings.regionChunks() << 4;
+    }
+
+    /**
+     * Start loading claims: those for worlds and chunks already loaded now, and the rest as they load.
+     *
+     * @param plugin the plugin to register events and tasks for
+     */
+    void start(@NotNull Plugin plugin)
+    {
+        this.plugin = plugin;
+        Bukkit.getPluginManager().registerEvents(this, plugin);
+
+        for (World world : Bukkit.getWorlds())
+        {
+            if (this.settings.mode() == Mode.WORLD)
+            {
+                this.loadWorld(world);
+                continue;
+            }
+
+            for (Chunk chunk : world.getLoadedChunks())
+            {
+                this.chunkLoaded(world, chunk.getX(), chunk.getZ());
+            }
+        }
+
+        if (this.settings.mode() == Mode.REGION)
+        {
+            Bukkit.getScheduler().runTaskTimer(plugin, this::evictIdleRegions, EVICTION_PERIOD_TICKS, EVICTION_PERIOD_TICKS);
+            Bukkit.getScheduler().runTaskTimer(plugin, this::prefetchRegions, PREFETCH_PERIOD_TICKS, PREFETCH_PERIOD_TICKS);
+        }
+    }
+
+    /**
+     * @return how claims are loaded
+     */
+    @NotNull Settings getSettings()
+    {
+        return this.settings;
+    }
+
+    /**
+     * @return the number of regions loaded
+     */
+    int getLoadedRegions()
+    {
+        synchronized (this.dataStore)
+        {
+            return this.regions.size();
+        }
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    void onWorldLoad(@NotNull WorldLoadEvent event)
+    {
+        if (this.settings.mode() == Mode.WORLD) this.loadWorld(event.getWorld());
+    }
+
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    void onWorldUnload(@NotNull WorldUnloadEvent event)
+    {
+        World world = event.getWorld();
+        synchronized (this.dataStore)
+        {
+            this.loadedWorlds.remove(world.getUID());
+            this.regions.keySet().removeIf(key -> key.worldID().equals(world.getUID()));
+            this.fetching.keySet().removeIf(key -> key.worldID().equals(world.getUID()));
+
+            // Claims can't outlive their world, whoever owns them.
+            for (Claim claim : new ArrayList<>(this.dataStore.claims.values()))
+            {
+                if (world.equals(claim.getLesserBoundaryCorner().getWorld())) this.dataStore.unloadClaim(claim);
+            }
+        }
+    }
+
+    // Claims must be in place before anything else sees the chunk.
+    @EventHandler(priority = EventPriority.LOWEST)
+    void onChunkLoad(@NotNull ChunkLoadEvent event)
+    {
+        if (this.settings.mode() != Mode.REGION) return;
+
+        Chunk chunk = event.getChunk();
+        this.chunkLoaded(event.getWorld(), chunk.getX(), chunk.getZ());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    void onChunkUnload(@NotNull ChunkUnloadEvent event)
+    {
+        if (this.settings.mode() != Mode.REGION) return;
+
+        Chunk chunk = event.getChunk();
+        RegionKey key = this.regionKey(event.getWorld(), chunk.getX(), chunk.getZ());
+        synchronized (this.dataStore)
+        {
+            Region region = this.regions.get(key);
+            if (region == null || region.loadedChunks == 0) return;
+
+            if (--region.loadedChunks == 0) region.idleSince = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Make sure every stored claim overlapping an area is in memory.
+     *
+     * @param world the world
+     * @param minX the least X coordinate of the area
+     * @param minZ the least Z coordinate of the area
+     * @param maxX the greatest X coordinate of the area
+     * @param maxZ the greatest Z coordinate of the area
+     */
+    void loadArea(@NotNull World world, int minX, int minZ, int maxX, int maxZ)
+    {
+        if (this.settings.mode() == Mode.WORLD)
+        {
+            this.loadWorld(world);
+            return;
+        }
+
+        for (int x = Math.floorDiv(minX, this.regionBlocks); x <= Math.floorDiv(maxX, this.regionBlocks); x++)
+        {
+            for (int z = Math.floorDiv(minZ, this.regionBlocks); z <= Math.floorDiv(maxZ, this.regionBlocks); z++)
+            {
+                this.loadRegion(world, new RegionKey(world.getUID(), x, z), 0);
+            }
+        }
+    }
+
+    /**
+     * Make sure every stored claim a player owns in a loaded world is in memory.
+     *
+     * @param ownerID the owner's UUID
+     */
+    void loadOwner(@NotNull UUID ownerID)
+    {
+        List<ClaimRecord> records;
+        try
+        {
+            records = this.dataStore.queryClaimsByOwner(ownerID);
+        }
+        catch (SQLException e)
+        {
+            GriefPrevention.AddLogEntry("Unable to load the claims of " + ownerID + ".  Details: " + e.getMessage());
+            return;
+        }
+
+        synchronized (this.dataStore)
+        {
+            this.addRecords(records);
+        }
+    }
+
+    private void loadWorld(@NotNull World world)
+    {
+        synchronized (this.dataStore)
+        {
+            if (!this.loadedWorlds.add(world.getUID())) return;
+        }
+
+        List<ClaimRecord> records;
+        try
+        {
+            records = this.dataStore.queryClaimsInWorld(world.getName());
+        }
+        catch (SQLException e)
+        {
+            synchronized (this.dataStore)
+            {
+                this.loadedWorlds.remove(world.getUID());
+            }
+            GriefPrevention.AddLogEntry("Unable to load the claims for " + world.getName() + ".  Details: " + e.getMessage());
+            return;
+        }
+
+        synchronized (this.dataStore)
+        {
+            int added = this.addRecords(records);
+            GriefPrevention.AddLogEntry("Loaded " + added + " claims for " + world.getName() + ".", CustomLogEntryTypes.Debug, true);
+        }
+    }
+
+    private void chunkLoaded(@NotNull World world, int chunkX, int chunkZ)
+    {
+        this.loadRegion(world, this.regionKey(world, chunkX, chunkZ), 1);
+    }
+
+    // Loads a region unless it already is, marking it as just used either way, and counts chunks loaded in it.
+    // Waits for a background read of the region if there is one, or reads it here if not.
+    private void loadRegion(@NotNull World world, @NotNull RegionKey key, int chunks)
+    {
+        CompletableFuture<RegionRead> fetch;
+        synchronized (this.dataStore)
+        {
+            Region region = this.regions.get(key);
+            if (region != null)
+            {
+                region.loadedChunks += chunks;
+                return;
+            }
+
+            // Taken over from the background, so only this finishes the region.
+            fetch = this.fetching.remove(key);
+        }
+
+        RegionRead read = null;
+        if (fetch != null)
+        {
+            try
+            {
+                read = fetch.join();
+            }
+            catch (CompletionException | CancellationException e)
+            {
+                // Read again below.
+            }
+        }
+
+        try
+        {
+            // A delete which finished during the read may have been read back, so a read overlapping one is repeated.
+            if (read == null || !this.isCurrent(read)) read = this.readRegion(world.getName(), key);
+        }
+        catch (SQLException e)
+        {
+            // Left unloaded, so the next chunk loaded here tries again.
+            GriefPrevention.AddLogEntry("Unable to load the claims near " + world.getName() + " " + key.x() * this.regionBlocks + ", " + key.z() * this.regionBlocks + ".  Claims there won't be protected until they load.  Details: " + e.getMessage());
+            return;
+        }
+
+        synchronized (this.dataStore)
+        {
+            Region region = this.regions.get(key);
+            if (region == null) region = this.addRegion(key, read);
+            region.loadedChunks += chunks;
+        }
+    }
+
+    // Reads a region's claims from the database. Runs on any thread, without the data store locked.
+    private @NotNull RegionRead readRegion(@NotNull String world, @NotNull RegionKey key) throws SQLException
+    {
+        long finishedDeletes = this.dataStore.getFinishedDeletes();
+        int minX = key.x() * this.regionBlocks;
+        int minZ = key.z() * this.regionBlocks;
+        List<ClaimRecord> records = this.dataStore.queryClaimsInRegion(world, minX, minZ, minX + this.regionBlocks - 1, minZ + this.regionBlocks - 1);
+        return new RegionRead(records, finishedDeletes);
+    }
+
+    private boolean isCurrent(@NotNull RegionRead read)
+    {
+        return read.finishedDeletes() == this.dataStore.getFinishedDeletes();
+    }
+
+    private @NotNull Region addRegion(@NotNull RegionKey key, @NotNull RegionRead read)
+    {
+        this.addRecords(read.records());
+        Region region = new Region();
+        this.regions.put(key, region);
+        return region;
+    }
+
+    // Starts reading the regions around each player which aren't loaded yet, so their chunks rarely wait to load.
+    private void prefetchRegions()
+    {
+        int viewDistance = Bukkit.getViewDistance();
+        synchronized (this.dataStore)
+        {
+            for (Player player : Bukkit.getOnlinePlayers())
+            {
+                World world = player.getWorld();
+                Location location = player.getLocation();
+                int chunkX = location.getBlockX() >> 4;
+                int chunkZ = location.getBlockZ() >> 4;
+
+                // Every region the player can see, and a region further, which they can't see yet.
+                int minX = Math.floorDiv(chunkX - viewDistance, this.settings.regionChunks()) - 1;
+                int minZ = Math.floorDiv(chunkZ - viewDistance, this.settings.regionChunks()) - 1;
+                int maxX = Math.floorDiv(chunkX + viewDistance, this.settings.regionChunks()) + 1;
+                int maxZ = Math.floorDiv(chunkZ + viewDistance, this.settings.regionChunks()) + 1;
+                for (int x = minX; x <= maxX; x++)
+                {
+                    for (int z = minZ; z <= maxZ; z++)
+                    {
+                        this.fetchRegion(world, new RegionKey(world.getUID(), x, z));
+                    }
+                }
+            }
+        }
+    }
+
+    // Starts reading a region on the storage reader thread, unless it's loaded or already being read.
+    // A loaded region near a player counts as used, so it's among the last unloaded.
+    private void fetchRegion(@NotNull World world, @NotNull RegionKey key)
+    {
+        Region region = this.regions.get(key);
+        if (region != null)
+        {
+            region.idleSince = System.currentTimeMillis();
+            return;
+        }
+        if (this.fetching.containsKey(key)) return;
+
+        String worldName = world.getName();
+        CompletableFuture<RegionRead> fetch;
+        try
+        {
+            fetch = CompletableFuture.supplyAsync(() ->
+            {
+                try
+                {
+                    return this.readRegion(worldName, key);
+                }
+                catch (SQLException e)
+                {
+                    throw new CompletionException(e);
+                }
+            }, this.dataStore.getStorageReadExecutor());
+        }
+        catch (RejectedExecutionException e)
+        {
+            // Shutting down.
+            return;
+        }
+
+        this.fetching.put(key, fetch);
+        fetch.whenComplete((read, error) -> Bukkit.getScheduler().runTask(this.plugin, () -> this.finishFetch(key, fetch)));
+    }
+
+    // Runs on the main thread once a background read is done.
+    private void finishFetch(@NotNull RegionKey key, @NotNull CompletableFuture<RegionRead> fetch)
+    {
+        synchronized (this.dataStore)
+        {
+            // Taken over by a chunk load, or its world unloaded.
+            if (this.fetching.get(key) != fetch) return;
+            this.fetching.remove(key);
+
+            // A failed or stale read is dropped. The region is read again when it's next needed.
+            RegionRead read = fetch.exceptionally(error -> null).join();
+            if (read == null || !this.isCurrent(read) || Bukkit.getWorld(key.worldID()) == null) return;
+
+            this.addRegion(key, read);
+        }
+    }
+
+    // Adds claims read from the database to memory, skipping any already there. Returns how many were added.
+    private int addRecords(@NotNull List<ClaimRecord> records)
+    {
+        Map<Long, Claim> added = new HashMap<>();
+        for (ClaimRecord record : records)
+        {
+            if (record.hasParent() || this.dataStore.getClaim(record.id()) != null || this.dataStore.isDeletePending(record.id())) continue;
+
+            World world = Bukkit.getWorld(record.world());
+            if (world == null) continue;
+
+            Claim claim = record.toClaim(world);
+            this.dataStore.addClaim(claim, false);
+            added.put(claim.id, claim);
+        }
+
+        // A subdivision is only missing if its parent was too.
+        for (ClaimRecord record : records)
+        {
+            if (!record.hasParent()) continue;
+
+            Claim parent = added.get(record.parentID());
+            if (parent == null || this.dataStore.isDeletePending(record.id())) continue;
+
+            Claim child = record.toClaim(parent.getLesserBoundaryCorner().getWorld());
+            child.parent = parent;
+            this.dataStore.addClaim(child, false);
+        }
+
+        return added.size();
+    }
+
+    private void evictIdleRegions()
+    {
+        synchronized (this.dataStore)
+        {
+            if (this.dataStore.hasPendingWrites()) return;
+
+            long now = System.currentTimeMillis();
+            int excess = this.regions.size() - this.settings.maxRegions();
+            List<RegionKey> evicted = new ArrayList<>();
+            Iterator<Map.Entry<RegionKey, Region>> iterator = this.regions.entrySet().iterator();
+            while (iterator.hasNext())
+            {
+                Map.Entry<RegionKey, Region> entry = iterator.next();
+                Region region = entry.getValue();
+                if (region.loadedChunks > 0) continue;
+
+                if (excess > 0 || now - region.idleSince >= this.settings.idleMillis())
+                {
+                    iterator.remove();
+                    evicted.add(entry.getKey());
+                    excess--;
+                }
+            }
+
+            int unloaded = 0;
+            for (RegionKey key : evicted)
+            {
+                unloaded += this.unloadRegionClaims(key);
+            }
+
+            if (!evicted.isEmpty())
+            {
+                GriefPrevention.AddLogEntry("Unloaded " + evicted.size() + " idle claim regions and " + unloaded + " claims.", CustomLogEntryTypes.Debug, true);
+            }
+        }
+    }
+
+    // Unloads the claims in a region no longer loaded, except those still needed. Returns how many were unloaded.
+    private int unloadRegionClaims(@NotNull RegionKey key)
+    {
+        World world = Bukkit.getWorld(key.worldID());
+        if (world == null) return 0;
+
+        int minX = key.x() * this.regionBlocks;
+        int minZ = key.z() * this.regionBlocks;
+        BoundingBox bounds = new BoundingBox(minX, world.getMinHeight(), minZ, minX + this.regionBlocks - 1, world.getMaxHeight(), minZ + this.regionBlocks - 1);
+
+        int unloaded = 0;
+        for (Claim claim : this.dataStore.getChunkClaims(world, bounds))
+        {
+            if (claim.ownerID != null && Bukkit.getPlayer(claim.ownerID) != null) continue;
+            if (this.overlapsLoadedRegion(world, claim)) continue;
+
+            this.dataStore.unloadClaim(claim);
+            unloaded++;
+        }
+
+        return unloaded;
+    }
+
+    private boolean overlapsLoadedRegion(@NotNull World world, @NotNull Claim claim)
+    {
+        int minX = Math.floorDiv(claim.getLesserBoundaryCorner().getBlockX(), this.regionBlocks);
+        int minZ = Math.floorDiv(claim.getLesserBoundaryCorner().getBlockZ(), this.regionBlocks);
+        int maxX = Math.floorDiv(claim.getGreaterBoundaryCorner().getBlockX(), this.regionBlocks);
+        int maxZ = Math.floorDiv(claim.getGreaterBoundaryCorner().getBlockZ(), this.regionBlocks);
+
+        for (int x = minX; x <= maxX; x++)
+        {
+            for (int z = minZ; z <= maxZ; z++)
+            {
+                // containsKey, unlike get, leaves the order of use alone.
+                if (this.regions.containsKey(new RegionKey(world.getUID(), x, z))) return true;
+            }
+        }
+
+        return false;
+    }
+
+    private @NotNull RegionKey regionKey(@NotNull World world, int chunkX, int chunkZ)
+    {
+        return new RegionKey(world.getUID(), Math.floorDiv(chunkX, this.settings.regionChunks()), Math.floorDiv(chunkZ, this.settings.regionChunks()));
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+    GriefPrevention Server Plugin for Minecraft
+    Copyright (C) 2012 Ryan Hamshire
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.ryanhamshire.GriefPrevention;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The tile a stored claim is filed under, so the claims overlapping an area can be found with bounded index ranges.
+ *
+ * <p>Tiles come in {@value #LEVELS} levels. Tiles at level 0 are {@code 2^}{@value #BASE_BITS} blocks wide, and each
+ * level's tiles are twice as wide as the level below. A claim is filed at the lowest level whose tiles are at least as
+ * wide as the claim, under the tile holding its lesser corner. Its greater corner is then in the same tile or the
+ * next one over, so at each level only the tiles under an area and one more row and column can hold claims
+ * overlapping it.
+ *
+ * @param level the tile level
+ * @param x the tile's X coordinate, in tiles of its level
+ * @param z the tile's Z coordinate, in tiles of its level
+ */
+record ClaimTile(int level, int x, int z)
+{
+
+    static final int BASE_BITS = 6;
+    // Enough for a claim spanning every int coordinate.
+    static final int LEVELS = Integer.SIZE + 1 - BASE_BITS;
+
+    /**
+     * The tiles, at one level, which can hold claims overlapping an area.
+     *
+     * @param level the tile level
+     * @param minX the least tile X coordinate
+     * @param minZ the least tile Z coordinate
+     * @param maxX the greatest tile X coordinate
+     * @param maxZ the greatest tile Z coordinate
+     */
+    record Range(int level, int minX, int minZ, int maxX, int maxZ)
+    {
+    }
+
+    /**
+     * Get the tile a claim is filed under.
+     *
+     * @param lesserX the lesser corner's X coordinate
+     * @param lesserZ the lesser corner's Z coordinate
+     * @param greaterX the greater corner's X coordinate
+     * @param greaterZ the greater corner's Z coordinate
+     * @return the tile
+     */
+    static @NotNull ClaimTile of(int lesserX, int lesserZ, int greaterX, int greaterZ)
+    {
+        long width = Math.max((long) greaterX - lesserX, (long) greaterZ - lesserZ) + 1;
+        int bits = Math.max(BASE_BITS, Long.SIZE - Long.numberOfLeadingZeros(width - 1));
+        return new ClaimTile(bits - BASE_BITS, tile(lesserX, bits), tile(lesserZ, bits));
+    }
+
+    /**
+     * Get the tile a claim record is filed under.
+     *
+     * @param record the claim record
+     * @return the tile
+     */
+    static @NotNull ClaimTile of(@NotNull ClaimRecord record)
+    {
+        return of(record.lesserX(), record.lesserZ(), record.greaterX(), record.greaterZ());
+    }
+
+    /**
+     * Get the tiles, one range per level, which can hold claims overlapping an area.
+     *
+     * @param minX the least X coordinate of the area
+     * @param minZ the least Z coordinate of the area
+     * @param maxX the greatest X coordinate of the area
+     * @param maxZ the greatest Z coordinate of the area
+     * @return the ranges, lowest level first
+     */
+    static @NotNull List<Range> covering(int minX, int minZ, int maxX, int maxZ)
+    {
+        List<Range> ranges = new ArrayList<>(LEVELS);
+        for (int level = 0; level < LEVELS; level++)
+        {
+            int bits = BASE_BITS + level;
+            // Claims filed one tile lower can still reach into the area.
+            ranges.add(new Range(level, tile(minX, bits) - 1, tile(minZ, bits) - 1, tile(maxX, bits), tile(maxZ, bits)));
+        }
+        return ranges;
+    }
+
+    // Shifted as a long, since an int shift of 32 bits would shift nothing.
+    private static int tile(int coordinate, int bits)
+    {
+        return (int) ((long) coordinate >> bits);
+    }
+
+}
@@ -18,71 +18,50 @@
 
 package me.ryanhamshire.GriefPrevention;
 
-import org.bukkit.Bukkit;
-import org.bukkit.OfflinePlayer;
-
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 
-//asynchronously loads player data without caching it in the datastore, then
-//passes those data to a claim cleanup task which might decide to delete a claim for inactivity
+//runs on the data store's reader thread, checking a snapshot of owners whose claims may expire against their data in
+//secondary storage without caching it, then passes the owners who aren't exempt back to the main thread for deletion
 
 class CleanupUnusedClaimPreTask implements Runnable
 {
-    private UUID ownerID = null;
+    private final FindUnusedClaimsTask findTask;
+    private final List<ClaimOwnership> owners;
 
-    CleanupUnusedClaimPreTask(UUID uuid)
+    CleanupUnusedClaimPreTask(FindUnusedClaimsTask findTask, List<ClaimOwnership> owners)
     {
-        this.ownerID = uuid;
+        this.findTask = findTask;
+        this.owners = owners;
     }
 
     @Override
     public void run()
     {
-        //get the data
-        PlayerData ownerData = GriefPrevention.instance.dataStore.getPlayerDataFromStorage(ownerID);
-        OfflinePlayer ownerInfo = Bukkit.getServer().getOfflinePlayer(ownerID);
-
-        GriefPrevention.AddLogEntry("Looking for expired claims.  Checking data for " + ownerID.toString(), CustomLogEntryTypes.Debug, true);
-
-        //expiration code uses last logout timestamp to decide whether to expire claims
-        //don't expire claims for online players
-        if (ownerInfo.isOnline())
-        {
-            GriefPrevention.AddLogEntry("Player is online. Ignoring.", CustomLogEntryTypes.Debug, true);
-            return;
-        }
-        if (ownerInfo.getLastPlayed() <= 0)
-        {
-            GriefPrevention.AddLogEntry("Player is new or not in the server's cached userdata. Ignoring. getLastPlayed = " + ownerInfo.getLastPlayed(), CustomLogEntryTypes.Debug, true);
-            return;
-        }
-
-        //skip claims belonging to exempted players based on block totals in config
-        int bonusBlocks = ownerData.getBonusClaimBlocks();
-        if (bonusBlocks >= GriefPrevention.instance.config_claims_expirationExemptionBonusBlocks || bonusBlocks + ownerData.getAccruedClaimBlocks() >= GriefPrevention.instance.config_claims_expirationExemptionTotalBlocks)
+        List<ClaimOwnership> expiredOwners = new ArrayList<>();
+        List<UUID> exemptOwners = new ArrayList<>();
+        for (ClaimOwnership owner : this.owners)
         {
-            GriefPrevention.AddLogEntry("Player exempt from claim expiration based on claim block counts vs. config file settings.", CustomLogEntryTypes.Debug, true);
-            return;
-        }
+            //get the data
+            PlayerData ownerData = GriefPrevention.instance.dataStore.getPlayerDataFromStorage(owner.ownerID());
 
-        Claim claimToExpire = null;
+            GriefPrevention.AddLogEntry("Looking for expired claims.  Checking data for " + owner.ownerID(), CustomLogEntryTypes.Debug, true);
 
-        for (Claim claim : GriefPrevention.instance.dataStore.getClaims())
-        {
-            if (ownerID.equals(claim.ownerID))
+            //skip claims belonging to exempted players based on block totals in config
+            int bonusBlocks = ownerData.getBonusClaimBlocks();
+            if (bonusBlocks >= GriefPrevention.instance.config_claims_expirationExemptionBonusBlocks || bonusBlocks + ownerData.getAccruedClaimBlocks() >= GriefPrevention.instance.config_claims_expirationExemptionTotalBlocks)
             {
-                claimToExpire = claim;
-                break;
+                GriefPrevention.AddLogEntry("Player exempt from claim expiration based on claim block counts vs. config file settings.", CustomLogEntryTypes.Debug, true);
+                exemptOwners.add(owner.ownerID());
+                continue;
             }
-        }
 
-        if (claimToExpire == null)
-        {
-            GriefPrevention.AddLogEntry("Unable to find a claim to expire for " + ownerID.toString(), CustomLogEntryTypes.Debug, false);
-            return;
+            expiredOwners.add(owner);
         }
 
-        //pass it back to the main server thread, where it's safe to delete a claim if needed
-        Bukkit.getScheduler().scheduleSyncDelayedTask(GriefPrevention.instance, new CleanupUnusedClaimTask(claimToExpire, ownerData, ownerInfo), 1L);
+        //pass it back to the main server thread, where it's safe to delete claims if needed
+        if (!GriefPrevention.instance.isEnabled()) return;
+        GriefPrevention.instance.getWorkScheduler().submit(FindUnusedClaimsTask.JOB_TYPE, () -> this.findTask.checkedExemptions(expiredOwners, exemptOwners));
     }
-}
\ No newline at end of file
+}
@@ -20,79 +20,132 @@ package me.ryanhamshire.GriefPrevention;
 
 import me.ryanhamshire.GriefPrevention.events.ClaimExpirationEvent;
 import org.bukkit.Bukkit;
-import org.bukkit.OfflinePlayer;
 
 import java.util.Calendar;
 import java.util.Date;
-import java.util.Vector;
+import java.util.List;
+import java.util.UUID;
 
+//deletes the expired claims of one owner who's been gone too long, in the main thread
+//runs as a work scheduler job, so deleting many owners' claims is spread over as many ticks as the scheduler's budget needs
 class CleanupUnusedClaimTask implements Runnable
 {
-    Claim claim;
-    PlayerData ownerData;
-    OfflinePlayer ownerInfo;
+    static final String JOB_TYPE = "claim-expiration";
 
-    CleanupUnusedClaimTask(Claim claim, PlayerData ownerData, OfflinePlayer ownerInfo)
+    //which of an owner's claims have expired
+    enum Expiration
     {
-        this.claim = claim;
-        this.ownerData = ownerData;
-        this.ownerInfo = ownerInfo;
+        NONE,
+        CHEST_CLAIM,
+        ALL_CLAIMS
+    }
+
+    private final ClaimOwnership owner;
+    private final Runnable onFinished;
+
+    CleanupUnusedClaimTask(ClaimOwnership owner, Runnable onFinished)
+    {
+        this.owner = owner;
+        this.onFinished = onFinished;
     }
 
     @Override
     public void run()
     {
+        try
+        {
+            this.expireClaims(this.owner);
+        }
+        finally
+        {
+            this.onFinished.run();
+        }
+    }
 
-
-        //determine area of the default chest claim
-        int areaOfDefaultClaim = 0;
-        if (GriefPrevention.instance.config_claims_automaticClaimsForNewPlayersRadius >= 0)
+    private void expireClaims(ClaimOwnership owner)
+    {
+        //the owner may have come back since they were checked
+        UUID ownerID = owner.ownerID();
+        if (Bukkit.getPlayer(ownerID) != null) return;
+
+        //only act on the snapshot if the owner's claims and activity haven't changed since it was taken
+        DataStore dataStore = GriefPrevention.instance.dataStore;
+        List<Claim> claims = dataStore.getClaimsOwnedBy(ownerID);
+        long lastSeen = dataStore.playerActivity.getLastSeen(ownerID);
+        long chestClaimCutoff = getCutoff(GriefPrevention.instance.config_claims_chestClaimExpirationDays);
+        long allClaimsCutoff = getCutoff(GriefPrevention.instance.config_claims_expirationDays);
+        if (!owner.isCurrent(lastSeen, claims) || getExpiration(claims, lastSeen, chestClaimCutoff, allClaimsCutoff) != owner.expiration())
         {
-            areaOfDefaultClaim = (int) Math.pow(GriefPrevention.instance.config_claims_automaticClaimsForNewPlayersRadius * 2 + 1, 2);
+            GriefPrevention.AddLogEntry("Claims or activity of " + ownerID + " changed since they were checked for expiration.  Skipping.", CustomLogEntryTypes.Debug, true);
+            return;
         }
 
-        //if this claim is a chest claim and those are set to expire
-        if (ownerData.getClaims().size() == 1 && claim.getArea() <= areaOfDefaultClaim && GriefPrevention.instance.config_claims_chestClaimExpirationDays > 0)
+        Claim claim = claims.get(0);
+        switch (owner.expiration())
         {
             //if the owner has been gone at least a week, and if he has ONLY the new player claim, it will be removed
-            Calendar sevenDaysAgo = Calendar.getInstance();
-            sevenDaysAgo.add(Calendar.DATE, -GriefPrevention.instance.config_claims_chestClaimExpirationDays);
-            if (sevenDaysAgo.getTime().after(new Date(ownerInfo.getLastPlayed())))
+            case CHEST_CLAIM ->
             {
-                if (expireEventCanceled())
+                if (expireEventCanceled(claim))
                     return;
-                GriefPrevention.instance.dataStore.deleteClaim(claim, true, true);
+                dataStore.deleteClaim(claim, true, true);
 
                 GriefPrevention.AddLogEntry(" " + claim.getOwnerName() + "'s new player claim expired.", CustomLogEntryTypes.AdminActivity);
             }
-        }
 
-        //if configured to always remove claims after some inactivity period without exceptions...
-        else if (GriefPrevention.instance.config_claims_expirationDays > 0)
-        {
-            Calendar earliestPermissibleLastLogin = Calendar.getInstance();
-            earliestPermissibleLastLogin.add(Calendar.DATE, -GriefPrevention.instance.config_claims_expirationDays);
-
-            if (earliestPermissibleLastLogin.getTime().after(new Date(ownerInfo.getLastPlayed())))
+            //if configured to always remove claims after some inactivity period without exceptions...
+            case ALL_CLAIMS ->
             {
-                if (expireEventCanceled())
+                if (expireEventCanceled(claim))
                     return;
-                //make a copy of this player's claim list
-                Vector<Claim> claims = new Vector<>(ownerData.getClaims());
 
                 //delete them
-                GriefPrevention.instance.dataStore.deleteClaimsForPlayer(claim.ownerID, true);
+                dataStore.deleteClaimsForPlayer(ownerID, true);
                 GriefPrevention.AddLogEntry(" All of " + claim.getOwnerName() + "'s claims have expired.", CustomLogEntryTypes.AdminActivity);
-                GriefPrevention.AddLogEntry("earliestPermissibleLastLogin#getTime: " + earliestPermissibleLastLogin.getTime(), CustomLogEntryTypes.Debug, true);
-                GriefPrevention.AddLogEntry("ownerInfo#getLastPlayed: " + ownerInfo.getLastPlayed(), CustomLogEntryTypes.Debug, true);
+                GriefPrevention.AddLogEntry("earliestPermissibleLastLogin#getTime: " + new Date(allClaimsCutoff), CustomLogEntryTypes.Debug, true);
+                GriefPrevention.AddLogEntry("lastSeen: " + lastSeen, CustomLogEntryTypes.Debug, true);
             }
+
+            case NONE -> { }
         }
     }
 
-    public boolean expireEventCanceled()
+    //decides which of an owner's claims have expired, given when the owner was last seen and the cutoffs from getCutoff
+    static Expiration getExpiration(List<Claim> claims, long lastSeen, long chestClaimCutoff, long allClaimsCutoff)
+    {
+        //owners with no record of being seen are new or unknown, so their claims are left alone
+        if (lastSeen == PlayerActivityIndex.UNKNOWN || claims.isEmpty()) return Expiration.NONE;
+
+        //determine area of the default chest claim
+        int areaOfDefaultClaim = 0;
+        if (GriefPrevention.instance.config_claims_automaticClaimsForNewPlayersRadius >= 0)
+        {
+            areaOfDefaultClaim = (int) Math.pow(GriefPrevention.instance.config_claims_automaticClaimsForNewPlayersRadius * 2 + 1, 2);
+        }
+
+        //if this claim is a chest claim and those are set to expire
+        if (claims.size() == 1 && claims.get(0).getArea() <= areaOfDefaultClaim && GriefPrevention.instance.config_claims_chestClaimExpirationDays > 0)
+        {
+            return lastSeen < chestClaimCutoff ? Expiration.CHEST_CLAIM : Expiration.NONE;
+        }
+
+        return lastSeen < allClaimsCutoff ? Expiration.ALL_CLAIMS : Expiration.NONE;
+    }
+
+    //gets the time an owner must have been gone since for claims to expire after a number of days, or Long.MIN_VALUE if they never do
+    static long getCutoff(int days)
+    {
+        if (days <= 0) return Long.MIN_VALUE;
+
+        Calendar cutoff = Calendar.getInstance();
+        cutoff.add(Calendar.DATE, -days);
+        return cutoff.getTimeInMillis();
+    }
+
+    private static boolean expireEventCanceled(Claim claim)
     {
         //see if any other plugins don't want this claim deleted
-        ClaimExpirationEvent event = new ClaimExpirationEvent(this.claim);
+        ClaimExpirationEvent event = new ClaimExpirationEvent(claim);
         Bukkit.getPluginManager().callEvent(event);
         return event.isCancelled();
     }
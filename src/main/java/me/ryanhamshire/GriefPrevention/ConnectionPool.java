@@ -0,0 +1,384 @@
+/*
+    GriefPrevention Server Plugin for Minecraft
+    Copyright (C) 2012 Ryan Hamshire
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.ryanhamshire.GriefPrevention;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A small pool of database connections.
+ *
+ * <p>Connections handed out are wrappers which return the real connection to the pool when closed, so they are used
+ * with try-with-resources like any other connection. Statements and result sets made from them are wrapped too, so
+ * errors from any of them are seen. A connection is only checked with {@link Connection#isValid(int)} when it is
+ * taken from the pool after sitting idle for a while, or returned after an error, rather than before every use. A
+ * connection which failed with a connection error, or fails that check, is discarded instead of being returned.
+ */
+final class ConnectionPool implements AutoCloseable
+{
+
+    static final long VALIDATE_AFTER_IDLE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    static final int VALIDATION_TIMEOUT_SECONDS = 3;
+
+    private record Idle(@NotNull Connection connection, long since)
+    {
+    }
+
+    private final String url;
+    private final Properties properties;
+    private final int maxConnections;
+    private final long borrowTimeoutMillis;
+
+    private final ArrayDeque<Idle> idle = new ArrayDeque<>();
+    private int open;
+    private boolean closed;
+
+    /**
+     * Construct a new {@code ConnectionPool}. Connections are opened as they are needed.
+     *
+     * @param url the database URL
+     * @param properties the connection properties, such as the user name and password
+     * @param maxConnections the most connections open at once
+     * @param borrowTimeout the longest time to wait for a connection when all are in use
+     * @param unit the unit of the borrow timeout
+     */
+    ConnectionPool(@NotNull String url, @NotNull Properties properties, int maxConnections, long borrowTimeout, @NotNull TimeUnit unit)
+    {
+        if (maxConnections < 1) throw new IllegalArgumentException("Pool must allow at least one connection");
+
+        this.url = url;
+        this.properties = properties;
+        this.maxConnections = maxConnections;
+        this.borrowTimeoutMillis = unit.toMillis(borrowTimeout);
+    }
+
+    /**
+     * Take a connection from the pool, opening a new one if none are idle and the pool isn't full. Closing the
+     * returned connection returns it to the pool.
+     *
+     * @return the connection
+     * @throws SQLException if a connection can't be opened, the pool is closed, or none became free in time
+     */
+    @NotNull Connection getConnection() throws SQLException
+    {
+        long deadline = System.currentTimeMillis() + this.borrowTimeoutMillis;
+        while (true)
+        {
+            Idle reused;
+            synchronized (this)
+            {
+                while (true)
+                {
+                    if (this.closed) throw new SQLException("Connection pool is closed");
+                    if (!this.idle.isEmpty() || this.open < this.maxConnections) break;
+
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) throw new SQLTimeoutException("Timed out waiting for a database connection");
+                    try
+                    {
+                        this.wait(remaining);
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted waiting for a database connection", e);
+                    }
+                }
+
+                reused = this.idle.pollLast();
+                if (reused == null) this.open++;
+            }
+
+            // Opening and validating happen outside the lock, as both can be slow.
+            if (reused == null)
+            {
+                try
+                {
+                    return this.wrap(DriverManager.getConnection(this.url, this.properties));
+                }
+                catch (SQLException | RuntimeException e)
+                {
+                    this.discarded();
+                    throw e;
+                }
+            }
+
+            if (System.currentTimeMillis() - reused.since() < VALIDATE_AFTER_IDLE_MILLIS || isValid(reused.connection()))
+            {
+                return this.wrap(reused.connection());
+            }
+
+            closeQuietly(reused.connection());
+            this.discarded();
+        }
+    }
+
+    /**
+     * @return the number of connections open, idle or in use
+     */
+    synchronized int getOpenConnections()
+    {
+        return this.open;
+    }
+
+    /**
+     * @return the number of idle connections
+     */
+    synchronized int getIdleConnections()
+    {
+        return this.idle.size();
+    }
+
+    /**
+     * Close all idle connections and refuse further requests. Connections in use are closed when they are returned.
+     */
+    @Override
+    public void close()
+    {
+        Idle[] connections;
+        synchronized (this)
+        {
+            this.closed = true;
+            connections = this.idle.toArray(new Idle[0]);
+            this.open -= connections.length;
+            this.idle.clear();
+            this.notifyAll();
+        }
+
+        for (Idle connection : connections)
+        {
+            closeQuietly(connection.connection());
+        }
+    }
+
+    private void release(@NotNull Connection connection, boolean broken, boolean failed)
+    {
+        // Not every driver reports a lost connection as a connection error, so any error gets a check.
+        if (!broken && failed && !isValid(connection)) broken = true;
+
+        // Leave no transaction state behind for the next user.
+        if (!broken)
+        {
+            try
+            {
+                if (!connection.getAutoCommit())
+                {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+            }
+            catch (SQLException e)
+            {
+                broken = true;
+            }
+        }
+
+        synchronized (this)
+        {
+            if (!broken && !this.closed)
+            {
+                this.idle.addLast(new Idle(connection, System.currentTimeMillis()));
+                this.notifyAll();
+                return;
+            }
+        }
+
+        closeQuietly(connection);
+        this.discarded();
+    }
+
+    private synchronized void discarded()
+    {
+        this.open--;
+        this.notifyAll();
+    }
+
+    private @NotNull Connection wrap(@NotNull Connection connection)
+    {
+        Lease lease = new Lease(connection);
+        lease.proxy = (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                lease);
+        return lease.proxy;
+    }
+
+    private static boolean isValid(@NotNull Connection connection)
+    {
+        try
+        {
+            return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        }
+        catch (SQLException e)
+        {
+            return false;
+        }
+    }
+
+    private static void closeQuietly(@NotNull Connection connection)
+    {
+        try
+        {
+            connection.close();
+        }
+        catch (SQLException ignored) { }
+    }
+
+    // SQL states in class 08 are connection exceptions.
+    private static boolean isConnectionError(@NotNull Throwable throwable)
+    {
+        return throwable instanceof SQLException e && e.getSQLState() != null && e.getSQLState().startsWith("08");
+    }
+
+    /**
+     * Passes calls through to a pooled connection until closed, at which point the connection is returned.
+     */
+    private final class Lease implements InvocationHandler
+    {
+
+        private final Connection connection;
+        private Connection proxy;
+        private boolean returned;
+        private boolean broken;
+        private boolean failed;
+
+        private Lease(@NotNull Connection connection)
+        {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            switch (method.getName())
+            {
+                case "close":
+                    if (!this.returned)
+                    {
+                        this.returned = true;
+                        release(this.connection, this.broken, this.failed);
+                    }
+                    return null;
+                case "isClosed":
+                    return this.returned || this.connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled " + this.connection;
+                default:
+                    break;
+            }
+
+            if (this.returned) throw new SQLException("Connection has been returned to the pool");
+
+            return this.call(this.connection, proxy, method, args);
+        }
+
+        // Calls a method of the connection or something made from it, noting errors and wrapping what it returns.
+        private Object call(@NotNull Object target, @NotNull Object proxy, @NotNull Method method, Object[] args) throws Throwable
+        {
+            Object result;
+            try
+            {
+                result = method.invoke(target, args);
+            }
+            catch (InvocationTargetException e)
+            {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException) this.failed = true;
+                if (isConnectionError(cause)) this.broken = true;
+                throw cause;
+            }
+
+            Class<?> type = method.getReturnType();
+            if (result == null || !(Statement.class.isAssignableFrom(type) || ResultSet.class.isAssignableFrom(type)))
+            {
+                return result;
+            }
+
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new Child(this, result, proxy));
+        }
+
+    }
+
+    /**
+     * Passes calls through to a statement or result set made from a pooled connection, so its errors are seen.
+     */
+    private static final class Child implements InvocationHandler
+    {
+
+        private final Lease lease;
+        private final Object target;
+        // What this was made from: the connection's wrapper, or a statement's for a result set.
+        private final Object parent;
+
+        private Child(@NotNull Lease lease, @NotNull Object target, @NotNull Object parent)
+        {
+            this.lease = lease;
+            this.target = target;
+            this.parent = parent;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            switch (method.getName())
+            {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled " + this.target;
+                // Callers only ever see the wrappers, so they can't close the real connection.
+                case "getConnection":
+                    if (this.target instanceof Statement) return this.lease.proxy;
+                    break;
+                case "getStatement":
+                    if (this.target instanceof ResultSet) return this.parent instanceof Statement ? this.parent : null;
+                    break;
+                case "close":
+                case "isClosed":
+                    break;
+                default:
+                    if (this.lease.returned) throw new SQLException("Connection has been returned to the pool");
+                    break;
+            }
+
+            return this.lease.call(this.target, proxy, method, args);
+        }
+
+    }
+
+}
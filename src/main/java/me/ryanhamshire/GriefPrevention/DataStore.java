@@ -20,6 +20,7 @@ package me.ryanhamshire.GriefPrevention;
 
 import com.google.common.io.FileWriteMode;
 import com.google.common.io.Files;
+import com.griefprevention.util.WriteBehindQueue;
 import com.griefprevention.visualization.BoundaryVisualization;
 import com.griefprevention.visualization.VisualizationType;
 import me.ryanhamshire.GriefPrevention.events.ClaimCreatedEvent;
@@ -28,16 +29,19 @@ import me.ryanhamshire.GriefPrevention.events.ClaimExtendEvent;
 import me.ryanhamshire.GriefPrevention.events.ClaimModifiedEvent;
 import me.ryanhamshire.GriefPrevention.events.ClaimResizeEvent;
 import me.ryanhamshire.GriefPrevention.events.ClaimTransferEvent;
+import me.ryanhamshire.GriefPrevention.events.ClaimsDeletedEvent;
 import me.ryanhamshire.GriefPrevention.util.BoundingBox;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.Location;
 import org.bukkit.OfflinePlayer;
 import org.bukkit.World;
+import org.bukkit.block.Block;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
@@ -47,16 +51,22 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
@@ -70,11 +80,47 @@ public abstract class DataStore
     //in-memory cache for group (permission-based) data
     protected ConcurrentHashMap<String, Integer> permissionToBonusBlocksMap = new ConcurrentHashMap<>();
 
-    //in-memory cache for claim data
-    ArrayList<Claim> claims = new ArrayList<>();
+    //in-memory cache for top level claim data, keyed by claim ID in the order claims were added
+    final Map<Long, Claim> claims = new LinkedHashMap<>();
     // claim id to claim cache
     public final Map<Long, Claim> claimIDMap = new ConcurrentHashMap<>();
-    ConcurrentHashMap<Long, ArrayList<Claim>> chunksToClaimsMap = new ConcurrentHashMap<>();
+    // world ID to index of chunks overlapped by top level claims
+    private final Map<UUID, ChunkClaimIndex> chunkClaimIndices = new ConcurrentHashMap<>();
+
+    //spatial index of top level claims per world, keyed by world UUID, for area and overlap queries
+    private final Map<UUID, ClaimRTree> claimTrees = new ConcurrentHashMap<>();
+
+    //top level claims keyed by owner UUID.  administrative claims have no owner and aren't included
+    //each owner's claims are held in an array which is replaced rather than modified, so it can be read from any thread
+    private final Map<UUID, Claim[]> ownerClaimIndex = new ConcurrentHashMap<>();
+
+    //when each player was last seen online, filled from secondary storage, with claim owners sorted by time
+    //claim expiration uses it to find inactive claim owners without checking every owner.  owners are kept in step
+    //with ownerClaimIndex, so players whose claims are all gone drop out of it
+    final PlayerActivityIndex playerActivity = new PlayerActivityIndex();
+
+    //background reads from secondary storage, like checking claim owners for expiration exemptions, run here one at a time
+    //so they queue behind each other rather than crowding the shared async pool or the main thread's own lookups
+    //storage maintenance, like compacting segmented claim storage, runs here too
+    private final ExecutorService storageReadExecutor = Executors.newSingleThreadExecutor(runnable ->
+    {
+        Thread thread = new Thread(runnable, "GriefPrevention Storage Reader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    //claim saves waiting to be written to secondary storage, keyed by claim ID
+    //null until the data store is initialized, so loading and format updates write directly
+    private WriteBehindQueue<Long, Claim> claimSaveQueue;
+    static final long CLAIM_SAVE_INTERVAL_MILLIS = 1000;
+
+    //player data saves waiting to be written to secondary storage, keyed by player ID
+    //when full, saves for players not already waiting are written by the caller until the writer catches up
+    //player data are loaded before they're queued, so writes never need the data store lock and a caller holding it
+    //can't deadlock against the writer
+    private WriteBehindQueue<UUID, PlayerData> playerSaveQueue;
+    static final long PLAYER_SAVE_INTERVAL_MILLIS = 1000;
+    static final int PLAYER_SAVE_QUEUE_CAPACITY = 1000;
 
     //in-memory cache for messages
     private String[] messages;
@@ -85,6 +131,12 @@ public abstract class DataStore
     //next claim ID
     Long nextClaimID = (long) 0;
 
+    //claim IDs are leased from storage a block at a time, and storage only holds the end of the lease
+    //after a crash, IDs start past the whole block, so no ID handed out before the crash is handed out again
+    static final int CLAIM_ID_LEASE_SIZE = 1000;
+    //the first claim ID past the current lease
+    private long claimIDLeaseEnd;
+
     //path information, for where stuff stored on disk is well...  stored
     protected final static String dataLayerFolderPath = "plugins" + File.separator + "GriefPreventionData";
     final static String playerDataFolderPath = dataLayerFolderPath + File.separator + "PlayerData";
@@ -96,6 +148,12 @@ public abstract class DataStore
     //the latest version of the data schema implemented here
     protected static final int latestSchemaVersion = 3;
 
+    //the latest schema version of this data store's kind of storage, which may have moved on from the shared one above
+    int getLatestSchemaVersion()
+    {
+        return latestSchemaVersion;
+    }
+
     //reading and writing the schema version to the data store
     abstract int getSchemaVersionFromStorage();
 
@@ -137,7 +195,7 @@ public abstract class DataStore
         GriefPrevention.AddLogEntry(this.claims.size() + " total claims loaded.");
 
         //RoboMWM: ensure the nextClaimID is greater than any other claim ID. If not, data corruption occurred (out of storage space, usually).
-        for (Claim claim : this.claims)
+        for (Claim claim : this.claims.values())
         {
             if (claim.id >= nextClaimID)
             {
@@ -160,11 +218,11 @@ public abstract class DataStore
         GriefPrevention.AddLogEntry("Customizable messages loaded.");
 
         //if converting up from an earlier schema version, write all claims back to storage using the latest format
-        if (this.getSchemaVersion() < latestSchemaVersion)
+        if (this.getSchemaVersion() < this.getLatestSchemaVersion())
         {
             GriefPrevention.AddLogEntry("Please wait.  Updating data format.");
 
-            for (Claim claim : this.claims)
+            for (Claim claim : this.claims.values())
             {
                 this.saveClaim(claim);
 
@@ -188,8 +246,24 @@ public abstract class DataStore
         this.loadSoftMutes();
 
         //make a note of the data store schema version
-        this.setSchemaVersion(latestSchemaVersion);
-
+        this.setSchemaVersion(this.getLatestSchemaVersion());
+
+        //from now on, save claims in the background.  the writers don't hold the data store lock while writing, so
+        //the main thread never waits on disk for them.  claims are copied when saved, and player data are written through
+        //the player record store or the database writer, which have their own locks
+        this.claimSaveQueue = new WriteBehindQueue<>(
+                "GriefPrevention Claim Writer",
+                (claimID, claim) -> this.writeClaimToStorage(claim),
+                CLAIM_SAVE_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS,
+                GriefPrevention.instance.getLogger());
+        this.playerSaveQueue = new WriteBehindQueue<>(
+                "GriefPrevention Player Data Writer",
+                this::asyncSavePlayerData,
+                PLAYER_SAVE_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS,
+                PLAYER_SAVE_QUEUE_CAPACITY,
+                GriefPrevention.instance.getLogger());
     }
 
     private void loadSoftMutes()
@@ -415,7 +489,11 @@ public abstract class DataStore
         }
 
         //transfer
+        UUID oldOwnerID = claim.ownerID;
         claim.ownerID = event.getNewOwner();
+        claim.permissionsChanged();
+        this.removeFromOwnerIndex(claim, oldOwnerID);
+        this.addToOwnerIndex(claim);
         this.saveClaim(claim);
 
         //adjust blocks and other records
@@ -424,7 +502,8 @@ public abstract class DataStore
             ownerData.getClaims().remove(claim);
         }
 
-        if (newOwnerData != null)
+        //the new owner's list may have just been built from the owner index, which already includes the claim
+        if (newOwnerData != null && !newOwnerData.getClaims().contains(claim))
         {
             newOwnerData.getClaims().add(claim);
         }
@@ -436,11 +515,16 @@ public abstract class DataStore
         //subdivisions are added under their parent, not directly to the hash map for direct search
         if (newClaim.parent != null)
         {
+            newClaim.inDataStore = true;
             if (!newClaim.parent.children.contains(newClaim))
             {
                 newClaim.parent.children.add(newClaim);
+                newClaim.parent.publishChildren();
+            }
+            if (newClaim.id != null)
+            {
+                this.claimIDMap.put(newClaim.id, newClaim);
             }
-            newClaim.inDataStore = true;
             if (writeToStorage)
             {
                 this.saveClaim(newClaim);
@@ -449,21 +533,26 @@ public abstract class DataStore
         }
 
         //add it and mark it as added
-        this.claims.add(newClaim);
+        this.claims.put(newClaim.id, newClaim);
         this.claimIDMap.put(newClaim.id, newClaim);
         for (Claim child : newClaim.children)
         {
             this.claimIDMap.put(child.id, child);
         }
-        addToChunkClaimMap(newClaim);
-
         newClaim.inDataStore = true;
+        newClaim.publishChildren();
+        addToChunkClaimMap(newClaim);
+        addToOwnerIndex(newClaim);
 
         //except for administrative claims (which have no owner), update the owner's playerData with the new claim
+        //the owner's list may have just been built from the owner index, which already includes the claim
         if (!newClaim.isAdminClaim() && writeToStorage)
         {
             PlayerData ownerData = this.getPlayerData(newClaim.ownerID);
-            ownerData.getClaims().add(newClaim);
+            if (!ownerData.getClaims().contains(newClaim))
+            {
+                ownerData.getClaims().add(newClaim);
+            }
         }
 
         //make sure the claim is saved to disk
@@ -473,47 +562,149 @@ public abstract class DataStore
         }
     }
 
+    private void addToOwnerIndex(Claim claim)
+    {
+        //subdivisions belong to their parent's owner and administrative claims have no owner
+        if (claim.parent != null || claim.ownerID == null) return;
+
+        this.ownerClaimIndex.compute(claim.ownerID, (ownerID, claims) ->
+        {
+            if (claims == null)
+            {
+                this.playerActivity.track(ownerID);
+                return new Claim[] { claim };
+            }
+
+            for (Claim other : claims)
+            {
+                if (other == claim) return claims;
+            }
+
+            Claim[] updated = Arrays.copyOf(claims, claims.length + 1);
+            updated[claims.length] = claim;
+            return updated;
+        });
+    }
+
+    private void removeFromOwnerIndex(Claim claim, UUID ownerID)
+    {
+        if (claim.parent != null || ownerID == null) return;
+
+        this.ownerClaimIndex.computeIfPresent(ownerID, (id, claims) ->
+        {
+            for (int i = 0; i < claims.length; i++)
+            {
+                if (claims[i] != claim && !Objects.equals(claims[i].id, claim.id)) continue;
+
+                //if nothing's left, drop this owner entirely
+                if (claims.length == 1)
+                {
+                    this.playerActivity.untrack(id);
+                    return null;
+                }
+
+                Claim[] updated = new Claim[claims.length - 1];
+                System.arraycopy(claims, 0, updated, 0, i);
+                System.arraycopy(claims, i + 1, updated, i, updated.length - i);
+                return updated;
+            }
+            return claims;
+        });
+    }
+
+    //gets the top level claims owned by a player, in the order they were added, without searching every claim
+    //safe to call from any thread
+    public @NotNull List<Claim> getClaimsOwnedBy(@NotNull UUID ownerID)
+    {
+        Claim[] claims = this.ownerClaimIndex.get(ownerID);
+        if (claims == null) return Collections.emptyList();
+        return Collections.unmodifiableList(Arrays.asList(claims));
+    }
+
+    //gets the UUIDs of all players who own at least one top level claim
+    @NotNull Set<UUID> getClaimOwnerIDs()
+    {
+        return new HashSet<>(this.ownerClaimIndex.keySet());
+    }
+
     private void addToChunkClaimMap(Claim claim)
     {
         // Subclaims should not be added to chunk claim map.
         if (claim.parent != null) return;
 
-        ArrayList<Long> chunkHashes = claim.getChunkHashes();
-        for (Long chunkHash : chunkHashes)
+        World world = claim.lesserBoundaryCorner.getWorld();
+        if (world == null) return;
+
+        ChunkClaimIndex index = this.chunkClaimIndices.computeIfAbsent(world.getUID(), id -> new ChunkClaimIndex());
+        int smallX = claim.lesserBoundaryCorner.getBlockX() >> 4;
+        int smallZ = claim.lesserBoundaryCorner.getBlockZ() >> 4;
+        int largeX = claim.greaterBoundaryCorner.getBlockX() >> 4;
+        int largeZ = claim.greaterBoundaryCorner.getBlockZ() >> 4;
+
+        for (int x = smallX; x <= largeX; x++)
         {
-            ArrayList<Claim> claimsInChunk = this.chunksToClaimsMap.get(chunkHash);
-            if (claimsInChunk == null)
+            for (int z = smallZ; z <= largeZ; z++)
             {
-                this.chunksToClaimsMap.put(chunkHash, claimsInChunk = new ArrayList<>());
+                index.add(getChunkKey(x, z), claim);
             }
-
-            claimsInChunk.add(claim);
         }
+
+        this.claimTrees.computeIfAbsent(world.getUID(), id -> new ClaimRTree()).add(
+                claim,
+                claim.lesserBoundaryCorner.getBlockX(),
+                claim.lesserBoundaryCorner.getBlockZ(),
+                claim.greaterBoundaryCorner.getBlockX(),
+                claim.greaterBoundaryCorner.getBlockZ());
     }
 
     private void removeFromChunkClaimMap(Claim claim)
     {
-        ArrayList<Long> chunkHashes = claim.getChunkHashes();
-        for (Long chunkHash : chunkHashes)
+        this.removeFromChunkClaimMap(claim, claim.lesserBoundaryCorner, claim.greaterBoundaryCorner);
+    }
+
+    //removes a claim from the chunks spanned by the given corners, except for chunks its current boundaries still overlap
+    private void removeFromChunkClaimMap(Claim claim, Location lesserCorner, Location greaterCorner)
+    {
+        World world = lesserCorner.getWorld();
+        if (world == null) return;
+
+        //the spatial index holds one entry per set of bounds the claim was added with, so drop the old one
+        ClaimRTree tree = this.claimTrees.get(world.getUID());
+        if (tree != null)
+        {
+            tree.remove(claim, lesserCorner.getBlockX(), lesserCorner.getBlockZ(), greaterCorner.getBlockX(), greaterCorner.getBlockZ());
+            if (tree.isEmpty()) this.claimTrees.remove(world.getUID());
+        }
+
+        ChunkClaimIndex index = this.chunkClaimIndices.get(world.getUID());
+        if (index == null) return;
+
+        int smallX = lesserCorner.getBlockX() >> 4;
+        int smallZ = lesserCorner.getBlockZ() >> 4;
+        int largeX = greaterCorner.getBlockX() >> 4;
+        int largeZ = greaterCorner.getBlockZ() >> 4;
+
+        // chunks still overlapped by the claim, if it remains in the data store
+        boolean keepCurrent = claim.inDataStore && world.equals(claim.lesserBoundaryCorner.getWorld());
+        int keepSmallX = claim.lesserBoundaryCorner.getBlockX() >> 4;
+        int keepSmallZ = claim.lesserBoundaryCorner.getBlockZ() >> 4;
+        int keepLargeX = claim.greaterBoundaryCorner.getBlockX() >> 4;
+        int keepLargeZ = claim.greaterBoundaryCorner.getBlockZ() >> 4;
+
+        for (int x = smallX; x <= largeX; x++)
         {
-            ArrayList<Claim> claimsInChunk = this.chunksToClaimsMap.get(chunkHash);
-            if (claimsInChunk != null)
+            for (int z = smallZ; z <= largeZ; z++)
             {
-                for (Iterator<Claim> it = claimsInChunk.iterator(); it.hasNext(); )
-                {
-                    Claim c = it.next();
-                    if (c.id.equals(claim.id))
-                    {
-                        it.remove();
-                        break;
-                    }
-                }
-                if (claimsInChunk.isEmpty())
-                { // if nothing's left, remove this chunk's cache
-                    this.chunksToClaimsMap.remove(chunkHash);
-                }
+                if (keepCurrent && x >= keepSmallX && x <= keepLargeX && z >= keepSmallZ && z <= keepLargeZ) continue;
+                index.remove(getChunkKey(x, z), claim);
             }
         }
+
+        // if nothing's left, drop this world's index
+        if (index.isEmpty())
+        {
+            this.chunkClaimIndices.remove(world.getUID());
+        }
     }
 
     //turns a location into a string, useful in data storage
@@ -574,11 +765,67 @@ public abstract class DataStore
     }
 
     //saves any changes to a claim to secondary storage
+    //repeated saves of a claim shortly after each other are written once, in the background
     synchronized public void saveClaim(Claim claim)
     {
         assignClaimID(claim);
 
-        this.writeClaimToStorage(claim);
+        if (this.claimSaveQueue == null)
+        {
+            this.writeClaimToStorage(claim);
+            return;
+        }
+
+        //the writer gets a copy, so it never sees the claim partway through a change
+        this.claimSaveQueue.submit(claim.id, new Claim(claim));
+    }
+
+    /**
+     * Get the queue of claim saves waiting to be written to secondary storage, for its metrics.
+     *
+     * @return the claim save queue, or null if the data store isn't initialized
+     */
+    public @Nullable WriteBehindQueue<Long, Claim> getClaimSaveQueue()
+    {
+        return this.claimSaveQueue;
+    }
+
+    /**
+     * Get the queue of player data saves waiting to be written to secondary storage, for its metrics.
+     *
+     * @return the player data save queue, or null if the data store isn't initialized
+     */
+    public @Nullable WriteBehindQueue<UUID, PlayerData> getPlayerSaveQueue()
+    {
+        return this.playerSaveQueue;
+    }
+
+    //writes all waiting saves and stops the background writers and reader.  later saves are written immediately
+    void closeWriteQueues()
+    {
+        //background reads have nowhere to send their results once the plugin stops, so no more are started
+        this.storageReadExecutor.shutdown();
+
+        if (this.claimSaveQueue != null)
+        {
+            int waiting = this.claimSaveQueue.getQueueDepth();
+            this.claimSaveQueue.close();
+            if (waiting > 0)
+            {
+                GriefPrevention.AddLogEntry("Wrote " + waiting + " waiting claim saves.");
+            }
+        }
+        this.releaseClaimIDLease();
+
+        if (this.playerSaveQueue != null)
+        {
+            int waiting = this.playerSaveQueue.getQueueDepth();
+            this.playerSaveQueue.close();
+            if (waiting > 0)
+            {
+                GriefPrevention.AddLogEntry("Wrote " + waiting + " waiting player data saves.");
+            }
+        }
     }
 
     private void assignClaimID(Claim claim)
@@ -593,30 +840,88 @@ public abstract class DataStore
 
     abstract void writeClaimToStorage(Claim claim);
 
-    //increments the claim ID and updates secondary storage to be sure it's saved
-    abstract void incrementNextClaimID();
+    //increments the claim ID, first leasing another block of IDs from secondary storage if this one is used up
+    synchronized void incrementNextClaimID()
+    {
+        if (this.nextClaimID >= this.claimIDLeaseEnd)
+        {
+            this.claimIDLeaseEnd = this.nextClaimID + CLAIM_ID_LEASE_SIZE;
+            this.writeNextClaimID(this.claimIDLeaseEnd);
+        }
+
+        this.nextClaimID++;
+    }
+
+    //gives back the unused rest of the lease, so a clean restart doesn't skip IDs
+    synchronized void releaseClaimIDLease()
+    {
+        if (this.claimIDLeaseEnd <= this.nextClaimID) return;
+
+        this.claimIDLeaseEnd = this.nextClaimID;
+        this.writeNextClaimID(this.nextClaimID);
+    }
+
+    //updates secondary storage with the first claim ID which may be handed out after a restart
+    abstract void writeNextClaimID(long nextID);
 
     //retrieves player data from memory or secondary storage, as necessary
     //if the player has never been on the server before, this will return a fresh player data with default values
-    synchronized public PlayerData getPlayerData(UUID playerID)
+    public PlayerData getPlayerData(UUID playerID)
     {
         //first, look in memory
         PlayerData playerData = this.playerNameToPlayerDataMap.get(playerID);
+        if (playerData != null) return playerData;
 
         //if not there, build a fresh instance with some blanks for what may be in secondary storage
-        if (playerData == null)
+        //and shove that new player data into the hash map cache
+        return this.playerNameToPlayerDataMap.computeIfAbsent(playerID, id ->
         {
-            playerData = new PlayerData();
-            playerData.playerID = playerID;
+            PlayerData newPlayerData = new PlayerData();
+            newPlayerData.playerID = id;
+            return newPlayerData;
+        });
+    }
 
-            //shove that new player data into the hash map cache
-            this.playerNameToPlayerDataMap.put(playerID, playerData);
-        }
+    abstract PlayerData getPlayerDataFromStorage(UUID playerID);
 
-        return playerData;
+    //gets the executor for background reads from secondary storage.  results must be passed back to the main thread to be used
+    Executor getStorageReadExecutor()
+    {
+        return this.storageReadExecutor;
     }
 
-    abstract PlayerData getPlayerDataFromStorage(UUID playerID);
+    //notes that a player was online at a time, in memory and in secondary storage
+    void recordPlayerActivity(UUID playerID, long time)
+    {
+        this.playerActivity.record(playerID, time);
+        this.writeLastSeen(playerID, time);
+    }
+
+    //updates secondary storage with when a player was last seen online
+    abstract void writeLastSeen(UUID playerID, long lastSeen);
+
+    //fills in when claim owners were last seen from the server's own records, for owners secondary storage doesn't know about
+    //that's everyone the first time after an update, and nobody after that.  this reads player files, so run it in the background
+    void backfillPlayerActivity()
+    {
+        int recorded = 0;
+        for (UUID ownerID : this.getClaimOwnerIDs())
+        {
+            if (this.playerActivity.getLastSeen(ownerID) != PlayerActivityIndex.UNKNOWN) continue;
+
+            long lastPlayed = Bukkit.getOfflinePlayer(ownerID).getLastPlayed();
+            if (this.playerActivity.recordIfUnknown(ownerID, lastPlayed))
+            {
+                this.writeLastSeen(ownerID, lastPlayed);
+                recorded++;
+            }
+        }
+
+        if (recorded > 0)
+        {
+            GriefPrevention.AddLogEntry("Recorded when " + recorded + " claim owners were last seen, from server player data.");
+        }
+    }
 
     //deletes a claim or subdivision
     synchronized public void deleteClaim(Claim claim)
@@ -635,10 +940,99 @@ public abstract class DataStore
 
     synchronized void deleteClaim(Claim claim, boolean fireEvent, boolean ignored)
     {
-        //delete any children
-        for (int j = 1; (j - 1) < claim.children.size(); j++)
+        this.deleteClaims(Collections.singletonList(claim), fireEvent, false);
+    }
+
+    /**
+     * Delete many claims at once. Much faster than deleting claims one at a time: claims are removed from memory in a
+     * single pass, secondary storage deletions are batched, and each owner's data is saved once.
+     *
+     * <p>A {@link ClaimDeletedEvent} is fired for each claim and subdivision deleted, followed by a single
+     * {@link ClaimsDeletedEvent} for all of them.
+     *
+     * @param claimsToDelete the claims or subdivisions to delete
+     */
+    synchronized public void deleteClaims(@NotNull Collection<Claim> claimsToDelete)
+    {
+        this.deleteClaims(claimsToDelete, true, true);
+    }
+
+    private void deleteClaims(Collection<Claim> claimsToDelete, boolean fireClaimEvents, boolean fireMultiEvent)
+    {
+        //remove everything from memory first, subdivisions before their parents
+        Set<Claim> deleted = new LinkedHashSet<>();
+        for (Claim claim : claimsToDelete)
+        {
+            this.removeClaimFromMemory(claim, deleted);
+        }
+
+        if (deleted.isEmpty()) return;
+
+        //waiting saves must not write deleted claims back
+        if (this.claimSaveQueue != null)
+        {
+            for (Claim claim : deleted)
+            {
+                if (claim.id != null) this.claimSaveQueue.cancel(claim.id);
+            }
+        }
+
+        //remove from secondary storage
+        this.deleteClaimsFromSecondaryStorage(deleted);
+
+        //update player data, once per owner
+        Set<UUID> ownerIDs = new HashSet<>();
+        for (Claim claim : deleted)
+        {
+            if (claim.ownerID != null) ownerIDs.add(claim.ownerID);
+        }
+        for (UUID ownerID : ownerIDs)
         {
-            this.deleteClaim(claim.children.get(j - 1), fireEvent, ignored);
+            PlayerData ownerData = this.getPlayerData(ownerID);
+            ownerData.getClaims().removeIf(claim -> !claim.inDataStore);
+            this.savePlayerData(ownerID, ownerData);
+        }
+
+        if (fireClaimEvents)
+        {
+            for (Claim claim : deleted)
+            {
+                Bukkit.getPluginManager().callEvent(new ClaimDeletedEvent(claim));
+            }
+        }
+
+        if (fireMultiEvent)
+        {
+            Bukkit.getPluginManager().callEvent(new ClaimsDeletedEvent(deleted));
+        }
+    }
+
+    //data stores which load claims lazily make sure the stored claims overlapping an area are in memory
+    void loadClaimsInArea(World world, int minX, int minZ, int maxX, int maxZ)
+    {
+    }
+
+    //data stores which load claims lazily make sure the stored claims a player owns are in memory
+    void loadClaimsOwnedBy(UUID ownerID)
+    {
+    }
+
+    //drops a claim and its subdivisions from memory without deleting them from storage, for data stores which load claims lazily
+    synchronized void unloadClaim(Claim claim)
+    {
+        this.removeClaimFromMemory(claim, new HashSet<>());
+    }
+
+    //removes a claim and its subdivisions from every in-memory collection and index, noting each one removed
+    private void removeClaimFromMemory(Claim claim, Set<Claim> deleted)
+    {
+        //already handled as part of this deletion
+        if (deleted.contains(claim)) return;
+
+        //delete any children, copying the list because each deletion removes the child from it
+        for (Claim child : new ArrayList<>(claim.children))
+        {
+            this.removeClaimFromMemory(child, deleted);
         }
 
         //subdivisions must also be removed from the parent claim child list
@@ -646,20 +1040,14 @@ public abstract class DataStore
         {
             Claim parentClaim = claim.parent;
             parentClaim.children.remove(claim);
+            parentClaim.publishChildren();
         }
 
         //mark as deleted so any references elsewhere can be ignored
         claim.inDataStore = false;
 
         //remove from memory
-        for (int i = 0; i < this.claims.size(); i++)
-        {
-            if (claims.get(i).id.equals(claim.id))
-            {
-                this.claims.remove(i);
-                break;
-            }
-        }
+        this.claims.remove(claim.id);
 
         claimIDMap.remove(claim.id);
         for (Claim child : claim.children)
@@ -668,38 +1056,27 @@ public abstract class DataStore
         }
 
         removeFromChunkClaimMap(claim);
+        removeFromOwnerIndex(claim, claim.ownerID);
 
-        //remove from secondary storage
-        this.deleteClaimFromSecondaryStorage(claim);
+        deleted.add(claim);
+    }
 
-        //update player data
-        if (claim.ownerID != null)
-        {
-            PlayerData ownerData = this.getPlayerData(claim.ownerID);
-            for (int i = 0; i < ownerData.getClaims().size(); i++)
-            {
-                if (ownerData.getClaims().get(i).id.equals(claim.id))
-                {
-                    ownerData.getClaims().remove(i);
-                    break;
-                }
-            }
-            this.savePlayerData(claim.ownerID, ownerData);
-        }
+    abstract void deleteClaimFromSecondaryStorage(Claim claim);
 
-        if (fireEvent)
+    //removes many claims from secondary storage.  data stores which can batch deletions should override this
+    void deleteClaimsFromSecondaryStorage(Collection<Claim> claims)
+    {
+        for (Claim claim : claims)
         {
-            ClaimDeletedEvent ev = new ClaimDeletedEvent(claim);
-            Bukkit.getPluginManager().callEvent(ev);
+            this.deleteClaimFromSecondaryStorage(claim);
         }
     }
 
-    abstract void deleteClaimFromSecondaryStorage(Claim claim);
-
     //gets the claim at a specific location
     //ignoreHeight = TRUE means that a location UNDER an existing claim will return the claim
     //cachedClaim can be NULL, but will help performance if you have a reasonable guess about which claim the location is in
-    synchronized public Claim getClaimAt(Location location, boolean ignoreHeight, Claim cachedClaim)
+    //safe to call from any thread, lookups never wait on changes to claims
+    public Claim getClaimAt(Location location, boolean ignoreHeight, Claim cachedClaim)
     {
         return getClaimAt(location, ignoreHeight, false, cachedClaim);
     }
@@ -716,30 +1093,36 @@ public abstract class DataStore
      * @param cachedClaim the cached claim, if any
      * @return the claim containing the location or null if no claim exists there
      */
-    synchronized public Claim getClaimAt(Location location, boolean ignoreHeight, boolean ignoreSubclaims, Claim cachedClaim)
+    public Claim getClaimAt(Location location, boolean ignoreHeight, boolean ignoreSubclaims, Claim cachedClaim)
     {
+        World world = location.getWorld();
+        if (world == null) return null;
+        UUID worldID = world.getUID();
+        int x = location.getBlockX();
+        int y = location.getBlockY();
+        int z = location.getBlockZ();
+
         //check cachedClaim guess first.  if it's in the datastore and the location is inside it, we're done
-        if (cachedClaim != null && cachedClaim.inDataStore && cachedClaim.contains(location, ignoreHeight, !ignoreSubclaims))
+        if (cachedClaim != null && cachedClaim.inDataStore && cachedClaim.contains(worldID, x, y, z, ignoreHeight, !ignoreSubclaims))
             return cachedClaim;
 
         //find a top level claim
-        Long chunkID = getChunkHash(location);
-        ArrayList<Claim> claimsInChunk = this.chunksToClaimsMap.get(chunkID);
-        if (claimsInChunk == null) return null;
+        ChunkClaimIndex index = this.chunkClaimIndices.get(worldID);
+        if (index == null) return null;
 
+        Claim[] claimsInChunk = index.get(getChunkKey(x >> 4, z >> 4));
         for (Claim claim : claimsInChunk)
         {
-            if (claim.inDataStore && claim.contains(location, ignoreHeight, false))
+            if (claim.inDataStore && claim.contains(worldID, x, y, z, ignoreHeight, false))
             {
                 // If ignoring subclaims, claim is a match.
                 if (ignoreSubclaims) return claim;
 
                 //when we find a top level claim, if the location is in one of its subdivisions,
                 //return the SUBDIVISION, not the top level claim
-                for (int j = 0; j < claim.children.size(); j++)
+                for (Claim subdivision : claim.getChildrenSnapshot())
                 {
-                    Claim subdivision = claim.children.get(j);
-                    if (subdivision.inDataStore && subdivision.contains(location, ignoreHeight, false))
+                    if (subdivision.inDataStore && subdivision.contains(worldID, x, y, z, ignoreHeight, false))
                         return subdivision;
                 }
 
@@ -751,8 +1134,173 @@ public abstract class DataStore
         return null;
     }
 
+    /**
+     * Get the claims at many block positions in a world at once.
+     *
+     * <p>Positions are grouped by chunk so that each chunk's claims are only looked up once, and consecutive
+     * positions in the same claim reuse its subdivision lookup. This is much cheaper than calling
+     * {@link #getClaimAt(Location, boolean, boolean, Claim)} for each block of an explosion or a growing tree.
+     *
+     * @param world the world containing all the blocks
+     * @param blocks the blocks
+     * @param ignoreHeight whether or not to check containment vertically
+     * @param ignoreSubclaims whether or not subclaims should be returned over claims
+     * @return the claim containing each block, in the same order as the blocks, or null where no claim exists
+     */
+    public @Nullable Claim @NotNull [] getClaimsAt(
+            @NotNull World world,
+            @NotNull List<? extends Block> blocks,
+            boolean ignoreHeight,
+            boolean ignoreSubclaims)
+    {
+        int size = blocks.size();
+        int[] x = new int[size];
+        int[] y = new int[size];
+        int[] z = new int[size];
+        for (int i = 0; i < size; i++)
+        {
+            Block block = blocks.get(i);
+            x[i] = block.getX();
+            y[i] = block.getY();
+            z[i] = block.getZ();
+        }
+
+        return getClaimsAt(world, x, y, z, ignoreHeight, ignoreSubclaims);
+    }
+
+    /**
+     * Get the claims at many block positions in a world at once.
+     *
+     * @param world the world containing all the positions
+     * @param x the X coordinate of each position
+     * @param y the Y coordinate of each position
+     * @param z the Z coordinate of each position
+     * @param ignoreHeight whether or not to check containment vertically
+     * @param ignoreSubclaims whether or not subclaims should be returned over claims
+     * @return the claim containing each position, in the same order as the positions, or null where no claim exists
+     * @see #getClaimsAt(World, List, boolean, boolean)
+     */
+    public @Nullable Claim @NotNull [] getClaimsAt(
+            @NotNull World world,
+            int @NotNull [] x,
+            int @NotNull [] y,
+            int @NotNull [] z,
+            boolean ignoreHeight,
+            boolean ignoreSubclaims)
+    {
+        int size = x.length;
+        if (y.length != size || z.length != size)
+            throw new IllegalArgumentException("Coordinate arrays must be the same length");
+
+        Claim[] result = new Claim[size];
+        UUID worldID = world.getUID();
+        ChunkClaimIndex index = this.chunkClaimIndices.get(worldID);
+        if (index == null || size == 0) return result;
+
+        //group positions by chunk: sort the distinct chunk keys, then bucket positions by their key's rank
+        long[] positionChunks = new long[size];
+        for (int i = 0; i < size; i++)
+        {
+            positionChunks[i] = getChunkKey(x[i] >> 4, z[i] >> 4);
+        }
+
+        long[] chunks = positionChunks.clone();
+        Arrays.sort(chunks);
+        int chunkCount = 0;
+        for (int i = 0; i < size; i++)
+        {
+            if (i == 0 || chunks[i] != chunks[i - 1]) chunks[chunkCount++] = chunks[i];
+        }
+
+        int[] groupStart = new int[chunkCount + 1];
+        int[] positionGroups = new int[size];
+        for (int i = 0; i < size; i++)
+        {
+            positionGroups[i] = Arrays.binarySearch(chunks, 0, chunkCount, positionChunks[i]);
+            groupStart[positionGroups[i] + 1]++;
+        }
+        for (int group = 0; group < chunkCount; group++)
+        {
+            groupStart[group + 1] += groupStart[group];
+        }
+
+        int[] order = new int[size];
+        int[] groupFill = Arrays.copyOf(groupStart, chunkCount);
+        for (int i = 0; i < size; i++)
+        {
+            order[groupFill[positionGroups[i]]++] = i;
+        }
+
+        for (int group = 0; group < chunkCount; group++)
+        {
+            //one index probe per chunk
+            Claim[] claimsInChunk = index.get(chunks[group]);
+            if (claimsInChunk.length == 0) continue;
+
+            Claim topLevelClaim = null;
+            Claim[] subdivisions = null;
+            Claim subdivision = null;
+            for (int i = groupStart[group]; i < groupStart[group + 1]; i++)
+            {
+                int position = order[i];
+                int posX = x[position];
+                int posY = y[position];
+                int posZ = z[position];
+
+                //neighbouring blocks are usually in the same claim as the last one, so check it first
+                if (topLevelClaim == null || !topLevelClaim.contains(worldID, posX, posY, posZ, ignoreHeight, false))
+                {
+                    Claim found = null;
+                    for (Claim claim : claimsInChunk)
+                    {
+                        if (claim.inDataStore && claim.contains(worldID, posX, posY, posZ, ignoreHeight, false))
+                        {
+                            found = claim;
+                            break;
+                        }
+                    }
+
+                    if (found == null) continue;
+
+                    if (found != topLevelClaim)
+                    {
+                        topLevelClaim = found;
+                        subdivisions = null;
+                        subdivision = null;
+                    }
+                }
+
+                if (ignoreSubclaims)
+                {
+                    result[position] = topLevelClaim;
+                    continue;
+                }
+
+                //resolve subdivisions once per top level claim, again trying the last match first
+                if (subdivision == null || !subdivision.inDataStore || !subdivision.contains(worldID, posX, posY, posZ, ignoreHeight, false))
+                {
+                    if (subdivisions == null) subdivisions = topLevelClaim.getChildrenSnapshot();
+
+                    subdivision = null;
+                    for (Claim child : subdivisions)
+                    {
+                        if (child.inDataStore && child.contains(worldID, posX, posY, posZ, ignoreHeight, false))
+                        {
+                            subdivision = child;
+                            break;
+                        }
+                    }
+                }
+
+                result[position] = subdivision != null ? subdivision : topLevelClaim;
+            }
+        }
+
+        return result;
+    }
+
     //finds a claim by ID
-    public synchronized Claim getClaim(long id)
+    public Claim getClaim(long id)
     {
         return this.claimIDMap.get(id);
     }
@@ -762,44 +1310,37 @@ public abstract class DataStore
     //this will ensure primary memory (RAM) and secondary memory (disk, database) stay in sync
     public Collection<Claim> getClaims()
     {
-        return Collections.unmodifiableCollection(this.claims);
+        return Collections.unmodifiableCollection(this.claims.values());
     }
 
+    //gets the top level claims overlapping a chunk position in any world
     public Collection<Claim> getClaims(int chunkx, int chunkz)
     {
-        ArrayList<Claim> chunkClaims = this.chunksToClaimsMap.get(getChunkHash(chunkx, chunkz));
-        if (chunkClaims != null)
-        {
-            return Collections.unmodifiableCollection(chunkClaims);
-        }
-        else
+        long chunkKey = getChunkKey(chunkx, chunkz);
+        ArrayList<Claim> chunkClaims = new ArrayList<>();
+        for (ChunkClaimIndex index : this.chunkClaimIndices.values())
         {
-            return Collections.unmodifiableCollection(new ArrayList<>());
+            Collections.addAll(chunkClaims, index.get(chunkKey));
         }
+
+        return Collections.unmodifiableCollection(chunkClaims);
     }
 
+    //gets the top level claims overlapping any chunk the bounding box touches
     public @NotNull Set<Claim> getChunkClaims(@NotNull World world, @NotNull BoundingBox boundingBox)
     {
         Set<Claim> claims = new HashSet<>();
-        int chunkXMax = boundingBox.getMaxX() >> 4;
-        int chunkZMax = boundingBox.getMaxZ() >> 4;
-
-        for (int chunkX = boundingBox.getMinX() >> 4; chunkX <= chunkXMax; ++chunkX)
-        {
-            for (int chunkZ = boundingBox.getMinZ() >> 4; chunkZ <= chunkZMax; ++chunkZ)
-            {
-                ArrayList<Claim> chunkClaims = this.chunksToClaimsMap.get(getChunkHash(chunkX, chunkZ));
-                if (chunkClaims == null) continue;
-
-                for (Claim claim : chunkClaims)
-                {
-                    if (claim.inDataStore && world.equals(claim.getLesserBoundaryCorner().getWorld()))
-                    {
-                        claims.add(claim);
-                    }
-                }
-            }
-        }
+        ClaimRTree tree = this.claimTrees.get(world.getUID());
+        if (tree == null) return claims;
+
+        //widen the box to whole chunks so results match a chunk-by-chunk search
+        tree.collect(
+                boundingBox.getMinX() & ~15,
+                boundingBox.getMinZ() & ~15,
+                boundingBox.getMaxX() | 15,
+                boundingBox.getMaxZ() | 15,
+                claims);
+        claims.removeIf(claim -> !claim.inDataStore);
 
         return claims;
     }
@@ -810,6 +1351,12 @@ public abstract class DataStore
         return (chunkz ^ (chunkx << 32));
     }
 
+    //same as getChunkHash, without boxing the result
+    static long getChunkKey(int chunkx, int chunkz)
+    {
+        return ((long) chunkz ^ ((long) chunkx << 32));
+    }
+
     //gets an almost-unique, persistent identifier for a chunk
     public static Long getChunkHash(Location location)
     {
@@ -861,6 +1408,9 @@ public abstract class DataStore
     {
         CreateClaimResult result = new CreateClaimResult();
 
+        //any stored claim the new one might overlap must be in memory to be checked
+        this.loadClaimsInArea(world, Math.min(x1, x2), Math.min(z1, z2), Math.max(x1, x2), Math.max(z1, z2));
+
         int smallx, bigx, smally, bigy, smallz, bigz;
 
         int worldMinY = world.getMinHeight();
@@ -942,26 +1492,36 @@ public abstract class DataStore
         newClaim.parent = parent;
 
         //ensure this new claim won't overlap any existing claims
-        ArrayList<Claim> claimsToCheck;
+        Claim conflictingClaim = null;
         if (newClaim.parent != null)
         {
-            claimsToCheck = newClaim.parent.children;
+            for (Claim otherClaim : newClaim.parent.children)
+            {
+                if (!Objects.equals(otherClaim.id, newClaim.id) && otherClaim.inDataStore && otherClaim.overlaps(newClaim))
+                {
+                    conflictingClaim = otherClaim;
+                    break;
+                }
+            }
         }
         else
         {
-            claimsToCheck = this.claims;
+            //top level claims are found through the world's spatial index rather than checking every claim
+            ClaimRTree tree = this.claimTrees.get(world.getUID());
+            if (tree != null)
+            {
+                conflictingClaim = tree.findFirst(smallx, smallz, bigx, bigz, otherClaim ->
+                        !Objects.equals(otherClaim.id, newClaim.id) && otherClaim.inDataStore && otherClaim.overlaps(newClaim));
+            }
         }
 
-        for (Claim otherClaim : claimsToCheck)
+        //if we find an existing claim which will be overlapped
+        if (conflictingClaim != null)
         {
-            //if we find an existing claim which will be overlapped
-            if (otherClaim.id != newClaim.id && otherClaim.inDataStore && otherClaim.overlaps(newClaim))
-            {
-                //result = fail, return conflicting claim
-                result.succeeded = false;
-                result.claim = otherClaim;
-                return result;
-            }
+            //result = fail, return conflicting claim
+            result.succeeded = false;
+            result.claim = conflictingClaim;
+            return result;
         }
 
         if (dryRun)
@@ -1001,9 +1561,23 @@ public abstract class DataStore
     }
 
     //saves changes to player data to secondary storage.  MUST be called after you're done making changes, otherwise a reload will lose them
+    //repeated saves for a player shortly after each other are written once, in the background
     public void savePlayerData(UUID playerID, PlayerData playerData)
     {
-        new SavePlayerDataThread(playerID, playerData).start();
+        //never save data for the "administrative" account.  null for claim owner ID indicates administrative account
+        if (playerID == null) return;
+
+        if (this.playerSaveQueue == null)
+        {
+            this.savePlayerDataSync(playerID, playerData);
+            return;
+        }
+
+        //ensure player data is already read from storage, so the writer doesn't need the data store lock to load it
+        playerData.getAccruedClaimBlocks();
+        playerData.getClaims();
+
+        this.playerSaveQueue.submit(playerID, playerData);
     }
 
     public void asyncSavePlayerData(UUID playerID, PlayerData playerData)
@@ -1106,6 +1680,7 @@ public abstract class DataStore
         Stream.concat(Stream.of(claim), claim.children.stream()).forEach(localClaim -> {
             localClaim.lesserBoundaryCorner.setY(depth);
             localClaim.greaterBoundaryCorner.setY(Math.max(localClaim.greaterBoundaryCorner.getBlockY(), depth));
+            localClaim.refreshBounds();
             this.saveClaim(localClaim);
         });
     }
@@ -1114,18 +1689,25 @@ public abstract class DataStore
     synchronized public void deleteClaimsForPlayer(UUID playerID, boolean releasePets)
     {
         //make a list of the player's claims
-        ArrayList<Claim> claimsToDelete = new ArrayList<>();
-        for (Claim claim : this.claims)
+        //administrative claims have no owner, so they aren't in the owner index
+        List<Claim> claimsToDelete;
+        if (playerID != null)
         {
-            if (Objects.equals(playerID, claim.ownerID))
-                claimsToDelete.add(claim);
+            this.loadClaimsOwnedBy(playerID);
+            claimsToDelete = new ArrayList<>(this.getClaimsOwnedBy(playerID));
         }
-
-        //delete them one by one
-        for (Claim claim : claimsToDelete)
+        else
         {
-            this.deleteClaim(claim);
+            claimsToDelete = new ArrayList<>();
+            for (Claim claim : this.claims.values())
+            {
+                if (claim.ownerID == null)
+                    claimsToDelete.add(claim);
+            }
         }
+
+        //delete them all at once
+        this.deleteClaims(claimsToDelete, true, true);
     }
 
     //tries to resize a claim
@@ -1138,15 +1720,20 @@ public abstract class DataStore
         //if succeeded
         if (result.succeeded)
         {
-            removeFromChunkClaimMap(claim); // remove the old boundary from the chunk cache
+            Location oldLesserCorner = claim.lesserBoundaryCorner;
+            Location oldGreaterCorner = claim.greaterBoundaryCorner;
             // copy the boundary from the claim created in the dry run of createClaim() to our existing claim
             claim.lesserBoundaryCorner = result.claim.lesserBoundaryCorner;
             claim.greaterBoundaryCorner = result.claim.greaterBoundaryCorner;
+            claim.refreshBounds();
+            claim.permissionsChanged();
             // Sanitize claim depth, expanding parent down to the lowest subdivision and subdivisions down to parent.
             // Also saves affected claims.
             setNewDepth(claim, claim.getLesserBoundaryCorner().getBlockY());
             result.claim = claim;
-            addToChunkClaimMap(claim); // add the new boundary to the chunk cache
+            // add the new boundary to the chunk cache before dropping the old one so lookups never miss the claim
+            addToChunkClaimMap(claim);
+            removeFromChunkClaimMap(claim, oldLesserCorner, oldGreaterCorner);
         }
 
         return result;
@@ -1227,6 +1814,7 @@ public abstract class DataStore
         World world = newClaim.getLesserBoundaryCorner().getWorld();
         newClaim.lesserBoundaryCorner = new Location(world, newx1, newy1, newz1);
         newClaim.greaterBoundaryCorner = new Location(world, newx2, newy2, newz2);
+        newClaim.refreshBounds();
 
         //call event here to check if it has been cancelled
         ClaimResizeEvent event = new ClaimModifiedEvent(oldClaim, newClaim, player); // Swap to ClaimResizeEvent when ClaimModifiedEvent is removed
@@ -1439,26 +2027,6 @@ public abstract class DataStore
 
     abstract void close();
 
-    private class SavePlayerDataThread extends Thread
-    {
-        private final UUID playerID;
-        private final PlayerData playerData;
-
-        SavePlayerDataThread(UUID playerID, PlayerData playerData)
-        {
-            this.playerID = playerID;
-            this.playerData = playerData;
-        }
-
-        public void run()
-        {
-            //ensure player data is already read from file before trying to save
-            playerData.getAccruedClaimBlocks();
-            playerData.getClaims();
-            asyncSavePlayerData(this.playerID, this.playerData);
-        }
-    }
-
     //gets all the claims "near" a location
     Set<Claim> getNearbyClaims(Location location)
     {
@@ -1468,17 +2036,17 @@ public abstract class DataStore
     }
 
     //deletes all the land claims in a specified world
-    void deleteClaimsInWorld(World world, boolean deleteAdminClaims)
+    synchronized void deleteClaimsInWorld(World world, boolean deleteAdminClaims)
     {
-        for (int i = 0; i < claims.size(); i++)
+        List<Claim> claimsToDelete = new ArrayList<>();
+        for (Claim claim : this.claims.values())
         {
-            Claim claim = claims.get(i);
-            if (claim.getLesserBoundaryCorner().getWorld().equals(world))
-            {
-                if (!deleteAdminClaims && claim.isAdminClaim()) continue;
-                this.deleteClaim(claim, false, false);
-                i--;
-            }
+            if (!world.equals(claim.lesserBoundaryCorner.getWorld())) continue;
+            if (!deleteAdminClaims && claim.isAdminClaim()) continue;
+            claimsToDelete.add(claim);
         }
+
+        //individual deletion events aren't fired for whole worlds, only the single bulk event
+        this.deleteClaims(claimsToDelete, false, true);
     }
 }
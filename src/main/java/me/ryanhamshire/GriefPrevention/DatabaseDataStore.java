@@ -18,27 +18,53 @@
 
 package me.ryanhamshire.GriefPrevention;
 
+import com.griefprevention.util.WriteBehindQueue;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
-import org.bukkit.OfflinePlayer;
 import org.bukkit.World;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.file.Path;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 //manages data stored in the file system
 public class DatabaseDataStore extends DataStore
@@ -46,40 +72,125 @@ public class DatabaseDataStore extends DataStore
 
     private static final String SQL_UPDATE_NAME =
             "UPDATE griefprevention_playerdata SET name = ? WHERE name = ?";
-    private static final String SQL_INSERT_CLAIM =
-            "INSERT INTO griefprevention_claimdata (id, owner, lessercorner, greatercorner, builders, containers, accessors, managers, inheritnothing, parentid) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
-    private static final String SQL_DELETE_CLAIM =
-            "DELETE FROM griefprevention_claimdata WHERE id = ?";
+    static final String SQL_INSERT_CLAIM =
+            "INSERT INTO griefprevention_claims (id, owner, world, lesser_x, lesser_y, lesser_z, greater_x, greater_y, greater_z, inherit_nothing, parent_id, tile_level, tile_x, tile_z) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    static final String SQL_DELETE_CLAIM =
+            "DELETE FROM griefprevention_claims WHERE id = ?";
+    private static final String SQL_SET_CLAIM_TILE =
+            "UPDATE griefprevention_claims SET tile_level = ?, tile_x = ?, tile_z = ? WHERE id = ?";
+    private static final String SQL_SELECT_CLAIMS_IN_WORLD =
+            "SELECT * FROM griefprevention_claims WHERE world = ? AND parent_id IS NULL";
+    private static final String SQL_SELECT_CLAIMS_IN_REGION = selectClaimsInRegionSql();
+    private static final String SQL_SELECT_CLAIMS_BY_OWNER =
+            "SELECT * FROM griefprevention_claims WHERE owner = ? AND parent_id IS NULL";
+    static final String SQL_INSERT_CLAIM_TRUST =
+            "INSERT INTO griefprevention_claim_trust (claim_id, subject, permission) VALUES (?, ?, ?)";
+    static final String SQL_DELETE_CLAIM_TRUST =
+            "DELETE FROM griefprevention_claim_trust WHERE claim_id = ?";
+    //the database picks a new world's ID, so servers sharing it can't both take the same one
+    static final String SQL_INSERT_WORLD =
+            "INSERT INTO griefprevention_world (id, name) SELECT COALESCE(MAX(id), 0) + 1, ? FROM griefprevention_world";
+    static final String SQL_SELECT_WORLD_ID =
+            "SELECT id FROM griefprevention_world WHERE name = ?";
     private static final String SQL_SELECT_PLAYER_DATA =
             "SELECT * FROM griefprevention_playerdata WHERE name = ?";
-    private static final String SQL_DELETE_PLAYER_DATA =
+    static final String SQL_DELETE_PLAYER_DATA =
             "DELETE FROM griefprevention_playerdata WHERE name = ?";
-    private static final String SQL_INSERT_PLAYER_DATA =
+    static final String SQL_INSERT_PLAYER_DATA =
             "INSERT INTO griefprevention_playerdata (name, lastlogin, accruedblocks, bonusblocks) VALUES (?, ?, ?, ?)";
-    private static final String SQL_SET_NEXT_CLAIM_ID =
-            "INSERT INTO griefprevention_nextclaimid VALUES (?)";
-    private static final String SQL_DELETE_GROUP_DATA =
-            "DELETE FROM griefprevention_playerdata WHERE name = ?";
-    private static final String SQL_INSERT_SCHEMA_VERSION =
+    private static final String SQL_SET_LAST_LOGIN =
+            "UPDATE griefprevention_playerdata SET lastlogin = ? WHERE name = ?";
+    static final String SQL_SET_NEXT_CLAIM_ID =
+            "UPDATE griefprevention_nextclaimid SET nextid = ?";
+    static final String SQL_INSERT_SCHEMA_VERSION =
             "INSERT INTO griefprevention_schemaversion VALUES (?)";
-    private static final String SQL_DELETE_NEXT_CLAIM_ID =
-            "DELETE FROM griefprevention_nextclaimid";
-    private static final String SQL_DELETE_SCHEMA_VERSION =
+    static final String SQL_DELETE_SCHEMA_VERSION =
             "DELETE FROM griefprevention_schemaversion";
-    private static final String SQL_SELECT_SCHEMA_VERSION =
+    static final String SQL_SELECT_SCHEMA_VERSION =
             "SELECT * FROM griefprevention_schemaversion";
 
-    private Connection databaseConnection = null;
+    //the latest schema of the database.  schema 4 stores claims in indexed tables with numeric corners, and trust in its own table
+    //schema 5 files each claim under a tile, so regions can be read with bounded index ranges
+    static final int DATABASE_SCHEMA_VERSION = 5;
+    static final int CLAIM_TABLES_SCHEMA_VERSION = 4;
+
+    //columns of the claim and player data tables, in the order their values are written
+    static final List<String> CLAIM_COLUMNS = List.of("id", "owner", "world", "lesser_x", "lesser_y", "lesser_z", "greater_x", "greater_y", "greater_z", "inherit_nothing", "parent_id", "tile_level", "tile_x", "tile_z");
+    static final List<String> PLAYER_COLUMNS = List.of("name", "lastlogin", "accruedblocks", "bonusblocks");
+
+    //maximum number of statements sent to the database at once
+    private static final int BATCH_SIZE = 500;
+    //claims turned into objects together by one loader thread, and the most loader threads at once
+    private static final int DECODE_BATCH_SIZE = 1000;
+    private static final int MAX_DECODE_THREADS = 4;
+    //maximum number of queued writes committed together in one transaction
+    static final int MAX_WRITES_PER_TRANSACTION = 1000;
+    //times a new world's row is tried before giving up, each losing to another server adding a world at once
+    static final int MAX_WORLD_ID_ATTEMPTS = 5;
+
+    //most connections open at once: the writer, reads, and slack for startup and migration
+    static final int MAX_CONNECTIONS = 4;
+    //longest time to wait for a free connection before giving up
+    static final long CONNECTION_TIMEOUT_SECONDS = 30;
+    //longest time shutdown waits for queued writes
+    static final long WRITE_SHUTDOWN_TIMEOUT_SECONDS = 60;
+
+    private ConnectionPool connectionPool;
+    private DatabaseDialect dialect;
+
+    //statements replacing a whole row in one step, or null where the database can't upsert into the table
+    private String claimUpsertSql;
+    private String playerUpsertSql;
+
+    //every write runs here, one at a time and in order, so the main thread never waits on the database
+    private final ExecutorService writeExecutor = Executors.newSingleThreadExecutor(runnable ->
+    {
+        Thread thread = new Thread(runnable, "GriefPrevention Database Writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    //writes waiting for the writer thread, and whether it has been asked to commit them
+    private final ConcurrentLinkedQueue<PendingWrite> pendingWrites = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    //claims store a world ID rather than its name.  both maps are guarded by worldIDs, and only hold committed rows
+    private final Map<String, Integer> worldIDs = new HashMap<>();
+    private final Map<Integer, String> worldNames = new HashMap<>();
 
     private final String databaseUrl;
     private final String userName;
     private final String password;
 
+    //when claims are loaded, and what loads them if it isn't at startup
+    private final ClaimRegionLoader.Settings claimLoading;
+    private ClaimRegionLoader claimLoader;
+
+    //claims being deleted, which lazy loading mustn't read back before the deletes are written
+    private final Set<Long> pendingDeletes = ConcurrentHashMap.newKeySet();
+    //deletes finished so far, so a read which overlapped one can tell it may have seen the deleted rows
+    private final AtomicLong finishedDeletes = new AtomicLong();
+    //writes submitted but not yet committed or failed
+    private final AtomicInteger unfinishedWrites = new AtomicInteger();
+
+    //one parameterized statement.  consecutive statements with the same SQL are sent together as a batch
+    record SqlStatement(String sql, Object... parameters) { }
+
+    //a write's statements, which are committed together, and the future completed once they are
+    //statements are built on the writer thread, once the world they need an ID for (if any) has one
+    private record PendingWrite(String failureMessage, String world, Supplier<List<SqlStatement>> statements, CompletableFuture<Void> future) { }
+
     DatabaseDataStore(String url, String userName, String password) throws Exception
+    {
+        this(url, userName, password, ClaimRegionLoader.Settings.EAGER);
+    }
+
+    DatabaseDataStore(String url, String userName, String password, ClaimRegionLoader.Settings claimLoading) throws Exception
     {
         this.databaseUrl = url;
         this.userName = userName;
         this.password = password;
+        this.claimLoading = claimLoading;
 
         this.initialize();
     }
@@ -87,9 +198,14 @@ public class DatabaseDataStore extends DataStore
     @Override
     void initialize() throws Exception
     {
+        this.dialect = DatabaseDialect.fromUrl(this.databaseUrl);
+        this.connectionPool = new ConnectionPool(this.databaseUrl, connectionProperties(this.userName, this.password, this.dialect),
+                MAX_CONNECTIONS, CONNECTION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        Connection connection;
         try
         {
-            this.refreshDataConnection();
+            connection = this.connectionPool.getConnection();
         }
         catch (Exception e2)
         {
@@ -97,32 +213,63 @@ public class DatabaseDataStore extends DataStore
             throw e2;
         }
 
+        try (connection)
+        {
+            this.loadData(connection);
+        }
+
+        if (this.claimLoading.mode() != ClaimRegionLoader.Mode.EAGER)
+        {
+            this.claimLoader = new ClaimRegionLoader(this, this.claimLoading);
+        }
+
+        super.initialize();
+    }
+
+    //connection properties for a database, including the user name and password
+    static Properties connectionProperties(String userName, String password, DatabaseDialect dialect)
+    {
+        Properties connectionProps = new Properties();
+        connectionProps.put("user", userName);
+        connectionProps.put("password", password);
+        connectionProps.put("autoReconnect", "true");
+        connectionProps.put("maxReconnects", String.valueOf(Integer.MAX_VALUE));
+        dialect.configure(connectionProps);
+        return connectionProps;
+    }
+
+    private void loadData(Connection databaseConnection) throws Exception
+    {
         try (Statement statement = databaseConnection.createStatement())
         {
             //ensure the data tables exist
-            statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_nextclaimid (nextid INTEGER)");
-            statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_claimdata (id INTEGER, owner VARCHAR(50), lessercorner VARCHAR(100), greatercorner VARCHAR(100), builders TEXT, containers TEXT, accessors TEXT, managers TEXT, inheritnothing BOOLEAN, parentid INTEGER)");
-            statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_playerdata (name VARCHAR(50), lastlogin DATETIME, accruedblocks INTEGER, bonusblocks INTEGER)");
-            statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_schemaversion (version INTEGER)");
-
-            // By making this run only for MySQL, we technically support SQLite too, as this is the only invalid
-            // SQL we use that SQLite does not support. Seeing as its only use is to update VERY old, existing, MySQL
-            // databases, this is of no concern.
-            if (databaseUrl.startsWith("jdbc:mysql://"))
-            {
-                statement.execute("ALTER TABLE griefprevention_claimdata MODIFY builders TEXT");
-                statement.execute("ALTER TABLE griefprevention_claimdata MODIFY containers TEXT");
-                statement.execute("ALTER TABLE griefprevention_claimdata MODIFY accessors TEXT");
-                statement.execute("ALTER TABLE griefprevention_claimdata MODIFY managers TEXT");
-            }
+            createTables(databaseConnection);
 
             //if the next claim id table is empty, this is a brand new database which will write using the latest schema
             //otherwise, schema version is determined by schemaversion table (or =0 if table is empty, see getSchemaVersion())
             ResultSet results = statement.executeQuery("SELECT * FROM griefprevention_nextclaimid");
             if (!results.next())
             {
-                this.setSchemaVersion(latestSchemaVersion);
+                this.setSchemaVersion(this.getLatestSchemaVersion());
+            }
+
+            //claims in older databases are still in the schema 3 table until they're moved
+            if (this.getSchemaVersion() < CLAIM_TABLES_SCHEMA_VERSION)
+            {
+                statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_claimdata (id INTEGER, owner VARCHAR(50), lessercorner VARCHAR(100), greatercorner VARCHAR(100), builders TEXT, containers TEXT, accessors TEXT, managers TEXT, inheritnothing BOOLEAN, parentid INTEGER)");
+
+                // By making this run only for MySQL, we technically support SQLite too, as this is the only invalid
+                // SQL we use that SQLite does not support. Seeing as its only use is to update VERY old, existing, MySQL
+                // databases, this is of no concern.
+                if (this.dialect == DatabaseDialect.MYSQL)
+                {
+                    statement.execute("ALTER TABLE griefprevention_claimdata MODIFY builders TEXT");
+                    statement.execute("ALTER TABLE griefprevention_claimdata MODIFY containers TEXT");
+                    statement.execute("ALTER TABLE griefprevention_claimdata MODIFY accessors TEXT");
+                    statement.execute("ALTER TABLE griefprevention_claimdata MODIFY managers TEXT");
+                }
             }
+
         }
         catch (Exception e3)
         {
@@ -132,7 +279,19 @@ public class DatabaseDataStore extends DataStore
             throw e3;
         }
 
-        //load group data into memory
+        //upserts need a unique key, which player data tables created by older versions don't have
+        this.claimUpsertSql = this.dialect.upsert("griefprevention_claims", CLAIM_COLUMNS, "id");
+        if (!hasUniqueIndex(databaseConnection, "griefprevention_world", "name"))
+        {
+            mergeDuplicateWorlds(databaseConnection);
+            this.ensureUniqueKey(databaseConnection, "griefprevention_world", "name", "id");
+        }
+        if (this.ensureUniqueKey(databaseConnection, "griefprevention_playerdata", "name", "accruedblocks DESC"))
+        {
+            this.playerUpsertSql = this.dialect.upsert("griefprevention_playerdata", PLAYER_COLUMNS, "name");
+        }
+
+        //load group data and when players were last seen into memory
         Statement statement = databaseConnection.createStatement();
         ResultSet results = statement.executeQuery("SELECT * FROM griefprevention_playerdata");
 
@@ -140,8 +299,12 @@ public class DatabaseDataStore extends DataStore
         {
             String name = results.getString("name");
 
-            //ignore non-groups.  all group names start with a dollar sign.
-            if (!name.startsWith("$")) continue;
+            //players are stored by UUID.  all group names start with a dollar sign.
+            if (!name.startsWith("$"))
+            {
+                this.loadLastSeen(name, results);
+                continue;
+            }
 
             String groupName = name.substring(1);
             if (groupName == null || groupName.isEmpty()) continue;  //defensive coding, avoid unlikely cases
@@ -171,10 +334,8 @@ public class DatabaseDataStore extends DataStore
         {
             try
             {
-                this.refreshDataConnection();
-
                 //pull ALL player data from the database
-                statement = this.databaseConnection.createStatement();
+                statement = databaseConnection.createStatement();
                 results = statement.executeQuery("SELECT * FROM griefprevention_playerdata");
 
                 //make a list of changes to be made
@@ -226,12 +387,9 @@ public class DatabaseDataStore extends DataStore
                     catch (Exception ex) { }
                 }
 
-                //refresh data connection in case data migration took a long time
-                this.refreshDataConnection();
-
                 for (String name : changes.keySet())
                 {
-                    try (PreparedStatement updateStmnt = this.databaseConnection.prepareStatement(SQL_UPDATE_NAME))
+                    try (PreparedStatement updateStmnt = databaseConnection.prepareStatement(SQL_UPDATE_NAME))
                     {
                         updateStmnt.setString(1, changes.get(name).toString());
                         updateStmnt.setString(2, name);
@@ -252,18 +410,48 @@ public class DatabaseDataStore extends DataStore
             }
         }
 
+        //load claims data into memory
+        if (this.getSchemaVersion() < CLAIM_TABLES_SCHEMA_VERSION)
+        {
+            List<ClaimRecord> unloadedWorldClaims = this.loadLegacyClaims(databaseConnection);
+            this.migrateLegacyClaims(databaseConnection, unloadedWorldClaims);
+        }
+        else
+        {
+            if (this.getSchemaVersion() < DATABASE_SCHEMA_VERSION)
+            {
+                addClaimTiles(databaseConnection);
+                this.setSchemaVersion(DATABASE_SCHEMA_VERSION);
+            }
+
+            this.loadWorlds(databaseConnection);
+
+            //with lazy loading, claims are read as their worlds or regions load instead
+            if (this.claimLoading.mode() == ClaimRegionLoader.Mode.EAGER)
+            {
+                this.loadClaims(databaseConnection);
+            }
+        }
+    }
+
+    //loads claims from the schema 3 table, converting anything older on the way
+    //returns the claims in worlds which aren't loaded, which can still be moved to the new tables
+    private List<ClaimRecord> loadLegacyClaims(Connection databaseConnection) throws Exception
+    {
+        Statement statement = databaseConnection.createStatement();
+        ResultSet results;
+        List<ClaimRecord> unloadedWorldClaims = new ArrayList<>();
+
         if (this.getSchemaVersion() <= 2)
         {
-            statement = this.databaseConnection.createStatement();
+            statement = databaseConnection.createStatement();
             statement.execute("ALTER TABLE griefprevention_claimdata ADD inheritNothing BOOLEAN DEFAULT 0 AFTER managers");
         }
 
-        //load claims data into memory
-
         results = statement.executeQuery("SELECT * FROM griefprevention_claimdata");
 
         ArrayList<Claim> claimsToRemove = new ArrayList<>();
-        ArrayList<Claim> subdivisionsToLoad = new ArrayList<>();
+        ArrayList<Subdivision> subdivisionsToLoad = new ArrayList<>();
         List<World> validWorlds = Bukkit.getServer().getWorlds();
 
         Long claimID = null;
@@ -292,6 +480,8 @@ public class DatabaseDataStore extends DataStore
                     if (e.getMessage() != null && e.getMessage().contains("World not found"))
                     {
                         GriefPrevention.AddLogEntry("Failed to load a claim (ID:" + claimID + ") because its world isn't loaded (yet?).  Please delete the claim or contact the GriefPrevention developer with information about which plugin(s) you're using to load or create worlds.  " + lesserCornerString);
+                        ClaimRecord record = readLegacyClaimRecord(results);
+                        if (record != null) unloadedWorldClaims.add(record);
                         continue;
                     }
                     else
@@ -360,7 +550,7 @@ public class DatabaseDataStore extends DataStore
                 else
                 {
                     //subdivision
-                    subdivisionsToLoad.add(claim);
+                    subdivisionsToLoad.add(new Subdivision(claim, parentId));
                 }
             }
             catch (SQLException e)
@@ -371,10 +561,15 @@ public class DatabaseDataStore extends DataStore
         }
 
         //add subdivisions to their parent claims
-        for (Claim childClaim : subdivisionsToLoad)
+        for (Subdivision subdivision : subdivisionsToLoad)
         {
-            //find top level claim parent
-            Claim topLevelClaim = this.getClaimAt(childClaim.getLesserBoundaryCorner(), true, null);
+            //find top level claim parent by ID, falling back to its location for rows with a bad parent ID
+            Claim childClaim = subdivision.claim();
+            Claim topLevelClaim = this.claims.get(subdivision.parentID());
+            if (topLevelClaim == null)
+            {
+                topLevelClaim = this.getClaimAt(childClaim.getLesserBoundaryCorner(), true, null);
+            }
 
             if (topLevelClaim == null)
             {
@@ -385,266 +580,1308 @@ public class DatabaseDataStore extends DataStore
 
             //add this claim to the list of children of the current top level claim
             childClaim.parent = topLevelClaim;
-            topLevelClaim.children.add(childClaim);
             childClaim.inDataStore = true;
+            topLevelClaim.children.add(childClaim);
+            this.claimIDMap.put(childClaim.id, childClaim);
+            topLevelClaim.publishChildren();
         }
 
-        for (Claim claim : claimsToRemove)
+        if (!claimsToRemove.isEmpty())
         {
-            this.deleteClaimFromSecondaryStorage(claim);
+            this.deleteClaimsFromSecondaryStorage(claimsToRemove);
         }
 
         if (this.getSchemaVersion() <= 2)
         {
-            this.refreshDataConnection();
-            statement = this.databaseConnection.createStatement();
+            statement = databaseConnection.createStatement();
             statement.execute("DELETE FROM griefprevention_claimdata WHERE id = '-1'");
         }
 
-        super.initialize();
+        return unloadedWorldClaims;
     }
 
-    @Override
-    synchronized void writeClaimToStorage(Claim claim)  //see datastore.cs.  this will ALWAYS be a top level claim
+    //reads a schema 3 claim row without its world, or null if the row can't be understood without converting it
+    private static ClaimRecord readLegacyClaimRecord(ResultSet results) throws SQLException
     {
+        String[] lesser = results.getString("lessercorner").split(";");
+        String[] greater = results.getString("greatercorner").split(";");
+        if (lesser.length < 4 || greater.length < 4) return null;
+
         try
         {
-            this.refreshDataConnection();
+            String owner = results.getString("owner");
+            UUID ownerID = owner == null || owner.isEmpty() || owner.startsWith("--") ? null : UUID.fromString(owner);
+            long parentID = results.getLong("parentid");
+
+            ClaimRecord record = new ClaimRecord(
+                    results.getLong("id"),
+                    ownerID,
+                    lesser[0],
+                    Integer.parseInt(lesser[1].trim()),
+                    Integer.parseInt(lesser[2].trim()),
+                    Integer.parseInt(lesser[3].trim()),
+                    Integer.parseInt(greater[1].trim()),
+                    Integer.parseInt(greater[2].trim()),
+                    Integer.parseInt(greater[3].trim()),
+                    results.getBoolean("inheritNothing"),
+                    parentID == -1 ? ClaimRecord.NO_PARENT : parentID);
+            addLegacyTrust(record, results.getString("builders"), ClaimRecord.BUILD);
+            addLegacyTrust(record, results.getString("containers"), ClaimRecord.CONTAINER);
+            addLegacyTrust(record, results.getString("accessors"), ClaimRecord.ACCESS);
+            addLegacyTrust(record, results.getString("managers"), ClaimRecord.MANAGE);
+            return record;
+        }
+        catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+    }
 
-            //wipe out any existing data about this claim
-            this.deleteClaimFromSecondaryStorage(claim);
+    private static void addLegacyTrust(ClaimRecord record, String subjects, String permission)
+    {
+        if (subjects == null) return;
 
-            //write claim data to the database
-            this.writeClaimData(claim);
+        for (String subject : subjects.split(";"))
+        {
+            if (!subject.isEmpty()) record.addTrust(subject, permission);
         }
-        catch (SQLException e)
+    }
+
+    //creates the data tables, including the schema 4 claim tables and their indexes, if they don't exist yet
+    static void createTables(Connection connection) throws SQLException
+    {
+        try (Statement statement = connection.createStatement())
         {
-            GriefPrevention.AddLogEntry("Unable to save data for claim at " + this.locationToString(claim.lesserBoundaryCorner) + ".  Details:");
-            GriefPrevention.AddLogEntry(e.getMessage());
+            statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_nextclaimid (nextid INTEGER)");
+            statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_playerdata (name VARCHAR(50), lastlogin DATETIME, accruedblocks INTEGER, bonusblocks INTEGER)");
+            statement.execute("CREATE TABLE IF NOT EXISTS griefprevention_schemaversion (version INTEGER)");
         }
+
+        createClaimTables(connection);
     }
 
-    //actually writes claim data to the database
-    synchronized private void writeClaimData(Claim claim) throws SQLException
+    private static void createClaimTables(Connection connection) throws SQLException
     {
-        String lesserCornerString = this.locationToString(claim.getLesserBoundaryCorner());
-        String greaterCornerString = this.locationToString(claim.getGreaterBoundaryCorner());
-        String owner = "";
-        if (claim.ownerID != null) owner = claim.ownerID.toString();
+        try (Statement statement = connection.createStatement())
+        {
+            if (!tableExists(connection, "griefprevention_world"))
+            {
+                statement.execute("CREATE TABLE griefprevention_world (id INTEGER NOT NULL PRIMARY KEY, name VARCHAR(100) NOT NULL)");
+                statement.execute("CREATE UNIQUE INDEX griefprevention_world_name ON griefprevention_world (name)");
+            }
 
-        ArrayList<String> builders = new ArrayList<>();
-        ArrayList<String> containers = new ArrayList<>();
-        ArrayList<String> accessors = new ArrayList<>();
-        ArrayList<String> managers = new ArrayList<>();
+            if (!tableExists(connection, "griefprevention_claims"))
+            {
+                statement.execute("CREATE TABLE griefprevention_claims (id BIGINT NOT NULL PRIMARY KEY, owner VARCHAR(36), world INTEGER NOT NULL, "
+                        + "lesser_x INTEGER NOT NULL, lesser_y INTEGER NOT NULL, lesser_z INTEGER NOT NULL, "
+                        + "greater_x INTEGER NOT NULL, greater_y INTEGER NOT NULL, greater_z INTEGER NOT NULL, "
+                        + "inherit_nothing BOOLEAN NOT NULL, parent_id BIGINT, tile_level INTEGER, tile_x INTEGER, tile_z INTEGER)");
+                statement.execute("CREATE INDEX griefprevention_claims_tile ON griefprevention_claims (world, tile_level, tile_x, tile_z)");
+                statement.execute("CREATE INDEX griefprevention_claims_owner ON griefprevention_claims (owner)");
+                statement.execute("CREATE INDEX griefprevention_claims_parent ON griefprevention_claims (parent_id)");
+            }
 
-        claim.getPermissions(builders, containers, accessors, managers);
+            if (!tableExists(connection, "griefprevention_claim_trust"))
+            {
+                //the primary key doubles as the (claim, subject) index
+                statement.execute("CREATE TABLE griefprevention_claim_trust (claim_id BIGINT NOT NULL, subject VARCHAR(100) NOT NULL, "
+                        + "permission VARCHAR(16) NOT NULL, PRIMARY KEY (claim_id, subject, permission))");
+                statement.execute("CREATE INDEX griefprevention_claim_trust_subject ON griefprevention_claim_trust (subject)");
+            }
+        }
+    }
 
-        String buildersString = this.storageStringBuilder(builders);
-        String containersString = this.storageStringBuilder(containers);
-        String accessorsString = this.storageStringBuilder(accessors);
-        String managersString = this.storageStringBuilder(managers);
-        boolean inheritNothing = claim.getSubclaimRestrictions();
-        long parentId = claim.parent == null ? -1 : claim.parent.id;
+    //files the claims in schema 4 tables under their tiles, a batch at a time
+    private static void addClaimTiles(Connection connection) throws SQLException
+    {
+        GriefPrevention.AddLogEntry("Indexing claims by area.  This only happens once.");
+        try (Statement statement = connection.createStatement())
+        {
+            statement.execute("ALTER TABLE griefprevention_claims ADD tile_level INTEGER");
+            statement.execute("ALTER TABLE griefprevention_claims ADD tile_x INTEGER");
+            statement.execute("ALTER TABLE griefprevention_claims ADD tile_z INTEGER");
+            statement.execute("CREATE INDEX griefprevention_claims_tile ON griefprevention_claims (world, tile_level, tile_x, tile_z)");
+        }
 
-        try (PreparedStatement insertStmt = this.databaseConnection.prepareStatement(SQL_INSERT_CLAIM))
+        long lastID = Long.MIN_VALUE;
+        while (true)
         {
+            List<SqlStatement> updates = new ArrayList<>(BATCH_SIZE);
+            try (PreparedStatement selectStmnt = connection.prepareStatement(
+                    "SELECT id, lesser_x, lesser_z, greater_x, greater_z FROM griefprevention_claims WHERE id > ? ORDER BY id"))
+            {
+                selectStmnt.setMaxRows(BATCH_SIZE);
+                selectStmnt.setLong(1, lastID);
+                try (ResultSet results = selectStmnt.executeQuery())
+                {
+                    while (results.next())
+                    {
+                        lastID = results.getLong("id");
+                        ClaimTile tile = ClaimTile.of(results.getInt("lesser_x"), results.getInt("lesser_z"), results.getInt("greater_x"), results.getInt("greater_z"));
+                        updates.add(new SqlStatement(SQL_SET_CLAIM_TILE, tile.level(), tile.x(), tile.z(), lastID));
+                    }
+                }
+            }
+            if (updates.isEmpty()) return;
 
-            insertStmt.setLong(1, claim.id);
-            insertStmt.setString(2, owner);
-            insertStmt.setString(3, lesserCornerString);
-            insertStmt.setString(4, greaterCornerString);
-            insertStmt.setString(5, buildersString);
-            insertStmt.setString(6, containersString);
-            insertStmt.setString(7, accessorsString);
-            insertStmt.setString(8, managersString);
-            insertStmt.setBoolean(9, inheritNothing);
-            insertStmt.setLong(10, parentId);
-            insertStmt.executeUpdate();
+            connection.setAutoCommit(false);
+            try
+            {
+                executeStatements(connection, updates);
+                connection.commit();
+            }
+            catch (SQLException e)
+            {
+                connection.rollback();
+                throw e;
+            }
+            finally
+            {
+                connection.setAutoCommit(true);
+            }
         }
-        catch (SQLException e)
+    }
+
+    //finds top level claims overlapping an area: at each tile level, the few tiles which can hold them, then the exact test
+    //claims written by older versions sharing the database have no tile, and are always checked
+    private static String selectClaimsInRegionSql()
+    {
+        StringBuilder sql = new StringBuilder("SELECT * FROM griefprevention_claims WHERE world = ? AND (tile_level IS NULL");
+        for (int level = 0; level < ClaimTile.LEVELS; level++)
         {
-            GriefPrevention.AddLogEntry("Unable to save data for claim at " + this.locationToString(claim.lesserBoundaryCorner) + ".  Details:");
-            GriefPrevention.AddLogEntry(e.getMessage());
+            sql.append(" OR (tile_level = ").append(level).append(" AND tile_x BETWEEN ? AND ? AND tile_z BETWEEN ? AND ?)");
         }
+        return sql.append(") AND lesser_x <= ? AND greater_x >= ? AND lesser_z <= ? AND greater_z >= ? AND parent_id IS NULL").toString();
     }
 
-    //deletes a claim from the database
-    @Override
-    synchronized void deleteClaimFromSecondaryStorage(Claim claim)
+    private static boolean tableExists(Connection connection, String table) throws SQLException
     {
-        try (PreparedStatement deleteStmnt = this.databaseConnection.prepareStatement(SQL_DELETE_CLAIM))
+        DatabaseMetaData metaData = connection.getMetaData();
+        String catalog = connection.getCatalog();
+
+        //databases differ in the case they store unquoted names in
+        for (String name : new String[] { table, table.toUpperCase(Locale.ROOT) })
         {
-            deleteStmnt.setLong(1, claim.id);
-            deleteStmnt.executeUpdate();
+            try (ResultSet tables = metaData.getTables(catalog, null, name, null))
+            {
+                if (tables.next()) return true;
+            }
         }
-        catch (SQLException e)
+
+        return false;
+    }
+
+    //reloads the IDs of the worlds claims are in, after rows were added without this data store
+    void reloadWorlds() throws SQLException
+    {
+        try (Connection connection = this.connectionPool.getConnection())
         {
-            GriefPrevention.AddLogEntry("Unable to delete data for claim " + claim.id + ".  Details:");
-            GriefPrevention.AddLogEntry(e.getMessage());
-            e.printStackTrace();
+            this.loadWorlds(connection);
         }
     }
 
-    @Override
-    PlayerData getPlayerDataFromStorage(UUID playerID)
+    //loads the IDs of the worlds claims are in
+    private void loadWorlds(Connection connection) throws SQLException
     {
-        PlayerData playerData = new PlayerData();
-        playerData.playerID = playerID;
-
-        try (PreparedStatement selectStmnt = this.databaseConnection.prepareStatement(SQL_SELECT_PLAYER_DATA))
+        try (Statement statement = connection.createStatement();
+             ResultSet results = statement.executeQuery("SELECT * FROM griefprevention_world"))
         {
-            selectStmnt.setString(1, playerID.toString());
-            ResultSet results = selectStmnt.executeQuery();
-
-            //if data for this player exists, use it
-            if (results.next())
+            while (results.next())
             {
-                playerData.setAccruedClaimBlocks(results.getInt("accruedblocks"));
-                playerData.setBonusClaimBlocks(results.getInt("bonusblocks"));
+                this.putWorld(results.getInt("id"), results.getString("name"));
             }
         }
-        catch (SQLException e)
+    }
+
+    //loads every claim from the schema 4 tables with bounded memory
+    //claims and their trust are streamed side by side in ID order and merged, so no table is held in memory whole
+    //rows are read on this thread and turned into claims on others, a batch at a time, with only a few batches in flight
+    private void loadClaims(Connection connection) throws SQLException
+    {
+        long started = System.nanoTime();
+        Map<String, World> worlds = new HashMap<>();
+        for (World world : Bukkit.getWorlds())
         {
-            StringWriter errors = new StringWriter();
-            e.printStackTrace(new PrintWriter(errors));
-            GriefPrevention.AddLogEntry(playerID + " " + errors, CustomLogEntryTypes.Exception);
+            worlds.put(world.getName(), world);
         }
 
-        return playerData;
-    }
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, MAX_DECODE_THREADS));
+        ExecutorService decoders = Executors.newFixedThreadPool(threads, runnable ->
+        {
+            Thread thread = new Thread(runnable, "GriefPrevention Claim Loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ArrayDeque<Future<List<DecodedClaim>>> decoding = new ArrayDeque<>();
+        ClaimLoad load = new ClaimLoad();
+        long rows = 0;
+
+        //some drivers only stream with a fetch size inside a transaction
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (Connection trustConnection = this.connectionPool.getConnection();
+             Statement claimStatement = connection.createStatement();
+             Statement trustStatement = trustConnection.createStatement())
+        {
+            trustConnection.setAutoCommit(false);
+            claimStatement.setFetchSize(this.claimLoading.fetchSize());
+            trustStatement.setFetchSize(this.claimLoading.fetchSize());
 
-    //saves changes to player data.  MUST be called after you're done making changes, otherwise a reload will lose them
-    @Override
-    public void overrideSavePlayerData(UUID playerID, PlayerData playerData)
-    {
-        //never save data for the "administrative" account.  an empty string for player name indicates administrative account
-        if (playerID == null) return;
+            try (ResultSet claimRows = claimStatement.executeQuery("SELECT * FROM griefprevention_claims ORDER BY id");
+                 ResultSet trustRows = trustStatement.executeQuery("SELECT * FROM griefprevention_claim_trust ORDER BY claim_id"))
+            {
+                List<ClaimRecord> batch = new ArrayList<>(DECODE_BATCH_SIZE);
+                boolean moreTrust = trustRows.next();
+                while (claimRows.next())
+                {
+                    rows++;
+                    long claimID = claimRows.getLong("id");
+                    ClaimRecord record = this.readClaimRecord(claimRows);
 
-        this.savePlayerData(playerID.toString(), playerData);
-    }
+                    //trust rows come in the same order, so this claim's are next, after any left by deleted claims
+                    while (moreTrust && trustRows.getLong("claim_id") < claimID)
+                    {
+                        moreTrust = trustRows.next();
+                    }
+                    while (moreTrust && trustRows.getLong("claim_id") == claimID)
+                    {
+                        if (record != null) record.addTrust(trustRows.getString("subject"), trustRows.getString("permission"));
+                        moreTrust = trustRows.next();
+                    }
 
-    private void savePlayerData(String playerID, PlayerData playerData)
-    {
-        try (PreparedStatement deleteStmnt = this.databaseConnection.prepareStatement(SQL_DELETE_PLAYER_DATA);
-             PreparedStatement insertStmnt = this.databaseConnection.prepareStatement(SQL_INSERT_PLAYER_DATA))
+                    if (record == null) continue;
+                    batch.add(record);
+                    if (batch.size() < DECODE_BATCH_SIZE) continue;
+
+                    List<ClaimRecord> submitted = batch;
+                    decoding.add(decoders.submit(() -> decodeClaims(submitted, worlds)));
+                    batch = new ArrayList<>(DECODE_BATCH_SIZE);
+                    while (decoding.size() > threads * 2)
+                    {
+                        this.addDecodedClaims(awaitDecoded(decoding.poll()), load);
+                    }
+                }
+
+                if (!batch.isEmpty())
+                {
+                    List<ClaimRecord> submitted = batch;
+                    decoding.add(decoders.submit(() -> decodeClaims(submitted, worlds)));
+                }
+                while (!decoding.isEmpty())
+                {
+                    this.addDecodedClaims(awaitDecoded(decoding.poll()), load);
+                }
+            }
+        }
+        finally
+        {
+            decoders.shutdownNow();
+            connection.rollback();
+            connection.setAutoCommit(autoCommit);
+        }
+
+        //add subdivisions to their parent claims, found by ID
+        ArrayList<Claim> claimsToRemove = new ArrayList<>();
+        for (Subdivision subdivision : load.subdivisions)
         {
-            OfflinePlayer player = Bukkit.getOfflinePlayer(UUID.fromString(playerID));
+            Claim childClaim = subdivision.claim();
+            Claim topLevelClaim = this.claims.get(subdivision.parentID());
+            if (topLevelClaim == null)
+            {
+                //a subdivision whose parent's world isn't loaded waits with it
+                if (load.unloadedWorldClaimIDs.contains(subdivision.parentID())) continue;
 
-            SimpleDateFormat sqlFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-            String dateString = sqlFormat.format(new Date(player.getLastPlayed()));
-            deleteStmnt.setString(1, playerID);
-            deleteStmnt.executeUpdate();
+                claimsToRemove.add(childClaim);
+                GriefPrevention.AddLogEntry("Removing orphaned claim subdivision: " + childClaim.getLesserBoundaryCorner().toString());
+                continue;
+            }
 
-            insertStmnt.setString(1, playerID);
-            insertStmnt.setString(2, dateString);
-            insertStmnt.setInt(3, playerData.getAccruedClaimBlocks());
-            insertStmnt.setInt(4, playerData.getBonusClaimBlocks());
-            insertStmnt.executeUpdate();
+            childClaim.parent = topLevelClaim;
+            childClaim.inDataStore = true;
+            topLevelClaim.children.add(childClaim);
+            this.claimIDMap.put(childClaim.id, childClaim);
+            load.parents.add(topLevelClaim);
         }
-        catch (SQLException e)
+        for (Claim topLevelClaim : load.parents)
         {
-            StringWriter errors = new StringWriter();
-            e.printStackTrace(new PrintWriter(errors));
-            GriefPrevention.AddLogEntry(playerID + " " + errors, CustomLogEntryTypes.Exception);
+            topLevelClaim.publishChildren();
+        }
+
+        if (!claimsToRemove.isEmpty())
+        {
+            this.deleteClaimsFromSecondaryStorage(claimsToRemove);
         }
+
+        double seconds = Math.max(System.nanoTime() - started, 1) / 1_000_000_000.0;
+        Runtime runtime = Runtime.getRuntime();
+        long heapUsedMegabytes = (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+        GriefPrevention.AddLogEntry(String.format(Locale.ROOT, "Loaded %d claims from %d rows in %.1f seconds (%.0f rows/s, %d MB heap used, %d loader threads).",
+                this.claims.size(), rows, seconds, rows / seconds, heapUsedMegabytes, threads));
     }
 
-    @Override
-    synchronized void incrementNextClaimID()
+    //a subdivision waiting for its parent to be loaded
+    private record Subdivision(Claim claim, long parentID) { }
+
+    //a claim built from its record, or null if its world isn't loaded
+    private record DecodedClaim(ClaimRecord record, Claim claim) { }
+
+    //what a streaming claim load has seen so far
+    private static final class ClaimLoad
     {
-        this.setNextClaimID(this.nextClaimID + 1);
+        private final List<Subdivision> subdivisions = new ArrayList<>();
+        private final Set<Long> unloadedWorldClaimIDs = new HashSet<>();
+        private final Set<Claim> parents = Collections.newSetFromMap(new IdentityHashMap<>());
     }
 
-    //sets the next claim ID.  used by incrementNextClaimID() above, and also while migrating data from a flat file data store
-    synchronized void setNextClaimID(long nextID)
+    //runs on a loader thread
+    private static List<DecodedClaim> decodeClaims(List<ClaimRecord> records, Map<String, World> worlds)
     {
-        this.nextClaimID = nextID;
-
-        try (PreparedStatement deleteStmnt = this.databaseConnection.prepareStatement(SQL_DELETE_NEXT_CLAIM_ID);
-             PreparedStatement insertStmnt = this.databaseConnection.prepareStatement(SQL_SET_NEXT_CLAIM_ID))
-        {
-            deleteStmnt.execute();
-            insertStmnt.setLong(1, nextID);
-            insertStmnt.executeUpdate();
-        }
-        catch (SQLException e)
+        List<DecodedClaim> decoded = new ArrayList<>(records.size());
+        for (ClaimRecord record : records)
         {
-            GriefPrevention.AddLogEntry("Unable to set next claim ID to " + nextID + ".  Details:");
-            GriefPrevention.AddLogEntry(e.getMessage());
+            World world = worlds.get(record.world());
+            decoded.add(new DecodedClaim(record, world == null ? null : record.toClaim(world)));
         }
+        return decoded;
     }
 
-    //updates the database with a group's bonus blocks
-    @Override
-    synchronized void saveGroupBonusBlocks(String groupName, int currentValue)
+    private static List<DecodedClaim> awaitDecoded(Future<List<DecodedClaim>> future) throws SQLException
     {
-        //group bonus blocks are stored in the player data table, with player name = $groupName
-        try (PreparedStatement deleteStmnt = this.databaseConnection.prepareStatement(SQL_DELETE_GROUP_DATA);
-             PreparedStatement insertStmnt = this.databaseConnection.prepareStatement(SQL_INSERT_PLAYER_DATA))
-        {
-            SimpleDateFormat sqlFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-            String dateString = sqlFormat.format(new Date());
-            deleteStmnt.setString(1, '$' + groupName);
-            deleteStmnt.executeUpdate();
-
-            insertStmnt.setString(1, '$' + groupName);
-            insertStmnt.setString(2, dateString);
-            insertStmnt.setInt(3, 0);
-            insertStmnt.setInt(4, currentValue);
-            insertStmnt.executeUpdate();
+        try
+        {
+            return future.get();
         }
-        catch (SQLException e)
+        catch (InterruptedException e)
         {
-            GriefPrevention.AddLogEntry("Unable to save data for group " + groupName + ".  Details:");
-            GriefPrevention.AddLogEntry(e.getMessage());
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while loading claims", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new SQLException("Unable to build a loaded claim", e.getCause());
         }
     }
 
-    @Override
-    synchronized void close()
+    //adds decoded claims in the order they were read, keeping subdivisions until every parent is in
+    private void addDecodedClaims(List<DecodedClaim> decoded, ClaimLoad load)
     {
-        if (this.databaseConnection != null)
+        for (DecodedClaim claim : decoded)
         {
-            try
+            ClaimRecord record = claim.record();
+            if (claim.claim() == null)
             {
-                if (!this.databaseConnection.isClosed())
-                {
-                    this.databaseConnection.close();
-                }
+                GriefPrevention.AddLogEntry("Failed to load a claim (ID:" + record.id() + ") because its world isn't loaded (yet?).  Please delete the claim or contact the GriefPrevention developer with information about which plugin(s) you're using to load or create worlds.  " + record.world());
+                load.unloadedWorldClaimIDs.add(record.id());
+            }
+            else if (record.hasParent())
+            {
+                load.subdivisions.add(new Subdivision(claim.claim(), record.parentID()));
+            }
+            else
+            {
+                this.addClaim(claim.claim(), false);
             }
-            catch (SQLException e) {}
         }
-
-        this.databaseConnection = null;
     }
 
-    private synchronized void refreshDataConnection() throws SQLException
+    //reads the claim at a result set's cursor, or null if its row is unusable
+    private ClaimRecord readClaimRecord(ResultSet results) throws SQLException
     {
-        if (this.databaseConnection == null || !this.databaseConnection.isValid(3))
+        long claimID = results.getLong("id");
+        String world = this.getWorldName(results.getInt("world"));
+        if (world == null)
+        {
+            GriefPrevention.AddLogEntry("Failed to load a claim (ID:" + claimID + ") because its world is missing from the database.");
+            return null;
+        }
+
+        UUID ownerID = null;
+        String owner = results.getString("owner");
+        if (owner != null)
         {
-            if (this.databaseConnection != null && !this.databaseConnection.isClosed())
+            try
+            {
+                ownerID = UUID.fromString(owner);
+            }
+            catch (IllegalArgumentException e)
             {
-                this.databaseConnection.close();
+                GriefPrevention.AddLogEntry("This owner entry is not a UUID: " + owner + ".");
+                GriefPrevention.AddLogEntry("  Converted land claim to administrative (ID:" + claimID + ").");
             }
+        }
 
-            //set username/pass properties
-            Properties connectionProps = new Properties();
-            connectionProps.put("user", this.userName);
-            connectionProps.put("password", this.password);
-            connectionProps.put("autoReconnect", "true");
-            connectionProps.put("maxReconnects", String.valueOf(Integer.MAX_VALUE));
+        long parentID = results.getLong("parent_id");
+        if (results.wasNull()) parentID = ClaimRecord.NO_PARENT;
+
+        return new ClaimRecord(
+                claimID,
+                ownerID,
+                world,
+                results.getInt("lesser_x"),
+                results.getInt("lesser_y"),
+                results.getInt("lesser_z"),
+                results.getInt("greater_x"),
+                results.getInt("greater_y"),
+                results.getInt("greater_z"),
+                results.getBoolean("inherit_nothing"),
+                parentID);
+    }
 
-            //establish connection
-            this.databaseConnection = DriverManager.getConnection(this.databaseUrl, connectionProps);
-        }
+    /**
+     * Read the stored claims in a world, without loading any others. Writes still queued are not yet visible.
+     *
+     * @param world the name of the world
+     * @return the claims and their subdivisions, in no particular order
+     * @throws SQLException if the claims can't be read
+     */
+    List<ClaimRecord> queryClaimsInWorld(String world) throws SQLException
+    {
+        Integer worldID = this.getWorldID(world);
+        if (worldID == null) return new ArrayList<>();
+
+        return this.queryClaims(SQL_SELECT_CLAIMS_IN_WORLD, worldID);
     }
 
-    @Override
-    protected int getSchemaVersionFromStorage()
+    /**
+     * Read the stored claims overlapping an area of a world, without loading any others. Subdivisions are included
+     * alongside their parents. Writes still queued are not yet visible.
+     *
+     * @param world the name of the world
+     * @param minX the least X coordinate of the area
+     * @param minZ the least Z coordinate of the area
+     * @param maxX the greatest X coordinate of the area
+     * @param maxZ the greatest Z coordinate of the area
+     * @return the claims, in no particular order
+     * @throws SQLException if the claims can't be read
+     */
+    List<ClaimRecord> queryClaimsInRegion(String world, int minX, int minZ, int maxX, int maxZ) throws SQLException
     {
-        try (PreparedStatement selectStmnt = this.databaseConnection.prepareStatement(SQL_SELECT_SCHEMA_VERSION))
+        Integer worldID = this.getWorldID(world);
+        if (worldID == null) return new ArrayList<>();
+
+        List<Object> parameters = new ArrayList<>();
+        parameters.add(worldID);
+        for (ClaimTile.Range range : ClaimTile.covering(minX, minZ, maxX, maxZ))
         {
-            ResultSet results = selectStmnt.executeQuery();
+            parameters.addAll(List.of(range.minX(), range.maxX(), range.minZ(), range.maxZ()));
+        }
+        parameters.addAll(List.of(maxX, minX, maxZ, minZ));
+
+        return this.queryClaims(SQL_SELECT_CLAIMS_IN_REGION, parameters.toArray());
+    }
+
+    /**
+     * Read the stored claims owned by a player, without loading any others. Subdivisions are included alongside
+     * their parents. Writes still queued are not yet visible.
+     *
+     * @param ownerID the owner's UUID
+     * @return the claims, in no particular order
+     * @throws SQLException if the claims can't be read
+     */
+    List<ClaimRecord> queryClaimsByOwner(UUID ownerID) throws SQLException
+    {
+        return this.queryClaims(SQL_SELECT_CLAIMS_BY_OWNER, ownerID.toString());
+    }
+
+    //reads the top level claims a query finds, with their subdivisions and trust
+    private List<ClaimRecord> queryClaims(String sql, Object... parameters) throws SQLException
+    {
+        Map<Long, ClaimRecord> records = new LinkedHashMap<>();
+        RowReader claimReader = results ->
+        {
+            ClaimRecord record = this.readClaimRecord(results);
+            if (record != null) records.put(record.id(), record);
+        };
+
+        try (Connection connection = this.connectionPool.getConnection())
+        {
+            try (PreparedStatement selectStmnt = connection.prepareStatement(sql))
+            {
+                for (int i = 0; i < parameters.length; i++)
+                {
+                    selectStmnt.setObject(i + 1, parameters[i]);
+                }
+                try (ResultSet results = selectStmnt.executeQuery())
+                {
+                    while (results.next())
+                    {
+                        claimReader.read(results);
+                    }
+                }
+            }
+
+            //subdivisions come with their parents, even where they don't match the query themselves
+            selectByIDs(connection, "SELECT * FROM griefprevention_claims WHERE parent_id IN ", new ArrayList<>(records.keySet()), claimReader);
+
+            selectByIDs(connection, "SELECT * FROM griefprevention_claim_trust WHERE claim_id IN ", new ArrayList<>(records.keySet()), results ->
+            {
+                ClaimRecord record = records.get(results.getLong("claim_id"));
+                if (record != null) record.addTrust(results.getString("subject"), results.getString("permission"));
+            });
+        }
+
+        return new ArrayList<>(records.values());
+    }
+
+    //reads a row of a query's results
+    @FunctionalInterface
+    private interface RowReader
+    {
+        void read(ResultSet results) throws SQLException;
+    }
+
+    //runs a query ending in an IN list for the given IDs, a batch of IDs at a time
+    private static void selectByIDs(Connection connection, String sqlPrefix, List<Long> ids, RowReader reader) throws SQLException
+    {
+        for (int start = 0; start < ids.size(); start += BATCH_SIZE)
+        {
+            List<Long> batch = ids.subList(start, Math.min(start + BATCH_SIZE, ids.size()));
+            try (PreparedStatement selectStmnt = connection.prepareStatement(
+                    sqlPrefix + "(" + String.join(", ", Collections.nCopies(batch.size(), "?")) + ")"))
+            {
+                for (int i = 0; i < batch.size(); i++)
+                {
+                    selectStmnt.setLong(i + 1, batch.get(i));
+                }
+                try (ResultSet results = selectStmnt.executeQuery())
+                {
+                    while (results.next())
+                    {
+                        reader.read(results);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Prepare a bulk migration of file system data into this database, sharing its connections.
+     *
+     * @param checkpointFile where the migration records its progress
+     * @param log where the migration reports its progress
+     * @return the migration
+     */
+    FlatFileMigration createMigration(Path checkpointFile, Consumer<String> log)
+    {
+        return new FlatFileMigration(this.connectionPool, this.dialect, this.databaseUrl, checkpointFile, log);
+    }
+
+    //copies claims loaded from the schema 3 table into the schema 4 tables, in one transaction
+    //the old table is left as it was, as a backup
+    private void migrateLegacyClaims(Connection connection, List<ClaimRecord> unloadedWorldClaims) throws SQLException
+    {
+        List<ClaimRecord> records = new ArrayList<>(unloadedWorldClaims);
+        for (Claim claim : this.claims.values())
+        {
+            records.add(ClaimRecord.of(claim));
+
+            for (Claim subClaim : claim.children)
+            {
+                records.add(ClaimRecord.of(subClaim));
+            }
+        }
+
+        GriefPrevention.AddLogEntry("Moving " + records.size() + " claims into the new database tables.  This only happens once.");
+
+        List<SqlStatement> statements = new ArrayList<>();
+        for (ClaimRecord record : records)
+        {
+            this.getOrAddWorldID(connection, record.world());
+            statements.addAll(this.claimStatements(record));
+        }
+
+        connection.setAutoCommit(false);
+        try
+        {
+            executeStatements(connection, statements);
+            connection.commit();
+        }
+        catch (SQLException e)
+        {
+            connection.rollback();
+            throw e;
+        }
+        finally
+        {
+            connection.setAutoCommit(true);
+        }
+
+        this.setSchemaVersion(DATABASE_SCHEMA_VERSION);
+    }
+
+    //statements replacing a claim's row and trust.  the claim's world must already have an ID
+    private List<SqlStatement> claimStatements(ClaimRecord record)
+    {
+        ClaimTile tile = ClaimTile.of(record);
+        List<SqlStatement> statements = new ArrayList<>(this.replaceRow(this.claimUpsertSql, SQL_DELETE_CLAIM, SQL_INSERT_CLAIM,
+                record.id(),
+                record.ownerID() == null ? null : record.ownerID().toString(),
+                this.getWorldID(record.world()),
+                record.lesserX(),
+                record.lesserY(),
+                record.lesserZ(),
+                record.greaterX(),
+                record.greaterY(),
+                record.greaterZ(),
+                record.inheritNothing(),
+                record.hasParent() ? record.parentID() : null,
+                tile.level(),
+                tile.x(),
+                tile.z()));
+
+        statements.add(new SqlStatement(SQL_DELETE_CLAIM_TRUST, record.id()));
+        record.forEachTrust((subject, permission) -> statements.add(new SqlStatement(SQL_INSERT_CLAIM_TRUST, record.id(), subject, permission)));
+
+        return statements;
+    }
+
+    private Integer getWorldID(String world)
+    {
+        synchronized (this.worldIDs)
+        {
+            return this.worldIDs.get(world);
+        }
+    }
+
+    private String getWorldName(int worldID)
+    {
+        synchronized (this.worldIDs)
+        {
+            return this.worldNames.get(worldID);
+        }
+    }
+
+    private void putWorld(int worldID, String world)
+    {
+        synchronized (this.worldIDs)
+        {
+            this.worldIDs.put(world, worldID);
+            this.worldNames.put(worldID, world);
+        }
+    }
+
+    //the ID of a world, adding its row if it's new.  must be called outside a transaction
+    private int getOrAddWorldID(Connection connection, String world) throws SQLException
+    {
+        Integer worldID = this.getWorldID(world);
+        if (worldID != null) return worldID;
+
+        worldID = selectOrInsertWorldID(connection, world);
+        this.putWorld(worldID, world);
+        return worldID;
+    }
+
+    //the ID of a world's row, adding the row if there isn't one.  an existing row is never changed
+    //another server sharing the database may add the same world, or take the same new ID, at once.  the unique name
+    //and primary key make one insert fail, and the loser reads back whichever row won
+    //must be called outside a transaction, as some databases abort the whole transaction when a statement fails
+    static int selectOrInsertWorldID(Connection connection, String world) throws SQLException
+    {
+        for (int attempt = 1; ; attempt++)
+        {
+            try (PreparedStatement selectStmnt = connection.prepareStatement(SQL_SELECT_WORLD_ID))
+            {
+                selectStmnt.setString(1, world);
+                try (ResultSet results = selectStmnt.executeQuery())
+                {
+                    if (results.next()) return results.getInt("id");
+                }
+            }
+
+            try (PreparedStatement insertStmnt = connection.prepareStatement(SQL_INSERT_WORLD))
+            {
+                insertStmnt.setString(1, world);
+                insertStmnt.executeUpdate();
+            }
+            catch (SQLException e)
+            {
+                if (attempt >= MAX_WORLD_ID_ATTEMPTS) throw e;
+            }
+        }
+    }
+
+    @Override
+    void writeClaimToStorage(Claim claim)  //see datastore.cs.  this will ALWAYS be a top level claim
+    {
+        this.writeClaimToStorageAsync(claim);
+    }
+
+    /**
+     * Write a claim to the database in the background.
+     *
+     * @param claim the claim
+     * @return a future completed once the claim is written
+     */
+    CompletableFuture<Void> writeClaimToStorageAsync(Claim claim)
+    {
+        //everything written is read now, so later changes to the claim can't tear the rows
+        ClaimRecord record = ClaimRecord.of(claim);
+        return this.submitWrite("Unable to save data for claim " + record.id() + " in " + record.world() + ".",
+                record.world(), () -> this.claimStatements(record));
+    }
+
+    //deletes a claim from the database
+    @Override
+    void deleteClaimFromSecondaryStorage(Claim claim)
+    {
+        this.deleteClaimsFromSecondaryStorage(List.of(claim));
+    }
+
+    @Override
+    void deleteClaimsFromSecondaryStorage(Collection<Claim> claims)
+    {
+        //one write, so every delete is batched into a single transaction rather than one round trip per claim
+        //trust first, then claims, so each kind of delete is one run of batches
+        List<SqlStatement> deletes = new ArrayList<>(claims.size() * 2);
+        for (Claim claim : claims)
+        {
+            deletes.add(new SqlStatement(SQL_DELETE_CLAIM_TRUST, claim.id));
+        }
+        for (Claim claim : claims)
+        {
+            deletes.add(new SqlStatement(SQL_DELETE_CLAIM, claim.id));
+        }
+
+        List<Long> claimIDs = claims.stream().map(claim -> claim.id).toList();
+        this.pendingDeletes.addAll(claimIDs);
+        this.submitWrite("Unable to delete data for " + claims.size() + " claims.", deletes)
+                .whenComplete((result, error) ->
+                {
+                    this.finishedDeletes.incrementAndGet();
+                    claimIDs.forEach(this.pendingDeletes::remove);
+                });
+    }
+
+    private void loadLastSeen(String name, ResultSet results)
+    {
+        try
+        {
+            Timestamp lastLogin = results.getTimestamp("lastlogin");
+            if (lastLogin == null || !uuidpattern.matcher(name).matches()) return;
+
+            //rows written for players the server had no record of hold the epoch, give or take the time zone
+            if (lastLogin.getTime() < TimeUnit.DAYS.toMillis(1)) return;
+
+            this.playerActivity.record(UUID.fromString(name), lastLogin.getTime());
+        }
+        catch (SQLException | IllegalArgumentException e)
+        {
+            GriefPrevention.AddLogEntry("Unable to read when player " + name + " was last seen: " + e.getMessage(), CustomLogEntryTypes.Debug, true);
+        }
+    }
+
+    @Override
+    PlayerData getPlayerDataFromStorage(UUID playerID)
+    {
+        PlayerData playerData = new PlayerData();
+        playerData.playerID = playerID;
+
+        try (Connection connection = this.connectionPool.getConnection();
+             PreparedStatement selectStmnt = connection.prepareStatement(SQL_SELECT_PLAYER_DATA))
+        {
+            selectStmnt.setString(1, playerID.toString());
+            ResultSet results = selectStmnt.executeQuery();
+
+            //if data for this player exists, use it
+            if (results.next())
+            {
+                playerData.setAccruedClaimBlocks(results.getInt("accruedblocks"));
+                playerData.setBonusClaimBlocks(results.getInt("bonusblocks"));
+            }
+        }
+        catch (SQLException e)
+        {
+            StringWriter errors = new StringWriter();
+            e.printStackTrace(new PrintWriter(errors));
+            GriefPrevention.AddLogEntry(playerID + " " + errors, CustomLogEntryTypes.Exception);
+        }
+
+        return playerData;
+    }
+
+    //saves changes to player data.  MUST be called after you're done making changes, otherwise a reload will lose them
+    @Override
+    public void overrideSavePlayerData(UUID playerID, PlayerData playerData)
+    {
+        //never save data for the "administrative" account.  an empty string for player name indicates administrative account
+        if (playerID == null) return;
+
+        this.savePlayerDataAsync(playerID, playerData);
+    }
+
+    /**
+     * Write a player's claim blocks to the database in the background.
+     *
+     * @param playerID the player's UUID
+     * @param playerData the player's data
+     * @return a future completed once the data are written
+     */
+    CompletableFuture<Void> savePlayerDataAsync(UUID playerID, PlayerData playerData)
+    {
+        long lastSeen = this.playerActivity.getLastSeen(playerID);
+        if (lastSeen == PlayerActivityIndex.UNKNOWN) lastSeen = Bukkit.getOfflinePlayer(playerID).getLastPlayed();
+        SimpleDateFormat sqlFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        String dateString = sqlFormat.format(new Date(lastSeen));
+
+        return this.submitWrite("Unable to save data for player " + playerID + ".",
+                this.replaceRow(this.playerUpsertSql, SQL_DELETE_PLAYER_DATA, SQL_INSERT_PLAYER_DATA,
+                        playerID.toString(), dateString, playerData.getAccruedClaimBlocks(), playerData.getBonusClaimBlocks()));
+    }
+
+    //replaces the row whose key is the first value.  without an upsert, the row is deleted and inserted in the same transaction
+    private List<SqlStatement> replaceRow(String upsertSql, String deleteSql, String insertSql, Object... row)
+    {
+        if (upsertSql != null) return List.of(new SqlStatement(upsertSql, row));
+
+        return List.of(new SqlStatement(deleteSql, row[0]), new SqlStatement(insertSql, row));
+    }
+
+    @Override
+    void writeLastSeen(UUID playerID, long lastSeen)
+    {
+        //players without a row yet get one with their last seen time when their data are first saved
+        SimpleDateFormat sqlFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        this.submitWrite("Unable to save last seen time for player " + playerID + ".",
+                List.of(new SqlStatement(SQL_SET_LAST_LOGIN, sqlFormat.format(new Date(lastSeen)), playerID.toString())));
+    }
+
+    @Override
+    void writeNextClaimID(long nextID)
+    {
+        //the table always holds exactly one row, added when the database is created
+        //claims with leased IDs are written after this by the same writer, so they're never stored without it
+        this.submitWrite("Unable to set next claim ID to " + nextID + ".", List.of(new SqlStatement(SQL_SET_NEXT_CLAIM_ID, nextID)));
+    }
+
+    //updates the database with a group's bonus blocks
+    @Override
+    void saveGroupBonusBlocks(String groupName, int currentValue)
+    {
+        this.saveGroupBonusBlocksAsync(groupName, currentValue);
+    }
+
+    /**
+     * Write a group's bonus blocks to the database in the background.
+     *
+     * @param groupName the name of the group
+     * @param currentValue the group's bonus blocks
+     * @return a future completed once the value is written
+     */
+    CompletableFuture<Void> saveGroupBonusBlocksAsync(String groupName, int currentValue)
+    {
+        //group bonus blocks are stored in the player data table, with player name = $groupName
+        SimpleDateFormat sqlFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        String dateString = sqlFormat.format(new Date());
+
+        return this.submitWrite("Unable to save data for group " + groupName + ".",
+                this.replaceRow(this.playerUpsertSql, SQL_DELETE_PLAYER_DATA, SQL_INSERT_PLAYER_DATA,
+                        '$' + groupName, dateString, 0, currentValue));
+    }
+
+    /**
+     * Get a future completed once every write submitted so far has finished.
+     *
+     * @return the future
+     */
+    CompletableFuture<Void> flushWrites()
+    {
+        return this.submitWrite("Unable to flush writes.", List.of());
+    }
+
+    //queues a write for the writer thread.  failures are logged and complete the future exceptionally
+    private CompletableFuture<Void> submitWrite(String failureMessage, List<SqlStatement> statements)
+    {
+        return this.submitWrite(failureMessage, null, () -> statements);
+    }
+
+    private CompletableFuture<Void> submitWrite(String failureMessage, String world, Supplier<List<SqlStatement>> statements)
+    {
+        PendingWrite write = new PendingWrite(failureMessage, world, statements, new CompletableFuture<>());
+        this.unfinishedWrites.incrementAndGet();
+        write.future().whenComplete((result, error) -> this.unfinishedWrites.decrementAndGet());
+        this.pendingWrites.add(write);
+
+        //one drain at a time picks up everything queued, so busy periods become a few large transactions
+        if (this.drainScheduled.compareAndSet(false, true))
+        {
+            try
+            {
+                this.writeExecutor.execute(this::drainWrites);
+            }
+            catch (RejectedExecutionException e)
+            {
+                //shut down, so nothing will run what's waiting
+                this.drainScheduled.set(false);
+                PendingWrite rejected;
+                while ((rejected = this.pendingWrites.poll()) != null)
+                {
+                    GriefPrevention.AddLogEntry(rejected.failureMessage() + "  The database connection is closed.");
+                    rejected.future().completeExceptionally(e);
+                }
+            }
+        }
+
+        return write.future();
+    }
+
+    //runs on the writer thread.  commits everything waiting, up to MAX_WRITES_PER_TRANSACTION at a time
+    private void drainWrites()
+    {
+        //cleared first, so a write queued from here on schedules another drain rather than being missed
+        this.drainScheduled.set(false);
+
+        List<PendingWrite> writes = new ArrayList<>();
+        while (true)
+        {
+            PendingWrite write;
+            while (writes.size() < MAX_WRITES_PER_TRANSACTION && (write = this.pendingWrites.poll()) != null)
+            {
+                writes.add(write);
+            }
+            if (writes.isEmpty()) return;
+
+            this.commitWrites(writes);
+            writes.clear();
+        }
+    }
+
+    private void commitWrites(List<PendingWrite> writes)
+    {
+        try (Connection connection = this.connectionPool.getConnection())
+        {
+            //new worlds get their IDs first, each committed alone, so the writes can refer to them
+            List<PendingWrite> ready = new ArrayList<>(writes.size());
+            for (PendingWrite write : writes)
+            {
+                try
+                {
+                    if (write.world() != null) this.getOrAddWorldID(connection, write.world());
+                    ready.add(write);
+                }
+                catch (SQLException e)
+                {
+                    failWrite(write, e);
+                }
+            }
+            if (ready.isEmpty()) return;
+
+            connection.setAutoCommit(false);
+            this.commitWrites(connection, ready);
+        }
+        catch (SQLException e)
+        {
+            //couldn't connect, or the connection failed while rolling back
+            for (PendingWrite write : writes)
+            {
+                failWrite(write, e);
+            }
+        }
+    }
+
+    //commits writes in one transaction.  if it fails, each is retried alone so one bad write doesn't lose the others
+    private void commitWrites(Connection connection, List<PendingWrite> writes) throws SQLException
+    {
+        try
+        {
+            List<SqlStatement> statements = new ArrayList<>();
+            for (PendingWrite write : writes)
+            {
+                statements.addAll(write.statements().get());
+            }
+            executeStatements(connection, statements);
+            connection.commit();
+        }
+        catch (SQLException e)
+        {
+            connection.rollback();
+            if (writes.size() == 1)
+            {
+                failWrite(writes.get(0), e);
+                return;
+            }
+
+            for (PendingWrite write : writes)
+            {
+                this.commitWrites(connection, List.of(write));
+            }
+            return;
+        }
+
+        for (PendingWrite write : writes)
+        {
+            write.future().complete(null);
+        }
+    }
+
+    private static void failWrite(PendingWrite write, SQLException e)
+    {
+        if (write.future().completeExceptionally(e))
+        {
+            GriefPrevention.AddLogEntry(write.failureMessage() + "  Details:");
+            GriefPrevention.AddLogEntry(e.getMessage());
+        }
+    }
+
+    //runs statements in order, sending each run of statements with the same SQL as JDBC batches
+    static void executeStatements(Connection connection, List<SqlStatement> statements) throws SQLException
+    {
+        PreparedStatement batch = null;
+        String batchSql = null;
+        int batched = 0;
+        try
+        {
+            for (SqlStatement statement : statements)
+            {
+                if (!statement.sql().equals(batchSql))
+                {
+                    if (batch != null)
+                    {
+                        if (batched % BATCH_SIZE != 0) batch.executeBatch();
+                        batch.close();
+                    }
+                    batch = connection.prepareStatement(statement.sql());
+                    batchSql = statement.sql();
+                    batched = 0;
+                }
+
+                Object[] parameters = statement.parameters();
+                for (int i = 0; i < parameters.length; i++)
+                {
+                    batch.setObject(i + 1, parameters[i]);
+                }
+                batch.addBatch();
+                if (++batched % BATCH_SIZE == 0)
+                {
+                    batch.executeBatch();
+                }
+            }
+
+            if (batch != null && batched % BATCH_SIZE != 0)
+            {
+                batch.executeBatch();
+            }
+        }
+        finally
+        {
+            if (batch != null) batch.close();
+        }
+    }
+
+    //adds a unique index on a table's key column if there isn't one, first removing rows with duplicate keys
+    //returns whether the column is now unique
+    private boolean ensureUniqueKey(Connection connection, String table, String key, String keepOrder)
+    {
+        try
+        {
+            if (hasUniqueIndex(connection, table, key)) return true;
+
+            List<Object> duplicates = new ArrayList<>();
+            try (Statement statement = connection.createStatement();
+                 ResultSet results = statement.executeQuery("SELECT " + key + " FROM " + table + " GROUP BY " + key + " HAVING COUNT(*) > 1"))
+            {
+                while (results.next())
+                {
+                    duplicates.add(results.getObject(1));
+                }
+            }
+
+            for (Object duplicate : duplicates)
+            {
+                keepOneRow(connection, table, key, duplicate, keepOrder);
+            }
+            if (!duplicates.isEmpty())
+            {
+                GriefPrevention.AddLogEntry("Removed duplicate rows for " + duplicates.size() + " keys from " + table + ".");
+            }
+
+            try (Statement statement = connection.createStatement())
+            {
+                statement.execute("CREATE UNIQUE INDEX " + table + "_" + key + " ON " + table + " (" + key + ")");
+            }
+            return true;
+        }
+        catch (SQLException e)
+        {
+            GriefPrevention.AddLogEntry("Unable to add a unique key to " + table + ", so its rows will be replaced by deleting and inserting.  Details:");
+            GriefPrevention.AddLogEntry(e.getMessage());
+            return false;
+        }
+    }
+
+    //servers sharing a database before world names were unique could each add a row for the same world
+    //claims in the later rows are moved to the first, so removing the duplicates leaves no claim without its world
+    private static void mergeDuplicateWorlds(Connection connection) throws SQLException
+    {
+        try (Statement statement = connection.createStatement())
+        {
+            statement.executeUpdate("UPDATE griefprevention_claims SET world = "
+                    + "(SELECT MIN(first.id) FROM griefprevention_world first, griefprevention_world w WHERE w.id = griefprevention_claims.world AND first.name = w.name) "
+                    + "WHERE world IN (SELECT later.id FROM griefprevention_world later, griefprevention_world first WHERE first.name = later.name AND first.id < later.id)");
+        }
+    }
+
+    static boolean hasUniqueIndex(Connection connection, String table, String column) throws SQLException
+    {
+        DatabaseMetaData metaData = connection.getMetaData();
+        String catalog = connection.getCatalog();
+
+        //databases differ in the case they store unquoted names in
+        for (String name : new String[] { table, table.toUpperCase(Locale.ROOT) })
+        {
+            //only an index on the column alone makes it unique
+            Map<String, List<String>> indexColumns = new HashMap<>();
+            try (ResultSet indexes = metaData.getIndexInfo(catalog, null, name, true, false))
+            {
+                while (indexes.next())
+                {
+                    String indexName = indexes.getString("INDEX_NAME");
+                    String indexColumn = indexes.getString("COLUMN_NAME");
+                    if (indexName == null || indexColumn == null) continue;
+                    indexColumns.computeIfAbsent(indexName, k -> new ArrayList<>()).add(indexColumn);
+                }
+            }
+
+            for (List<String> columns : indexColumns.values())
+            {
+                if (columns.size() == 1 && columns.get(0).equalsIgnoreCase(column)) return true;
+            }
+        }
+
+        return false;
+    }
+
+    //replaces every row with the given key by the first of them in the given order
+    private static void keepOneRow(Connection connection, String table, String key, Object value, String keepOrder) throws SQLException
+    {
+        connection.setAutoCommit(false);
+        try
+        {
+            String[] columns;
+            Object[] row;
+            try (PreparedStatement selectStmnt = connection.prepareStatement("SELECT * FROM " + table + " WHERE " + key + " = ? ORDER BY " + keepOrder))
+            {
+                selectStmnt.setObject(1, value);
+                try (ResultSet results = selectStmnt.executeQuery())
+                {
+                    if (!results.next()) return;
+
+                    ResultSetMetaData metaData = results.getMetaData();
+                    columns = new String[metaData.getColumnCount()];
+                    row = new Object[columns.length];
+                    for (int i = 0; i < columns.length; i++)
+                    {
+                        columns[i] = metaData.getColumnName(i + 1);
+                        row[i] = results.getObject(i + 1);
+                    }
+                }
+            }
+
+            try (PreparedStatement deleteStmnt = connection.prepareStatement("DELETE FROM " + table + " WHERE " + key + " = ?");
+                 PreparedStatement insertStmnt = connection.prepareStatement("INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES ("
+                         + String.join(", ", Collections.nCopies(columns.length, "?")) + ")"))
+            {
+                deleteStmnt.setObject(1, value);
+                deleteStmnt.executeUpdate();
+
+                for (int i = 0; i < row.length; i++)
+                {
+                    insertStmnt.setObject(i + 1, row[i]);
+                }
+                insertStmnt.executeUpdate();
+            }
+
+            connection.commit();
+        }
+        catch (SQLException e)
+        {
+            connection.rollback();
+            throw e;
+        }
+        finally
+        {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    /**
+     * Get what loads claims as they're needed.
+     *
+     * @return the loader, or null if every claim is loaded at startup
+     */
+    ClaimRegionLoader getClaimLoader()
+    {
+        return this.claimLoader;
+    }
+
+    @Override
+    void loadClaimsInArea(World world, int minX, int minZ, int maxX, int maxZ)
+    {
+        if (this.claimLoader != null) this.claimLoader.loadArea(world, minX, minZ, maxX, maxZ);
+    }
+
+    @Override
+    void loadClaimsOwnedBy(UUID ownerID)
+    {
+        if (this.claimLoader != null) this.claimLoader.loadOwner(ownerID);
+    }
+
+    //how many deletes have finished, successfully or not
+    long getFinishedDeletes()
+    {
+        return this.finishedDeletes.get();
+    }
+
+    //whether a claim's deletion is still on its way to the database
+    boolean isDeletePending(long claimID)
+    {
+        return this.pendingDeletes.contains(claimID);
+    }
+
+    //whether any change is still on its way to the database, including claim saves waiting to be submitted
+    boolean hasPendingWrites()
+    {
+        if (this.unfinishedWrites.get() > 0) return true;
+
+        WriteBehindQueue<Long, Claim> claimSaveQueue = this.getClaimSaveQueue();
+        return claimSaveQueue != null && claimSaveQueue.getQueueDepth() > 0;
+    }
+
+    @Override
+    int getLatestSchemaVersion()
+    {
+        return DATABASE_SCHEMA_VERSION;
+    }
+
+    @Override
+    synchronized void close()
+    {
+        //finish queued writes before closing their connections
+        this.writeExecutor.shutdown();
+        try
+        {
+            if (!this.writeExecutor.awaitTermination(WRITE_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+            {
+                GriefPrevention.AddLogEntry("Timed out waiting for database writes to finish.  Some changes may be lost.");
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        if (this.connectionPool != null)
+        {
+            this.connectionPool.close();
+        }
+    }
+
+    @Override
+    protected int getSchemaVersionFromStorage()
+    {
+        try (Connection connection = this.connectionPool.getConnection();
+             PreparedStatement selectStmnt = connection.prepareStatement(SQL_SELECT_SCHEMA_VERSION))
+        {
+            ResultSet results = selectStmnt.executeQuery();
 
             //if there's nothing yet, assume 0 and add it
             if (!results.next())
@@ -670,8 +1907,9 @@ public class DatabaseDataStore extends DataStore
     @Override
     protected void updateSchemaVersionInStorage(int versionToSet)
     {
-        try (PreparedStatement deleteStmnt = this.databaseConnection.prepareStatement(SQL_DELETE_SCHEMA_VERSION);
-             PreparedStatement insertStmnt = this.databaseConnection.prepareStatement(SQL_INSERT_SCHEMA_VERSION))
+        try (Connection connection = this.connectionPool.getConnection();
+             PreparedStatement deleteStmnt = connection.prepareStatement(SQL_DELETE_SCHEMA_VERSION);
+             PreparedStatement insertStmnt = connection.prepareStatement(SQL_INSERT_SCHEMA_VERSION))
         {
             deleteStmnt.execute();
 
@@ -685,20 +1923,4 @@ public class DatabaseDataStore extends DataStore
         }
     }
 
-    /**
-     * Concats an array to a string divided with the ; sign
-     *
-     * @param input Arraylist with strings to concat
-     * @return String with all values from input array
-     */
-    private String storageStringBuilder(ArrayList<String> input)
-    {
-        String output = "";
-        for (String string : input)
-        {
-            output += string + ";";
-        }
-        return output;
-    }
-
 }
@@ -0,0 +1,102 @@
+/*
+    GriefPrevention Server Plugin for Minecraft
+    Copyright (C) 2012 Ryan Hamshire
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.ryanhamshire.GriefPrevention;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The differences between the databases GriefPrevention can store data in.
+ */
+enum DatabaseDialect
+{
+
+    MYSQL,
+    SQLITE,
+    POSTGRESQL,
+    H2,
+    /**
+     * Any other database. Only standard SQL is used.
+     */
+    GENERIC;
+
+    /**
+     * Get the dialect of a JDBC URL.
+     *
+     * @param url the JDBC URL
+     * @return the dialect
+     */
+    static @NotNull DatabaseDialect fromUrl(@NotNull String url)
+    {
+        if (url.startsWith("jdbc:mysql:") || url.startsWith("jdbc:mariadb:")) return MYSQL;
+        if (url.startsWith("jdbc:sqlite:")) return SQLITE;
+        if (url.startsWith("jdbc:postgresql:")) return POSTGRESQL;
+        if (url.startsWith("jdbc:h2:")) return H2;
+        return GENERIC;
+    }
+
+    /**
+     * Add any connection properties which make this dialect's driver faster.
+     *
+     * @param properties the connection properties
+     */
+    void configure(@NotNull Properties properties)
+    {
+        // Without this, MySQL's driver sends batched statements one at a time.
+        if (this == MYSQL) properties.put("rewriteBatchedStatements", "true");
+        // Without this, MySQL's driver ignores the fetch size and reads whole result sets into memory.
+        if (this == MYSQL) properties.put("useCursorFetch", "true");
+    }
+
+    /**
+     * Build a statement inserting a row, or updating the existing row with the same key. The parameters are the
+     * columns in order. Except in H2, the table must have a unique index on the key column.
+     *
+     * @param table the table
+     * @param columns the columns, including the key
+     * @param key the key column
+     * @return the statement, or null if the dialect has no upsert
+     */
+    @Nullable String upsert(@NotNull String table, @NotNull List<String> columns, @NotNull String key)
+    {
+        String columnList = String.join(", ", columns);
+        String placeholders = String.join(", ", Collections.nCopies(columns.size(), "?"));
+        String insert = "INSERT INTO " + table + " (" + columnList + ") VALUES (" + placeholders + ")";
+
+        return switch (this)
+        {
+            case MYSQL -> insert + " ON DUPLICATE KEY UPDATE " + updates(columns, key, column -> column + " = VALUES(" + column + ")");
+            case SQLITE, POSTGRESQL -> insert + " ON CONFLICT (" + key + ") DO UPDATE SET " + updates(columns, key, column -> column + " = excluded." + column);
+            case H2 -> "MERGE INTO " + table + " (" + columnList + ") KEY (" + key + ") VALUES (" + placeholders + ")";
+            case GENERIC -> null;
+        };
+    }
+
+    private static @NotNull String updates(@NotNull List<String> columns, @NotNull String key, @NotNull Function<String, String> update)
+    {
+        return columns.stream().filter(column -> !column.equals(key)).map(update).collect(Collectors.joining(", "));
+    }
+
+}
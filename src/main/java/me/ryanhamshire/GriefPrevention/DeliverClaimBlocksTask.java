@@ -28,6 +28,8 @@ import java.util.Collection;
 //runs every 5 minutes in the main thread, grants blocks per hour / 12 to each online player who appears to be actively playing
 class DeliverClaimBlocksTask implements Runnable
 {
+    static final String JOB_TYPE = "deliver-claim-blocks";
+
     private final Player player;
     private final GriefPrevention instance;
 
@@ -40,17 +42,17 @@ class DeliverClaimBlocksTask implements Runnable
     @Override
     public void run()
     {
-        //if no player specified, this task will create a player-specific task for each online player, scheduled one tick apart
+        //if no player specified, this task will create a player-specific job for each online player
+        //the work scheduler runs as many of those each tick as fit in its budget
         if (this.player == null)
         {
             @SuppressWarnings("unchecked")
             Collection<Player> players = (Collection<Player>) GriefPrevention.instance.getServer().getOnlinePlayers();
 
-            long i = 0;
             for (Player onlinePlayer : players)
             {
                 DeliverClaimBlocksTask newTask = new DeliverClaimBlocksTask(onlinePlayer, instance);
-                instance.getServer().getScheduler().scheduleSyncDelayedTask(instance, newTask, i++);
+                instance.getWorkScheduler().submit(JOB_TYPE, newTask);
             }
 
             return; //tasks started for each player
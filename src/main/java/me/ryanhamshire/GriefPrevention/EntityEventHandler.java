@@ -432,19 +432,22 @@ public class EntityEventHandler implements Listener
         }
 
         List<Block> removed = new ArrayList<>();
-        Claim cachedClaim = playerData != null ? playerData.lastClaim : null;
+        Claim lastClaim = null;
+        Claim[] claims = this.dataStore.getClaimsAt(world, blocks, false, false);
 
-        for (Block block : blocks)
+        for (int i = 0; i < claims.length; i++)
         {
+            Block block = blocks.get(i);
+
             // Always ignore air blocks.
             if (block.getType().isAir()) continue;
 
-            Claim claim = this.dataStore.getClaimAt(block.getLocation(), false, cachedClaim);
+            Claim claim = claims[i];
 
             // Is it in a land claim?
             if (claim == null) continue;
 
-            cachedClaim = claim;
+            lastClaim = claim;
 
             if (player == null)
             {
@@ -459,8 +462,8 @@ public class EntityEventHandler implements Listener
                 removed.add(block);
         }
 
-        if (playerData != null && cachedClaim != null)
-            playerData.lastClaim = cachedClaim;
+        if (playerData != null && lastClaim != null)
+            playerData.lastClaim = lastClaim;
 
         blocks.removeAll(removed);
     }
@@ -490,18 +493,16 @@ public class EntityEventHandler implements Listener
 
         //make a list of blocks which were allowed to explode
         List<Block> explodedBlocks = new ArrayList<>();
-        Claim cachedClaim = null;
-        for (Block block : blocks)
+        Claim[] claims = this.dataStore.getClaimsAt(world, blocks, false, false);
+        for (int i = 0; i < claims.length; i++)
         {
+            Block block = blocks.get(i);
+
             //always ignore air blocks
             if (block.getType().isAir()) continue;
 
             //is it in a land claim?
-            Claim claim = this.dataStore.getClaimAt(block.getLocation(), false, cachedClaim);
-            if (claim != null)
-            {
-                cachedClaim = claim;
-            }
+            Claim claim = claims[i];
 
             //if yes, apply claim exemptions if they should apply
             if (claim != null && (claim.areExplosivesAllowed || !GriefPrevention.instance.config_blockClaimExplosions))
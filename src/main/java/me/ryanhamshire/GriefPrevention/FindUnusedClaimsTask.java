@@ -18,62 +18,114 @@
 
 package me.ryanhamshire.GriefPrevention;
 
-import java.util.Collections;
-import java.util.Iterator;
+import org.bukkit.Bukkit;
+
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
 //FEATURE: automatically remove claims owned by inactive players which:
 //...aren't protecting much OR
 //...are a free new player claim (and the player has no other claims) OR
 //...because the player has been gone a REALLY long time, and that expiration has been configured in config.yml
 
-//runs every 1 minute in the main thread
+//runs every ClaimExpirationCheckRate seconds in the main thread
+//owners come from the data store's index of when claim owners were last seen, sorted by time, so each check only looks at
+//owners who've been gone long enough for their claims to expire rather than working through every owner in turn
+//each check looks at a limited number of them, and the next carries on where it stopped
+//those owners' claims are snapshotted here, checked against secondary storage on the data store's reader thread,
+//and deleted back on the main thread only if nothing changed in between
 class FindUnusedClaimsTask implements Runnable
 {
-    private List<UUID> claimOwnerUUIDs;
-    private Iterator<UUID> claimOwnerIterator;
+    static final String JOB_TYPE = "claim-expiration-check";
 
-    FindUnusedClaimsTask()
-    {
-        refreshUUIDs();
-    }
+    //checking whether an owner is exempt needs their data from secondary storage, so exempt owners are skipped for a while
+    static final long EXEMPTION_RECHECK_MILLIS = TimeUnit.HOURS.toMillis(6);
+    //most owners looked at in one check, so a backlog of inactive owners is spread over several checks
+    static final int MAX_OWNERS_PER_CHECK = 100;
+
+    //owners found exempt, and when to check them again.  only used on the main thread
+    private final Map<UUID, Long> exemptUntil = new HashMap<>();
+
+    //whether the last check's owners are still being checked or their claims deleted
+    private boolean checking = false;
+    //owners from the last check whose claims are still waiting to be deleted
+    private int deletesWaiting = 0;
+    //the last owner looked at, if the last check stopped at its limit, or null to start again with the longest gone
+    private PlayerActivityIndex.Entry resumeAfter = null;
 
     @Override
     public void run()
     {
-        //don't do anything when there are no claims
-        if (claimOwnerUUIDs.isEmpty()) return;
+        //let the last check finish first
+        if (this.checking) return;
+
+        //don't do anything when expiration is turned off
+        long chestClaimCutoff = CleanupUnusedClaimTask.getCutoff(GriefPrevention.instance.config_claims_chestClaimExpirationDays);
+        long allClaimsCutoff = CleanupUnusedClaimTask.getCutoff(GriefPrevention.instance.config_claims_expirationDays);
+        long latestCutoff = Math.max(chestClaimCutoff, allClaimsCutoff);
+        if (latestCutoff == Long.MIN_VALUE) return;
 
-        //wrap search around to beginning
-        if (!claimOwnerIterator.hasNext())
+        long now = System.currentTimeMillis();
+        this.exemptUntil.values().removeIf(until -> until <= now);
+
+        DataStore dataStore = GriefPrevention.instance.dataStore;
+        List<PlayerActivityIndex.Entry> inactiveOwners = dataStore.playerActivity.seenBefore(latestCutoff, this.resumeAfter, MAX_OWNERS_PER_CHECK);
+        this.resumeAfter = inactiveOwners.size() < MAX_OWNERS_PER_CHECK ? null : inactiveOwners.get(inactiveOwners.size() - 1);
+
+        List<ClaimOwnership> expiredOwners = new ArrayList<>();
+        for (PlayerActivityIndex.Entry inactiveOwner : inactiveOwners)
         {
-            refreshUUIDs();
-            return;
+            UUID ownerID = inactiveOwner.playerID();
+            List<Claim> claims = dataStore.getClaimsOwnedBy(ownerID);
+            if (claims.isEmpty() || this.exemptUntil.containsKey(ownerID)) continue;
+
+            long lastSeen = inactiveOwner.lastSeen();
+            CleanupUnusedClaimTask.Expiration expiration = CleanupUnusedClaimTask.getExpiration(claims, lastSeen, chestClaimCutoff, allClaimsCutoff);
+            if (expiration == CleanupUnusedClaimTask.Expiration.NONE) continue;
+
+            //expiration code uses last logout timestamp to decide whether to expire claims
+            //don't expire claims for online players
+            if (Bukkit.getPlayer(ownerID) != null) continue;
+
+            expiredOwners.add(ClaimOwnership.of(ownerID, lastSeen, claims, expiration));
         }
 
-        GriefPrevention.instance.getServer().getScheduler().runTaskAsynchronously(GriefPrevention.instance, new CleanupUnusedClaimPreTask(claimOwnerIterator.next()));
+        if (expiredOwners.isEmpty()) return;
+
+        GriefPrevention.AddLogEntry(expiredOwners.size() + " claim owners have been gone long enough for their claims to expire.  Checking for exemptions.", CustomLogEntryTypes.Debug, true);
+
+        //exemptions are checked in the background, then claims are deleted back on the main thread
+        this.checking = true;
+        dataStore.getStorageReadExecutor().execute(new CleanupUnusedClaimPreTask(this, List.copyOf(expiredOwners)));
     }
 
-    public void refreshUUIDs()
+    //called on the main thread with the results of checking owners for exemptions
+    void checkedExemptions(List<ClaimOwnership> expiredOwners, List<UUID> exemptOwners)
     {
-        // Fetch owner UUIDs from list of claims
-        claimOwnerUUIDs = GriefPrevention.instance.dataStore.claims.stream().map(claim -> claim.ownerID)
-                .distinct().filter(Objects::nonNull).collect(Collectors.toList());
-
-        if (!claimOwnerUUIDs.isEmpty())
+        long recheck = System.currentTimeMillis() + EXEMPTION_RECHECK_MILLIS;
+        for (UUID ownerID : exemptOwners)
         {
-            // Randomize order
-            Collections.shuffle(claimOwnerUUIDs);
+            this.exemptUntil.put(ownerID, recheck);
         }
 
-        GriefPrevention.AddLogEntry("The following UUIDs own a claim and will be checked for inactivity in the following order:", CustomLogEntryTypes.Debug, true);
-
-        for (UUID uuid : claimOwnerUUIDs)
-            GriefPrevention.AddLogEntry(uuid.toString(), CustomLogEntryTypes.Debug, true);
+        if (expiredOwners.isEmpty())
+        {
+            this.checking = false;
+            return;
+        }
 
-        claimOwnerIterator = claimOwnerUUIDs.iterator();
+        //each owner is a job for the work scheduler, which deletes as many as fit in each tick
+        this.deletesWaiting = expiredOwners.size();
+        for (ClaimOwnership owner : expiredOwners)
+        {
+            GriefPrevention.instance.getWorkScheduler().submit(CleanupUnusedClaimTask.JOB_TYPE, new CleanupUnusedClaimTask(owner, () ->
+            {
+                if (--this.deletesWaiting == 0) this.checking = false;
+            }));
+        }
     }
 }
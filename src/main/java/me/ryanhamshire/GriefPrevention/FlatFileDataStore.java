@@ -34,22 +34,36 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Date;
-import java.util.Iterator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 
 //manages data stored in the file system
 public class FlatFileDataStore extends DataStore
 {
-    private final static String claimDataFolderPath = dataLayerFolderPath + File.separator + "ClaimData";
-    private final static String nextClaimIdFilePath = claimDataFolderPath + File.separator + "_nextClaimID";
-    private final static String schemaVersionFilePath = dataLayerFolderPath + File.separator + "_schemaVersion";
+    final static String claimDataFolderPath = dataLayerFolderPath + File.separator + "ClaimData";
+    final static String nextClaimIdFilePath = claimDataFolderPath + File.separator + "_nextClaimID";
+    final static String schemaVersionFilePath = dataLayerFolderPath + File.separator + "_schemaVersion";
+    final static String playerRecordsFolderPath = playerDataFolderPath + File.separator + "_records";
+    private final static String groupBonusFilePath = playerDataFolderPath + File.separator + "_groupBonusBlocks";
+
+    //accrued and bonus claim blocks for every player, in a single indexed file
+    private PlayerRecordStore playerRecords;
 
     static boolean hasData()
     {
@@ -84,71 +98,11 @@ public class FlatFileDataStore extends DataStore
             this.setSchemaVersion(DataStore.latestSchemaVersion);
         }
 
-        //load group data into memory
-        File[] files = playerDataFolder.listFiles();
-        for (File file : files)
-        {
-            if (!file.isFile()) continue;  //avoids folders
-
-            //all group data files start with a dollar sign.  ignoring the rest, which are player data files.
-            if (!file.getName().startsWith("$")) continue;
-
-            String groupName = file.getName().substring(1);
-            if (groupName == null || groupName.isEmpty()) continue;  //defensive coding, avoid unlikely cases
-
-            BufferedReader inStream = null;
-            try
-            {
-                inStream = new BufferedReader(new FileReader(file.getAbsolutePath()));
-                String line = inStream.readLine();
-
-                int groupBonusBlocks = Integer.parseInt(line);
-
-                this.permissionToBonusBlocksMap.put(groupName, groupBonusBlocks);
-            }
-            catch (Exception e)
-            {
-                StringWriter errors = new StringWriter();
-                e.printStackTrace(new PrintWriter(errors));
-                GriefPrevention.AddLogEntry(errors.toString(), CustomLogEntryTypes.Exception);
-            }
-
-            try
-            {
-                if (inStream != null) inStream.close();
-            }
-            catch (IOException exception) {}
-        }
-
-        //load next claim number from file
-        File nextClaimIdFile = new File(nextClaimIdFilePath);
-        if (nextClaimIdFile.exists())
-        {
-            BufferedReader inStream = null;
-            try
-            {
-                inStream = new BufferedReader(new FileReader(nextClaimIdFile.getAbsolutePath()));
-
-                //read the id
-                String line = inStream.readLine();
-
-                //try to parse into a long value
-                this.nextClaimID = Long.parseLong(line);
-            }
-            catch (Exception e) { }
-
-            try
-            {
-                if (inStream != null) inStream.close();
-            }
-            catch (IOException exception) {}
-        }
-
         //if converting up from schema version 0, rename player data files using UUIDs instead of player names
-        //get a list of all the files in the claims data folder
+        //this comes before player data is loaded, which only reads files named by UUID
         if (this.getSchemaVersion() == 0)
         {
-            files = playerDataFolder.listFiles();
+            File[] files = playerDataFolder.listFiles();
             ArrayList<String> namesToConvert = new ArrayList<>();
             for (File playerFile : files)
             {
@@ -199,9 +153,57 @@ public class FlatFileDataStore extends DataStore
             }
         }
 
+        //load player and group data, moving it out of the old one-file-per-player layout the first time
+        Path playerRecordsFolder = Paths.get(playerRecordsFolderPath);
+        if (!newDataStore && !PlayerRecordStore.exists(playerRecordsFolder))
+        {
+            this.migrateLegacyPlayerData(playerDataFolder, playerRecordsFolder);
+        }
+        this.playerRecords = PlayerRecordStore.open(playerRecordsFolder);
+        this.permissionToBonusBlocksMap.putAll(readGroupBonusBlocks(GriefPrevention::AddLogEntry));
+
+        //load next claim number from file
+        File nextClaimIdFile = new File(nextClaimIdFilePath);
+        if (nextClaimIdFile.exists())
+        {
+            BufferedReader inStream = null;
+            try
+            {
+                inStream = new BufferedReader(new FileReader(nextClaimIdFile.getAbsolutePath()));
+
+                //read the id
+                String line = inStream.readLine();
+
+                //try to parse into a long value
+                this.nextClaimID = Long.parseLong(line);
+            }
+            catch (Exception e) { }
+
+            try
+            {
+                if (inStream != null) inStream.close();
+            }
+            catch (IOException exception) {}
+        }
+
         //load claims data into memory
+        this.loadClaims(claimDataFolder);
+
+        //only claim owners are needed for claim expiration, and other players' times stay in their records
+        for (UUID ownerID : this.getClaimOwnerIDs())
+        {
+            PlayerRecordStore.PlayerRecord record = this.playerRecords.get(ownerID);
+            if (record != null) this.playerActivity.record(ownerID, record.lastSeen());
+        }
+
+        super.initialize();
+    }
+
+    //loads claims data into memory from the claims data folder
+    void loadClaims(File claimDataFolder) throws Exception
+    {
         //get a list of all the files in the claims data folder
-        files = claimDataFolder.listFiles();
+        File[] files = claimDataFolder.listFiles();
 
         if (this.getSchemaVersion() <= 1)
         {
@@ -211,8 +213,6 @@ public class FlatFileDataStore extends DataStore
         {
             this.loadClaimData(files);
         }
-
-        super.initialize();
     }
 
     void loadClaimData_Legacy(File[] files) throws Exception
@@ -354,8 +354,9 @@ public class FlatFileDataStore extends DataStore
 
                             subdivision.modifiedDate = new Date(files[i].lastModified());
                             subdivision.parent = topLevelClaim;
-                            topLevelClaim.children.add(subdivision);
                             subdivision.inDataStore = true;
+                            topLevelClaim.children.add(subdivision);
+                            topLevelClaim.publishChildren();
                         }
 
                         //move up to the first line in the next subdivision
@@ -392,9 +393,17 @@ public class FlatFileDataStore extends DataStore
         }
     }
 
+    //a claim file read and parsed by a loader thread, or the reason it couldn't be
+    private record LoadedClaim(File file, long claimID, Claim claim, long parentID, Exception error)
+    {
+    }
+
     void loadClaimData(File[] files) throws Exception
     {
-        ConcurrentHashMap<Claim, Long> orphans = new ConcurrentHashMap<>();
+        //find claim files and their IDs.  renaming files is done here, before any parsing starts
+        long phaseStart = System.nanoTime();
+        ArrayList<File> claimFiles = new ArrayList<>();
+        ArrayList<Long> claimIDs = new ArrayList<>();
         for (int i = 0; i < files.length; i++)
         {
             if (files[i].isFile())  //avoids folders
@@ -428,59 +437,133 @@ public class FlatFileDataStore extends DataStore
                     files[i] = newFile;
                 }
 
-                try
+                claimFiles.add(files[i]);
+                claimIDs.add(claimID);
+            }
+        }
+        long listMillis = elapsedMillis(phaseStart);
+
+        //read and parse claim files in parallel.  each loader thread works through its own share of the files
+        phaseStart = System.nanoTime();
+        List<World> validWorlds = Bukkit.getServer().getWorlds();
+        LoadedClaim[] loaded = new LoadedClaim[claimFiles.size()];
+        int threads = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), loaded.length / 256));
+        ExecutorService loaders = Executors.newFixedThreadPool(threads, runnable ->
+        {
+            Thread thread = new Thread(runnable, "GriefPrevention Claim Loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try
+        {
+            ArrayList<Callable<Void>> tasks = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++)
+            {
+                int first = thread;
+                tasks.add(() ->
                 {
-                    ArrayList<Long> out_parentID = new ArrayList<>();  //hacky output parameter
-                    Claim claim = this.loadClaim(files[i], out_parentID, claimID);
-                    if (out_parentID.isEmpty() || out_parentID.get(0) == -1)
+                    for (int i = first; i < loaded.length; i += threads)
                     {
-                        this.addClaim(claim, false);
+                        loaded[i] = this.loadClaim(claimFiles.get(i), claimIDs.get(i), validWorlds);
                     }
-                    else
-                    {
-                        orphans.put(claim, out_parentID.get(0));
-                    }
-                }
+                    return null;
+                });
+            }
 
-                //if there's any problem with the file's content, log an error message and skip it
-                catch (Exception e)
+            for (Future<Void> result : loaders.invokeAll(tasks))
+            {
+                result.get();
+            }
+        }
+        finally
+        {
+            loaders.shutdownNow();
+        }
+        long parseMillis = elapsedMillis(phaseStart);
+
+        //add top level claims, then link children to parents.  claims are handled in ID order so that the result
+        //doesn't depend on the order files were listed or finished parsing
+        phaseStart = System.nanoTime();
+        Arrays.sort(loaded, Comparator.comparingLong(LoadedClaim::claimID));
+        ArrayList<LoadedClaim> orphans = new ArrayList<>();
+        int failed = 0;
+        for (LoadedClaim loadedClaim : loaded)
+        {
+            //if there's any problem with the file's content, log an error message and skip it
+            if (loadedClaim.error() != null)
+            {
+                failed++;
+                Exception e = loadedClaim.error();
+                if (e.getMessage() != null && e.getMessage().contains("World not found"))
                 {
-                    if (e.getMessage() != null && e.getMessage().contains("World not found"))
-                    {
-                        GriefPrevention.AddLogEntry("Failed to load a claim (ID:" + claimID + ") because its world isn't loaded (yet?).  If this is not expected, delete this claim.");
-                    }
-                    else
-                    {
-                        StringWriter errors = new StringWriter();
-                        e.printStackTrace(new PrintWriter(errors));
-                        GriefPrevention.AddLogEntry(files[i].getName() + " " + errors, CustomLogEntryTypes.Exception);
-                    }
+                    GriefPrevention.AddLogEntry("Failed to load a claim (ID:" + loadedClaim.claimID() + ") because its world isn't loaded (yet?).  If this is not expected, delete this claim.");
+                }
+                else
+                {
+                    StringWriter errors = new StringWriter();
+                    e.printStackTrace(new PrintWriter(errors));
+                    GriefPrevention.AddLogEntry(loadedClaim.file().getName() + " " + errors, CustomLogEntryTypes.Exception);
                 }
+                continue;
+            }
+
+            if (loadedClaim.parentID() == -1)
+            {
+                this.addClaim(loadedClaim.claim(), false);
+            }
+            else
+            {
+                orphans.add(loadedClaim);
             }
         }
 
-        //link children to parents
-        for (Claim child : orphans.keySet())
+        int unlinked = 0;
+        for (LoadedClaim orphan : orphans)
         {
-            Claim parent = this.getClaim(orphans.get(child));
+            Claim parent = this.getClaim(orphan.parentID());
             if (parent != null)
             {
+                Claim child = orphan.claim();
                 child.parent = parent;
                 this.addClaim(child, false);
             }
+            else
+            {
+                unlinked++;
+            }
         }
+        long indexMillis = elapsedMillis(phaseStart);
+
+        GriefPrevention.AddLogEntry("Loaded " + (loaded.length - failed - unlinked) + " claims from " + loaded.length + " files: "
+                + "listing took " + listMillis + "ms, parsing took " + parseMillis + "ms on " + threads + " threads, "
+                + "indexing took " + indexMillis + "ms.");
+        if (unlinked > 0)
+        {
+            GriefPrevention.AddLogEntry("Skipped " + unlinked + " subdivisions whose parent claims could not be loaded.");
+        }
+    }
+
+    private static long elapsedMillis(long startNanos)
+    {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
     }
 
-    Claim loadClaim(File file, ArrayList<Long> out_parentID, long claimID) throws IOException, InvalidConfigurationException, Exception
+    //reads and parses a claim file, capturing any problem so it can be reported in order afterward
+    //safe to call from any thread
+    private LoadedClaim loadClaim(File file, long claimID, List<World> validWorlds)
     {
-        List<String> lines = Files.readLines(file, StandardCharsets.UTF_8);
-        StringBuilder builder = new StringBuilder();
-        for (String line : lines)
+        try
         {
-            builder.append(line).append('\n');
+            String input = java.nio.file.Files.readString(file.toPath(), StandardCharsets.UTF_8);
+            ArrayList<Long> out_parentID = new ArrayList<>();  //hacky output parameter
+            Claim claim = this.loadClaim(input, out_parentID, file.lastModified(), claimID, validWorlds);
+            long parentID = out_parentID.isEmpty() ? -1 : out_parentID.get(0);
+            return new LoadedClaim(file, claimID, claim, parentID, null);
+        }
+        catch (Exception e)
+        {
+            return new LoadedClaim(file, claimID, null, -1, e);
         }
-
-        return this.loadClaim(builder.toString(), out_parentID, file.lastModified(), claimID, Bukkit.getServer().getWorlds());
     }
 
     Claim loadClaim(String input, ArrayList<Long> out_parentID, long lastModifiedDate, long claimID, List<World> validWorlds) throws InvalidConfigurationException, Exception
@@ -529,6 +612,50 @@ public class FlatFileDataStore extends DataStore
         return claim;
     }
 
+    //reads a claim file without needing its world to be loaded, for migrating claims to the database
+    //unlike loadClaim(), an owner which isn't a UUID quietly makes the claim administrative
+    static ClaimRecord readClaimRecord(String input, long claimID) throws Exception
+    {
+        YamlConfiguration yaml = new YamlConfiguration();
+        yaml.loadFromString(input);
+
+        //boundaries, as world name, X, Y, and Z
+        String[] lesser = splitLocation(yaml.getString("Lesser Boundary Corner"));
+        String[] greater = splitLocation(yaml.getString("Greater Boundary Corner"));
+
+        //owner
+        UUID ownerID = null;
+        String ownerIdentifier = yaml.getString("Owner", "");
+        if (!ownerIdentifier.isEmpty())
+        {
+            try
+            {
+                ownerID = UUID.fromString(ownerIdentifier);
+            }
+            catch (IllegalArgumentException ignored) { }
+        }
+
+        ClaimRecord record = new ClaimRecord(claimID, ownerID, lesser[0],
+                Integer.parseInt(lesser[1]), Integer.parseInt(lesser[2]), Integer.parseInt(lesser[3]),
+                Integer.parseInt(greater[1]), Integer.parseInt(greater[2]), Integer.parseInt(greater[3]),
+                yaml.getBoolean("inheritNothing"), yaml.getLong("Parent Claim ID", ClaimRecord.NO_PARENT));
+        yaml.getStringList("Builders").forEach(subject -> record.addTrust(subject, ClaimRecord.BUILD));
+        yaml.getStringList("Containers").forEach(subject -> record.addTrust(subject, ClaimRecord.CONTAINER));
+        yaml.getStringList("Accessors").forEach(subject -> record.addTrust(subject, ClaimRecord.ACCESS));
+        yaml.getStringList("Managers").forEach(subject -> record.addTrust(subject, ClaimRecord.MANAGE));
+        return record;
+    }
+
+    private static String[] splitLocation(String string) throws Exception
+    {
+        String[] elements = string == null ? new String[0] : string.split(";");
+        if (elements.length < 4)
+        {
+            throw new Exception("Expected four distinct parts to the location string: \"" + string + "\"");
+        }
+        return elements;
+    }
+
     String getYamlForClaim(Claim claim)
     {
         YamlConfiguration yaml = new YamlConfiguration();
@@ -566,8 +693,9 @@ public class FlatFileDataStore extends DataStore
         return yaml.saveToString();
     }
 
+    //not synchronized, so the claim writer doesn't hold the data store lock while writing.  it's given a copy of the claim
     @Override
-    synchronized void writeClaimToStorage(Claim claim)
+    void writeClaimToStorage(Claim claim)
     {
         String claimID = String.valueOf(claim.id);
 
@@ -604,90 +732,138 @@ public class FlatFileDataStore extends DataStore
         }
     }
 
+    //the player record store has its own lock, so reads from background threads don't wait on the data store
     @Override
-    synchronized PlayerData getPlayerDataFromStorage(UUID playerID)
+    PlayerData getPlayerDataFromStorage(UUID playerID)
     {
-        File playerFile = new File(playerDataFolderPath + File.separator + playerID.toString());
-
         PlayerData playerData = new PlayerData();
         playerData.playerID = playerID;
 
-        //if it exists as a file, read the file
-        if (playerFile.exists())
+        //if there's a record, load it.  otherwise defaults are filled in when the data are first used
+        PlayerRecordStore.PlayerRecord record = this.playerRecords.get(playerID);
+        if (record != null)
         {
-            boolean needRetry = false;
-            int retriesRemaining = 5;
-            Exception latestException = null;
-            do
+            playerData.setAccruedClaimBlocks(record.accruedClaimBlocks());
+            playerData.setBonusClaimBlocks(record.bonusClaimBlocks());
+        }
+
+        return playerData;
+    }
+
+    //moves player and group data from one file per player into the player record store.  the old files are left in place
+    private void migrateLegacyPlayerData(File playerDataFolder, Path playerRecordsFolder) throws IOException
+    {
+        GriefPrevention.AddLogEntry("Please wait.  Moving player data into a single file.");
+        long start = System.currentTimeMillis();
+
+        File[] files = playerDataFolder.listFiles();
+        if (files == null) files = new File[0];
+
+        int players = 0;
+        try (PlayerRecordStore store = PlayerRecordStore.create(playerRecordsFolder, files.length))
+        {
+            for (File file : files)
             {
-                try
+                if (!file.isFile()) continue;  //avoids folders
+                String name = file.getName();
+
+                //all group data files start with a dollar sign
+                if (name.startsWith("$"))
                 {
-                    needRetry = false;
-
-                    //read the file content and immediately close it
-                    List<String> lines = Files.readLines(playerFile, StandardCharsets.UTF_8);
-                    Iterator<String> iterator = lines.iterator();
-
-
-                    iterator.next();
-                    //first line is last login timestamp //RoboMWM - not using this anymore
-//
-//    				//convert that to a date and store it
-//    				DateFormat dateFormat = new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss");
-//    				try
-//    				{
-//    					playerData.setLastLogin(dateFormat.parse(lastLoginTimestampString));
-//    				}
-//    				catch(ParseException parseException)
-//    				{
-//    					GriefPrevention.AddLogEntry("Unable to load last login for \"" + playerFile.getName() + "\".");
-//    					playerData.setLastLogin(null);
-//    				}
-
-                    //second line is accrued claim blocks
-                    String accruedBlocksString = iterator.next();
-
-                    //convert that to a number and store it
-                    playerData.setAccruedClaimBlocks(Integer.parseInt(accruedBlocksString));
-
-                    //third line is any bonus claim blocks granted by administrators
-                    String bonusBlocksString = iterator.next();
-
-                    //convert that to a number and store it
-                    playerData.setBonusClaimBlocks(Integer.parseInt(bonusBlocksString));
-
-                    //fourth line is a double-semicolon-delimited list of claims, which is currently ignored
-                    //String claimsString = inStream.readLine();
-                    //iterator.next();
+                    this.loadLegacyGroupBonusBlocks(file, name.substring(1));
+                    continue;
                 }
 
-                //if there's any problem with the file's content, retry up to 5 times with 5 milliseconds between
-                catch (Exception e)
+                //ignore lists stay in their own files
+                if (name.startsWith("_") || name.endsWith(".ignore")) continue;
+
+                UUID playerID;
+                try
                 {
-                    latestException = e;
-                    needRetry = true;
-                    retriesRemaining--;
+                    playerID = UUID.fromString(name);
+                }
+                catch (IllegalArgumentException e)
+                {
+                    continue;
                 }
 
                 try
                 {
-                    if (needRetry) Thread.sleep(5);
+                    //first line is last login timestamp, which isn't used.  second is accrued claim blocks, third is bonus claim blocks
+                    List<String> lines = Files.readLines(file, StandardCharsets.UTF_8);
+                    store.put(playerID, Integer.parseInt(lines.get(1)), Integer.parseInt(lines.get(2)));
+                    players++;
+                }
+                catch (IndexOutOfBoundsException | NumberFormatException e)
+                {
+                    GriefPrevention.AddLogEntry("Skipped unreadable player data file " + file.getAbsolutePath() + ": " + e.getMessage(), CustomLogEntryTypes.Debug, false);
                 }
-                catch (InterruptedException exception) {}
+            }
+
+            //groups are saved first, so a complete player record store always has its group data alongside
+            this.writeGroupBonusBlocks();
+            store.commit();
+        }
+
+        GriefPrevention.AddLogEntry("Moved data for " + players + " players and " + this.permissionToBonusBlocksMap.size() + " groups in " + (System.currentTimeMillis() - start) + "ms.");
+        GriefPrevention.AddLogEntry("The old player data files in " + playerDataFolder.getPath() + " are no longer used.  Keep the .ignore files, but the rest may be deleted.");
+    }
+
+    private void loadLegacyGroupBonusBlocks(File file, String groupName)
+    {
+        if (groupName.isEmpty()) return;  //defensive coding, avoid unlikely cases
+
+        try
+        {
+            String line = Files.asCharSource(file, StandardCharsets.UTF_8).readFirstLine();
+            this.permissionToBonusBlocksMap.put(groupName, Integer.parseInt(line));
+        }
+        catch (Exception e)
+        {
+            StringWriter errors = new StringWriter();
+            e.printStackTrace(new PrintWriter(errors));
+            GriefPrevention.AddLogEntry(errors.toString(), CustomLogEntryTypes.Exception);
+        }
+    }
 
-            } while (needRetry && retriesRemaining >= 0);
+    //group bonus blocks are stored one group per line, as groupName=blocks
+    static Map<String, Integer> readGroupBonusBlocks(Consumer<String> log) throws IOException
+    {
+        Map<String, Integer> groupBonusBlocks = new HashMap<>();
+        File groupBonusFile = new File(groupBonusFilePath);
+        if (!groupBonusFile.exists()) return groupBonusBlocks;
+
+        for (String line : Files.readLines(groupBonusFile, StandardCharsets.UTF_8))
+        {
+            //group names may contain equals signs, but the block count never does
+            int separator = line.lastIndexOf('=');
+            if (separator <= 0) continue;
 
-            //if last attempt failed, log information about the problem
-            if (needRetry)
+            try
             {
-                StringWriter errors = new StringWriter();
-                latestException.printStackTrace(new PrintWriter(errors));
-                GriefPrevention.AddLogEntry("Failed to load PlayerData for " + playerID + ". This usually occurs when your server runs out of storage space, causing any file saves to corrupt. Fix or delete the file in GriefPrevetionData/PlayerData/" + playerID, CustomLogEntryTypes.Debug, false);
-                GriefPrevention.AddLogEntry(playerID + " " + errors, CustomLogEntryTypes.Exception);
+                groupBonusBlocks.put(line.substring(0, separator), Integer.parseInt(line.substring(separator + 1).trim()));
+            }
+            catch (NumberFormatException e)
+            {
+                log.accept("Skipped unreadable group bonus line \"" + line + "\" in " + groupBonusFile.getAbsolutePath());
             }
         }
+        return groupBonusBlocks;
+    }
 
-        return playerData;
+    //rewrites the whole group bonus file, replacing the old one only once the new one is complete
+    private void writeGroupBonusBlocks() throws IOException
+    {
+        StringBuilder fileContent = new StringBuilder();
+        for (Map.Entry<String, Integer> groupEntry : this.permissionToBonusBlocksMap.entrySet())
+        {
+            fileContent.append(groupEntry.getKey()).append('=').append(groupEntry.getValue()).append('\n');
+        }
+
+        Path groupBonusFile = Paths.get(groupBonusFilePath);
+        Path tempFile = groupBonusFile.resolveSibling(groupBonusFile.getFileName() + ".tmp");
+        java.nio.file.Files.write(tempFile, fileContent.toString().getBytes(StandardCharsets.UTF_8));
+        java.nio.file.Files.move(tempFile, groupBonusFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
     }
 
     //saves changes to player data.  MUST be called after you're done making changes, otherwise a reload will lose them
@@ -697,29 +873,9 @@ public class FlatFileDataStore extends DataStore
         //never save data for the "administrative" account.  null for claim owner ID indicates administrative account
         if (playerID == null) return;
 
-        StringBuilder fileContent = new StringBuilder();
         try
         {
-            //first line is last login timestamp //RoboMWM - no longer storing/using
-            //if(playerData.getLastLogin() == null) playerData.setLastLogin(new Date());
-            //DateFormat dateFormat = new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss");
-            //fileContent.append(dateFormat.format(playerData.getLastLogin()));
-            fileContent.append("\n");
-
-            //second line is accrued claim blocks
-            fileContent.append(playerData.getAccruedClaimBlocks());
-            fileContent.append("\n");
-
-            //third line is bonus claim blocks
-            fileContent.append(playerData.getBonusClaimBlocks());
-            fileContent.append("\n");
-
-            //fourth line is blank
-            fileContent.append("\n");
-
-            //write data to file
-            File playerDataFile = new File(playerDataFolderPath + File.separator + playerID);
-            Files.write(fileContent.toString().getBytes(StandardCharsets.UTF_8), playerDataFile);
+            this.playerRecords.put(playerID, playerData.getAccruedClaimBlocks(), playerData.getBonusClaimBlocks());
         }
 
         //if any problem, log it
@@ -731,11 +887,24 @@ public class FlatFileDataStore extends DataStore
     }
 
     @Override
-    synchronized void incrementNextClaimID()
+    void writeLastSeen(UUID playerID, long lastSeen)
     {
-        //increment in memory
-        this.nextClaimID++;
+        try
+        {
+            this.playerRecords.putLastSeen(playerID, lastSeen);
+        }
+
+        //if any problem, log it
+        catch (Exception e)
+        {
+            GriefPrevention.AddLogEntry("GriefPrevention: Unexpected exception saving last seen time for player \"" + playerID + "\": " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
 
+    @Override
+    synchronized void writeNextClaimID(long nextID)
+    {
         BufferedWriter outStream = null;
 
         try
@@ -745,7 +914,7 @@ public class FlatFileDataStore extends DataStore
             nextClaimIdFile.createNewFile();
             outStream = new BufferedWriter(new FileWriter(nextClaimIdFile));
 
-            outStream.write(String.valueOf(this.nextClaimID));
+            outStream.write(String.valueOf(nextID));
         }
 
         //if any problem, log it
@@ -768,17 +937,10 @@ public class FlatFileDataStore extends DataStore
     synchronized void saveGroupBonusBlocks(String groupName, int currentValue)
     {
         //write changes to file to ensure they don't get lost
-        BufferedWriter outStream = null;
         try
         {
-            //open the group's file
-            File groupDataFile = new File(playerDataFolderPath + File.separator + "$" + groupName);
-            groupDataFile.createNewFile();
-            outStream = new BufferedWriter(new FileWriter(groupDataFile));
-
-            //first line is number of bonus blocks
-            outStream.write(String.valueOf(currentValue));
-            outStream.newLine();
+            this.permissionToBonusBlocksMap.put(groupName, currentValue);
+            this.writeGroupBonusBlocks();
         }
 
         //if any problem, log it
@@ -786,63 +948,54 @@ public class FlatFileDataStore extends DataStore
         {
             GriefPrevention.AddLogEntry("Unexpected exception saving data for group \"" + groupName + "\": " + e.getMessage());
         }
-
-        try
-        {
-            //close the file
-            if (outStream != null)
-            {
-                outStream.close();
-            }
-        }
-        catch (IOException exception) {}
     }
 
-    synchronized void migrateData(DatabaseDataStore databaseStore)
+    synchronized void migrateData(DatabaseDataStore databaseStore) throws Exception
     {
-        //migrate claims
-        for (Claim claim : this.claims)
+        //claims are copied from memory, where they're already parsed.  players are copied from the player record store
+        List<FlatFileMigration.ClaimSource> claimSources = new ArrayList<>();
+        for (Claim claim : this.claims.values())
         {
-            databaseStore.addClaim(claim, true);
+            claimSources.add(new FlatFileMigration.ClaimSource(claim.id, () -> ClaimRecord.of(claim)));
             for (Claim child : claim.children)
             {
-                databaseStore.addClaim(child, true);
+                claimSources.add(new FlatFileMigration.ClaimSource(child.id, () -> ClaimRecord.of(child)));
             }
         }
 
-        //migrate groups
-        for (Map.Entry<String, Integer> groupEntry : this.permissionToBonusBlocksMap.entrySet())
-        {
-            databaseStore.saveGroupBonusBlocks(groupEntry.getKey(), groupEntry.getValue());
-        }
+        Map<UUID, PlayerRecordStore.PlayerRecord> players = new HashMap<>();
+        this.playerRecords.forEach(players::put);
 
-        //migrate players
-        File playerDataFolder = new File(playerDataFolderPath);
-        File[] files = playerDataFolder.listFiles();
-        for (File file : files)
+        Path checkpointFile = Paths.get(dataLayerFolderPath, FlatFileMigration.CHECKPOINT_FILE_NAME);
+        databaseStore.createMigration(checkpointFile, GriefPrevention::AddLogEntry).migrate(claimSources, players,
+                this.permissionToBonusBlocksMap, this.nextClaimID, playerID ->
+                {
+                    PlayerRecordStore.PlayerRecord record = players.get(playerID);
+                    long lastSeen = record != null ? record.lastSeen() : PlayerActivityIndex.UNKNOWN;
+                    return lastSeen != PlayerActivityIndex.UNKNOWN ? lastSeen : Bukkit.getOfflinePlayer(playerID).getLastPlayed();
+                });
+
+        //the rows were written around the database store, so bring its memory up to date
+        databaseStore.reloadWorlds();
+        for (Claim claim : this.claims.values())
         {
-            if (!file.isFile()) continue;  //avoids folders
-            if (file.isHidden()) continue; //avoid hidden files, which are likely not created by GriefPrevention
-
-            //all group data files start with a dollar sign.  ignoring those, already handled above
-            if (file.getName().startsWith("$")) continue;
-
-            //ignore special files
-            if (file.getName().startsWith("_")) continue;
-            if (file.getName().endsWith(".ignore")) continue;
-
-            UUID playerID = UUID.fromString(file.getName());
-            databaseStore.savePlayerData(playerID, this.getPlayerData(playerID));
-            this.clearCachedPlayerData(playerID);
+            databaseStore.addClaim(claim, false);
         }
-
-        //migrate next claim ID
+        databaseStore.permissionToBonusBlocksMap.putAll(this.permissionToBonusBlocksMap);
+        players.forEach((playerID, record) -> databaseStore.playerActivity.record(playerID, record.lastSeen()));
         if (this.nextClaimID > databaseStore.nextClaimID)
         {
-            databaseStore.setNextClaimID(this.nextClaimID);
+            databaseStore.nextClaimID = this.nextClaimID;
         }
 
-        //rename player and claim data folders so the migration won't run again
+        //close the player record store so its folder can be renamed
+        this.close();
+        backUpData(GriefPrevention::AddLogEntry);
+    }
+
+    //renames player and claim data folders so the migration won't run again
+    static void backUpData(Consumer<String> log)
+    {
         int i = 0;
         File claimsBackupFolder;
         File playersBackupFolder;
@@ -864,13 +1017,26 @@ public class FlatFileDataStore extends DataStore
         claimsFolder.renameTo(claimsBackupFolder);
         playersFolder.renameTo(playersBackupFolder);
 
-        GriefPrevention.AddLogEntry("Backed your file system data up to " + claimsBackupFolder.getName() + " and " + playersBackupFolder.getName() + ".");
-        GriefPrevention.AddLogEntry("If your migration encountered any problems, you can restore those data with a quick copy/paste.");
-        GriefPrevention.AddLogEntry("When you're satisfied that all your data have been safely migrated, consider deleting those folders.");
+        log.accept("Backed your file system data up to " + claimsBackupFolder.getName() + " and " + playersBackupFolder.getName() + ".");
+        log.accept("If your migration encountered any problems, you can restore those data with a quick copy/paste.");
+        log.accept("When you're satisfied that all your data have been safely migrated, consider deleting those folders.");
     }
 
     @Override
-    synchronized void close() { }
+    synchronized void close()
+    {
+        if (this.playerRecords == null) return;
+
+        try
+        {
+            this.playerRecords.close();
+        }
+        catch (IOException e)
+        {
+            GriefPrevention.AddLogEntry("Error: Unable to close player data file: " + e.getMessage());
+        }
+        this.playerRecords = null;
+    }
 
     @Override
     int getSchemaVersionFromStorage()
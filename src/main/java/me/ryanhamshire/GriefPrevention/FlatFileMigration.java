@@ -0,0 +1,674 @@
+/*
+    GriefPrevention Server Plugin for Minecraft
+    Copyright (C) 2012 Ryan Hamshire
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.ryanhamshire.GriefPrevention;
+
+import me.ryanhamshire.GriefPrevention.DatabaseDataStore.SqlStatement;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * Copies file system data into the database in bulk: claims, players' claim blocks, groups' bonus blocks, and the
+ * next claim ID.
+ *
+ * <p>Claims are read on several threads and written by one, in claim ID order, thousands to a transaction. Within a
+ * transaction each kind of row is sent in JDBC batches. After each transaction commits, the last claim or player
+ * written is recorded in a checkpoint file, so an interrupted migration resumes where it stopped instead of starting
+ * over. Rows are replaced rather than inserted, so anything written again when resuming does no harm.
+ *
+ * <p>The migration runs at startup when file system data are found while a database is configured. It can also be
+ * run with the server stopped, using {@link #main(String[])}.
+ */
+public final class FlatFileMigration
+{
+
+    static final String CHECKPOINT_FILE_NAME = "_migrationCheckpoint";
+    static final int CLAIMS_PER_TRANSACTION = 5000;
+    static final int PLAYERS_PER_TRANSACTION = 10000;
+    static final long PROGRESS_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private static final String CHECKPOINT_DATABASE = "database";
+    private static final String CHECKPOINT_CLAIMS = "claims";
+    private static final String CHECKPOINT_PLAYERS = "players";
+
+    private static final String SQL_RAISE_NEXT_CLAIM_ID =
+            "UPDATE griefprevention_nextclaimid SET nextid = ? WHERE nextid < ?";
+
+    /**
+     * A claim to migrate, read once it's about to be written.
+     *
+     * @param id the claim ID
+     * @param reader reads the claim, on any thread
+     */
+    record ClaimSource(long id, @NotNull Callable<ClaimRecord> reader)
+    {
+    }
+
+    /**
+     * What a migration wrote.
+     *
+     * @param claims the claims written, including any written before resuming
+     * @param unreadableClaims the claims which couldn't be read, and were skipped
+     * @param players the players written, including any written before resuming
+     * @param groups the groups written
+     */
+    record Result(int claims, int unreadableClaims, int players, int groups)
+    {
+    }
+
+    // A transaction's worth of claims, read, and how many more couldn't be.
+    private record ReadBatch(@NotNull List<ClaimRecord> records, long lastID, int unreadable)
+    {
+    }
+
+    private final ConnectionPool connections;
+    private final DatabaseDialect dialect;
+    private final String databaseUrl;
+    private final Path checkpointFile;
+    private final Consumer<String> log;
+    private final int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    // World IDs, including those added by this migration.
+    private final Map<String, Integer> worldIDs = new HashMap<>();
+    // Statements replacing a whole row in one step, or null where the database can't upsert into the table.
+    private String claimUpsertSql;
+    private String playerUpsertSql;
+    private long lastProgress;
+
+    /**
+     * Construct a new {@code FlatFileMigration}.
+     *
+     * @param connections the database's connections
+     * @param dialect the database's dialect
+     * @param databaseUrl the database URL, recorded with the checkpoint so it isn't used against another database
+     * @param checkpointFile where progress is recorded
+     * @param log where progress is reported
+     */
+    FlatFileMigration(@NotNull ConnectionPool connections, @NotNull DatabaseDialect dialect, @NotNull String databaseUrl,
+            @NotNull Path checkpointFile, @NotNull Consumer<String> log)
+    {
+        this.connections = connections;
+        this.dialect = dialect;
+        this.databaseUrl = databaseUrl;
+        this.checkpointFile = checkpointFile;
+        this.log = log;
+    }
+
+    /**
+     * Copy data into the database, resuming from the checkpoint if there is one. The checkpoint is deleted once
+     * everything is written.
+     *
+     * @param claims the claims
+     * @param players the players' claim blocks
+     * @param groups the groups' bonus blocks
+     * @param nextClaimID the next claim ID
+     * @param lastPlayed when each player last played, in milliseconds since the epoch
+     * @return what was written
+     * @throws SQLException if the database can't be written, in which case the migration can be resumed
+     * @throws IOException if the checkpoint can't be read or written
+     */
+    @NotNull Result migrate(@NotNull List<ClaimSource> claims, @NotNull Map<UUID, PlayerRecordStore.PlayerRecord> players,
+            @NotNull Map<String, Integer> groups, long nextClaimID, @NotNull ToLongFunction<UUID> lastPlayed) throws SQLException, IOException
+    {
+        long started = System.nanoTime();
+        Properties checkpoint = this.readCheckpoint();
+
+        Result result;
+        try (Connection connection = this.connections.getConnection())
+        {
+            this.prepare(connection);
+
+            int[] claimCounts = this.migrateClaims(connection, claims, checkpoint);
+            this.migratePlayers(connection, players, lastPlayed, checkpoint);
+
+            // The next claim ID only ever moves forward, past every claim migrated.
+            long nextID = nextClaimID;
+            for (ClaimSource claim : claims)
+            {
+                nextID = Math.max(nextID, claim.id() + 1);
+            }
+            this.migrateGroups(connection, groups, nextID);
+
+            result = new Result(claimCounts[0], claimCounts[1], players.size(), groups.size());
+            this.reconcile(connection, result, started);
+        }
+
+        Files.deleteIfExists(this.checkpointFile);
+        return result;
+    }
+
+    // Creates any missing tables, and reads what's needed to write rows.
+    private void prepare(@NotNull Connection connection) throws SQLException
+    {
+        DatabaseDataStore.createTables(connection);
+
+        try (Statement statement = connection.createStatement())
+        {
+            // A new database gets the latest schema. Older ones keep claims in the schema 3 table until the plugin moves them.
+            boolean newDatabase;
+            try (ResultSet results = statement.executeQuery("SELECT * FROM griefprevention_nextclaimid"))
+            {
+                newDatabase = !results.next();
+            }
+
+            if (newDatabase)
+            {
+                commit(connection, List.of(
+                        new SqlStatement("INSERT INTO griefprevention_nextclaimid VALUES (?)", 0L),
+                        new SqlStatement(DatabaseDataStore.SQL_DELETE_SCHEMA_VERSION),
+                        new SqlStatement(DatabaseDataStore.SQL_INSERT_SCHEMA_VERSION, DatabaseDataStore.DATABASE_SCHEMA_VERSION)));
+            }
+            else
+            {
+                int schemaVersion = 0;
+                try (ResultSet results = statement.executeQuery(DatabaseDataStore.SQL_SELECT_SCHEMA_VERSION))
+                {
+                    if (results.next()) schemaVersion = results.getInt("version");
+                }
+                if (schemaVersion < DatabaseDataStore.DATABASE_SCHEMA_VERSION)
+                {
+                    throw new SQLException("The database uses schema " + schemaVersion + ".  Start the server with it once to upgrade it, then migrate.");
+                }
+            }
+
+            try (ResultSet results = statement.executeQuery("SELECT * FROM griefprevention_world"))
+            {
+                while (results.next())
+                {
+                    this.worldIDs.put(results.getString("name"), results.getInt("id"));
+                }
+            }
+        }
+
+        this.claimUpsertSql = this.dialect.upsert("griefprevention_claims", DatabaseDataStore.CLAIM_COLUMNS, "id");
+        if (DatabaseDataStore.hasUniqueIndex(connection, "griefprevention_playerdata", "name"))
+        {
+            this.playerUpsertSql = this.dialect.upsert("griefprevention_playerdata", DatabaseDataStore.PLAYER_COLUMNS, "name");
+        }
+    }
+
+    // Returns the claims written and the claims which couldn't be read.
+    private int @NotNull [] migrateClaims(@NotNull Connection connection, @NotNull List<ClaimSource> claims, @NotNull Properties checkpoint)
+            throws SQLException, IOException
+    {
+        long resumeAfter = Long.parseLong(checkpoint.getProperty(CHECKPOINT_CLAIMS, String.valueOf(Long.MIN_VALUE)));
+        List<ClaimSource> pending = claims.stream()
+                .filter(claim -> claim.id() > resumeAfter)
+                .sorted(Comparator.comparingLong(ClaimSource::id))
+                .toList();
+        int written = claims.size() - pending.size();
+        int unreadable = 0;
+        if (written > 0)
+        {
+            this.log.accept("Skipping " + written + " claims migrated before the last migration was interrupted.");
+        }
+
+        ExecutorService readers = Executors.newFixedThreadPool(this.threads, runnable ->
+        {
+            Thread thread = new Thread(runnable, "GriefPrevention Migration Reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ArrayDeque<Future<ReadBatch>> reading = new ArrayDeque<>();
+        long started = System.nanoTime();
+        int next = 0;
+        try
+        {
+            while (next < pending.size() || !reading.isEmpty())
+            {
+                // Keep every reader busy, with one more batch waiting for the writer.
+                while (next < pending.size() && reading.size() <= this.threads)
+                {
+                    List<ClaimSource> batch = pending.subList(next, Math.min(next + CLAIMS_PER_TRANSACTION, pending.size()));
+                    reading.add(readers.submit(() -> this.readClaims(batch)));
+                    next += batch.size();
+                }
+
+                ReadBatch batch = await(reading.poll());
+                this.writeClaims(connection, batch.records());
+                written += batch.records().size();
+                unreadable += batch.unreadable();
+
+                checkpoint.setProperty(CHECKPOINT_CLAIMS, String.valueOf(batch.lastID()));
+                this.writeCheckpoint(checkpoint);
+                this.progress("claims", written + unreadable, claims.size(), started, reading.isEmpty() && next == pending.size());
+            }
+        }
+        finally
+        {
+            readers.shutdownNow();
+        }
+
+        return new int[] { written, unreadable };
+    }
+
+    // Runs on a reader thread.
+    private @NotNull ReadBatch readClaims(@NotNull List<ClaimSource> batch)
+    {
+        List<ClaimRecord> records = new ArrayList<>(batch.size());
+        int unreadable = 0;
+        for (ClaimSource claim : batch)
+        {
+            try
+            {
+                records.add(claim.reader().call());
+            }
+            catch (Exception e)
+            {
+                unreadable++;
+                this.log.accept("Skipped claim " + claim.id() + ", which couldn't be read: " + e.getMessage());
+            }
+        }
+
+        return new ReadBatch(records, batch.get(batch.size() - 1).id(), unreadable);
+    }
+
+    private void writeClaims(@NotNull Connection connection, @NotNull List<ClaimRecord> records) throws SQLException
+    {
+        // Each kind of statement is kept together, so it is sent as one run of batches.
+        List<SqlStatement> claimDeletes = new ArrayList<>();
+        List<SqlStatement> claimRows = new ArrayList<>(records.size());
+        List<SqlStatement> trustDeletes = new ArrayList<>(records.size());
+        List<SqlStatement> trustRows = new ArrayList<>();
+
+        for (ClaimRecord record : records)
+        {
+            // The database picks a new world's ID, committed before the claims' transaction.
+            Integer worldID = this.worldIDs.get(record.world());
+            if (worldID == null)
+            {
+                worldID = DatabaseDataStore.selectOrInsertWorldID(connection, record.world());
+                this.worldIDs.put(record.world(), worldID);
+            }
+
+            ClaimTile tile = ClaimTile.of(record);
+            replaceRow(this.claimUpsertSql, DatabaseDataStore.SQL_DELETE_CLAIM, DatabaseDataStore.SQL_INSERT_CLAIM,
+                    claimDeletes, claimRows,
+                    record.id(),
+                    record.ownerID() == null ? null : record.ownerID().toString(),
+                    worldID,
+                    record.lesserX(),
+                    record.lesserY(),
+                    record.lesserZ(),
+                    record.greaterX(),
+                    record.greaterY(),
+                    record.greaterZ(),
+                    record.inheritNothing(),
+                    record.hasParent() ? record.parentID() : null,
+                    tile.level(),
+                    tile.x(),
+                    tile.z());
+
+            trustDeletes.add(new SqlStatement(DatabaseDataStore.SQL_DELETE_CLAIM_TRUST, record.id()));
+            record.forEachTrust((subject, permission) ->
+                    trustRows.add(new SqlStatement(DatabaseDataStore.SQL_INSERT_CLAIM_TRUST, record.id(), subject, permission)));
+        }
+
+        List<SqlStatement> statements = new ArrayList<>();
+        statements.addAll(claimDeletes);
+        statements.addAll(claimRows);
+        statements.addAll(trustDeletes);
+        statements.addAll(trustRows);
+        commit(connection, statements);
+    }
+
+    private void migratePlayers(@NotNull Connection connection, @NotNull Map<UUID, PlayerRecordStore.PlayerRecord> players,
+            @NotNull ToLongFunction<UUID> lastPlayed, @NotNull Properties checkpoint) throws SQLException, IOException
+    {
+        String resumeAfter = checkpoint.getProperty(CHECKPOINT_PLAYERS);
+        List<UUID> pending = players.keySet().stream()
+                .filter(playerID -> resumeAfter == null || playerID.compareTo(UUID.fromString(resumeAfter)) > 0)
+                .sorted()
+                .toList();
+        if (pending.size() < players.size())
+        {
+            this.log.accept("Skipping " + (players.size() - pending.size()) + " players migrated before the last migration was interrupted.");
+        }
+
+        SimpleDateFormat sqlFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        long started = System.nanoTime();
+        for (int first = 0; first < pending.size(); first += PLAYERS_PER_TRANSACTION)
+        {
+            List<UUID> batch = pending.subList(first, Math.min(first + PLAYERS_PER_TRANSACTION, pending.size()));
+            List<SqlStatement> deletes = new ArrayList<>();
+            List<SqlStatement> rows = new ArrayList<>(batch.size());
+            for (UUID playerID : batch)
+            {
+                PlayerRecordStore.PlayerRecord record = players.get(playerID);
+                replaceRow(this.playerUpsertSql, DatabaseDataStore.SQL_DELETE_PLAYER_DATA, DatabaseDataStore.SQL_INSERT_PLAYER_DATA,
+                        deletes, rows, playerID.toString(), sqlFormat.format(new Date(lastPlayed.applyAsLong(playerID))),
+                        record.accruedClaimBlocks(), record.bonusClaimBlocks());
+            }
+
+            deletes.addAll(rows);
+            commit(connection, deletes);
+
+            checkpoint.setProperty(CHECKPOINT_PLAYERS, batch.get(batch.size() - 1).toString());
+            this.writeCheckpoint(checkpoint);
+            int done = players.size() - pending.size() + first + batch.size();
+            this.progress("players", done, players.size(), started, done == players.size());
+        }
+    }
+
+    // Groups and the next claim ID are few enough to write again when resuming.
+    private void migrateGroups(@NotNull Connection connection, @NotNull Map<String, Integer> groups, long nextClaimID) throws SQLException
+    {
+        //group bonus blocks are stored in the player data table, with player name = $groupName
+        String dateString = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
+        List<SqlStatement> deletes = new ArrayList<>();
+        List<SqlStatement> rows = new ArrayList<>();
+        for (Map.Entry<String, Integer> group : groups.entrySet())
+        {
+            replaceRow(this.playerUpsertSql, DatabaseDataStore.SQL_DELETE_PLAYER_DATA, DatabaseDataStore.SQL_INSERT_PLAYER_DATA,
+                    deletes, rows, '$' + group.getKey(), dateString, 0, group.getValue());
+        }
+
+        deletes.addAll(rows);
+        deletes.add(new SqlStatement(SQL_RAISE_NEXT_CLAIM_ID, nextClaimID, nextClaimID));
+        commit(connection, deletes);
+    }
+
+    // Compares what was migrated with what the database now holds, which may include rows from before the migration.
+    private void reconcile(@NotNull Connection connection, @NotNull Result result, long started) throws SQLException
+    {
+        long claimRows = count(connection, "SELECT COUNT(*) FROM griefprevention_claims");
+        long trustRows = count(connection, "SELECT COUNT(*) FROM griefprevention_claim_trust");
+        long playerRows = count(connection, "SELECT COUNT(*) FROM griefprevention_playerdata WHERE name NOT LIKE '$%'");
+        long groupRows = count(connection, "SELECT COUNT(*) FROM griefprevention_playerdata WHERE name LIKE '$%'");
+
+        this.log.accept(String.format("Migrated %d claims, %d players and %d groups in %.1f seconds.  %d unreadable claims were skipped.",
+                result.claims(), result.players(), result.groups(), (System.nanoTime() - started) / 1_000_000_000.0, result.unreadableClaims()));
+        this.log.accept("The database now holds " + claimRows + " claims with " + trustRows + " trust entries, "
+                + playerRows + " players and " + groupRows + " groups.");
+        if (claimRows < result.claims() || playerRows < result.players() || groupRows < result.groups())
+        {
+            this.log.accept("Warning: the database holds fewer rows than were migrated.  Check for errors before deleting the backed up files.");
+        }
+    }
+
+    private void progress(@NotNull String kind, int done, int total, long started, boolean finished)
+    {
+        long now = System.currentTimeMillis();
+        if (!finished && now - this.lastProgress < PROGRESS_INTERVAL_MILLIS) return;
+        this.lastProgress = now;
+
+        double seconds = Math.max(System.nanoTime() - started, 1) / 1_000_000_000.0;
+        this.log.accept(String.format("Migrated %d of %d %s (%d%%, %.0f %s/s).",
+                done, total, kind, total == 0 ? 100 : done * 100L / total, done / seconds, kind));
+    }
+
+    private @NotNull Properties readCheckpoint() throws IOException
+    {
+        Properties checkpoint = new Properties();
+        if (!Files.exists(this.checkpointFile)) return checkpoint;
+
+        try (Reader reader = Files.newBufferedReader(this.checkpointFile, StandardCharsets.UTF_8))
+        {
+            checkpoint.load(reader);
+        }
+
+        if (!this.databaseUrl.equals(checkpoint.getProperty(CHECKPOINT_DATABASE)))
+        {
+            this.log.accept("Ignoring the checkpoint of a migration to another database.");
+            return new Properties();
+        }
+
+        this.log.accept("Resuming an interrupted migration.");
+        return checkpoint;
+    }
+
+    // The checkpoint is replaced in one step, so it is never left half written.
+    private void writeCheckpoint(@NotNull Properties checkpoint) throws IOException
+    {
+        checkpoint.setProperty(CHECKPOINT_DATABASE, this.databaseUrl);
+
+        Path temporary = this.checkpointFile.resolveSibling(this.checkpointFile.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8))
+        {
+            checkpoint.store(writer, "GriefPrevention migration progress.  Delete this file to start the migration over.");
+        }
+        Files.move(temporary, this.checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Adds statements replacing a row whose key is the first value. Without an upsert, deletes are kept apart from inserts.
+    private static void replaceRow(String upsertSql, @NotNull String deleteSql, @NotNull String insertSql,
+            @NotNull List<SqlStatement> deletes, @NotNull List<SqlStatement> rows, Object... row)
+    {
+        if (upsertSql != null)
+        {
+            rows.add(new SqlStatement(upsertSql, row));
+            return;
+        }
+
+        deletes.add(new SqlStatement(deleteSql, row[0]));
+        rows.add(new SqlStatement(insertSql, row));
+    }
+
+    private static void commit(@NotNull Connection connection, @NotNull List<SqlStatement> statements) throws SQLException
+    {
+        connection.setAutoCommit(false);
+        try
+        {
+            DatabaseDataStore.executeStatements(connection, statements);
+            connection.commit();
+        }
+        catch (SQLException e)
+        {
+            connection.rollback();
+            throw e;
+        }
+        finally
+        {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static long count(@NotNull Connection connection, @NotNull String sql) throws SQLException
+    {
+        try (PreparedStatement statement = connection.prepareStatement(sql);
+             ResultSet results = statement.executeQuery())
+        {
+            return results.next() ? results.getLong(1) : 0;
+        }
+    }
+
+    private static <T> T await(@NotNull Future<T> future) throws SQLException
+    {
+        try
+        {
+            return future.get();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while migrating claims", e);
+        }
+        catch (ExecutionException e)
+        {
+            throw new SQLException("Unable to read claims to migrate", e.getCause());
+        }
+    }
+
+    /**
+     * Migrate file system data to a database with the server stopped. Run from the server's folder, with the plugin
+     * and the server's API on the class path:
+     *
+     * <pre>java -cp GriefPrevention.jar:server.jar me.ryanhamshire.GriefPrevention.FlatFileMigration [jdbcUrl [username [password]]]</pre>
+     *
+     * <p>Without arguments, the database settings are read from database.properties. Once the migration completes,
+     * the data folders are renamed as backups, just as when the plugin migrates them at startup.
+     *
+     * @param args the optional database URL, user name and password
+     * @throws Exception if the migration fails, in which case running it again resumes it
+     */
+    public static void main(String[] args) throws Exception
+    {
+        Consumer<String> log = System.out::println;
+        if (!FlatFileDataStore.hasData())
+        {
+            exit("No file system data found in " + new File(DataStore.dataLayerFolderPath).getAbsolutePath() + ".  Run this from the server's folder.");
+        }
+
+        Properties settings = new Properties();
+        File settingsFile = new File(DataStore.dataLayerFolderPath, "database.properties");
+        if (settingsFile.isFile())
+        {
+            try (Reader reader = Files.newBufferedReader(settingsFile.toPath(), StandardCharsets.UTF_8))
+            {
+                settings.load(reader);
+            }
+        }
+        String url = args.length > 0 ? args[0] : settings.getProperty("jdbcUrl", "");
+        String userName = args.length > 1 ? args[1] : settings.getProperty("username", "");
+        String password = args.length > 2 ? args[2] : settings.getProperty("password", "");
+        if (url.isBlank())
+        {
+            exit("No database configured.  Set jdbcUrl in " + settingsFile.getPath() + " or pass it as the first argument.");
+        }
+
+        // Older formats are converted by the plugin, which needs the server running.
+        int schemaVersion = Integer.parseInt(readFirstLine(Paths.get(FlatFileDataStore.schemaVersionFilePath), "0"));
+        Path playerRecordsFolder = Paths.get(FlatFileDataStore.playerRecordsFolderPath);
+        if (schemaVersion <= 1 || !PlayerRecordStore.exists(playerRecordsFolder))
+        {
+            exit("These data are in an older format.  Start the server once with file system storage to update them, then migrate.");
+        }
+
+        log.accept("Reading file system data...");
+        List<ClaimSource> claims = new ArrayList<>();
+        SegmentedClaimStore segments = null;
+        Map<UUID, PlayerRecordStore.PlayerRecord> players = new HashMap<>();
+        try (PlayerRecordStore playerRecords = PlayerRecordStore.open(playerRecordsFolder))
+        {
+            if (SegmentedFlatFileDataStore.hasSegmentedData())
+            {
+                segments = new SegmentedClaimStore(Paths.get(FlatFileDataStore.claimDataFolderPath, SegmentedFlatFileDataStore.segmentFolderName), log);
+                segments.forEach((claimID, payload) -> claims.add(new ClaimSource(claimID,
+                        () -> SegmentedFlatFileDataStore.decodeClaimRecord(payload, claimID, new ArrayList<>()))));
+            }
+            else
+            {
+                addClaimFiles(claims, new File(FlatFileDataStore.claimDataFolderPath), log);
+            }
+            playerRecords.forEach(players::put);
+
+            long nextClaimID = Long.parseLong(readFirstLine(Paths.get(FlatFileDataStore.nextClaimIdFilePath), "0"));
+            Map<String, Integer> groups = FlatFileDataStore.readGroupBonusBlocks(log);
+
+            DatabaseDialect dialect = DatabaseDialect.fromUrl(url);
+            try (ConnectionPool pool = new ConnectionPool(url, DatabaseDataStore.connectionProperties(userName, password, dialect), 1,
+                    DatabaseDataStore.CONNECTION_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+            {
+                // Without the server, players never seen by the plugin have no record of when they last played, so the
+                // migration time stands in.
+                long migrated = System.currentTimeMillis();
+                new FlatFileMigration(pool, dialect, url, Paths.get(DataStore.dataLayerFolderPath, CHECKPOINT_FILE_NAME), log)
+                        .migrate(claims, players, groups, nextClaimID, playerID ->
+                        {
+                            long lastSeen = players.get(playerID).lastSeen();
+                            return lastSeen != PlayerActivityIndex.UNKNOWN ? lastSeen : migrated;
+                        });
+            }
+        }
+        finally
+        {
+            if (segments != null) segments.close();
+        }
+
+        FlatFileDataStore.backUpData(log);
+    }
+
+    // Claim files are named by claim ID.  Files from versions before claim IDs are renamed by the plugin.
+    private static void addClaimFiles(@NotNull List<ClaimSource> claims, @NotNull File claimDataFolder, @NotNull Consumer<String> log)
+    {
+        File[] files = claimDataFolder.listFiles();
+        if (files == null) return;
+
+        int skipped = 0;
+        for (File file : files)
+        {
+            String name = file.getName();
+            if (!file.isFile() || name.startsWith("_") || !name.endsWith(".yml")) continue;
+
+            long claimID;
+            try
+            {
+                claimID = Long.parseLong(name.substring(0, name.length() - ".yml".length()));
+            }
+            catch (NumberFormatException e)
+            {
+                skipped++;
+                continue;
+            }
+
+            claims.add(new ClaimSource(claimID, () -> FlatFileDataStore.readClaimRecord(Files.readString(file.toPath(), StandardCharsets.UTF_8), claimID)));
+        }
+
+        if (skipped > 0)
+        {
+            log.accept("Skipped " + skipped + " claim files not named by claim ID.  Start the server once with file system storage to rename them.");
+        }
+    }
+
+    private static @NotNull String readFirstLine(@NotNull Path file, @NotNull String fallback) throws IOException
+    {
+        if (!Files.exists(file)) return fallback;
+
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        return lines.isEmpty() || lines.get(0).isBlank() ? fallback : lines.get(0).trim();
+    }
+
+    private static void exit(@NotNull String message)
+    {
+        System.err.println(message);
+        System.exit(1);
+    }
+
+}
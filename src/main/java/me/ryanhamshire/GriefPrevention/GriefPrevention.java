@@ -25,6 +25,7 @@ import com.griefprevention.metrics.MetricsHandler;
 import com.griefprevention.platform.knockback.KnockbackProtectionListener;
 import com.griefprevention.protection.InteractionProtectionHandler;
 import com.griefprevention.protection.ProtectionHelper;
+import com.griefprevention.util.TickScheduler;
 import me.ryanhamshire.GriefPrevention.DataStore.NoTransferException;
 import me.ryanhamshire.GriefPrevention.events.SaveTrappedPlayerEvent;
 import me.ryanhamshire.GriefPrevention.events.TrustChangedEvent;
@@ -94,6 +95,9 @@ public class GriefPrevention extends JavaPlugin
     //this handles data storage, like player and region data
     public DataStore dataStore;
 
+    //runs GriefPrevention's own small jobs on the main thread, a limited amount of work each tick
+    private TickScheduler workScheduler;
+
     // Event handlers with common functionality
     EntityEventHandler entityEventHandler;
     EntityDamageHandler entityDamageHandler;
@@ -226,6 +230,8 @@ public class GriefPrevention extends JavaPlugin
     public boolean config_advanced_fixNegativeClaimblockAmounts;    //whether to attempt to fix negative claim block amounts (some addons cause/assume players can go into negative amounts)
     public int config_advanced_claim_expiration_check_rate;            //How often GP should check for expired claims, amount in seconds
     public int config_advanced_offlineplayer_cache_days;            //Cache players who have logged in within the last x number of days
+    public boolean config_advanced_segmentedClaimStorage;           //whether the file system data store keeps claims in compact segment files instead of one YAML file per claim
+    public int config_advanced_workTickBudgetMicroseconds;          //how long GP may spend on its scheduled jobs each tick, in microseconds
 
     //custom log settings
     public int config_logs_daysToKeep;
@@ -242,6 +248,7 @@ public class GriefPrevention extends JavaPlugin
     private String databaseUrl;
     private String databaseUserName;
     private String databasePassword;
+    private ClaimRegionLoader.Settings databaseClaimLoading = ClaimRegionLoader.Settings.EAGER;
 
 
     //how far away to search from a tree trunk for its branch blocks
@@ -250,6 +257,17 @@ public class GriefPrevention extends JavaPlugin
     //how long to wait before deciding a player is staying online or staying offline, for notication messages
     public static final int NOTIFICATION_SECONDS = 20;
 
+    /**
+     * Get the scheduler running GriefPrevention's small jobs on the main thread. Its metrics show the time spent on
+     * each type of job.
+     *
+     * @return the scheduler
+     */
+    public @NotNull TickScheduler getWorkScheduler()
+    {
+        return this.workScheduler;
+    }
+
     //adds a server log entry
     public static synchronized void AddLogEntry(String entry, CustomLogEntryTypes customLogType, boolean excludeFromServerLogs)
     {
@@ -280,6 +298,10 @@ public class GriefPrevention extends JavaPlugin
 
         this.customLogger = new CustomLogger();
 
+        //one server task drives all of GP's small jobs, so they don't each need their own
+        this.workScheduler = new TickScheduler(this.config_advanced_workTickBudgetMicroseconds, TimeUnit.MICROSECONDS, this.getLogger());
+        this.getServer().getScheduler().runTaskTimer(this, this.workScheduler::tick, 1L, 1L);
+
         AddLogEntry("Finished loading configuration.");
 
         //when datastore initializes, it loads player and claim data, and posts some stats to the log
@@ -287,13 +309,15 @@ public class GriefPrevention extends JavaPlugin
         {
             try
             {
-                DatabaseDataStore databaseStore = new DatabaseDataStore(this.databaseUrl, this.databaseUserName, this.databasePassword);
+                DatabaseDataStore databaseStore = new DatabaseDataStore(this.databaseUrl, this.databaseUserName, this.databasePassword, this.databaseClaimLoading);
 
                 if (FlatFileDataStore.hasData())
                 {
                     GriefPrevention.AddLogEntry("There appears to be some data on the hard drive.  Migrating those data to the database...");
-                    FlatFileDataStore flatFileStore = new FlatFileDataStore();
+                    FlatFileDataStore flatFileStore = SegmentedFlatFileDataStore.hasSegmentedData() ? new SegmentedFlatFileDataStore() : new FlatFileDataStore();
                     this.dataStore = flatFileStore;
+                    //waiting saves are written first, since the writers don't stop the migration closing the claim store
+                    flatFileStore.closeWriteQueues();
                     flatFileStore.migrateData(databaseStore);
                     GriefPrevention.AddLogEntry("Data migration process complete.");
                 }
@@ -327,7 +351,19 @@ public class GriefPrevention extends JavaPlugin
             }
             try
             {
-                this.dataStore = new FlatFileDataStore();
+                //once claims are in segment files, keep reading them until they're exported back to YAML
+                if (this.config_advanced_segmentedClaimStorage || SegmentedFlatFileDataStore.hasSegmentedData())
+                {
+                    if (!this.config_advanced_segmentedClaimStorage)
+                    {
+                        AddLogEntry("Claims are stored in segment files, so segmented claim storage remains in use.  To switch back to YAML files, use /exportclaimdata, then stop the server and delete the ClaimData/_segments folder.");
+                    }
+                    this.dataStore = new SegmentedFlatFileDataStore();
+                }
+                else
+                {
+                    this.dataStore = new FlatFileDataStore();
+                }
             }
             catch (Exception e)
             {
@@ -345,12 +381,14 @@ public class GriefPrevention extends JavaPlugin
         if (this.config_claims_blocksAccruedPerHour_default > 0)
         {
             DeliverClaimBlocksTask task = new DeliverClaimBlocksTask(null, this);
-            this.getServer().getScheduler().scheduleSyncRepeatingTask(this, task, 20L * 60 * 10, 20L * 60 * 10);
+            this.workScheduler.scheduleRepeating(DeliverClaimBlocksTask.JOB_TYPE, task, 20L * 60 * 10, 20L * 60 * 10);
         }
 
         //start recurring cleanup scan for unused claims belonging to inactive players
+        //claim owners the data store hasn't seen yet are looked up in the server's player data in the background first
+        this.getServer().getScheduler().runTaskAsynchronously(this, this.dataStore::backfillPlayerActivity);
         FindUnusedClaimsTask task2 = new FindUnusedClaimsTask();
-        this.getServer().getScheduler().scheduleSyncRepeatingTask(this, task2, 20L * 60, 20L * config_advanced_claim_expiration_check_rate);
+        this.workScheduler.scheduleRepeating(FindUnusedClaimsTask.JOB_TYPE, task2, 20L * 60, Math.max(1, 20L * config_advanced_claim_expiration_check_rate));
 
         //register for events
         PluginManager pluginManager = this.getServer().getPluginManager();
@@ -379,6 +417,12 @@ public class GriefPrevention extends JavaPlugin
         //special interaction-related events
         pluginManager.registerEvents(new InteractionProtectionHandler(), this);
 
+        //database claims loaded as their worlds or regions load
+        if (this.dataStore instanceof DatabaseDataStore databaseStore && databaseStore.getClaimLoader() != null)
+        {
+            databaseStore.getClaimLoader().start(this);
+        }
+
         //cache offline players
         OfflinePlayer[] offlinePlayers = this.getServer().getOfflinePlayers();
         CacheOfflinePlayerNamesThread namesThread = new CacheOfflinePlayerNamesThread(offlinePlayers, this.playerNameToIDMap);
@@ -718,6 +762,12 @@ public class GriefPrevention extends JavaPlugin
         this.config_advanced_fixNegativeClaimblockAmounts = config.getBoolean("GriefPrevention.Advanced.fixNegativeClaimblockAmounts", true);
         this.config_advanced_claim_expiration_check_rate = config.getInt("GriefPrevention.Advanced.ClaimExpirationCheckRate", 60);
         this.config_advanced_offlineplayer_cache_days = config.getInt("GriefPrevention.Advanced.OfflinePlayer_cache_days", 90);
+        this.config_advanced_segmentedClaimStorage = config.getBoolean("GriefPrevention.Advanced.SegmentedClaimStorage", false);
+        this.config_advanced_workTickBudgetMicroseconds = Math.max(0, config.getInt("GriefPrevention.Advanced.WorkTickBudgetMicroseconds", 2000));
+        if (this.workScheduler != null)
+        {
+            this.workScheduler.setBudget(this.config_advanced_workTickBudgetMicroseconds, TimeUnit.MICROSECONDS);
+        }
 
         //custom logger settings
         this.config_logs_daysToKeep = config.getInt("GriefPrevention.Abridged Logs.Days To Keep", 7);
@@ -844,6 +894,8 @@ public class GriefPrevention extends JavaPlugin
         outConfig.set("GriefPrevention.Advanced.fixNegativeClaimblockAmounts", this.config_advanced_fixNegativeClaimblockAmounts);
         outConfig.set("GriefPrevention.Advanced.ClaimExpirationCheckRate", this.config_advanced_claim_expiration_check_rate);
         outConfig.set("GriefPrevention.Advanced.OfflinePlayer_cache_days", this.config_advanced_offlineplayer_cache_days);
+        outConfig.set("GriefPrevention.Advanced.SegmentedClaimStorage", this.config_advanced_segmentedClaimStorage);
+        outConfig.set("GriefPrevention.Advanced.WorkTickBudgetMicroseconds", this.config_advanced_workTickBudgetMicroseconds);
 
         //custom logger settings
         outConfig.set("GriefPrevention.Abridged Logs.Days To Keep", this.config_logs_daysToKeep);
@@ -916,6 +968,7 @@ public class GriefPrevention extends JavaPlugin
                 databaseUrl = databaseProps.getProperty("jdbcUrl", "");
                 databaseUserName = databaseProps.getProperty("username", "");
                 databasePassword = databaseProps.getProperty("password", "");
+                databaseClaimLoading = ClaimRegionLoader.Settings.fromProperties(databaseProps);
             }
             catch (IOException e)
             {
@@ -1149,6 +1202,7 @@ public class GriefPrevention extends JavaPlugin
             PlayerData playerData = this.dataStore.getPlayerData(player.getUniqueId());
 
             playerData.ignoreClaims = !playerData.ignoreClaims;
+            playerData.permissionDecisionCache.clear();
 
             //toggle ignore claims mode on or off
             if (!playerData.ignoreClaims)
@@ -1769,6 +1823,32 @@ public class GriefPrevention extends JavaPlugin
             GriefPrevention.AddLogEntry("Deleted all claims in world: " + world.getName() + ".", CustomLogEntryTypes.AdminActivity);
             return true;
         }
+        else if (cmd.getName().equalsIgnoreCase("exportclaimdata"))
+        {
+            //must be executed at the console
+            if (player != null)
+            {
+                GriefPrevention.sendMessage(player, TextMode.Err, Messages.ConsoleOnlyCommand);
+                return true;
+            }
+
+            if (!(this.dataStore instanceof SegmentedFlatFileDataStore segmentedStore))
+            {
+                GriefPrevention.AddLogEntry("Claims are not in segmented claim storage, so there is nothing to export.");
+                return true;
+            }
+
+            try
+            {
+                int count = segmentedStore.exportClaimsToYaml();
+                GriefPrevention.AddLogEntry("Exported " + count + " claims to YAML files in the ClaimData folder.  To use them, set GriefPrevention.Advanced.SegmentedClaimStorage to false, then stop the server and delete the ClaimData/_segments folder.", CustomLogEntryTypes.AdminActivity);
+            }
+            catch (IOException e)
+            {
+                GriefPrevention.AddLogEntry("Unable to export claims to YAML files: " + e.getMessage());
+            }
+            return true;
+        }
         else if (cmd.getName().equalsIgnoreCase("deleteuserclaimsinworld"))
         {
             //must be executed at the console
@@ -1883,7 +1963,7 @@ public class GriefPrevention extends JavaPlugin
         {
             //find admin claims
             Vector<Claim> claims = new Vector<>();
-            for (Claim claim : this.dataStore.claims)
+            for (Claim claim : this.dataStore.getClaims())
             {
                 if (claim.ownerID == null)  //admin claim
                 {
@@ -2719,6 +2799,7 @@ public class GriefPrevention extends JavaPlugin
             this.dataStore.savePlayerDataSync(playerID, playerData);
         }
 
+        this.dataStore.closeWriteQueues();
         this.dataStore.close();
 
         //dump any remaining unwritten log entries
@@ -2754,7 +2835,7 @@ public class GriefPrevention extends JavaPlugin
 
             //start a task to re-check this player's inventory every minute until his immunity is gone
             PvPImmunityValidationTask task = new PvPImmunityValidationTask(player);
-            this.getServer().getScheduler().scheduleSyncDelayedTask(this, task, 1200L);
+            this.workScheduler.schedule(PvPImmunityValidationTask.JOB_TYPE, task, 1200L);
         }
     }
 
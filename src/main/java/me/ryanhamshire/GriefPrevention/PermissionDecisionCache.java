@@ -0,0 +1,135 @@
+/*
+    GriefPrevention Server Plugin for Minecraft
+    Copyright (C) 2012 Ryan Hamshire
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.ryanhamshire.GriefPrevention;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A small cache of one player's recent {@link Claim#checkPermission(org.bukkit.entity.Player, ClaimPermission, org.bukkit.event.Event)
+ * permission check} results, keyed by claim and {@link ClaimPermission}.
+ *
+ * <p>A decision is only reused while the claim's and its parent's permission versions are unchanged, and never for
+ * longer than a short time to live, which covers changes the versions can't see such as permission plugin updates.
+ */
+final class PermissionDecisionCache
+{
+
+    static final int MAX_ENTRIES = 64;
+    static final long TIME_TO_LIVE_MILLIS = 2_000L;
+
+    /**
+     * A cached decision.
+     *
+     * @param claim the claim checked
+     * @param claimVersion the claim's permission version when checked
+     * @param parentVersion the parent claim's permission version when checked, or 0 for top level claims
+     * @param expires the time after which the decision may not be reused
+     * @param denial the denial reason, or null if permission was granted
+     */
+    record Decision(
+            @NotNull Claim claim,
+            int claimVersion,
+            int parentVersion,
+            long expires,
+            @Nullable Supplier<String> denial)
+    {
+    }
+
+    private final Map<Long, Decision> decisions = new LinkedHashMap<>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Decision> eldest)
+        {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * Get a decision which is still valid for a claim.
+     *
+     * @param claim the claim
+     * @param permission the permission required
+     * @return the cached decision, or null if there is no valid decision
+     */
+    synchronized @Nullable Decision get(@NotNull Claim claim, @NotNull ClaimPermission permission)
+    {
+        if (claim.id == null) return null;
+
+        Decision decision = this.decisions.get(key(claim, permission));
+        if (decision == null) return null;
+
+        if (decision.claim() != claim
+                || decision.claimVersion() != claim.getPermissionVersion()
+                || decision.parentVersion() != parentVersion(claim)
+                || System.currentTimeMillis() >= decision.expires())
+        {
+            this.decisions.remove(key(claim, permission));
+            return null;
+        }
+
+        return decision;
+    }
+
+    /**
+     * Store a decision for a claim.
+     *
+     * @param claim the claim
+     * @param permission the permission required
+     * @param denial the denial reason, or null if permission was granted
+     */
+    synchronized void put(@NotNull Claim claim, @NotNull ClaimPermission permission, @Nullable Supplier<String> denial)
+    {
+        if (claim.id == null) return;
+
+        this.decisions.put(
+                key(claim, permission),
+                new Decision(claim, claim.getPermissionVersion(), parentVersion(claim),
+                        System.currentTimeMillis() + TIME_TO_LIVE_MILLIS, denial));
+    }
+
+    /**
+     * Forget all decisions, such as when the player's own state changes.
+     */
+    synchronized void clear()
+    {
+        this.decisions.clear();
+    }
+
+    synchronized int size()
+    {
+        return this.decisions.size();
+    }
+
+    private static long key(@NotNull Claim claim, @NotNull ClaimPermission permission)
+    {
+        // There are fewer than 8 permissions, so the ordinal fits in the low bits.
+        return (claim.id << 3) | permission.ordinal();
+    }
+
+    private static int parentVersion(@NotNull Claim claim)
+    {
+        return claim.parent == null ? 0 : claim.parent.getPermissionVersion();
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+    GriefPrevention Server Plugin for Minecraft
+    Copyright (C) 2012 Ryan Hamshire
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.ryanhamshire.GriefPrevention;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * When each player was last seen online, with claim owners sorted by time.
+ *
+ * <p>Claim expiration asks for the owners who haven't been seen since a cutoff. Only players marked as
+ * {@link #track(UUID) owning claims} are sorted, and because they're sorted by time, that only visits those owners
+ * rather than every player the server has seen. Safe to use from any thread.
+ */
+final class PlayerActivityIndex
+{
+
+    /**
+     * The last seen time of a player with no record.
+     */
+    static final long UNKNOWN = 0;
+
+    /**
+     * When a claim owner was last seen.
+     *
+     * @param lastSeen when the owner was last seen, in epoch milliseconds
+     * @param playerID the owner's UUID
+     */
+    record Entry(long lastSeen, @NotNull UUID playerID)
+    {
+    }
+
+    private static final Comparator<Entry> ORDER = Comparator.comparingLong(Entry::lastSeen).thenComparing(Entry::playerID);
+
+    private final Map<UUID, Long> lastSeen = new HashMap<>();
+    // Only claim owners, and only those with a record.
+    private final Set<UUID> owners = new HashSet<>();
+    private final NavigableSet<Entry> byTime = new TreeSet<>(ORDER);
+
+    /**
+     * Record when a player was last seen, replacing any earlier record.
+     *
+     * @param playerID the player's UUID
+     * @param lastSeen when the player was last seen, in epoch milliseconds
+     */
+    synchronized void record(@NotNull UUID playerID, long lastSeen)
+    {
+        if (lastSeen <= UNKNOWN) return;
+
+        Long previous = this.lastSeen.put(playerID, lastSeen);
+        if (!this.owners.contains(playerID)) return;
+
+        if (previous != null) this.byTime.remove(new Entry(previous, playerID));
+        this.byTime.add(new Entry(lastSeen, playerID));
+    }
+
+    /**
+     * Mark a player as owning claims, so they're included in {@link #seenBefore(long, Entry, int)}.
+     *
+     * @param playerID the player's UUID
+     */
+    synchronized void track(@NotNull UUID playerID)
+    {
+        if (!this.owners.add(playerID)) return;
+
+        Long time = this.lastSeen.get(playerID);
+        if (time != null) this.byTime.add(new Entry(time, playerID));
+    }
+
+    /**
+     * Mark a player as no longer owning claims.
+     *
+     * @param playerID the player's UUID
+     */
+    synchronized void untrack(@NotNull UUID playerID)
+    {
+        if (!this.owners.remove(playerID)) return;
+
+        Long time = this.lastSeen.get(playerID);
+        if (time != null) this.byTime.remove(new Entry(time, playerID));
+    }
+
+    /**
+     * Record when a player was last seen, unless there's already a record.
+     *
+     * @param playerID the player's UUID
+     * @param lastSeen when the player was last seen, in epoch milliseconds
+     * @return true if the time was recorded
+     */
+    synchronized boolean recordIfUnknown(@NotNull UUID playerID, long lastSeen)
+    {
+        if (lastSeen <= UNKNOWN || this.lastSeen.containsKey(playerID)) return false;
+
+        this.record(playerID, lastSeen);
+        return true;
+    }
+
+    /**
+     * Get when a player was last seen.
+     *
+     * @param playerID the player's UUID
+     * @return when the player was last seen, in epoch milliseconds, or {@link #UNKNOWN}
+     */
+    synchronized long getLastSeen(@NotNull UUID playerID)
+    {
+        Long time = this.lastSeen.get(playerID);
+        return time == null ? UNKNOWN : time;
+    }
+
+    /**
+     * Get claim owners who haven't been seen since a time, longest gone first. Owners with no record aren't
+     * included.
+     *
+     * @param cutoff the time, in epoch milliseconds
+     * @param after the entry to continue after, from an earlier call, or null to start with the longest gone
+     * @param limit the most owners to get
+     * @return the owners last seen before the cutoff
+     */
+    synchronized @NotNull List<Entry> seenBefore(long cutoff, @Nullable Entry after, int limit)
+    {
+        NavigableSet<Entry> inactive = this.byTime.headSet(new Entry(cutoff, new UUID(Long.MIN_VALUE, Long.MIN_VALUE)), false);
+        if (after != null) inactive = inactive.tailSet(after, false);
+
+        // Views of a tree set count their size by walking it, so only as many entries as needed are visited.
+        List<Entry> entries = new ArrayList<>();
+        for (Entry entry : inactive)
+        {
+            if (entries.size() >= limit) break;
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    /**
+     * @return the number of players with a record
+     */
+    synchronized int size()
+    {
+        return this.lastSeen.size();
+    }
+
+    /**
+     * @return the number of claim owners with a record
+     */
+    synchronized int ownerCount()
+    {
+        return this.byTime.size();
+    }
+
+}
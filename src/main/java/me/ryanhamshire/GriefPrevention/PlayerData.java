@@ -87,6 +87,9 @@ public class PlayerData
     //ignore claims mode
     public boolean ignoreClaims = false;
 
+    //recent claim permission check results, see Claim.checkPermission
+    final PermissionDecisionCache permissionDecisionCache = new PermissionDecisionCache();
+
     //the last claim this player was in, that we know of
     public Claim lastClaim = null;
 
@@ -268,30 +271,13 @@ public class PlayerData
 
             //find all the claims belonging to this player and note them for future reference
             DataStore dataStore = GriefPrevention.instance.dataStore;
+            dataStore.loadClaimsOwnedBy(this.playerID);
             int totalClaimsArea = 0;
-            for (int i = 0; i < dataStore.claims.size(); i++)
+            for (Claim claim : dataStore.getClaimsOwnedBy(this.playerID))
             {
-                Claim claim = dataStore.claims.get(i);
-                if (!claim.inDataStore)
-                {
-                    Claim remove = dataStore.claims.remove(i--);
-                    dataStore.claimIDMap.remove(remove.getID());
-                    for (Claim child : remove.children)
-                    {
-                        dataStore.claimIDMap.remove(child.getID());
-                    }
-                    continue;
-                }
-                if (playerID.equals(claim.ownerID))
-                {
-                    this.claims.add(claim);
-                    dataStore.claimIDMap.put(claim.getID(), claim);
-                    for (Claim child : claim.children)
-                    {
-                        dataStore.claimIDMap.put(child.getID(), child);
-                    }
-                    totalClaimsArea += claim.getArea();
-                }
+                if (!claim.inDataStore) continue;
+                this.claims.add(claim);
+                totalClaimsArea += claim.getArea();
             }
 
             //ensure player has claim blocks for his claims, and at least the minimum accrued
@@ -629,6 +629,7 @@ class PlayerEventHandler implements Listener
         PlayerData playerData = this.dataStore.getPlayerData(playerID);
         playerData.lastSpawn = now;
         this.lastLoginThisServerSessionMap.put(playerID, nowDate);
+        this.dataStore.recordPlayerActivity(playerID, now);
 
         //if newish, prevent chat until he's moved a bit to prove he's not a bot
         if (GriefPrevention.isNewToServer(player) && !player.hasPermission("griefprevention.premovementchat"))
@@ -867,6 +868,9 @@ class PlayerEventHandler implements Listener
         PlayerData playerData = this.dataStore.getPlayerData(playerID);
         boolean isBanned;
 
+        //note logout time, which claim expiration counts inactivity from
+        this.dataStore.recordPlayerActivity(playerID, System.currentTimeMillis());
+
         //If player is not trapped in a portal and has a pending rescue task, remove the associated metadata
         //Why 9? No idea why, but this is decremented by 1 when the player disconnects.
         if (player.getPortalCooldown() < 9)
@@ -0,0 +1,478 @@
+/*
+    GriefPrevention Server Plugin for Minecraft
+    Copyright (C) 2012 Ryan Hamshire
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.ryanhamshire.GriefPrevention;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * A store of fixed-width player records in a single memory-mapped file, indexed by player UUID.
+ *
+ * <p>The file is an open-addressing hash table. A player's record is found by hashing their UUID and probing the
+ * following slots, so nothing but the mapping is held in memory. Each slot holds the UUID, accrued and bonus claim
+ * blocks, and when the player was last seen. An all-zero UUID marks an empty slot.
+ *
+ * <p>When the table gets too full it is copied into a new file twice the size, named with the next generation
+ * number. A generation's header is written last, so an incomplete file is never used. Older generations are deleted
+ * once nothing has them mapped, or on the next open.
+ */
+final class PlayerRecordStore implements Closeable
+{
+
+    static final int MAGIC = 0x47505052; // GPPR
+    static final int FORMAT_VERSION = 1;
+
+    private static final int HEADER_BYTES = 32;
+    private static final int SLOTS_POSITION = 8;
+    private static final int SIZE_POSITION = 12;
+    // UUID, accrued claim blocks, bonus claim blocks, and last seen time. The last seen time was spare in older
+    // files, where it reads as zero, or unknown.
+    static final int RECORD_BYTES = 32;
+    private static final int LAST_SEEN_OFFSET = 24;
+    static final int MIN_SLOTS = 1024;
+    static final int MAX_SLOTS = 1 << 25;
+
+    private static final String GENERATION_PREFIX = "players-";
+    private static final String GENERATION_SUFFIX = ".dat";
+
+    /**
+     * A player's stored claim blocks and activity.
+     *
+     * @param accruedClaimBlocks the claim blocks accrued by playing
+     * @param bonusClaimBlocks the claim blocks granted by administrators
+     * @param lastSeen when the player was last seen online, in epoch milliseconds, or 0 if unknown
+     */
+    record PlayerRecord(int accruedClaimBlocks, int bonusClaimBlocks, long lastSeen)
+    {
+
+        /**
+         * Construct a new {@code PlayerRecord} for a player who hasn't been seen.
+         */
+        PlayerRecord(int accruedClaimBlocks, int bonusClaimBlocks)
+        {
+            this(accruedClaimBlocks, bonusClaimBlocks, 0);
+        }
+
+    }
+
+    private final Path directory;
+    private int generation;
+    private FileChannel channel;
+    private MappedByteBuffer table;
+    private int slots;
+    private int size;
+    private boolean committed;
+
+    private PlayerRecordStore(@NotNull Path directory)
+    {
+        this.directory = directory;
+    }
+
+    /**
+     * Check whether a complete store exists.
+     *
+     * @param directory the directory holding the store's files
+     * @return true if the directory holds a complete store
+     * @throws IOException if the directory can't be read
+     */
+    static boolean exists(@NotNull Path directory) throws IOException
+    {
+        return latestGeneration(directory) >= 0;
+    }
+
+    /**
+     * Open the latest complete store, creating an empty one if there is none.
+     *
+     * @param directory the directory holding the store's files
+     * @return the store
+     * @throws IOException if the store can't be read
+     */
+    static @NotNull PlayerRecordStore open(@NotNull Path directory) throws IOException
+    {
+        Files.createDirectories(directory);
+        int latest = latestGeneration(directory);
+        if (latest < 0)
+        {
+            PlayerRecordStore store = create(directory, 0);
+            store.commit();
+            return store;
+        }
+
+        PlayerRecordStore store = new PlayerRecordStore(directory);
+        store.generation = latest;
+        store.channel = FileChannel.open(store.generationFile(latest), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        store.table = store.channel.map(FileChannel.MapMode.READ_WRITE, 0, store.channel.size());
+        store.slots = store.table.getInt(SLOTS_POSITION);
+        store.size = store.table.getInt(SIZE_POSITION);
+        store.committed = true;
+        store.deleteOtherGenerations();
+        return store;
+    }
+
+    /**
+     * Create a new empty store sized for a number of players, replacing any existing store. The new store isn't
+     * used by {@link #open(Path)} until it is {@link #commit() committed}, so it can be filled from other data first.
+     *
+     * @param directory the directory holding the store's files
+     * @param expectedPlayers the number of players expected to be stored
+     * @return the store
+     * @throws IOException if the store can't be written
+     */
+    static @NotNull PlayerRecordStore create(@NotNull Path directory, int expectedPlayers) throws IOException
+    {
+        Files.createDirectories(directory);
+        PlayerRecordStore store = new PlayerRecordStore(directory);
+        for (Path file : generationFiles(directory))
+        {
+            Files.delete(file);
+        }
+        store.generation = 0;
+        store.slots = slotsFor(expectedPlayers);
+        store.channel = FileChannel.open(store.generationFile(0), StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        store.table = store.channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) store.slots * RECORD_BYTES);
+        store.table.putInt(4, FORMAT_VERSION);
+        store.table.putInt(SLOTS_POSITION, store.slots);
+        return store;
+    }
+
+    /**
+     * Make a store created by {@link #create(Path, int)} the one used from now on.
+     */
+    synchronized void commit()
+    {
+        if (this.committed) return;
+
+        this.table.force();
+        this.table.putInt(0, MAGIC);
+        this.table.force();
+        this.committed = true;
+    }
+
+    /**
+     * Get a player's record.
+     *
+     * @param playerID the player's UUID
+     * @return the player's record, or null if there is none
+     */
+    synchronized @Nullable PlayerRecord get(@NotNull UUID playerID)
+    {
+        int position = this.find(playerID.getMostSignificantBits(), playerID.getLeastSignificantBits());
+        if (position < 0) return null;
+        return this.readRecord(position);
+    }
+
+    /**
+     * Store a player's claim blocks, replacing any previous ones. Their last seen time is kept.
+     *
+     * @param playerID the player's UUID
+     * @param accruedClaimBlocks the claim blocks accrued by playing
+     * @param bonusClaimBlocks the claim blocks granted by administrators
+     * @throws IOException if the store needed to grow and couldn't
+     */
+    synchronized void put(@NotNull UUID playerID, int accruedClaimBlocks, int bonusClaimBlocks) throws IOException
+    {
+        long most = playerID.getMostSignificantBits();
+        long least = playerID.getLeastSignificantBits();
+        if (most == 0 && least == 0) throw new IllegalArgumentException("The nil UUID can't be stored");
+
+        int position = this.find(most, least);
+        if (position < 0)
+        {
+            if (isOverloaded(this.size + 1, this.slots)) this.grow();
+            position = this.insert(most, least);
+            this.table.putInt(SIZE_POSITION, ++this.size);
+        }
+
+        this.table.putInt(position + 16, accruedClaimBlocks);
+        this.table.putInt(position + 20, bonusClaimBlocks);
+    }
+
+    /**
+     * Store when a player was last seen. A player with no record gets one with no claim blocks.
+     *
+     * @param playerID the player's UUID
+     * @param lastSeen when the player was last seen online, in epoch milliseconds
+     * @throws IOException if the store needed to grow and couldn't
+     */
+    synchronized void putLastSeen(@NotNull UUID playerID, long lastSeen) throws IOException
+    {
+        long most = playerID.getMostSignificantBits();
+        long least = playerID.getLeastSignificantBits();
+        if (most == 0 && least == 0) throw new IllegalArgumentException("The nil UUID can't be stored");
+
+        int position = this.find(most, least);
+        if (position < 0)
+        {
+            if (isOverloaded(this.size + 1, this.slots)) this.grow();
+            position = this.insert(most, least);
+            this.table.putInt(SIZE_POSITION, ++this.size);
+        }
+
+        this.table.putLong(position + LAST_SEEN_OFFSET, lastSeen);
+    }
+
+    /**
+     * Visit every stored record.
+     *
+     * @param consumer the consumer of each player's UUID and record
+     */
+    synchronized void forEach(@NotNull BiConsumer<UUID, PlayerRecord> consumer)
+    {
+        for (int slot = 0; slot < this.slots; slot++)
+        {
+            int position = slotPosition(slot);
+            long most = this.table.getLong(position);
+            long least = this.table.getLong(position + 8);
+            if (most == 0 && least == 0) continue;
+            consumer.accept(new UUID(most, least), this.readRecord(position));
+        }
+    }
+
+    /**
+     * @return the number of stored records
+     */
+    synchronized int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * @return the number of slots in the table
+     */
+    synchronized int getSlots()
+    {
+        return this.slots;
+    }
+
+    /**
+     * Write changes to disk and close the store. A store which was never committed is left incomplete.
+     *
+     * @throws IOException if the store's file can't be closed
+     */
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (this.channel == null) return;
+
+        this.table.force();
+        this.channel.close();
+        this.channel = null;
+        this.table = null;
+    }
+
+    private @NotNull PlayerRecord readRecord(int position)
+    {
+        return new PlayerRecord(this.table.getInt(position + 16), this.table.getInt(position + 20), this.table.getLong(position + LAST_SEEN_OFFSET));
+    }
+
+    // Finds the position of a player's slot, or -1 if they have none.
+    private int find(long most, long least)
+    {
+        if (most == 0 && least == 0) return -1;
+
+        int mask = this.slots - 1;
+        for (int slot = home(most, least, mask); ; slot = (slot + 1) & mask)
+        {
+            int position = slotPosition(slot);
+            long slotMost = this.table.getLong(position);
+            long slotLeast = this.table.getLong(position + 8);
+            if (slotMost == most && slotLeast == least) return position;
+            if (slotMost == 0 && slotLeast == 0) return -1;
+        }
+    }
+
+    // Claims the first empty slot for a player known to have none.
+    private int insert(long most, long least)
+    {
+        int mask = this.slots - 1;
+        for (int slot = home(most, least, mask); ; slot = (slot + 1) & mask)
+        {
+            int position = slotPosition(slot);
+            if (this.table.getLong(position) == 0 && this.table.getLong(position + 8) == 0)
+            {
+                this.table.putLong(position, most);
+                this.table.putLong(position + 8, least);
+                return position;
+            }
+        }
+    }
+
+    // Copies every record into the next generation with twice the slots, then switches to it.
+    private void grow() throws IOException
+    {
+        if (this.slots >= MAX_SLOTS) throw new IOException("Player data file is full at " + this.size + " players");
+
+        int newGeneration = this.generation + 1;
+        Path newFile = this.generationFile(newGeneration);
+        Files.deleteIfExists(newFile);
+
+        PlayerRecordStore grown = new PlayerRecordStore(this.directory);
+        grown.generation = newGeneration;
+        grown.slots = this.slots * 2;
+        grown.channel = FileChannel.open(newFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try
+        {
+            grown.table = grown.channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) grown.slots * RECORD_BYTES);
+            grown.table.putInt(4, FORMAT_VERSION);
+            grown.table.putInt(SLOTS_POSITION, grown.slots);
+            this.forEach((playerID, record) ->
+            {
+                int position = grown.insert(playerID.getMostSignificantBits(), playerID.getLeastSignificantBits());
+                grown.table.putInt(position + 16, record.accruedClaimBlocks());
+                grown.table.putInt(position + 20, record.bonusClaimBlocks());
+                grown.table.putLong(position + LAST_SEEN_OFFSET, record.lastSeen());
+            });
+            grown.size = this.size;
+            grown.table.putInt(SIZE_POSITION, grown.size);
+
+            // A store still being filled stays incomplete until it's committed.
+            if (this.committed) grown.commit();
+        }
+        catch (IOException | RuntimeException e)
+        {
+            grown.channel.close();
+            throw e;
+        }
+
+        Path oldFile = this.generationFile(this.generation);
+        this.channel.close();
+        this.generation = grown.generation;
+        this.channel = grown.channel;
+        this.table = grown.table;
+        this.slots = grown.slots;
+
+        // The old file may still be mapped until it's garbage collected, in which case the next open deletes it.
+        try
+        {
+            Files.deleteIfExists(oldFile);
+        }
+        catch (IOException ignored) { }
+    }
+
+    private void deleteOtherGenerations()
+    {
+        try
+        {
+            for (Path file : generationFiles(this.directory))
+            {
+                if (generationNumber(file) != this.generation) Files.deleteIfExists(file);
+            }
+        }
+        catch (IOException ignored) { }
+    }
+
+    private @NotNull Path generationFile(int generation)
+    {
+        return this.directory.resolve(String.format("%s%08d%s", GENERATION_PREFIX, generation, GENERATION_SUFFIX));
+    }
+
+    // Finds the latest generation with a complete header, or -1 if there is none.
+    private static int latestGeneration(@NotNull Path directory) throws IOException
+    {
+        int latest = -1;
+        for (Path file : generationFiles(directory))
+        {
+            int generation = generationNumber(file);
+            if (generation > latest && isComplete(file)) latest = generation;
+        }
+        return latest;
+    }
+
+    private static boolean isComplete(@NotNull Path file) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            if (channel.size() < HEADER_BYTES) return false;
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            int slots = header.getInt(SLOTS_POSITION);
+            return header.getInt(0) == MAGIC
+                    && header.getInt(4) == FORMAT_VERSION
+                    && slots >= MIN_SLOTS && slots <= MAX_SLOTS && Integer.bitCount(slots) == 1
+                    && channel.size() == HEADER_BYTES + (long) slots * RECORD_BYTES;
+        }
+    }
+
+    private static @NotNull List<Path> generationFiles(@NotNull Path directory) throws IOException
+    {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) return files;
+
+        try (Stream<Path> list = Files.list(directory))
+        {
+            for (Path file : (Iterable<Path>) list::iterator)
+            {
+                if (generationNumber(file) >= 0) files.add(file);
+            }
+        }
+        return files;
+    }
+
+    private static int generationNumber(@NotNull Path file)
+    {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(GENERATION_PREFIX) || !name.endsWith(GENERATION_SUFFIX)) return -1;
+
+        try
+        {
+            return Integer.parseInt(name.substring(GENERATION_PREFIX.length(), name.length() - GENERATION_SUFFIX.length()));
+        }
+        catch (NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+    // Keeps the table at most three quarters full.
+    private static boolean isOverloaded(long records, long slots)
+    {
+        return records * 4 > slots * 3;
+    }
+
+    private static int slotsFor(int expectedPlayers)
+    {
+        int slots = MIN_SLOTS;
+        while (slots < MAX_SLOTS && isOverloaded(expectedPlayers, slots)) slots *= 2;
+        return slots;
+    }
+
+    private static int home(long most, long least, int mask)
+    {
+        long hash = (most ^ Long.rotateLeft(least, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private static int slotPosition(int slot)
+    {
+        return HEADER_BYTES + slot * RECORD_BYTES;
+    }
+
+}
@@ -20,10 +20,11 @@ package me.ryanhamshire.GriefPrevention;
 
 import org.bukkit.entity.Player;
 
-//sends a message to a player
-//used to send delayed messages, for example help text triggered by a player's chat
+//ends a player's pvp immunity once they pick anything up, checking every minute
 class PvPImmunityValidationTask implements Runnable
 {
+    static final String JOB_TYPE = "pvp-immunity-validation";
+
     private final Player player;
 
     public PvPImmunityValidationTask(Player player)
@@ -49,7 +50,7 @@ class PvPImmunityValidationTask implements Runnable
         else
         {
             //otherwise check again in one minute
-            GriefPrevention.instance.getServer().getScheduler().scheduleSyncDelayedTask(GriefPrevention.instance, this, 1200L);
+            GriefPrevention.instance.getWorkScheduler().schedule(JOB_TYPE, this, 1200L);
         }
     }
 }
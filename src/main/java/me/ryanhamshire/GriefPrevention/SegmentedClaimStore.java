@@ -0,0 +1,618 @@
+/*
+    GriefPrevention Server Plugin for Minecraft
+    Copyright (C) 2012 Ryan Hamshire
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.ryanhamshire.GriefPrevention;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only store of binary claim records, keyed by claim ID.
+ *
+ * <p>Records are appended to numbered segment files. Each record is a type byte, the claim ID, the payload length,
+ * the payload, and a CRC32 checksum. Saving a claim again or deleting it leaves its old record behind as garbage.
+ * Saves and deletions never rewrite the store themselves; once there is more garbage than live data, the owner
+ * reclaims it by calling {@link #compactIfNeeded()}, typically from a background thread.
+ *
+ * <p>The location of each claim's latest record is kept in a memory-mapped index file addressed directly by claim
+ * ID. The index is marked dirty while the store is open, so if the server stops without closing the store it is
+ * rebuilt by replaying the segments in order.
+ */
+final class SegmentedClaimStore implements Closeable
+{
+
+    static final int SEGMENT_MAGIC = 0x47505347; // GPSG
+    static final int INDEX_MAGIC = 0x47504958; // GPIX
+    static final int FORMAT_VERSION = 1;
+
+    static final long MAX_SEGMENT_BYTES = 64L * 1024 * 1024;
+    static final long MIN_COMPACTION_GARBAGE_BYTES = 4L * 1024 * 1024;
+
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_DELETE = 2;
+
+    private static final int SEGMENT_HEADER_BYTES = 8;
+    // Type, claim ID, and payload length before the payload, checksum after.
+    private static final int RECORD_HEADER_BYTES = 1 + 8 + 4;
+    private static final int RECORD_OVERHEAD_BYTES = RECORD_HEADER_BYTES + 4;
+
+    private static final int INDEX_HEADER_BYTES = 16;
+    private static final int INDEX_CLEAN_POSITION = 8;
+    // Segment number, payload length, and record offset. Segment 0 marks an empty slot.
+    private static final int SLOT_BYTES = 16;
+    private static final long INITIAL_SLOTS = 1024;
+    private static final long MAX_SLOTS = (Integer.MAX_VALUE - INDEX_HEADER_BYTES) / SLOT_BYTES;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    /**
+     * Receives live records.
+     */
+    @FunctionalInterface
+    interface RecordConsumer
+    {
+        void accept(long claimID, byte @NotNull [] payload) throws IOException;
+    }
+
+    private final Path directory;
+    private final Consumer<String> log;
+    private final TreeMap<Integer, FileChannel> segments = new TreeMap<>();
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private long slots;
+    private int activeSegment;
+    private int liveRecords;
+    private long liveBytes;
+    private long garbageBytes;
+
+    /**
+     * Open a store, creating it if it doesn't exist.
+     *
+     * @param directory the directory holding the store's files
+     * @param log the destination for messages about recovered data
+     * @throws IOException if the store can't be read
+     */
+    SegmentedClaimStore(@NotNull Path directory, @NotNull Consumer<String> log) throws IOException
+    {
+        this.directory = directory;
+        this.log = log;
+        Files.createDirectories(directory);
+
+        try (Stream<Path> files = Files.list(directory))
+        {
+            for (Path file : (Iterable<Path>) files::iterator)
+            {
+                int number = segmentNumber(file);
+                if (number > 0)
+                {
+                    this.segments.put(number, FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE));
+                }
+            }
+        }
+
+        Path indexFile = directory.resolve("index.dat");
+        boolean indexExisted = Files.exists(indexFile);
+        this.indexChannel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.slots = Math.max(INITIAL_SLOTS, (this.indexChannel.size() - INDEX_HEADER_BYTES) / SLOT_BYTES);
+        this.index = this.indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER_BYTES + this.slots * SLOT_BYTES);
+
+        boolean clean = indexExisted
+                && this.index.getInt(0) == INDEX_MAGIC
+                && this.index.getInt(4) == FORMAT_VERSION
+                && this.index.getInt(INDEX_CLEAN_POSITION) == 1;
+        if (clean)
+        {
+            this.measure();
+        }
+        else
+        {
+            this.rebuildIndex();
+        }
+
+        // Mark the index dirty until it's closed.
+        this.index.putInt(0, INDEX_MAGIC);
+        this.index.putInt(4, FORMAT_VERSION);
+        this.index.putInt(INDEX_CLEAN_POSITION, 0);
+        this.index.force();
+
+        if (this.segments.isEmpty() || this.segments.lastEntry().getValue().size() >= MAX_SEGMENT_BYTES)
+        {
+            this.startSegment();
+        }
+        this.activeSegment = this.segments.lastKey();
+
+        this.compactIfNeeded();
+    }
+
+    /**
+     * Save a claim's record.
+     *
+     * @param claimID the claim ID
+     * @param payload the encoded claim
+     * @throws IOException if the record can't be written
+     */
+    synchronized void put(long claimID, byte @NotNull [] payload) throws IOException
+    {
+        this.ensureSlot(claimID);
+        long offset = this.append(TYPE_PUT, claimID, payload);
+
+        int oldSegment = this.slotSegment(claimID);
+        if (oldSegment != 0)
+        {
+            long oldBytes = RECORD_OVERHEAD_BYTES + this.slotLength(claimID);
+            this.liveBytes -= oldBytes;
+            this.garbageBytes += oldBytes;
+        }
+        else
+        {
+            this.liveRecords++;
+        }
+
+        this.setSlot(claimID, this.activeSegment, payload.length, offset);
+        this.liveBytes += RECORD_OVERHEAD_BYTES + payload.length;
+
+        this.rotateIfFull();
+    }
+
+    /**
+     * Delete a claim's record.
+     *
+     * @param claimID the claim ID
+     * @return true if the claim had a record
+     * @throws IOException if the deletion can't be written
+     */
+    synchronized boolean delete(long claimID) throws IOException
+    {
+        if (claimID < 0 || claimID >= this.slots || this.slotSegment(claimID) == 0) return false;
+
+        // The deletion must be recorded so that rebuilding the index doesn't bring the claim back.
+        this.append(TYPE_DELETE, claimID, new byte[0]);
+
+        long oldBytes = RECORD_OVERHEAD_BYTES + this.slotLength(claimID);
+        this.liveBytes -= oldBytes;
+        this.garbageBytes += oldBytes + RECORD_OVERHEAD_BYTES;
+        this.liveRecords--;
+        this.setSlot(claimID, 0, 0, 0);
+
+        this.rotateIfFull();
+        return true;
+    }
+
+    /**
+     * Read a claim's record.
+     *
+     * @param claimID the claim ID
+     * @return the encoded claim, or null if there is no record
+     * @throws IOException if the record can't be read
+     */
+    synchronized byte @Nullable [] get(long claimID) throws IOException
+    {
+        if (claimID < 0 || claimID >= this.slots) return null;
+
+        int segment = this.slotSegment(claimID);
+        if (segment == 0) return null;
+
+        return this.readPayload(claimID, segment, this.slotOffset(claimID), this.slotLength(claimID));
+    }
+
+    /**
+     * Read every live record, in the order they are stored.
+     *
+     * @param consumer the consumer of records
+     * @throws IOException if a record can't be read
+     */
+    synchronized void forEach(@NotNull RecordConsumer consumer) throws IOException
+    {
+        for (long[] location : this.liveLocations())
+        {
+            long claimID = location[0];
+            int segment = (int) location[1];
+            consumer.accept(claimID, this.readPayload(claimID, segment, location[2], (int) location[3]));
+        }
+    }
+
+    /**
+     * @return true if the store is open and has enough garbage for compaction to be worth it
+     */
+    synchronized boolean needsCompaction()
+    {
+        return this.indexChannel != null
+                && this.garbageBytes >= MIN_COMPACTION_GARBAGE_BYTES && this.garbageBytes > this.liveBytes;
+    }
+
+    /**
+     * Rewrite the live records into new segments and delete the old ones, if there is enough garbage to be worth it.
+     *
+     * @return true if the store was compacted
+     * @throws IOException if compaction fails
+     */
+    synchronized boolean compactIfNeeded() throws IOException
+    {
+        if (!this.needsCompaction()) return false;
+
+        this.compact();
+        return true;
+    }
+
+    /**
+     * Rewrite the live records into new segments and delete the old ones.
+     *
+     * @throws IOException if compaction fails
+     */
+    synchronized void compact() throws IOException
+    {
+        List<Integer> oldSegments = new ArrayList<>(this.segments.keySet());
+        List<long[]> locations = this.liveLocations();
+
+        this.startSegment();
+        for (long[] location : locations)
+        {
+            long claimID = location[0];
+            int segment = (int) location[1];
+            int length = (int) location[3];
+            byte[] payload = this.readPayload(claimID, segment, location[2], length);
+
+            long offset = this.append(TYPE_PUT, claimID, payload);
+            this.setSlot(claimID, this.activeSegment, length, offset);
+            this.rotateIfFull();
+        }
+
+        // New records must be durable before the old ones are deleted.
+        for (FileChannel channel : this.segments.tailMap(oldSegments.isEmpty() ? 0 : oldSegments.get(oldSegments.size() - 1), false).values())
+        {
+            channel.force(false);
+        }
+        this.index.force();
+
+        // Oldest first, so that a deletion record is never removed while an older record it cancels remains.
+        for (int segment : oldSegments)
+        {
+            this.segments.remove(segment).close();
+            Files.deleteIfExists(this.segmentFile(segment));
+        }
+
+        this.garbageBytes = 0;
+    }
+
+    /**
+     * @return the number of live records
+     */
+    synchronized int size()
+    {
+        return this.liveRecords;
+    }
+
+    /**
+     * @return the bytes used by live records
+     */
+    synchronized long getLiveBytes()
+    {
+        return this.liveBytes;
+    }
+
+    /**
+     * @return the bytes used by records which have been replaced or deleted
+     */
+    synchronized long getGarbageBytes()
+    {
+        return this.garbageBytes;
+    }
+
+    /**
+     * @return the number of segment files
+     */
+    synchronized int getSegmentCount()
+    {
+        return this.segments.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        if (this.indexChannel == null) return;
+
+        for (FileChannel channel : this.segments.values())
+        {
+            channel.force(false);
+            channel.close();
+        }
+        this.segments.clear();
+
+        this.index.putInt(INDEX_CLEAN_POSITION, 1);
+        this.index.force();
+        this.indexChannel.close();
+        this.indexChannel = null;
+        this.index = null;
+    }
+
+    private long append(byte type, long claimID, byte @NotNull [] payload) throws IOException
+    {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD_BYTES + payload.length);
+        record.put(type).putLong(claimID).putInt(payload.length).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        record.flip();
+
+        FileChannel active = this.segments.get(this.activeSegment);
+        long offset = active.size();
+        writeFully(active, record, offset);
+        return offset;
+    }
+
+    // Reads a record, returning its payload, or null if it's incomplete, corrupt, or not a record for the claim.
+    private static byte @Nullable [] readRecord(@NotNull ByteBuffer record, long claimID)
+    {
+        if (record.remaining() < RECORD_OVERHEAD_BYTES) return null;
+
+        int start = record.position();
+        byte type = record.get();
+        long id = record.getLong();
+        int length = record.getInt();
+        if (type != TYPE_PUT || id != claimID || length < 0 || record.remaining() < length + 4) return null;
+
+        byte[] payload = new byte[length];
+        record.get(payload);
+        int checksum = record.getInt();
+
+        CRC32 crc = new CRC32();
+        crc.update(record.duplicate().position(start).limit(start + RECORD_HEADER_BYTES + length));
+        return (int) crc.getValue() == checksum ? payload : null;
+    }
+
+    private byte @NotNull [] readPayload(long claimID, int segment, long offset, int length) throws IOException
+    {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD_BYTES + length);
+        readFully(this.segments.get(segment), record, offset);
+        record.flip();
+
+        byte[] payload = readRecord(record, claimID);
+        if (payload == null) throw new IOException("Corrupt record for claim " + claimID + " in segment " + segment);
+        return payload;
+    }
+
+    private void rotateIfFull() throws IOException
+    {
+        if (this.segments.get(this.activeSegment).size() >= MAX_SEGMENT_BYTES)
+        {
+            this.startSegment();
+        }
+    }
+
+    private void startSegment() throws IOException
+    {
+        int number = this.segments.isEmpty() ? 1 : this.segments.lastKey() + 1;
+        FileChannel channel = FileChannel.open(this.segmentFile(number),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        writeFully(channel, ByteBuffer.allocate(SEGMENT_HEADER_BYTES).putInt(SEGMENT_MAGIC).putInt(FORMAT_VERSION).flip(), 0);
+        this.segments.put(number, channel);
+        this.activeSegment = number;
+    }
+
+    // Recreates the index from the segments. Later records replace earlier ones.
+    private void rebuildIndex() throws IOException
+    {
+        for (long position = INDEX_HEADER_BYTES; position < INDEX_HEADER_BYTES + this.slots * SLOT_BYTES; position += 8)
+        {
+            this.index.putLong((int) position, 0);
+        }
+        this.liveRecords = 0;
+        this.liveBytes = 0;
+        this.garbageBytes = 0;
+
+        for (var entry : this.segments.entrySet())
+        {
+            int segment = entry.getKey();
+            FileChannel channel = entry.getValue();
+            // Segments are read rather than mapped, so they can be truncated or deleted afterward on any platform.
+            long size = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            readFully(channel, buffer, 0);
+
+            if (size < SEGMENT_HEADER_BYTES || buffer.getInt(0) != SEGMENT_MAGIC)
+            {
+                this.log.accept("Ignoring claim segment " + segment + " because it isn't a claim segment.");
+                continue;
+            }
+
+            int position = SEGMENT_HEADER_BYTES;
+            while (position + RECORD_OVERHEAD_BYTES <= size)
+            {
+                byte type = buffer.get(position);
+                long claimID = buffer.getLong(position + 1);
+                int length = buffer.getInt(position + 9);
+                if ((type != TYPE_PUT && type != TYPE_DELETE) || claimID < 0 || claimID >= MAX_SLOTS
+                        || length < 0 || position + RECORD_OVERHEAD_BYTES + (long) length > size)
+                {
+                    break;
+                }
+
+                CRC32 crc = new CRC32();
+                crc.update(buffer.slice(position, RECORD_HEADER_BYTES + length));
+                if ((int) crc.getValue() != buffer.getInt(position + RECORD_HEADER_BYTES + length))
+                {
+                    break;
+                }
+
+                this.ensureSlot(claimID);
+                if (this.slotSegment(claimID) != 0)
+                {
+                    long oldBytes = RECORD_OVERHEAD_BYTES + this.slotLength(claimID);
+                    this.liveBytes -= oldBytes;
+                    this.garbageBytes += oldBytes;
+                    this.liveRecords--;
+                }
+
+                if (type == TYPE_PUT)
+                {
+                    this.setSlot(claimID, segment, length, position);
+                    this.liveBytes += RECORD_OVERHEAD_BYTES + length;
+                    this.liveRecords++;
+                }
+                else
+                {
+                    this.setSlot(claimID, 0, 0, 0);
+                    this.garbageBytes += RECORD_OVERHEAD_BYTES;
+                }
+
+                position += RECORD_OVERHEAD_BYTES + length;
+            }
+
+            // Anything after the last good record was a write interrupted by a crash.
+            if (position < size)
+            {
+                this.log.accept("Discarding " + (size - position) + " bytes of incomplete claim data from segment " + segment + ".");
+                channel.truncate(position);
+            }
+        }
+
+        this.index.force();
+    }
+
+    // Computes the counters kept in memory from a clean index.
+    private void measure() throws IOException
+    {
+        this.liveRecords = 0;
+        this.liveBytes = 0;
+        for (long claimID = 0; claimID < this.slots; claimID++)
+        {
+            if (this.slotSegment(claimID) != 0)
+            {
+                this.liveRecords++;
+                this.liveBytes += RECORD_OVERHEAD_BYTES + this.slotLength(claimID);
+            }
+        }
+
+        long totalBytes = 0;
+        for (FileChannel channel : this.segments.values())
+        {
+            totalBytes += Math.max(0, channel.size() - SEGMENT_HEADER_BYTES);
+        }
+        this.garbageBytes = Math.max(0, totalBytes - this.liveBytes);
+    }
+
+    // Lists claim ID, segment, offset, and payload length of each live record, in storage order.
+    private @NotNull List<long[]> liveLocations()
+    {
+        List<long[]> locations = new ArrayList<>(this.liveRecords);
+        for (long claimID = 0; claimID < this.slots; claimID++)
+        {
+            int segment = this.slotSegment(claimID);
+            if (segment != 0)
+            {
+                locations.add(new long[] { claimID, segment, this.slotOffset(claimID), this.slotLength(claimID) });
+            }
+        }
+
+        locations.sort(Comparator.<long[]>comparingLong(location -> location[1]).thenComparingLong(location -> location[2]));
+        return locations;
+    }
+
+    private void ensureSlot(long claimID) throws IOException
+    {
+        if (claimID < 0 || claimID >= MAX_SLOTS) throw new IOException("Claim ID out of range for segmented storage: " + claimID);
+        if (claimID < this.slots) return;
+
+        this.slots = Math.min(MAX_SLOTS, Math.max(claimID + 1, this.slots * 2));
+        this.index = this.indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER_BYTES + this.slots * SLOT_BYTES);
+    }
+
+    private int slotPosition(long claimID)
+    {
+        return (int) (INDEX_HEADER_BYTES + claimID * SLOT_BYTES);
+    }
+
+    private int slotSegment(long claimID)
+    {
+        return this.index.getInt(this.slotPosition(claimID));
+    }
+
+    private int slotLength(long claimID)
+    {
+        return this.index.getInt(this.slotPosition(claimID) + 4);
+    }
+
+    private long slotOffset(long claimID)
+    {
+        return this.index.getLong(this.slotPosition(claimID) + 8);
+    }
+
+    private void setSlot(long claimID, int segment, int length, long offset)
+    {
+        int position = this.slotPosition(claimID);
+        this.index.putInt(position, segment);
+        this.index.putInt(position + 4, length);
+        this.index.putLong(position + 8, offset);
+    }
+
+    private @NotNull Path segmentFile(int number)
+    {
+        return this.directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private static int segmentNumber(@NotNull Path file)
+    {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) return 0;
+
+        try
+        {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        }
+        catch (NumberFormatException e)
+        {
+            return 0;
+        }
+    }
+
+    private static void readFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new IOException("Unexpected end of claim segment");
+            position += read;
+        }
+    }
+
+    private static void writeFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            position += channel.write(buffer, position);
+        }
+    }
+
+}
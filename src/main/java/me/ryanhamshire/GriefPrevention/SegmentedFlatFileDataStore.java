@@ -0,0 +1,476 @@
+/*
+    GriefPrevention Server Plugin for Minecraft
+    Copyright (C) 2012 Ryan Hamshire
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package me.ryanhamshire.GriefPrevention;
+
+import com.google.common.io.Files;
+import org.bukkit.Bukkit;
+import org.bukkit.World;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+
+//manages data stored in the file system, keeping claims in segment files rather than one YAML file per claim
+//player and group data are stored the same way as the regular file system data store, in the player record store
+public class SegmentedFlatFileDataStore extends FlatFileDataStore
+{
+    final static String segmentFolderName = "_segments";
+    private final static String yamlBackupFolderName = "_yaml";
+
+    private final static byte claimRecordVersion = 1;
+
+    //assigned while the parent constructor loads claims, so it must not have an initializer
+    //volatile because the claim writer and background compaction use it without the data store lock
+    private volatile SegmentedClaimStore store;
+    private volatile boolean compactionScheduled;
+
+    static boolean hasSegmentedData()
+    {
+        return new File(claimDataFolderPath, segmentFolderName).exists();
+    }
+
+    SegmentedFlatFileDataStore() throws Exception
+    {
+        super();
+    }
+
+    @Override
+    void loadClaims(File claimDataFolder) throws Exception
+    {
+        File segmentFolder = new File(claimDataFolder, segmentFolderName);
+
+        //first time in this mode, convert the YAML claim files
+        if (!segmentFolder.exists())
+        {
+            this.migrateFromYaml(claimDataFolder, segmentFolder);
+            this.store = new SegmentedClaimStore(segmentFolder.toPath(), GriefPrevention::AddLogEntry);
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        this.store = new SegmentedClaimStore(segmentFolder.toPath(), GriefPrevention::AddLogEntry);
+
+        List<World> validWorlds = Bukkit.getServer().getWorlds();
+        ArrayList<Claim> topLevelClaims = new ArrayList<>();
+        ArrayList<Claim> orphans = new ArrayList<>();
+        ArrayList<Long> orphanParentIDs = new ArrayList<>();
+        this.store.forEach((claimID, payload) ->
+        {
+            try
+            {
+                ArrayList<Long> out_parentID = new ArrayList<>();  //hacky output parameter
+                Claim claim = this.decodeClaim(payload, out_parentID, claimID, validWorlds);
+                if (out_parentID.get(0) == -1)
+                {
+                    topLevelClaims.add(claim);
+                }
+                else
+                {
+                    orphans.add(claim);
+                    orphanParentIDs.add(out_parentID.get(0));
+                }
+            }
+
+            //if there's any problem with the record's content, log an error message and skip it
+            catch (Exception e)
+            {
+                if (e.getMessage() != null && e.getMessage().contains("World not found"))
+                {
+                    GriefPrevention.AddLogEntry("Failed to load a claim (ID:" + claimID + ") because its world isn't loaded (yet?).  If this is not expected, delete this claim.");
+                }
+                else
+                {
+                    StringWriter errors = new StringWriter();
+                    e.printStackTrace(new PrintWriter(errors));
+                    GriefPrevention.AddLogEntry(claimID + " " + errors, CustomLogEntryTypes.Exception);
+                }
+            }
+        });
+
+        //records are read in storage order.  add claims in ID order, like the YAML loader does
+        topLevelClaims.sort(Comparator.comparingLong(claim -> claim.id));
+        for (Claim claim : topLevelClaims)
+        {
+            this.addClaim(claim, false);
+        }
+
+        //link children to parents
+        for (int i = 0; i < orphans.size(); i++)
+        {
+            Claim parent = this.getClaim(orphanParentIDs.get(i));
+            if (parent != null)
+            {
+                Claim child = orphans.get(i);
+                child.parent = parent;
+                this.addClaim(child, false);
+            }
+        }
+
+        GriefPrevention.AddLogEntry("Read " + this.store.size() + " claim records from " + this.store.getSegmentCount()
+                + " segments in " + (System.currentTimeMillis() - start) + "ms.");
+    }
+
+    //loads the YAML claim files, writes them all to a new segment store, then moves the YAML files aside
+    private void migrateFromYaml(File claimDataFolder, File segmentFolder) throws Exception
+    {
+        super.loadClaims(claimDataFolder);
+
+        //build the store somewhere else first, so an interrupted migration is simply started over
+        File migratingFolder = new File(claimDataFolder, segmentFolderName + ".migrating");
+        File[] leftovers = migratingFolder.listFiles();
+        if (leftovers != null)
+        {
+            for (File leftover : leftovers)
+            {
+                leftover.delete();
+            }
+        }
+
+        int count = 0;
+        try (SegmentedClaimStore migrationStore = new SegmentedClaimStore(migratingFolder.toPath(), GriefPrevention::AddLogEntry))
+        {
+            for (Claim claim : this.claims.values())
+            {
+                count += this.migrateClaim(migrationStore, claim);
+                for (Claim child : claim.children)
+                {
+                    count += this.migrateClaim(migrationStore, child);
+                }
+            }
+        }
+
+        if (!migratingFolder.renameTo(segmentFolder))
+        {
+            throw new IOException("Unable to rename " + migratingFolder.getAbsolutePath() + " to " + segmentFolder.getAbsolutePath());
+        }
+
+        //the YAML files are no longer read, so move them out of the way
+        File yamlBackupFolder = new File(claimDataFolder, yamlBackupFolderName);
+        yamlBackupFolder.mkdirs();
+        File[] files = claimDataFolder.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                if (file.isFile() && file.getName().endsWith(".yml"))
+                {
+                    file.renameTo(new File(yamlBackupFolder, file.getName()));
+                }
+            }
+        }
+
+        GriefPrevention.AddLogEntry("Converted " + count + " claims to segmented claim storage.  The YAML claim files were moved to " + yamlBackupFolder.getPath() + ".");
+    }
+
+    private int migrateClaim(SegmentedClaimStore migrationStore, Claim claim) throws IOException
+    {
+        if (claim.id == null) return 0;
+
+        //keep the modified date, which YAML files stored as their last modified time
+        long modified = claim.modifiedDate != null ? claim.modifiedDate.getTime() : System.currentTimeMillis();
+        migrationStore.put(claim.id, this.encodeClaim(claim, modified));
+        return 1;
+    }
+
+    byte[] encodeClaim(Claim claim, long modified) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeByte(claimRecordVersion);
+        out.writeLong(claim.parent != null ? claim.parent.id : -1L);
+
+        //boundaries
+        out.writeUTF(claim.lesserBoundaryCorner.getWorld().getName());
+        out.writeInt(claim.lesserBoundaryCorner.getBlockX());
+        out.writeInt(claim.lesserBoundaryCorner.getBlockY());
+        out.writeInt(claim.lesserBoundaryCorner.getBlockZ());
+        out.writeInt(claim.greaterBoundaryCorner.getBlockX());
+        out.writeInt(claim.greaterBoundaryCorner.getBlockY());
+        out.writeInt(claim.greaterBoundaryCorner.getBlockZ());
+
+        //owner
+        out.writeBoolean(claim.ownerID != null);
+        if (claim.ownerID != null)
+        {
+            out.writeLong(claim.ownerID.getMostSignificantBits());
+            out.writeLong(claim.ownerID.getLeastSignificantBits());
+        }
+
+        out.writeBoolean(claim.getSubclaimRestrictions());
+        out.writeLong(modified);
+
+        ArrayList<String> builders = new ArrayList<>();
+        ArrayList<String> containers = new ArrayList<>();
+        ArrayList<String> accessors = new ArrayList<>();
+        ArrayList<String> managers = new ArrayList<>();
+        claim.getPermissions(builders, containers, accessors, managers);
+        writeStrings(out, builders);
+        writeStrings(out, containers);
+        writeStrings(out, accessors);
+        writeStrings(out, managers);
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    Claim decodeClaim(byte[] payload, ArrayList<Long> out_parentID, long claimID, List<World> validWorlds) throws Exception
+    {
+        ArrayList<Long> out_modified = new ArrayList<>();  //hacky output parameter
+        ClaimRecord record = decodeClaimRecord(payload, claimID, out_modified);
+        out_parentID.add(record.parentID());
+
+        //boundaries
+        World world = null;
+        for (World w : validWorlds)
+        {
+            if (w.getName().equalsIgnoreCase(record.world()))
+            {
+                world = w;
+                break;
+            }
+        }
+
+        if (world == null)
+        {
+            throw new Exception("World not found: \"" + record.world() + "\"");
+        }
+
+        //instantiate
+        Claim claim = record.toClaim(world);
+        claim.modifiedDate = new Date(out_modified.get(0));
+
+        return claim;
+    }
+
+    //reads a claim record without needing its world to be loaded.  the modified date is returned through out_modified
+    static ClaimRecord decodeClaimRecord(byte[] payload, long claimID, ArrayList<Long> out_modified) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+
+        byte version = in.readByte();
+        if (version != claimRecordVersion)
+        {
+            throw new IOException("Unknown claim record version " + version);
+        }
+
+        long parentID = in.readLong();
+
+        //boundaries
+        String worldName = in.readUTF();
+        int lesserX = in.readInt();
+        int lesserY = in.readInt();
+        int lesserZ = in.readInt();
+        int greaterX = in.readInt();
+        int greaterY = in.readInt();
+        int greaterZ = in.readInt();
+
+        //owner
+        UUID ownerID = null;
+        if (in.readBoolean())
+        {
+            ownerID = new UUID(in.readLong(), in.readLong());
+        }
+
+        boolean inheritNothing = in.readBoolean();
+        out_modified.add(in.readLong());
+
+        return new ClaimRecord(claimID, ownerID, worldName, lesserX, lesserY, lesserZ, greaterX, greaterY, greaterZ,
+                inheritNothing, parentID, readStrings(in), readStrings(in), readStrings(in), readStrings(in));
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> strings) throws IOException
+    {
+        out.writeInt(strings.size());
+        for (String string : strings)
+        {
+            out.writeUTF(string);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException
+    {
+        int size = in.readInt();
+        ArrayList<String> strings = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+        {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+
+    //not synchronized, so the claim writer doesn't hold the data store lock while writing.  the store has its own lock
+    @Override
+    void writeClaimToStorage(Claim claim)
+    {
+        SegmentedClaimStore store = this.store;
+        if (store == null) return;
+
+        try
+        {
+            //like a YAML file's last modified time, the modified date is when the claim was last written
+            store.put(claim.id, this.encodeClaim(claim, System.currentTimeMillis()));
+            this.compactInBackground(store);
+        }
+
+        //if any problem, log it
+        catch (Exception e)
+        {
+            StringWriter errors = new StringWriter();
+            e.printStackTrace(new PrintWriter(errors));
+            GriefPrevention.AddLogEntry(claim.id + " " + errors, CustomLogEntryTypes.Exception);
+        }
+    }
+
+    @Override
+    synchronized void deleteClaimFromSecondaryStorage(Claim claim)
+    {
+        if (claim.id == null) return;
+
+        try
+        {
+            this.store.delete(claim.id);
+            this.compactInBackground(this.store);
+        }
+        catch (IOException e)
+        {
+            GriefPrevention.AddLogEntry("Error: Unable to delete claim " + claim.id + " from segmented claim storage: " + e.getMessage());
+        }
+    }
+
+    //rewrites the store on the storage thread once it's mostly garbage, so saves and deletions never wait for a rewrite
+    private void compactInBackground(SegmentedClaimStore store)
+    {
+        if (this.compactionScheduled || !store.needsCompaction()) return;
+        this.compactionScheduled = true;
+
+        try
+        {
+            this.getStorageReadExecutor().execute(() ->
+            {
+                this.compactionScheduled = false;
+                try
+                {
+                    long start = System.currentTimeMillis();
+                    if (store.compactIfNeeded())
+                    {
+                        GriefPrevention.AddLogEntry("Compacted segmented claim storage in " + (System.currentTimeMillis() - start) + "ms.", CustomLogEntryTypes.Debug, true);
+                    }
+                }
+                catch (IOException e)
+                {
+                    GriefPrevention.AddLogEntry("Error: Unable to compact segmented claim storage: " + e.getMessage());
+                }
+            });
+        }
+
+        //while stopping, the store is compacted the next time it's opened instead
+        catch (RejectedExecutionException e)
+        {
+            this.compactionScheduled = false;
+        }
+    }
+
+    //writes every claim out as a YAML file in the claims data folder, replacing any YAML files already there
+    //the exported files are what the regular file system data store reads, so this is the way back to YAML
+    synchronized int exportClaimsToYaml() throws IOException
+    {
+        File claimDataFolder = new File(claimDataFolderPath);
+        File[] files = claimDataFolder.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                if (file.isFile() && file.getName().endsWith(".yml"))
+                {
+                    file.delete();
+                }
+            }
+        }
+
+        int count = 0;
+        for (Claim claim : this.claims.values())
+        {
+            count += this.exportClaim(claimDataFolder, claim);
+            for (Claim child : claim.children)
+            {
+                count += this.exportClaim(claimDataFolder, child);
+            }
+        }
+
+        return count;
+    }
+
+    private int exportClaim(File claimDataFolder, Claim claim) throws IOException
+    {
+        if (claim.id == null) return 0;
+
+        File claimFile = new File(claimDataFolder, claim.id + ".yml");
+        Files.write(this.getYamlForClaim(claim).getBytes(StandardCharsets.UTF_8), claimFile);
+
+        //the YAML loader reads the modified date from the file
+        if (claim.modifiedDate != null)
+        {
+            claimFile.setLastModified(claim.modifiedDate.getTime());
+        }
+        return 1;
+    }
+
+    @Override
+    synchronized void migrateData(DatabaseDataStore databaseStore) throws Exception
+    {
+        //claims are migrated from memory.  close the store first so the claims data folder can be renamed afterward
+        this.closeClaimStore();
+        super.migrateData(databaseStore);
+    }
+
+    @Override
+    synchronized void close()
+    {
+        this.closeClaimStore();
+        super.close();
+    }
+
+    private void closeClaimStore()
+    {
+        if (this.store == null) return;
+
+        try
+        {
+            this.store.close();
+        }
+        catch (IOException e)
+        {
+            GriefPrevention.AddLogEntry("Error: Unable to close segmented claim storage: " + e.getMessage());
+        }
+        this.store = null;
+    }
+}
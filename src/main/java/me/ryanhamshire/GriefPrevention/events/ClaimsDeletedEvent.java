@@ -0,0 +1,43 @@
+package me.ryanhamshire.GriefPrevention.events;
+
+import me.ryanhamshire.GriefPrevention.Claim;
+import org.bukkit.event.HandlerList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collection;
+
+/**
+ * An {@link org.bukkit.event.Event Event} called once after several {@link Claim Claims} are deleted together,
+ * such as when all claims in a world or all claims belonging to a player are deleted.
+ *
+ * <p>Depending on the cause, a {@link ClaimDeletedEvent} may also have been called for each claim.
+ * Subdivisions deleted along with their parent claims are included.
+ */
+public class ClaimsDeletedEvent extends MultiClaimEvent
+{
+
+    /**
+     * Construct a new {@code ClaimsDeletedEvent}.
+     *
+     * @param claims the {@link Claim Claims} deleted
+     */
+    public ClaimsDeletedEvent(@NotNull Collection<Claim> claims)
+    {
+        super(claims);
+    }
+
+    // Listenable event requirements
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    public static HandlerList getHandlerList()
+    {
+        return HANDLERS;
+    }
+
+    @Override
+    public @NotNull HandlerList getHandlers()
+    {
+        return HANDLERS;
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.griefprevention.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TickSchedulerTest
+{
+
+    private static TickScheduler open(long budgetMicros)
+    {
+        return new TickScheduler(budgetMicros, TimeUnit.MICROSECONDS, Logger.getAnonymousLogger());
+    }
+
+    @Test
+    void testDelays()
+    {
+        TickScheduler scheduler = open(TimeUnit.SECONDS.toMicros(1));
+        Map<Long, Long> expected = new HashMap<>();
+        Map<Long, Long> ranAt = new HashMap<>();
+
+        // Delays in every wheel, at their edges, and past the top wheel.
+        List<Long> delays = new ArrayList<>(List.of(1L, 63L, 64L, 65L, 4095L, 4096L, 262_143L, 262_144L, 16_777_216L + 5));
+        Random random = new Random(7);
+        for (int i = 0; i < 200; i++)
+        {
+            delays.add(1 + (long) random.nextInt(300_000));
+        }
+
+        for (int i = 0; i < delays.size(); i++)
+        {
+            long id = i;
+            long delay = delays.get(i);
+            expected.put(id, delay);
+            scheduler.schedule("test", () -> ranAt.put(id, scheduler.getCurrentTick()), delay);
+        }
+
+        // Schedule some more part way round the wheels.
+        for (int i = 0; i < 1000; i++)
+        {
+            scheduler.tick();
+        }
+        for (int i = 0; i < 50; i++)
+        {
+            long id = delays.size() + i;
+            long delay = 1 + (long) random.nextInt(100_000);
+            expected.put(id, 1000 + delay);
+            scheduler.schedule("test", () -> ranAt.put(id, scheduler.getCurrentTick()), delay);
+        }
+
+        while (scheduler.getCurrentTick() < 16_777_216L + 5)
+        {
+            scheduler.tick();
+        }
+
+        assertEquals(expected, ranAt);
+        assertEquals(0, scheduler.getMetrics().get("test").waiting());
+    }
+
+    @Test
+    void testBudget()
+    {
+        // With no budget, one job runs each tick.
+        TickScheduler scheduler = open(0);
+        List<Integer> ran = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+        {
+            int id = i;
+            scheduler.submit("test", () -> ran.add(id));
+        }
+
+        scheduler.tick();
+        assertEquals(List.of(0), ran);
+        scheduler.tick();
+        scheduler.tick();
+        assertEquals(List.of(0, 1, 2), ran);
+        assertEquals(2, scheduler.getOverBudgetTicks());
+
+        scheduler.setBudget(5, TimeUnit.MILLISECONDS);
+        assertEquals(5000, scheduler.getBudget(TimeUnit.MICROSECONDS));
+    }
+
+    @Test
+    void testRepeatingAndMetrics()
+    {
+        TickScheduler scheduler = open(TimeUnit.SECONDS.toMicros(1));
+        List<Long> ran = new ArrayList<>();
+        scheduler.scheduleRepeating("repeat", () -> ran.add(scheduler.getCurrentTick()), 5, 100);
+        scheduler.submit("fail", () -> { throw new IllegalStateException("expected"); });
+
+        for (int i = 0; i < 300; i++)
+        {
+            scheduler.tick();
+        }
+
+        assertEquals(List.of(5L, 105L, 205L), ran);
+
+        TickScheduler.JobMetrics repeat = scheduler.getMetrics().get("repeat");
+        assertEquals(4, repeat.scheduled());
+        assertEquals(3, repeat.run());
+        assertEquals(1, repeat.waiting());
+        assertEquals(0, repeat.failed());
+
+        TickScheduler.JobMetrics fail = scheduler.getMetrics().get("fail");
+        assertEquals(1, fail.run());
+        assertEquals(1, fail.failed());
+        assertEquals(0, fail.waiting());
+    }
+
+}
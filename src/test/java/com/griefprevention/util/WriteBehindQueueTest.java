@@ -0,0 +1,185 @@
+package com.griefprevention.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WriteBehindQueueTest
+{
+
+    private final List<String> written = Collections.synchronizedList(new ArrayList<>());
+    // Writes of key 0 wait here until it's opened.
+    private final CountDownLatch blocking = new CountDownLatch(1);
+    private final CountDownLatch gate = new CountDownLatch(1);
+
+    private WriteBehindQueue<Integer, String> open(long flushInterval)
+    {
+        return open(flushInterval, Integer.MAX_VALUE);
+    }
+
+    private WriteBehindQueue<Integer, String> open(long flushInterval, int capacity)
+    {
+        return new WriteBehindQueue<>(
+                "test writer",
+                (key, value) ->
+                {
+                    if (key == 0)
+                    {
+                        this.blocking.countDown();
+                        awaitUninterruptibly(this.gate);
+                    }
+                    this.written.add(key + "=" + value);
+                },
+                flushInterval,
+                TimeUnit.MILLISECONDS,
+                capacity,
+                Logger.getAnonymousLogger());
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch)
+    {
+        try
+        {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        }
+        catch (InterruptedException e)
+        {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test
+    void testCoalesce()
+    {
+        try (WriteBehindQueue<Integer, String> queue = open(TimeUnit.HOURS.toMillis(1)))
+        {
+            for (int i = 0; i < 100; i++)
+            {
+                queue.submit(1, "v" + i);
+                queue.submit(2, "w" + i);
+            }
+            assertEquals(2, queue.getQueueDepth());
+            assertTrue(this.written.isEmpty());
+
+            queue.flush();
+            assertEquals(List.of("1=v99", "2=w99"), this.written);
+            assertEquals(0, queue.getQueueDepth());
+            assertEquals(200, queue.getSubmittedCount());
+            assertEquals(198, queue.getCoalescedCount());
+            assertEquals(2, queue.getWrittenCount());
+            assertEquals(2, queue.getLastFlushSize());
+        }
+    }
+
+    @Test
+    void testFlushAfterInterval() throws InterruptedException
+    {
+        try (WriteBehindQueue<Integer, String> queue = open(10))
+        {
+            queue.submit(1, "a");
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (this.written.isEmpty() && System.nanoTime() < deadline)
+            {
+                Thread.sleep(5);
+            }
+            assertEquals(List.of("1=a"), this.written);
+        }
+    }
+
+    @Test
+    void testCancel()
+    {
+        try (WriteBehindQueue<Integer, String> queue = open(TimeUnit.HOURS.toMillis(1)))
+        {
+            queue.submit(1, "a");
+            queue.submit(2, "b");
+            assertTrue(queue.cancel(1));
+            assertFalse(queue.cancel(1));
+
+            queue.flush();
+            assertEquals(List.of("2=b"), this.written);
+        }
+    }
+
+    @Test
+    void testCancelWaitsForWrite() throws InterruptedException
+    {
+        try (WriteBehindQueue<Integer, String> queue = open(TimeUnit.HOURS.toMillis(1)))
+        {
+            queue.submit(0, "a");
+            Thread flusher = new Thread(queue::flush);
+            flusher.start();
+            awaitUninterruptibly(this.blocking);
+
+            Thread canceller = new Thread(() -> queue.cancel(0));
+            canceller.start();
+            canceller.join(100);
+            assertTrue(canceller.isAlive());
+
+            this.gate.countDown();
+            canceller.join();
+            flusher.join();
+            assertEquals(List.of("0=a"), this.written);
+        }
+    }
+
+    @Test
+    void testFull() throws InterruptedException
+    {
+        try (WriteBehindQueue<Integer, String> queue = open(TimeUnit.HOURS.toMillis(1), 2))
+        {
+            // Filling the queue wakes the writer, which is then held up writing key 0.
+            queue.submit(0, "x");
+            queue.submit(1, "a");
+            awaitUninterruptibly(this.blocking);
+
+            // Replacing a waiting write needs no room.
+            queue.submit(2, "b");
+            queue.submit(2, "c");
+            assertEquals(2, queue.getQueueDepth());
+
+            // A new key waits to be written on the submitting thread rather than growing the queue.
+            Thread submitter = new Thread(() -> queue.submit(3, "d"));
+            submitter.start();
+            submitter.join(100);
+            assertTrue(submitter.isAlive());
+            assertEquals(2, queue.getQueueDepth());
+            assertTrue(this.written.isEmpty());
+
+            this.gate.countDown();
+            submitter.join();
+            assertTrue(queue.getQueueDepth() <= 2);
+            // Unless the writer made room first, key 3 was written by the submitter.
+            assertTrue(queue.getOverflowCount() <= 1);
+
+            queue.flush();
+            List<String> sorted = new ArrayList<>(this.written);
+            Collections.sort(sorted);
+            assertEquals(List.of("0=x", "1=a", "2=c", "3=d"), sorted);
+            assertEquals(0, queue.getQueueDepth());
+        }
+    }
+
+    @Test
+    void testClose()
+    {
+        WriteBehindQueue<Integer, String> queue = open(TimeUnit.HOURS.toMillis(1));
+        queue.submit(1, "a");
+        queue.close();
+        assertEquals(List.of("1=a"), this.written);
+
+        // Once closed, writes happen immediately.
+        queue.submit(2, "b");
+        assertEquals(List.of("1=a", "2=b"), this.written);
+    }
+
+}
@@ -0,0 +1,159 @@
+package me.ryanhamshire.GriefPrevention;
+
+import com.griefprevention.test.ServerMocks;
+import org.bukkit.Bukkit;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChunkClaimIndexTest
+{
+
+    @BeforeAll
+    static void beforeAll()
+    {
+        Bukkit.setServer(ServerMocks.newServer());
+    }
+
+    @AfterAll
+    static void afterAll()
+    {
+        ServerMocks.unsetBukkitServer();
+    }
+
+    private static Claim claim(long id)
+    {
+        Claim claim = new Claim();
+        claim.id = id;
+        return claim;
+    }
+
+    @Test
+    void testAddGetRemove()
+    {
+        ChunkClaimIndex index = new ChunkClaimIndex();
+        Claim claimA = claim(1);
+        Claim claimB = claim(2);
+        long key = DataStore.getChunkKey(-3, 7);
+
+        assertEquals(0, index.get(key).length);
+
+        index.add(key, claimA);
+        index.add(key, claimB);
+        index.add(key, claimA);
+        assertArrayEquals(new Claim[] { claimA, claimB }, index.get(key));
+        assertEquals(1, index.size());
+
+        assertTrue(index.remove(key, claimA));
+        assertFalse(index.remove(key, claimA));
+        assertArrayEquals(new Claim[] { claimB }, index.get(key));
+
+        assertTrue(index.remove(key, claimB));
+        assertEquals(0, index.get(key).length);
+        assertTrue(index.isEmpty());
+    }
+
+    @Test
+    void testChunkKeyMatchesChunkHash()
+    {
+        for (int x = -40; x <= 40; x += 7)
+        {
+            for (int z = -40; z <= 40; z += 7)
+            {
+                assertEquals(DataStore.getChunkHash(x, z), DataStore.getChunkKey(x, z));
+            }
+        }
+    }
+
+    @Test
+    void testMatchesReferenceMap()
+    {
+        ChunkClaimIndex index = new ChunkClaimIndex();
+        Map<Long, List<Claim>> reference = new HashMap<>();
+        Random random = new Random(42);
+        Claim[] claims = new Claim[16];
+        for (int i = 0; i < claims.length; i++)
+        {
+            claims[i] = claim(i);
+        }
+
+        for (int i = 0; i < 50_000; i++)
+        {
+            long key = DataStore.getChunkKey(random.nextInt(64) - 32, random.nextInt(64) - 32);
+            Claim claim = claims[random.nextInt(claims.length)];
+            List<Claim> expected = reference.computeIfAbsent(key, k -> new ArrayList<>());
+
+            if (random.nextInt(3) == 0)
+            {
+                assertEquals(expected.remove(claim), index.remove(key, claim));
+            }
+            else if (!expected.contains(claim))
+            {
+                expected.add(claim);
+                index.add(key, claim);
+            }
+
+            if (expected.isEmpty()) reference.remove(key);
+        }
+
+        assertEquals(reference.size(), index.size());
+        for (Map.Entry<Long, List<Claim>> entry : reference.entrySet())
+        {
+            assertArrayEquals(entry.getValue().toArray(new Claim[0]), index.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    void testConcurrentReadersNeverMissStableEntries() throws InterruptedException
+    {
+        ChunkClaimIndex index = new ChunkClaimIndex();
+        Claim stable = claim(0);
+        long stableKey = DataStore.getChunkKey(0, 0);
+        index.add(stableKey, stable);
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicInteger misses = new AtomicInteger();
+        Thread reader = new Thread(() ->
+        {
+            while (!done.get())
+            {
+                Claim[] claims = index.get(stableKey);
+                if (claims.length != 1 || claims[0] != stable) misses.incrementAndGet();
+            }
+        });
+        reader.start();
+
+        // Churn other chunks so the table is repeatedly grown, filled with removed markers and rebuilt.
+        Claim churn = claim(1);
+        for (int round = 0; round < 200; round++)
+        {
+            for (int x = 1; x <= 500; x++)
+            {
+                index.add(DataStore.getChunkKey(x, round), churn);
+            }
+            for (int x = 1; x <= 500; x++)
+            {
+                index.remove(DataStore.getChunkKey(x, round), churn);
+            }
+        }
+
+        done.set(true);
+        reader.join();
+        assertEquals(0, misses.get());
+        assertEquals(1, index.size());
+    }
+
+}
@@ -0,0 +1,137 @@
+package me.ryanhamshire.GriefPrevention;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+public class ClaimBoundsTest
+{
+    private static final UUID WORLD_ID = UUID.fromString("2b7fa3d0-3a4d-4f0e-8f57-3a1c6a35e0b1");
+    private static final UUID OTHER_WORLD_ID = UUID.fromString("d3c5c9a4-6f43-4d0e-b8b1-1f0e5d0a9c77");
+    private static World world;
+    private static World otherWorld;
+
+    @BeforeAll
+    static void beforeAll()
+    {
+        world = mockWorld(WORLD_ID);
+        otherWorld = mockWorld(OTHER_WORLD_ID);
+    }
+
+    private static World mockWorld(UUID uuid)
+    {
+        World world = mock();
+        doReturn(uuid).when(world).getUID();
+        doReturn(320).when(world).getMaxHeight();
+        return world;
+    }
+
+    private static Claim claim(World world, int x1, int y1, int z1, int x2, int y2, int z2)
+    {
+        return new Claim(new Location(world, x1, y1, z1), new Location(world, x2, y2, z2), null, List.of(), List.of(), List.of(), List.of(), null);
+    }
+
+    @Test
+    void testContains()
+    {
+        Claim claim = claim(world, 10, 60, -20, -10, 70, 20);
+
+        assertTrue(claim.contains(new Location(world, -10, 60, -20), false, false));
+        assertTrue(claim.contains(new Location(world, 10, 320, 20), false, false));
+        assertTrue(claim.contains(new Location(world, 10.9, 60, 20.9), false, false));
+        assertFalse(claim.contains(new Location(world, 11, 60, 0), false, false));
+        assertFalse(claim.contains(new Location(world, 0, 60, -21), false, false));
+        assertFalse(claim.contains(new Location(world, 0, 59, 0), false, false));
+        assertFalse(claim.contains(new Location(world, 0, 321, 0), false, false));
+        assertTrue(claim.contains(new Location(world, 0, 0, 0), true, false));
+        assertFalse(claim.contains(new Location(otherWorld, 0, 60, 0), false, false));
+
+        assertEquals(21 * 41, claim.getArea());
+        assertTrue(claim.isNear(new Location(world, 15, 60, 25), 5));
+        assertFalse(claim.isNear(new Location(world, 16, 60, 0), 5));
+    }
+
+    @Test
+    void testContainsExcludesSubdivisions()
+    {
+        Claim claim = claim(world, 0, 60, 0, 20, 60, 20);
+        Claim subdivision = claim(world, 5, 60, 5, 10, 60, 10);
+        subdivision.parent = claim;
+        claim.children.add(subdivision);
+        claim.publishChildren();
+
+        assertTrue(claim.contains(new Location(world, 7, 60, 7), false, false));
+        assertFalse(claim.contains(new Location(world, 7, 60, 7), false, true));
+        assertTrue(claim.contains(new Location(world, 15, 60, 15), false, true));
+        assertTrue(subdivision.contains(new Location(world, 7, 60, 7), false, false));
+    }
+
+    @Test
+    void testOverlaps()
+    {
+        Claim claim = claim(world, 0, 60, 0, 20, 60, 20);
+
+        assertTrue(claim.overlaps(claim(world, 20, 0, 20, 30, 0, 30)));
+        assertTrue(claim.overlaps(claim(world, 5, 100, 5, 6, 100, 6)));
+        assertFalse(claim.overlaps(claim(world, 21, 60, 0, 30, 60, 20)));
+        assertFalse(claim.overlaps(claim(world, 0, 60, -10, 20, 60, -1)));
+        assertFalse(claim.overlaps(claim(otherWorld, 0, 60, 0, 20, 60, 20)));
+    }
+
+    @Test
+    void testContainsAndOverlapsDoNotAllocate()
+    {
+        java.lang.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+
+        Claim claim = claim(world, 0, 60, 0, 100, 60, 100);
+        Claim subdivision = claim(world, 10, 60, 10, 20, 60, 20);
+        subdivision.parent = claim;
+        claim.children.add(subdivision);
+        claim.publishChildren();
+        Claim other = claim(world, 50, 60, 50, 150, 60, 150);
+        long threadId = Thread.currentThread().getId();
+
+        // Warm up so class loading and compilation aren't counted.
+        int hits = runChecks(claim, subdivision, other);
+        allocationBean.getThreadAllocatedBytes(threadId);
+
+        long before = allocationBean.getThreadAllocatedBytes(threadId);
+        hits += runChecks(claim, subdivision, other);
+        long allocated = allocationBean.getThreadAllocatedBytes(threadId) - before;
+
+        assertTrue(hits > 0);
+        // Allow a little slack for the measurement itself; a single allocation per check would be megabytes.
+        assertTrue(allocated < 1024, "Expected no allocation, but " + allocated + " bytes were allocated");
+    }
+
+    private static int runChecks(Claim claim, Claim subdivision, Claim other)
+    {
+        int hits = 0;
+        for (int i = 0; i < 200_000; i++)
+        {
+            int x = i % 160;
+            int z = (i / 160) % 160;
+            if (claim.contains(WORLD_ID, x, 60 + (i & 7), z, false, true)) hits++;
+            if (subdivision.contains(WORLD_ID, x, 60, z, true, false)) hits++;
+            if (claim.overlaps(other)) hits++;
+        }
+        return hits;
+    }
+
+}
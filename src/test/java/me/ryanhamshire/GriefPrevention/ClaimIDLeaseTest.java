@@ -0,0 +1,56 @@
+package me.ryanhamshire.GriefPrevention;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.withSettings;
+
+public class ClaimIDLeaseTest
+{
+
+    private static DataStore mockDataStore()
+    {
+        return mock(DataStore.class, withSettings().useConstructor().defaultAnswer(CALLS_REAL_METHODS));
+    }
+
+    @Test
+    void testLeasesBlocks()
+    {
+        DataStore dataStore = mockDataStore();
+        dataStore.nextClaimID = 5L;
+
+        for (int i = 0; i < DataStore.CLAIM_ID_LEASE_SIZE + 1; i++)
+        {
+            dataStore.incrementNextClaimID();
+        }
+
+        // Only the end of each block is written, before any ID in it is handed out.
+        assertEquals(6L + DataStore.CLAIM_ID_LEASE_SIZE, dataStore.nextClaimID);
+        verify(dataStore).writeNextClaimID(5L + DataStore.CLAIM_ID_LEASE_SIZE);
+        verify(dataStore).writeNextClaimID(5L + 2L * DataStore.CLAIM_ID_LEASE_SIZE);
+        verify(dataStore, times(2)).writeNextClaimID(anyLong());
+    }
+
+    @Test
+    void testReleasesUnusedIDs()
+    {
+        DataStore dataStore = mockDataStore();
+        dataStore.nextClaimID = 5L;
+        dataStore.incrementNextClaimID();
+
+        dataStore.releaseClaimIDLease();
+        verify(dataStore).writeNextClaimID(6L);
+
+        // Nothing is left to give back, and the next ID leases a new block.
+        dataStore.releaseClaimIDLease();
+        dataStore.incrementNextClaimID();
+        verify(dataStore).writeNextClaimID(6L + DataStore.CLAIM_ID_LEASE_SIZE);
+        verify(dataStore, times(3)).writeNextClaimID(anyLong());
+    }
+
+}
@@ -0,0 +1,91 @@
+package me.ryanhamshire.GriefPrevention;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.withSettings;
+
+public class ClaimLookupTest
+{
+    private static final UUID WORLD_ID = UUID.fromString("5e0d3f6a-0c8b-4d55-9b7e-2f1f3f0c6a11");
+
+    private static World mockWorld()
+    {
+        World world = mock();
+        doReturn(WORLD_ID).when(world).getUID();
+        doReturn(320).when(world).getMaxHeight();
+        return world;
+    }
+
+    private static DataStore mockDataStore()
+    {
+        return mock(DataStore.class, withSettings().useConstructor().defaultAnswer(CALLS_REAL_METHODS));
+    }
+
+    private static Claim claim(World world, long id, int x1, int y1, int z1, int x2, int z2)
+    {
+        return new Claim(new Location(world, x1, y1, z1), new Location(world, x2, y1, z2), null, List.of(), List.of(), List.of(), List.of(), id);
+    }
+
+    @Test
+    void testMatchesSingleLookups()
+    {
+        World world = mockWorld();
+        DataStore dataStore = mockDataStore();
+
+        long id = 0;
+        for (int i = 0; i < 8; i++)
+        {
+            int x = i * 40 - 160;
+            Claim claim = claim(world, id++, x, 60, -30, x + 30, 30);
+            dataStore.addClaim(claim, false);
+
+            Claim subdivision = claim(world, id++, x + 5, 70, -5, x + 15, 5);
+            subdivision.parent = claim;
+            dataStore.addClaim(subdivision, false);
+        }
+
+        Random random = new Random(7);
+        int size = 2_000;
+        int[] x = new int[size];
+        int[] y = new int[size];
+        int[] z = new int[size];
+        for (int i = 0; i < size; i++)
+        {
+            x[i] = random.nextInt(400) - 200;
+            y[i] = random.nextInt(40) + 50;
+            z[i] = random.nextInt(80) - 40;
+        }
+
+        for (boolean ignoreHeight : new boolean[] { false, true })
+        {
+            for (boolean ignoreSubclaims : new boolean[] { false, true })
+            {
+                Claim[] claims = dataStore.getClaimsAt(world, x, y, z, ignoreHeight, ignoreSubclaims);
+                for (int i = 0; i < size; i++)
+                {
+                    Location location = new Location(world, x[i], y[i], z[i]);
+                    assertSame(dataStore.getClaimAt(location, ignoreHeight, ignoreSubclaims, null), claims[i]);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testUnindexedWorld()
+    {
+        Claim[] claims = mockDataStore().getClaimsAt(mockWorld(), new int[] { 0 }, new int[] { 0 }, new int[] { 0 }, false, false);
+        assertNull(claims[0]);
+    }
+
+}
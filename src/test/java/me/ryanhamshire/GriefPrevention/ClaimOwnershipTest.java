@@ -0,0 +1,51 @@
+package me.ryanhamshire.GriefPrevention;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class ClaimOwnershipTest
+{
+    private static final UUID OWNER_UUID = UUID.fromString("fa8d60a7-9645-4a9f-b74d-173966174739");
+
+    private static Claim claim(World world, long id)
+    {
+        return new Claim(new Location(world, 0, 0, 0), new Location(world, 9, 0, 9), OWNER_UUID,
+                List.of(), List.of(), List.of(), List.of(), false, id);
+    }
+
+    @Test
+    void testSnapshot()
+    {
+        World world = mock();
+        List<Claim> claims = List.of(claim(world, 4L), claim(world, 2L));
+
+        ClaimOwnership ownership = ClaimOwnership.of(OWNER_UUID, 100, claims, CleanupUnusedClaimTask.Expiration.ALL_CLAIMS);
+        assertEquals(List.of(4L, 2L), ownership.claimIDs());
+        assertTrue(ownership.isCurrent(100, List.of(claim(world, 4L), claim(world, 2L))));
+    }
+
+    @Test
+    void testChanged()
+    {
+        World world = mock();
+        ClaimOwnership ownership = ClaimOwnership.of(OWNER_UUID, 100, List.of(claim(world, 4L)), CleanupUnusedClaimTask.Expiration.CHEST_CLAIM);
+
+        // The owner came back.
+        assertFalse(ownership.isCurrent(200, List.of(claim(world, 4L))));
+        // The owner made another claim, or their claim was replaced.
+        assertFalse(ownership.isCurrent(100, List.of(claim(world, 4L), claim(world, 5L))));
+        assertFalse(ownership.isCurrent(100, List.of(claim(world, 5L))));
+        // The owner's claims were deleted.
+        assertFalse(ownership.isCurrent(100, List.of()));
+    }
+
+}
@@ -0,0 +1,123 @@
+package me.ryanhamshire.GriefPrevention;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClaimRTreeTest
+{
+
+    @Test
+    void testAddQueryRemove()
+    {
+        ClaimRTree tree = new ClaimRTree();
+        Claim claimA = new Claim();
+        Claim claimB = new Claim();
+        tree.add(claimA, 0, 0, 10, 10);
+        tree.add(claimB, 20, -5, 30, 5);
+
+        Set<Claim> found = new HashSet<>();
+        tree.collect(10, 0, 20, 0, found);
+        assertEquals(Set.of(claimA, claimB), found);
+
+        assertSame(claimB, tree.findFirst(11, -100, 100, 100, claim -> true));
+        assertNull(tree.findFirst(11, 11, 19, 100, claim -> true));
+        assertNull(tree.findFirst(0, 0, 100, 100, claim -> false));
+
+        assertTrue(tree.remove(claimA, 0, 0, 10, 10));
+        assertFalse(tree.remove(claimA, 0, 0, 10, 10));
+        assertEquals(1, tree.size());
+    }
+
+    @Test
+    void testRemoveWithMatchingBounds()
+    {
+        ClaimRTree tree = new ClaimRTree();
+        Claim claim = new Claim();
+
+        // A resize adds the new bounds before removing the old ones.
+        tree.add(claim, 0, 0, 10, 10);
+        tree.add(claim, 0, 0, 50, 50);
+        assertTrue(tree.remove(claim, 0, 0, 10, 10));
+
+        List<Claim> found = new ArrayList<>();
+        tree.collect(40, 40, 40, 40, found);
+        assertEquals(List.of(claim), found);
+
+        // Stale bounds still remove the claim.
+        assertTrue(tree.remove(claim, 5, 5, 6, 6));
+        assertTrue(tree.isEmpty());
+    }
+
+    @Test
+    void testMatchesBruteForce()
+    {
+        ClaimRTree tree = new ClaimRTree();
+        Map<Claim, int[]> reference = new HashMap<>();
+        List<Claim> live = new ArrayList<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20_000; i++)
+        {
+            if (live.isEmpty() || random.nextInt(3) != 0)
+            {
+                Claim claim = new Claim();
+                int x = random.nextInt(4000) - 2000;
+                int z = random.nextInt(4000) - 2000;
+                int[] bounds = { x, z, x + random.nextInt(100), z + random.nextInt(100) };
+                tree.add(claim, bounds[0], bounds[1], bounds[2], bounds[3]);
+                reference.put(claim, bounds);
+                live.add(claim);
+            }
+            else
+            {
+                Claim claim = live.remove(random.nextInt(live.size()));
+                int[] bounds = reference.remove(claim);
+                assertTrue(tree.remove(claim, bounds[0], bounds[1], bounds[2], bounds[3]));
+            }
+
+            assertEquals(reference.size(), tree.size());
+
+            if (i % 100 == 0)
+            {
+                int x = random.nextInt(4000) - 2000;
+                int z = random.nextInt(4000) - 2000;
+                int width = random.nextInt(500);
+
+                Set<Claim> expected = new HashSet<>();
+                for (Map.Entry<Claim, int[]> entry : reference.entrySet())
+                {
+                    int[] bounds = entry.getValue();
+                    if (bounds[0] <= x + width && bounds[2] >= x && bounds[1] <= z + width && bounds[3] >= z)
+                    {
+                        expected.add(entry.getKey());
+                    }
+                }
+
+                Set<Claim> found = new HashSet<>();
+                tree.collect(x, z, x + width, z + width, found);
+                assertEquals(expected, found);
+            }
+        }
+
+        for (Claim claim : live)
+        {
+            int[] bounds = reference.get(claim);
+            assertTrue(tree.remove(claim, bounds[0], bounds[1], bounds[2], bounds[3]));
+        }
+        assertTrue(tree.isEmpty());
+    }
+
+}
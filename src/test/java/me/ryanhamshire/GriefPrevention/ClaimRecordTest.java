@@ -0,0 +1,82 @@
+package me.ryanhamshire.GriefPrevention;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+public class ClaimRecordTest
+{
+    private static final UUID OWNER_UUID = UUID.fromString("fa8d60a7-9645-4a9f-b74d-173966174739");
+    private static final UUID BUILDER_UUID = UUID.fromString("0b8c1a6e-3b5f-4f5e-9d0a-6a6b1c2d3e4f");
+
+    private static World world()
+    {
+        World world = mock();
+        doReturn("world").when(world).getName();
+        return world;
+    }
+
+    @Test
+    void testRoundTrip()
+    {
+        World world = world();
+        Claim claim = new Claim(new Location(world, 10, 60, -20), new Location(world, 30, 60, 5), OWNER_UUID,
+                List.of(BUILDER_UUID.toString()), List.of("public"), List.of(), List.of("[some.node]"), false, 7L);
+
+        ClaimRecord record = ClaimRecord.of(claim);
+        assertEquals(7L, record.id());
+        assertEquals(OWNER_UUID, record.ownerID());
+        assertEquals("world", record.world());
+        assertEquals(10, record.lesserX());
+        assertEquals(-20, record.lesserZ());
+        assertEquals(30, record.greaterX());
+        assertEquals(5, record.greaterZ());
+        assertFalse(record.hasParent());
+
+        Claim loaded = record.toClaim(world);
+        assertEquals(claim.getLesserBoundaryCorner(), loaded.getLesserBoundaryCorner());
+        assertEquals(claim.getGreaterBoundaryCorner(), loaded.getGreaterBoundaryCorner());
+        assertEquals(OWNER_UUID, loaded.ownerID);
+        assertEquals(ClaimPermission.Build, loaded.getPermission(BUILDER_UUID.toString()));
+        assertEquals(ClaimPermission.Container, loaded.getPermission("public"));
+        assertEquals(ClaimPermission.Manage, loaded.getPermission("[some.node]"));
+    }
+
+    @Test
+    void testStoredTrust()
+    {
+        ClaimRecord record = new ClaimRecord(3, null, "world", 0, 0, 0, 9, 0, 9, true, 1);
+        record.addTrust("public", ClaimRecord.ACCESS);
+        record.addTrust(BUILDER_UUID.toString(), ClaimRecord.BUILD);
+        record.addTrust("ignored", "Unknown");
+
+        Map<String, String> trust = new HashMap<>();
+        record.forEachTrust(trust::put);
+        assertEquals(Map.of("public", ClaimRecord.ACCESS, BUILDER_UUID.toString(), ClaimRecord.BUILD), trust);
+        assertTrue(record.hasParent());
+
+        Claim claim = record.toClaim(world());
+        assertNull(claim.ownerID);
+        assertTrue(claim.getSubclaimRestrictions());
+        assertEquals(ClaimPermission.Access, claim.getPermission("public"));
+        assertNull(claim.getPermission("ignored"));
+
+        ArrayList<String> builders = new ArrayList<>();
+        claim.getPermissions(builders, new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        assertEquals(List.of(BUILDER_UUID.toString()), builders);
+    }
+
+}
@@ -0,0 +1,46 @@
+package me.ryanhamshire.GriefPrevention;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ClaimRegionLoaderTest
+{
+
+    @Test
+    void testDefaultSettings()
+    {
+        assertEquals(ClaimRegionLoader.Settings.EAGER, ClaimRegionLoader.Settings.fromProperties(new Properties()));
+    }
+
+    @Test
+    void testSettingsFromProperties()
+    {
+        Properties properties = new Properties();
+        properties.setProperty("claimLoading", " region");
+        properties.setProperty("claimRegionChunks", "16");
+        properties.setProperty("maxLoadedClaimRegions", "256");
+        properties.setProperty("claimRegionIdleMinutes", "5 ");
+        properties.setProperty("claimFetchSize", "250");
+
+        ClaimRegionLoader.Settings settings = ClaimRegionLoader.Settings.fromProperties(properties);
+        assertEquals(ClaimRegionLoader.Mode.REGION, settings.mode());
+        assertEquals(16, settings.regionChunks());
+        assertEquals(256, settings.maxRegions());
+        assertEquals(TimeUnit.MINUTES.toMillis(5), settings.idleMillis());
+        assertEquals(250, settings.fetchSize());
+    }
+
+    @Test
+    void testInvalidSettings()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new ClaimRegionLoader.Settings(ClaimRegionLoader.Mode.REGION, 0, 1, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new ClaimRegionLoader.Settings(ClaimRegionLoader.Mode.REGION, 1, 0, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new ClaimRegionLoader.Settings(ClaimRegionLoader.Mode.REGION, 1, 1, 0, 0));
+    }
+
+}
@@ -0,0 +1,55 @@
+package me.ryanhamshire.GriefPrevention;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClaimTileTest
+{
+
+    @Test
+    void testLevels()
+    {
+        // The smallest claims share the lowest level.
+        assertEquals(new ClaimTile(0, 0, 0), ClaimTile.of(0, 0, 0, 0));
+        assertEquals(new ClaimTile(0, 1, -1), ClaimTile.of(64, -1, 127, 62));
+        // A claim one block wider than a tile goes up a level.
+        assertEquals(new ClaimTile(1, 0, 0), ClaimTile.of(0, 0, 64, 10));
+        assertEquals(new ClaimTile(ClaimTile.LEVELS - 1, -1, -1), ClaimTile.of(Integer.MIN_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE, 0));
+    }
+
+    @Test
+    void testCoveringFindsOverlaps()
+    {
+        Random random = new Random(11);
+        for (int i = 0; i < 10_000; i++)
+        {
+            int lesserX = random.nextInt(20_000) - 10_000;
+            int lesserZ = random.nextInt(20_000) - 10_000;
+            int greaterX = lesserX + random.nextInt(1 << random.nextInt(14));
+            int greaterZ = lesserZ + random.nextInt(1 << random.nextInt(14));
+
+            // Areas near the claim, so most overlap it.
+            int minX = lesserX + random.nextInt(2_000) - 1_000;
+            int minZ = lesserZ + random.nextInt(2_000) - 1_000;
+            int maxX = minX + random.nextInt(600);
+            int maxZ = minZ + random.nextInt(600);
+
+            boolean overlaps = lesserX <= maxX && greaterX >= minX && lesserZ <= maxZ && greaterZ >= minZ;
+            if (!overlaps) continue;
+
+            ClaimTile tile = ClaimTile.of(lesserX, lesserZ, greaterX, greaterZ);
+            List<ClaimTile.Range> ranges = ClaimTile.covering(minX, minZ, maxX, maxZ);
+            assertEquals(ClaimTile.LEVELS, ranges.size());
+
+            ClaimTile.Range range = ranges.get(tile.level());
+            assertTrue(tile.x() >= range.minX() && tile.x() <= range.maxX() && tile.z() >= range.minZ() && tile.z() <= range.maxZ(),
+                    () -> tile + " not in " + range);
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+package me.ryanhamshire.GriefPrevention;
+
+import org.bukkit.entity.Player;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+public class ClaimTrustTest
+{
+    private static final UUID PLAYER_UUID = UUID.fromString("fa8d60a7-9645-4a9f-b74d-173966174739");
+
+    @Test
+    void testUUIDTrust()
+    {
+        Claim claim = new Claim();
+        claim.setPermission(PLAYER_UUID.toString().toUpperCase(), ClaimPermission.Build);
+
+        assertTrue(claim.hasExplicitPermission(PLAYER_UUID, ClaimPermission.Build));
+        assertTrue(claim.hasExplicitPermission(PLAYER_UUID, ClaimPermission.Access));
+        assertFalse(claim.hasExplicitPermission(PLAYER_UUID, ClaimPermission.Manage));
+        assertEquals(ClaimPermission.Build, claim.getPermission(PLAYER_UUID.toString()));
+
+        claim.dropPermission(PLAYER_UUID.toString());
+        assertFalse(claim.hasExplicitPermission(PLAYER_UUID, ClaimPermission.Access));
+    }
+
+    @Test
+    void testPermissionNodeTrust()
+    {
+        Claim claim = new Claim();
+        claim.setPermission("[Some.Node]", ClaimPermission.Container);
+
+        Player player = mock();
+        doReturn(PLAYER_UUID).when(player).getUniqueId();
+        doReturn(true).when(player).hasPermission("some.node");
+
+        assertTrue(claim.hasExplicitPermission(player, ClaimPermission.Container));
+        assertFalse(claim.hasExplicitPermission(player, ClaimPermission.Build));
+        assertEquals(ClaimPermission.Container, claim.getPermission("[some.node]"));
+
+        claim.dropPermission("[some.node]");
+        assertNull(claim.getPermission("[some.node]"));
+        assertFalse(claim.hasExplicitPermission(player, ClaimPermission.Container));
+    }
+
+    @Test
+    void testStoredIdentifiersUnchanged()
+    {
+        Claim claim = new Claim();
+        // Not the canonical UUID form, so it must be written back exactly as given.
+        String nonCanonical = "1-2-3-4-5";
+        claim.setPermission(PLAYER_UUID.toString(), ClaimPermission.Build);
+        claim.setPermission("[perm.node]", ClaimPermission.Manage);
+        claim.setPermission("public", ClaimPermission.Access);
+        claim.setPermission(nonCanonical, ClaimPermission.Inventory);
+
+        ArrayList<String> builders = new ArrayList<>();
+        ArrayList<String> containers = new ArrayList<>();
+        ArrayList<String> accessors = new ArrayList<>();
+        ArrayList<String> managers = new ArrayList<>();
+        claim.getPermissions(builders, containers, accessors, managers);
+
+        assertEquals(List.of(PLAYER_UUID.toString()), builders);
+        assertEquals(List.of(nonCanonical), containers);
+        assertEquals(List.of("public"), accessors);
+        assertEquals(List.of("[perm.node]"), managers);
+
+        claim.clearPermissions();
+        builders.clear();
+        managers.clear();
+        claim.getPermissions(builders, containers, accessors, managers);
+        assertTrue(builders.isEmpty());
+        assertTrue(managers.isEmpty());
+    }
+
+}
@@ -0,0 +1,267 @@
+package me.ryanhamshire.GriefPrevention;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ConnectionPoolTest
+{
+
+    private ConnectionPool pool;
+
+    @BeforeEach
+    void setUp()
+    {
+        // Each test gets its own in-memory database, kept until the last connection closes.
+        String url = "jdbc:h2:mem:" + UUID.randomUUID();
+        this.pool = new ConnectionPool(url, new Properties(), 2, 200, TimeUnit.MILLISECONDS);
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        this.pool.close();
+    }
+
+    @Test
+    void testReuse() throws SQLException
+    {
+        try (Connection connection = this.pool.getConnection();
+             Statement statement = connection.createStatement())
+        {
+            statement.execute("CREATE TABLE test (value INTEGER)");
+            statement.execute("INSERT INTO test VALUES (1)");
+        }
+        assertEquals(1, this.pool.getOpenConnections());
+        assertEquals(1, this.pool.getIdleConnections());
+
+        // The same connection is handed out again, and sees the same database.
+        try (Connection connection = this.pool.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet results = statement.executeQuery("SELECT value FROM test"))
+        {
+            assertEquals(0, this.pool.getIdleConnections());
+            assertTrue(results.next());
+            assertEquals(1, results.getInt(1));
+        }
+        assertEquals(1, this.pool.getOpenConnections());
+    }
+
+    @Test
+    void testFull() throws SQLException
+    {
+        try (Connection first = this.pool.getConnection();
+             Connection second = this.pool.getConnection())
+        {
+            assertEquals(2, this.pool.getOpenConnections());
+            assertThrows(SQLTimeoutException.class, this.pool::getConnection);
+        }
+
+        try (Connection connection = this.pool.getConnection())
+        {
+            assertEquals(2, this.pool.getOpenConnections());
+        }
+    }
+
+    @Test
+    void testUncommittedWorkRolledBack() throws SQLException
+    {
+        try (Connection connection = this.pool.getConnection();
+             Statement statement = connection.createStatement())
+        {
+            statement.execute("CREATE TABLE test (value INTEGER)");
+            connection.setAutoCommit(false);
+            statement.execute("INSERT INTO test VALUES (1)");
+        }
+
+        try (Connection connection = this.pool.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet results = statement.executeQuery("SELECT COUNT(*) FROM test"))
+        {
+            assertTrue(connection.getAutoCommit());
+            assertTrue(results.next());
+            assertEquals(0, results.getInt(1));
+        }
+    }
+
+    @Test
+    void testReturnedConnectionUnusable() throws SQLException
+    {
+        Connection connection = this.pool.getConnection();
+        connection.close();
+        assertTrue(connection.isClosed());
+        assertThrows(SQLException.class, connection::createStatement);
+
+        // Closing twice doesn't return the connection twice.
+        connection.close();
+        assertEquals(1, this.pool.getIdleConnections());
+    }
+
+    @Test
+    void testClose() throws SQLException
+    {
+        Connection connection = this.pool.getConnection();
+        this.pool.close();
+        assertThrows(SQLException.class, this.pool::getConnection);
+
+        // Connections in use when the pool closed are closed when returned.
+        connection.close();
+        assertEquals(0, this.pool.getOpenConnections());
+    }
+
+    @Test
+    void testStatementsWrapped() throws SQLException
+    {
+        try (Connection connection = this.pool.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT 1");
+             ResultSet results = statement.executeQuery())
+        {
+            assertSame(connection, statement.getConnection());
+            assertSame(statement, results.getStatement());
+        }
+
+        // Closing the real connection through a statement isn't possible.
+        assertEquals(1, this.pool.getIdleConnections());
+    }
+
+    @Test
+    void testStatementConnectionError() throws SQLException
+    {
+        Connection real = mock();
+        Statement realStatement = mock();
+        when(real.createStatement()).thenReturn(realStatement);
+        when(realStatement.executeQuery(anyString())).thenThrow(new SQLException("Communications link failure", "08S01"));
+        FakeDriver.connection = real;
+
+        try (ConnectionPool fakePool = new ConnectionPool(FakeDriver.URL, new Properties(), 1, 200, TimeUnit.MILLISECONDS))
+        {
+            try (Connection connection = fakePool.getConnection();
+                 Statement statement = connection.createStatement())
+            {
+                assertThrows(SQLException.class, () -> statement.executeQuery("SELECT 1"));
+            }
+
+            // The connection is discarded rather than handed out again.
+            assertEquals(0, fakePool.getOpenConnections());
+            verify(real).close();
+        }
+    }
+
+    @Test
+    void testStatementErrorValidated() throws SQLException
+    {
+        Connection real = mock();
+        PreparedStatement realStatement = mock();
+        when(real.prepareStatement(anyString())).thenReturn(realStatement);
+        when(realStatement.executeBatch()).thenThrow(new SQLException("Duplicate key", "23505"));
+        when(real.isValid(anyInt())).thenReturn(true);
+        FakeDriver.connection = real;
+
+        try (ConnectionPool fakePool = new ConnectionPool(FakeDriver.URL, new Properties(), 1, 200, TimeUnit.MILLISECONDS))
+        {
+            try (Connection connection = fakePool.getConnection();
+                 PreparedStatement statement = connection.prepareStatement("INSERT"))
+            {
+                assertThrows(SQLException.class, statement::executeBatch);
+            }
+
+            // Other errors get a check, and a connection which passes is kept.
+            verify(real).isValid(anyInt());
+            assertEquals(1, fakePool.getIdleConnections());
+
+            when(real.isValid(anyInt())).thenReturn(false);
+            try (Connection connection = fakePool.getConnection();
+                 PreparedStatement statement = connection.prepareStatement("INSERT"))
+            {
+                assertThrows(SQLException.class, statement::executeBatch);
+            }
+            assertEquals(0, fakePool.getOpenConnections());
+        }
+    }
+
+    // Hands out whichever connection a test set up, for URLs no real driver accepts.
+    public static final class FakeDriver implements Driver
+    {
+        static final String URL = "jdbc:griefprevention-test:";
+        static volatile Connection connection;
+
+        static
+        {
+            try
+            {
+                DriverManager.registerDriver(new FakeDriver());
+            }
+            catch (SQLException e)
+            {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        @Override
+        public Connection connect(String url, Properties info)
+        {
+            return acceptsURL(url) ? connection : null;
+        }
+
+        @Override
+        public boolean acceptsURL(String url)
+        {
+            return url.startsWith(URL);
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info)
+        {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion()
+        {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion()
+        {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant()
+        {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger()
+        {
+            return Logger.getAnonymousLogger();
+        }
+    }
+
+}
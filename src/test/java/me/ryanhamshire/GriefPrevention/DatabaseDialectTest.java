@@ -0,0 +1,93 @@
+package me.ryanhamshire.GriefPrevention;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DatabaseDialectTest
+{
+
+    private static final List<String> COLUMNS = List.of("name", "accruedblocks", "bonusblocks");
+
+    @Test
+    void testFromUrl()
+    {
+        assertEquals(DatabaseDialect.MYSQL, DatabaseDialect.fromUrl("jdbc:mysql://localhost/minecraft"));
+        assertEquals(DatabaseDialect.MYSQL, DatabaseDialect.fromUrl("jdbc:mariadb://localhost/minecraft"));
+        assertEquals(DatabaseDialect.SQLITE, DatabaseDialect.fromUrl("jdbc:sqlite:plugins/GriefPreventionData/data.db"));
+        assertEquals(DatabaseDialect.POSTGRESQL, DatabaseDialect.fromUrl("jdbc:postgresql://localhost/minecraft"));
+        assertEquals(DatabaseDialect.H2, DatabaseDialect.fromUrl("jdbc:h2:mem:test"));
+        assertEquals(DatabaseDialect.GENERIC, DatabaseDialect.fromUrl("jdbc:derby:test"));
+    }
+
+    @Test
+    void testConfigure()
+    {
+        Properties properties = new Properties();
+        DatabaseDialect.MYSQL.configure(properties);
+        assertEquals("true", properties.getProperty("rewriteBatchedStatements"));
+        assertEquals("true", properties.getProperty("useCursorFetch"));
+
+        properties = new Properties();
+        DatabaseDialect.SQLITE.configure(properties);
+        assertTrue(properties.isEmpty());
+    }
+
+    @Test
+    void testUpsertStatements()
+    {
+        assertEquals("INSERT INTO players (name, accruedblocks, bonusblocks) VALUES (?, ?, ?)"
+                        + " ON DUPLICATE KEY UPDATE accruedblocks = VALUES(accruedblocks), bonusblocks = VALUES(bonusblocks)",
+                DatabaseDialect.MYSQL.upsert("players", COLUMNS, "name"));
+        assertEquals("INSERT INTO players (name, accruedblocks, bonusblocks) VALUES (?, ?, ?)"
+                        + " ON CONFLICT (name) DO UPDATE SET accruedblocks = excluded.accruedblocks, bonusblocks = excluded.bonusblocks",
+                DatabaseDialect.SQLITE.upsert("players", COLUMNS, "name"));
+        assertNull(DatabaseDialect.GENERIC.upsert("players", COLUMNS, "name"));
+    }
+
+    @Test
+    void testUpsertReplacesRow() throws SQLException
+    {
+        String upsert = DatabaseDialect.H2.upsert("players", COLUMNS, "name");
+        try (Connection connection = DriverManager.getConnection("jdbc:h2:mem:" + UUID.randomUUID());
+             Statement statement = connection.createStatement())
+        {
+            statement.execute("CREATE TABLE players (name VARCHAR(50), accruedblocks INTEGER, bonusblocks INTEGER)");
+            statement.execute("CREATE UNIQUE INDEX players_name ON players (name)");
+
+            try (PreparedStatement upsertStmnt = connection.prepareStatement(upsert))
+            {
+                upsertStmnt.setObject(1, "player");
+                upsertStmnt.setObject(2, 100);
+                upsertStmnt.setObject(3, 5);
+                upsertStmnt.executeUpdate();
+
+                upsertStmnt.setObject(2, 200);
+                upsertStmnt.setObject(3, 10);
+                upsertStmnt.executeUpdate();
+            }
+
+            try (ResultSet results = statement.executeQuery("SELECT accruedblocks, bonusblocks FROM players WHERE name = 'player'"))
+            {
+                assertTrue(results.next());
+                assertEquals(200, results.getInt(1));
+                assertEquals(10, results.getInt(2));
+                assertFalse(results.next());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,159 @@
+package me.ryanhamshire.GriefPrevention;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class FlatFileMigrationTest
+{
+    private static final UUID OWNER_UUID = UUID.fromString("fa8d60a7-9645-4a9f-b74d-173966174739");
+    private static final UUID BUILDER_UUID = UUID.fromString("0b8c1a6e-3b5f-4f5e-9d0a-6a6b1c2d3e4f");
+
+    @TempDir
+    Path folder;
+
+    private String url;
+    private ConnectionPool pool;
+    private final List<String> log = new ArrayList<>();
+
+    @BeforeEach
+    void setUp()
+    {
+        this.url = "jdbc:h2:mem:" + UUID.randomUUID();
+        this.pool = new ConnectionPool(this.url, new Properties(), 1, 1, TimeUnit.SECONDS);
+    }
+
+    @AfterEach
+    void tearDown()
+    {
+        this.pool.close();
+    }
+
+    private FlatFileMigration migration()
+    {
+        return new FlatFileMigration(this.pool, DatabaseDialect.H2, this.url, this.folder.resolve(FlatFileMigration.CHECKPOINT_FILE_NAME), this.log::add);
+    }
+
+    private static FlatFileMigration.ClaimSource claim(long id, long parentID, AtomicInteger reads)
+    {
+        return new FlatFileMigration.ClaimSource(id, () ->
+        {
+            reads.incrementAndGet();
+            ClaimRecord record = new ClaimRecord(id, OWNER_UUID, "world", 0, 60, 0, 9, 60, 9, false, parentID);
+            record.addTrust(BUILDER_UUID.toString(), ClaimRecord.BUILD);
+            return record;
+        });
+    }
+
+    private long count(String sql) throws SQLException
+    {
+        try (Connection connection = this.pool.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet results = statement.executeQuery(sql))
+        {
+            results.next();
+            return results.getLong(1);
+        }
+    }
+
+    @Test
+    void testMigrate() throws SQLException, IOException
+    {
+        AtomicInteger reads = new AtomicInteger();
+        List<FlatFileMigration.ClaimSource> claims = List.of(
+                claim(2, 1, reads),
+                claim(1, ClaimRecord.NO_PARENT, reads),
+                new FlatFileMigration.ClaimSource(3, () -> { throw new IOException("unreadable"); }));
+        Map<UUID, PlayerRecordStore.PlayerRecord> players = Map.of(
+                OWNER_UUID, new PlayerRecordStore.PlayerRecord(100, 5),
+                BUILDER_UUID, new PlayerRecordStore.PlayerRecord(200, 0));
+
+        FlatFileMigration.Result result = this.migration().migrate(claims, players, Map.of("vip", 50), 2, playerID -> 0);
+
+        assertEquals(new FlatFileMigration.Result(2, 1, 2, 1), result);
+        assertEquals(2, reads.get());
+        assertEquals(2, this.count("SELECT COUNT(*) FROM griefprevention_claims"));
+        assertEquals(1, this.count("SELECT parent_id FROM griefprevention_claims WHERE id = 2"));
+        assertEquals(2, this.count("SELECT COUNT(*) FROM griefprevention_claim_trust"));
+        assertEquals(1, this.count("SELECT COUNT(*) FROM griefprevention_world"));
+        assertEquals(2, this.count("SELECT COUNT(*) FROM griefprevention_playerdata WHERE name NOT LIKE '$%'"));
+        assertEquals(50, this.count("SELECT bonusblocks FROM griefprevention_playerdata WHERE name = '$vip'"));
+        // The next claim ID is moved past every migrated claim, including the unreadable one.
+        assertEquals(4, this.count("SELECT nextid FROM griefprevention_nextclaimid"));
+        assertEquals(DatabaseDataStore.DATABASE_SCHEMA_VERSION, this.count("SELECT version FROM griefprevention_schemaversion"));
+        assertFalse(Files.exists(this.folder.resolve(FlatFileMigration.CHECKPOINT_FILE_NAME)));
+
+        // Migrating again replaces the rows instead of adding more.
+        this.migration().migrate(claims, players, Map.of("vip", 50), 2, playerID -> 0);
+        assertEquals(2, this.count("SELECT COUNT(*) FROM griefprevention_claims"));
+        assertEquals(2, this.count("SELECT COUNT(*) FROM griefprevention_claim_trust"));
+        assertEquals(3, this.count("SELECT COUNT(*) FROM griefprevention_playerdata"));
+    }
+
+    @Test
+    void testResume() throws SQLException, IOException
+    {
+        Properties checkpoint = new Properties();
+        checkpoint.setProperty("database", this.url);
+        checkpoint.setProperty("claims", "1");
+        try (Writer writer = Files.newBufferedWriter(this.folder.resolve(FlatFileMigration.CHECKPOINT_FILE_NAME)))
+        {
+            checkpoint.store(writer, null);
+        }
+
+        AtomicInteger reads = new AtomicInteger();
+        List<FlatFileMigration.ClaimSource> claims = List.of(claim(1, ClaimRecord.NO_PARENT, reads), claim(2, 1, reads));
+        FlatFileMigration.Result result = this.migration().migrate(claims, Map.of(), Map.of(), 0, playerID -> 0);
+
+        // The claim written before the interruption isn't read again.
+        assertEquals(1, reads.get());
+        assertEquals(2, result.claims());
+        assertEquals(1, this.count("SELECT COUNT(*) FROM griefprevention_claims WHERE id = 2"));
+        assertEquals(0, this.count("SELECT COUNT(*) FROM griefprevention_claims WHERE id = 1"));
+    }
+
+    @Test
+    void testWorldIDs() throws SQLException, IOException
+    {
+        AtomicInteger reads = new AtomicInteger();
+        this.migration().migrate(List.of(claim(1, ClaimRecord.NO_PARENT, reads)), Map.of(), Map.of(), 0, playerID -> 0);
+        assertEquals(1, this.count("SELECT id FROM griefprevention_world WHERE name = 'world'"));
+
+        try (Connection connection = this.pool.getConnection();
+             Statement statement = connection.createStatement())
+        {
+            // Another server sharing the database added a world.
+            statement.execute("INSERT INTO griefprevention_world (id, name) VALUES (7, 'nether')");
+
+            assertEquals(7, DatabaseDataStore.selectOrInsertWorldID(connection, "nether"));
+            assertEquals(1, DatabaseDataStore.selectOrInsertWorldID(connection, "world"));
+            assertEquals(8, DatabaseDataStore.selectOrInsertWorldID(connection, "the_end"));
+            assertEquals(8, DatabaseDataStore.selectOrInsertWorldID(connection, "the_end"));
+        }
+
+        // Existing rows are never renamed.
+        assertEquals(3, this.count("SELECT COUNT(*) FROM griefprevention_world"));
+        assertEquals(1, this.count("SELECT id FROM griefprevention_world WHERE name = 'world'"));
+    }
+
+}
@@ -0,0 +1,83 @@
+package me.ryanhamshire.GriefPrevention;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class PermissionDecisionCacheTest
+{
+
+    private static Claim claim(long id)
+    {
+        Claim claim = new Claim();
+        claim.id = id;
+        return claim;
+    }
+
+    @Test
+    void testDecisionsAreKeyedByClaimAndPermission()
+    {
+        PermissionDecisionCache cache = new PermissionDecisionCache();
+        Claim claim = claim(1);
+        Supplier<String> denial = () -> "denied";
+
+        cache.put(claim, ClaimPermission.Access, null);
+        cache.put(claim, ClaimPermission.Manage, denial);
+
+        PermissionDecisionCache.Decision access = cache.get(claim, ClaimPermission.Access);
+        assertNotNull(access);
+        assertNull(access.denial());
+
+        PermissionDecisionCache.Decision manage = cache.get(claim, ClaimPermission.Manage);
+        assertNotNull(manage);
+        assertSame(denial, manage.denial());
+
+        assertNull(cache.get(claim, ClaimPermission.Container));
+        assertNull(cache.get(claim(2), ClaimPermission.Access));
+        // A different instance with the same ID, such as a copy, is not the same claim.
+        assertNull(cache.get(claim(1), ClaimPermission.Access));
+    }
+
+    @Test
+    void testChangesInvalidateDecisions()
+    {
+        PermissionDecisionCache cache = new PermissionDecisionCache();
+        Claim parent = claim(1);
+        Claim subdivision = claim(2);
+        subdivision.parent = parent;
+
+        cache.put(parent, ClaimPermission.Access, null);
+        cache.put(subdivision, ClaimPermission.Access, null);
+
+        parent.setPermission("public", ClaimPermission.Build);
+        assertNull(cache.get(parent, ClaimPermission.Access));
+        // Subdivisions inherit from their parent, so its changes count too.
+        assertNull(cache.get(subdivision, ClaimPermission.Access));
+
+        cache.put(subdivision, ClaimPermission.Access, null);
+        subdivision.setSubclaimRestrictions(true);
+        assertNull(cache.get(subdivision, ClaimPermission.Access));
+
+        cache.put(parent, ClaimPermission.Access, null);
+        cache.clear();
+        assertNull(cache.get(parent, ClaimPermission.Access));
+    }
+
+    @Test
+    void testSizeIsBounded()
+    {
+        PermissionDecisionCache cache = new PermissionDecisionCache();
+        for (int i = 0; i < PermissionDecisionCache.MAX_ENTRIES * 4; i++)
+        {
+            cache.put(claim(i), ClaimPermission.Access, null);
+        }
+
+        assertEquals(PermissionDecisionCache.MAX_ENTRIES, cache.size());
+    }
+
+}
@@ -0,0 +1,107 @@
+package me.ryanhamshire.GriefPrevention;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PlayerActivityIndexTest
+{
+
+    private static final UUID FIRST = UUID.fromString("fa8d60a7-9645-4a9f-b74d-173966174739");
+    private static final UUID SECOND = UUID.fromString("0b8c1a6e-3b5f-4f5e-9d0a-6a6b1c2d3e4f");
+    private static final UUID THIRD = UUID.fromString("7c9e6679-7425-40de-944b-e07fc1f90ae7");
+
+    private static List<UUID> seenBefore(PlayerActivityIndex index, long cutoff)
+    {
+        return index.seenBefore(cutoff, null, Integer.MAX_VALUE).stream().map(PlayerActivityIndex.Entry::playerID).toList();
+    }
+
+    @Test
+    void testSeenBefore()
+    {
+        PlayerActivityIndex index = new PlayerActivityIndex();
+        index.record(FIRST, 300);
+        index.record(SECOND, 100);
+        index.record(THIRD, 200);
+        index.track(FIRST);
+        index.track(SECOND);
+        index.track(THIRD);
+
+        assertEquals(List.of(SECOND, THIRD), seenBefore(index, 300));
+        assertEquals(List.of(SECOND, THIRD, FIRST), seenBefore(index, 301));
+        assertEquals(List.of(), seenBefore(index, 100));
+    }
+
+    @Test
+    void testSeenBeforeInPages()
+    {
+        PlayerActivityIndex index = new PlayerActivityIndex();
+        index.track(FIRST);
+        index.track(SECOND);
+        index.track(THIRD);
+        index.record(FIRST, 300);
+        index.record(SECOND, 100);
+        index.record(THIRD, 200);
+
+        List<PlayerActivityIndex.Entry> first = index.seenBefore(1000, null, 2);
+        assertEquals(List.of(new PlayerActivityIndex.Entry(100, SECOND), new PlayerActivityIndex.Entry(200, THIRD)), first);
+        assertEquals(List.of(new PlayerActivityIndex.Entry(300, FIRST)), index.seenBefore(1000, first.get(1), 2));
+        assertEquals(List.of(), index.seenBefore(1000, new PlayerActivityIndex.Entry(300, FIRST), 2));
+    }
+
+    @Test
+    void testOnlyOwners()
+    {
+        PlayerActivityIndex index = new PlayerActivityIndex();
+        index.record(FIRST, 100);
+        index.record(SECOND, 200);
+        index.track(SECOND);
+
+        // Players who own no claims are remembered, but never listed.
+        assertEquals(List.of(SECOND), seenBefore(index, 1000));
+        assertEquals(100, index.getLastSeen(FIRST));
+        assertEquals(1, index.ownerCount());
+
+        index.untrack(SECOND);
+        assertEquals(List.of(), seenBefore(index, 1000));
+        assertEquals(0, index.ownerCount());
+
+        index.track(FIRST);
+        assertEquals(List.of(FIRST), seenBefore(index, 1000));
+    }
+
+    @Test
+    void testRecordReplaces()
+    {
+        PlayerActivityIndex index = new PlayerActivityIndex();
+        index.track(FIRST);
+        index.record(FIRST, 100);
+        index.record(FIRST, 500);
+
+        assertEquals(500, index.getLastSeen(FIRST));
+        assertEquals(1, index.size());
+        assertEquals(1, index.ownerCount());
+        assertEquals(List.of(), seenBefore(index, 500));
+        assertEquals(List.of(FIRST), seenBefore(index, 501));
+    }
+
+    @Test
+    void testUnknown()
+    {
+        PlayerActivityIndex index = new PlayerActivityIndex();
+        index.record(FIRST, PlayerActivityIndex.UNKNOWN);
+
+        assertEquals(PlayerActivityIndex.UNKNOWN, index.getLastSeen(FIRST));
+        assertEquals(0, index.size());
+
+        assertTrue(index.recordIfUnknown(FIRST, 100));
+        assertFalse(index.recordIfUnknown(FIRST, 200));
+        assertEquals(100, index.getLastSeen(FIRST));
+    }
+
+}
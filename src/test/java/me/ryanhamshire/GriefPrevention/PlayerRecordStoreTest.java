@@ -0,0 +1,150 @@
+package me.ryanhamshire.GriefPrevention;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PlayerRecordStoreTest
+{
+
+    @TempDir
+    Path directory;
+
+    private static void assertContents(Map<UUID, PlayerRecordStore.PlayerRecord> expected, PlayerRecordStore store)
+    {
+        assertEquals(expected.size(), store.size());
+        for (Map.Entry<UUID, PlayerRecordStore.PlayerRecord> entry : expected.entrySet())
+        {
+            assertEquals(entry.getValue(), store.get(entry.getKey()));
+        }
+
+        Map<UUID, PlayerRecordStore.PlayerRecord> found = new HashMap<>();
+        store.forEach(found::put);
+        assertEquals(expected, found);
+    }
+
+    private long countFiles() throws IOException
+    {
+        try (Stream<Path> files = Files.list(this.directory))
+        {
+            return files.count();
+        }
+    }
+
+    @Test
+    void testPutGet() throws IOException
+    {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        try (PlayerRecordStore store = PlayerRecordStore.open(this.directory))
+        {
+            store.put(first, 100, 5);
+            store.put(second, 200, 0);
+            store.put(first, 150, 10);
+
+            assertEquals(new PlayerRecordStore.PlayerRecord(150, 10), store.get(first));
+            assertEquals(new PlayerRecordStore.PlayerRecord(200, 0), store.get(second));
+            assertNull(store.get(UUID.randomUUID()));
+            assertNull(store.get(new UUID(0, 0)));
+            assertEquals(2, store.size());
+        }
+
+        try (PlayerRecordStore store = PlayerRecordStore.open(this.directory))
+        {
+            assertContents(Map.of(
+                    first, new PlayerRecordStore.PlayerRecord(150, 10),
+                    second, new PlayerRecordStore.PlayerRecord(200, 0)), store);
+        }
+    }
+
+    @Test
+    void testLastSeen() throws IOException
+    {
+        UUID seen = UUID.randomUUID();
+        UUID unseen = UUID.randomUUID();
+        try (PlayerRecordStore store = PlayerRecordStore.open(this.directory))
+        {
+            store.putLastSeen(seen, 1_700_000_000_000L);
+            store.put(seen, 100, 5);
+            store.put(unseen, 200, 0);
+
+            assertEquals(new PlayerRecordStore.PlayerRecord(100, 5, 1_700_000_000_000L), store.get(seen));
+            assertEquals(0, store.get(unseen).lastSeen());
+        }
+
+        try (PlayerRecordStore store = PlayerRecordStore.open(this.directory))
+        {
+            assertContents(Map.of(
+                    seen, new PlayerRecordStore.PlayerRecord(100, 5, 1_700_000_000_000L),
+                    unseen, new PlayerRecordStore.PlayerRecord(200, 0)), store);
+        }
+    }
+
+    @Test
+    void testGrow() throws IOException
+    {
+        Map<UUID, PlayerRecordStore.PlayerRecord> expected = new HashMap<>();
+        Random random = new Random(11);
+        try (PlayerRecordStore store = PlayerRecordStore.open(this.directory))
+        {
+            for (int i = 0; i < 10_000; i++)
+            {
+                UUID playerID = new UUID(random.nextLong(), random.nextLong());
+                PlayerRecordStore.PlayerRecord record = new PlayerRecordStore.PlayerRecord(random.nextInt(100_000), random.nextInt(1_000), random.nextInt(1_000_000));
+                store.put(playerID, record.accruedClaimBlocks(), record.bonusClaimBlocks());
+                store.putLastSeen(playerID, record.lastSeen());
+                expected.put(playerID, record);
+            }
+
+            assertTrue(store.getSlots() > PlayerRecordStore.MIN_SLOTS);
+            assertContents(expected, store);
+        }
+
+        // Old generations are gone once reopened.
+        try (PlayerRecordStore store = PlayerRecordStore.open(this.directory))
+        {
+            assertEquals(1, countFiles());
+            assertContents(expected, store);
+        }
+    }
+
+    @Test
+    void testCreateUntilCommitted() throws IOException
+    {
+        UUID playerID = UUID.randomUUID();
+        try (PlayerRecordStore store = PlayerRecordStore.create(this.directory, 5_000))
+        {
+            assertTrue(store.getSlots() >= 5_000);
+            store.put(playerID, 1, 2);
+        }
+
+        // An interrupted conversion isn't mistaken for a complete store.
+        assertFalse(PlayerRecordStore.exists(this.directory));
+
+        try (PlayerRecordStore store = PlayerRecordStore.create(this.directory, 0))
+        {
+            store.put(playerID, 3, 4);
+            store.commit();
+        }
+
+        assertTrue(PlayerRecordStore.exists(this.directory));
+        try (PlayerRecordStore store = PlayerRecordStore.open(this.directory))
+        {
+            assertContents(Map.of(playerID, new PlayerRecordStore.PlayerRecord(3, 4)), store);
+        }
+    }
+
+}
@@ -0,0 +1,140 @@
+package me.ryanhamshire.GriefPrevention;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SegmentedClaimStoreTest
+{
+
+    @TempDir
+    Path directory;
+
+    private SegmentedClaimStore open() throws IOException
+    {
+        return new SegmentedClaimStore(this.directory, message -> {});
+    }
+
+    private static byte[] bytes(String value)
+    {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void assertContents(Map<Long, byte[]> expected, SegmentedClaimStore store) throws IOException
+    {
+        assertEquals(expected.size(), store.size());
+        for (Map.Entry<Long, byte[]> entry : expected.entrySet())
+        {
+            assertArrayEquals(entry.getValue(), store.get(entry.getKey()));
+        }
+
+        Map<Long, byte[]> found = new HashMap<>();
+        store.forEach(found::put);
+        assertEquals(expected.keySet(), found.keySet());
+    }
+
+    @Test
+    void testPutGetDelete() throws IOException
+    {
+        try (SegmentedClaimStore store = open())
+        {
+            store.put(1, bytes("first"));
+            store.put(2, bytes("second"));
+            store.put(1, bytes("first again"));
+
+            assertArrayEquals(bytes("first again"), store.get(1));
+            assertArrayEquals(bytes("second"), store.get(2));
+            assertNull(store.get(3));
+
+            assertTrue(store.delete(2));
+            assertFalse(store.delete(2));
+            assertNull(store.get(2));
+            assertEquals(1, store.size());
+        }
+
+        try (SegmentedClaimStore store = open())
+        {
+            assertEquals(1, store.size());
+            assertArrayEquals(bytes("first again"), store.get(1));
+        }
+    }
+
+    @Test
+    void testRecoverWithoutClose() throws IOException
+    {
+        SegmentedClaimStore store = open();
+        store.put(5, bytes("kept"));
+        store.put(6, bytes("deleted"));
+        store.delete(6);
+        store.put(5_000, bytes("grows the index"));
+
+        // Simulate a write interrupted by a crash.
+        Path segment;
+        try (Stream<Path> files = Files.list(this.directory))
+        {
+            segment = files.filter(file -> file.getFileName().toString().startsWith("segment-")).sorted().reduce((a, b) -> b).orElseThrow();
+        }
+        Files.write(segment, new byte[] { 1, 0, 0, 0 }, StandardOpenOption.APPEND);
+
+        // The store is never closed, so its index is still marked dirty and must be rebuilt.
+        try (SegmentedClaimStore recovered = open())
+        {
+            assertContents(Map.of(5L, bytes("kept"), 5_000L, bytes("grows the index")), recovered);
+            recovered.put(7, bytes("after recovery"));
+            assertArrayEquals(bytes("after recovery"), recovered.get(7));
+        }
+    }
+
+    @Test
+    void testCompaction() throws IOException
+    {
+        Map<Long, byte[]> expected = new HashMap<>();
+        Random random = new Random(3);
+        try (SegmentedClaimStore store = open())
+        {
+            // Rewrite a few claims until compaction has had to run.
+            int compactions = 0;
+            for (int i = 0; i < 20_000; i++)
+            {
+                long claimID = random.nextInt(100);
+                byte[] payload = new byte[500];
+                random.nextBytes(payload);
+                store.put(claimID, payload);
+                expected.put(claimID, payload);
+
+                // Saves leave compaction to the store's owner.
+                if (store.compactIfNeeded()) compactions++;
+            }
+
+            assertTrue(compactions > 0);
+            assertFalse(store.needsCompaction());
+            assertTrue(store.getGarbageBytes() <= Math.max(store.getLiveBytes(), SegmentedClaimStore.MIN_COMPACTION_GARBAGE_BYTES));
+            assertContents(expected, store);
+
+            store.compact();
+            assertEquals(0, store.getGarbageBytes());
+            assertContents(expected, store);
+        }
+
+        try (SegmentedClaimStore store = open())
+        {
+            assertContents(expected, store);
+        }
+    }
+
+}